@@ -0,0 +1,522 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.ConsoleAppender;
+
+import com.mucommander.auth.CredentialsManager;
+import com.mucommander.cache.ChecksumCache;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.archiver.Archiver;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.security.MuProvider;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.extension.ExtensionManager;
+import com.mucommander.io.security.ChecksumProvider;
+import com.mucommander.job.ArchiveJob;
+import com.mucommander.job.BatchJobInteraction;
+import com.mucommander.job.CalculateChecksumJob;
+import com.mucommander.job.CopyJob;
+import com.mucommander.job.DeleteJob;
+import com.mucommander.job.FileJob;
+import com.mucommander.job.FileJobListener;
+import com.mucommander.job.JobTelemetry;
+import com.mucommander.job.MoveJob;
+import com.mucommander.job.TransferFileJob;
+import com.mucommander.job.UnpackJob;
+import com.mucommander.job.VerifyChecksumJob;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.file.FileCollisionDialog;
+
+/**
+ * Runs a single file job from the command line, without a graphical environment: copy, move, delete, pack, unpack,
+ * checksum calculation or verification.
+ *
+ * <p>The job behaves as it does when started from a main frame, but the decisions the user is normally asked for are
+ * made by a {@link BatchJobInteraction}, with the policies given on the command line. The progress of the job, the
+ * errors and collisions it runs into and its outcome are written to the standard output as JSON objects, one per
+ * line ; log messages go to the standard error. The exit code tells the outcome of the job, see
+ * {@link #EXIT_SUCCESS} and the constants that follow it.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class BatchRunner {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchRunner.class);
+
+    /** Exit code: the job has processed all files successfully */
+    public final static int EXIT_SUCCESS = 0;
+    /** Exit code: the job has finished, but some files could not be processed or did not pass verification */
+    public final static int EXIT_ERRORS = 1;
+    /** Exit code: the job has been cancelled, by the error or collision policy */
+    public final static int EXIT_INTERRUPTED = 2;
+    /** Exit code: the job could not be started */
+    public final static int EXIT_FAILURE = 3;
+    /** Exit code: the command line is invalid */
+    public final static int EXIT_USAGE = 64;
+
+    /** Default number of milliseconds between two progress events */
+    private final static long DEFAULT_PROGRESS_INTERVAL = 1000;
+
+    /**
+     * Prevents instantiation of this class.
+     */
+    private BatchRunner() {}
+
+    /**
+     * Prints the command line usage and exits.
+     */
+    private static void printUsage() {
+        System.out.println("Usage: java -cp mucommander.jar com.mucommander.BatchRunner [options] command [arguments]");
+        System.out.println("Commands:");
+        System.out.println(" copy SOURCE... DEST                   Copy files to folder DEST, or a single file to DEST.");
+        System.out.println(" move SOURCE... DEST                   Move files to folder DEST, or a single file to DEST.");
+        System.out.println(" delete FILE...                        Delete files.");
+        System.out.println(" pack ARCHIVE FILE...                  Pack files into ARCHIVE, in the format of its extension.");
+        System.out.println(" unpack ARCHIVE... DEST                Unpack archives into folder DEST.");
+        System.out.println(" checksum ALGORITHM CHECKSUM_FILE FILE...");
+        System.out.println("                                       Write the checksums of files to CHECKSUM_FILE.");
+        System.out.println(" verify CHECKSUM_FILE...               Verify files against checksum files.");
+        System.out.println("Options:");
+        System.out.println(" --on-error skip|cancel                What to do with errors once retried (default: cancel).");
+        System.out.println(" --retries N                           Retry errors N times (default: 0).");
+        System.out.println(" --on-collision ACTION                 What to do with existing files: skip, overwrite,");
+        System.out.println("                                       overwrite-if-older, resume, rename or cancel (default: cancel).");
+        System.out.println(" --verify                              Verify the integrity of transferred files.");
+        System.out.println(" --progress-interval MS                Report progress every MS milliseconds (default: "+DEFAULT_PROGRESS_INTERVAL+").");
+        System.out.println(" -c FILE, --configuration FILE         Load configuration from FILE.");
+        System.out.println(" -p FOLDER, --preferences FOLDER       Store configuration files in FOLDER.");
+        System.out.println(" -U FILE, --credentials FILE           Load credentials from FILE.");
+        System.out.println(" -h, --help                            Print the help text and exit.");
+        System.out.println("Exit codes: "+EXIT_SUCCESS+" success, "+EXIT_ERRORS+" errors, "+EXIT_INTERRUPTED+" cancelled, "
+                +EXIT_FAILURE+" job could not be started, "+EXIT_USAGE+" invalid command line.");
+        System.exit(EXIT_SUCCESS);
+    }
+
+    /**
+     * Prints the specified error message to stderr and exits with the given code.
+     */
+    private static void exit(String msg, int exitCode) {
+        System.err.println("Error: "+msg);
+        if(exitCode==EXIT_USAGE)
+            System.err.println("See --help for more information.");
+        System.exit(exitCode);
+    }
+
+    /**
+     * Returns the argument that follows the option at the given index, exits if there is none.
+     */
+    private static String getParameter(String args[], int i) {
+        if(i >= args.length - 1)
+            exit("Missing parameter to " + args[i], EXIT_USAGE);
+        return args[i+1];
+    }
+
+    private static int getCollisionAction(String name) {
+        if(name.equals("skip"))
+            return FileCollisionDialog.SKIP_ACTION;
+        if(name.equals("overwrite"))
+            return FileCollisionDialog.OVERWRITE_ACTION;
+        if(name.equals("overwrite-if-older"))
+            return FileCollisionDialog.OVERWRITE_IF_OLDER_ACTION;
+        if(name.equals("resume"))
+            return FileCollisionDialog.RESUME_ACTION;
+        if(name.equals("rename"))
+            return FileCollisionDialog.RENAME_ACTION;
+        if(name.equals("cancel"))
+            return FileCollisionDialog.CANCEL_ACTION;
+
+        exit("Invalid collision action: " + name, EXIT_USAGE);
+        return -1;
+    }
+
+    /**
+     * Runs the job described by the command line.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String args[]) {
+        // Make sure that no window is ever created
+        System.setProperty("java.awt.headless", "true");
+
+        int errorPolicy = BatchJobInteraction.CANCEL_ON_ERROR;
+        int maxRetries = 0;
+        int collisionAction = FileCollisionDialog.CANCEL_ACTION;
+        boolean verify = false;
+        long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+        // - Command line parsing -------------------------------------
+        // ------------------------------------------------------------
+        int i;
+        try {
+            for(i = 0; i < args.length && args[i].startsWith("-"); i++) {
+                if(args[i].equals("-h") || args[i].equals("--help"))
+                    printUsage();
+
+                else if(args[i].equals("--on-error")) {
+                    String policy = getParameter(args, i++);
+                    if(policy.equals("skip"))
+                        errorPolicy = BatchJobInteraction.SKIP_ERRORS;
+                    else if(policy.equals("cancel"))
+                        errorPolicy = BatchJobInteraction.CANCEL_ON_ERROR;
+                    else
+                        exit("Invalid error policy: " + policy, EXIT_USAGE);
+                }
+
+                else if(args[i].equals("--retries"))
+                    maxRetries = Math.max(0, Integer.parseInt(getParameter(args, i++)));
+
+                else if(args[i].equals("--on-collision"))
+                    collisionAction = getCollisionAction(getParameter(args, i++));
+
+                else if(args[i].equals("--verify"))
+                    verify = true;
+
+                else if(args[i].equals("--progress-interval"))
+                    progressInterval = Math.max(1, Long.parseLong(getParameter(args, i++)));
+
+                else if(args[i].equals("-c") || args[i].equals("--configuration"))
+                    MuConfigurations.setPreferencesFile(getParameter(args, i++));
+
+                else if(args[i].equals("-p") || args[i].equals("--preferences"))
+                    PlatformManager.setPreferencesFolder(getParameter(args, i++));
+
+                else if(args[i].equals("-U") || args[i].equals("--credentials"))
+                    CredentialsManager.setCredentialsFile(getParameter(args, i++));
+
+                else
+                    exit("Unknown option: " + args[i], EXIT_USAGE);
+            }
+        }
+        catch(NumberFormatException e) {
+            exit("Invalid number: " + e.getMessage(), EXIT_USAGE);
+            return;
+        }
+        catch(Exception e) {
+            exit("Invalid configuration location: " + e.getMessage(), EXIT_USAGE);
+            return;
+        }
+
+        if(i >= args.length)
+            exit("Missing command", EXIT_USAGE);
+
+        String command = args[i];
+        String operands[] = new String[args.length - i - 1];
+        System.arraycopy(args, i + 1, operands, 0, operands.length);
+
+        init();
+
+        BatchJobInteraction interaction = new BatchJobInteraction(errorPolicy, maxRetries, collisionAction, System.out);
+        FileJob job;
+        try {
+            job = createJob(command, operands);
+        }
+        catch(IllegalArgumentException e) {
+            exit(e.getMessage(), EXIT_USAGE);
+            return;
+        }
+        catch(IOException e) {
+            exit(e.getMessage(), EXIT_FAILURE);
+            return;
+        }
+
+        if(verify && job instanceof TransferFileJob)
+            ((TransferFileJob)job).setIntegrityCheckEnabled(true);
+
+        System.exit(run(job, interaction, progressInterval));
+    }
+
+    /**
+     * Initializes the parts of muCommander that jobs depend on: configuration, logging, file systems, dictionary,
+     * credentials and checksum algorithms.
+     */
+    private static void init() {
+        try {MuConfigurations.loadPreferences();}
+        catch(Exception e) {System.err.println("Could not load configuration, using default values: " + e.getMessage());}
+
+        // Log messages go to stderr, as stdout is read by the caller
+        try {
+            MuLogging.configureLogging();
+            ConsoleAppender<ILoggingEvent> consoleAppender = MuLogging.getConsoleAppender();
+            consoleAppender.stop();
+            consoleAppender.setTarget("System.err");
+            consoleAppender.start();
+        }
+        catch(IOException e) {
+            System.err.println("Could not configure logging: " + e.getMessage());
+        }
+
+        try {ExtensionManager.addExtensionsToClasspath();}
+        catch(Exception e) {LOGGER.debug("Failed to add extensions to the classpath", e);}
+
+        Launcher.configureFilesystems();
+
+        try {Translator.loadDictionaryFile();}
+        catch(Exception e) {exit("Could not load dictionary: " + e.getMessage(), EXIT_FAILURE);}
+
+        try {CredentialsManager.loadCredentials();}
+        catch(Exception e) {LOGGER.info("Could not load credentials", e);}
+
+        // Register additional MessageDigest implementations provided by the muCommander API and by muCommander
+        MuProvider.registerProvider();
+        ChecksumProvider.registerProvider();
+    }
+
+    /**
+     * Creates the job described by the given command and operands.
+     *
+     * @throws IllegalArgumentException if the command or its operands are invalid
+     * @throws IOException if one of the files cannot be resolved
+     */
+    private static FileJob createJob(String command, String operands[]) throws IOException {
+        int nbOperands = operands.length;
+
+        if(command.equals("copy") || command.equals("move")) {
+            checkOperands(command, operands, 2);
+            FileSet files = getFiles(operands, 0, nbOperands-1);
+            AbstractFile dest = getFile(operands[nbOperands-1]);
+
+            // Copy into the destination folder, or to the destination file if there is a single source file
+            AbstractFile destFolder = dest;
+            String newName = null;
+            if(!dest.isDirectory()) {
+                destFolder = dest.getParent();
+                newName = dest.getName();
+                if(files.size()>1 || destFolder==null || !destFolder.exists())
+                    throw new IOException("No such folder: " + dest.getAbsolutePath());
+            }
+
+            if(command.equals("copy"))
+                return new CopyJob(null, null, files, destFolder, newName, CopyJob.COPY_MODE, FileCollisionDialog.ASK_ACTION);
+            return new MoveJob(null, null, files, destFolder, newName, FileCollisionDialog.ASK_ACTION, false);
+        }
+
+        if(command.equals("delete")) {
+            checkOperands(command, operands, 1);
+            return new DeleteJob(null, null, getFiles(operands, 0, nbOperands), false);
+        }
+
+        if(command.equals("pack")) {
+            checkOperands(command, operands, 2);
+            FileSet files = getFiles(operands, 1, nbOperands);
+            AbstractFile archiveFile = getFile(operands[0]);
+            int format = getArchiveFormat(archiveFile, files.size()>1 || files.elementAt(0).isDirectory());
+            return new ArchiveJob(null, null, files, archiveFile, format, null);
+        }
+
+        if(command.equals("unpack")) {
+            checkOperands(command, operands, 2);
+            FileSet files = getFiles(operands, 0, nbOperands-1);
+            AbstractFile destFolder = getFile(operands[nbOperands-1]);
+            if(!destFolder.isDirectory())
+                throw new IOException("No such folder: " + destFolder.getAbsolutePath());
+            return new UnpackJob(null, null, files, destFolder, FileCollisionDialog.ASK_ACTION);
+        }
+
+        if(command.equals("checksum")) {
+            checkOperands(command, operands, 3);
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance(operands[0]);
+            }
+            catch(NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unknown checksum algorithm: " + operands[0]);
+            }
+            return new CalculateChecksumJob(null, null, getFiles(operands, 2, nbOperands), getFile(operands[1]), digest);
+        }
+
+        if(command.equals("verify")) {
+            checkOperands(command, operands, 1);
+            return new VerifyChecksumJob(null, null, getFiles(operands, 0, nbOperands));
+        }
+
+        throw new IllegalArgumentException("Unknown command: " + command);
+    }
+
+    private static void checkOperands(String command, String operands[], int minOperands) {
+        if(operands.length<minOperands)
+            throw new IllegalArgumentException("Missing arguments to " + command);
+    }
+
+    /**
+     * Resolves the given path or URL, relative paths being relative to the current folder.
+     */
+    private static AbstractFile getFile(String path) throws IOException {
+        AbstractFile file = FileFactory.getFile(path.indexOf("://")==-1?new File(path).getAbsolutePath():path);
+        if(file==null)
+            throw new IOException("Invalid path: " + path);
+
+        return file;
+    }
+
+    /**
+     * Resolves the paths in the given range, which must exist. The base folder of the returned set is the parent
+     * of the first file.
+     */
+    private static FileSet getFiles(String paths[], int from, int to) throws IOException {
+        FileSet files = null;
+        for(int i=from; i<to; i++) {
+            AbstractFile file = getFile(paths[i]);
+            if(!file.exists())
+                throw new IOException("No such file: " + file.getAbsolutePath());
+
+            if(files==null)
+                files = new FileSet(file.getParent());
+            files.add(file);
+        }
+
+        return files;
+    }
+
+    /**
+     * Returns the archive format matching the extension of the given archive file.
+     */
+    private static int getArchiveFormat(AbstractFile archiveFile, boolean multipleFiles) {
+        String name = archiveFile.getName().toLowerCase();
+        for(int format : Archiver.getFormats(multipleFiles)) {
+            if(name.endsWith("." + Archiver.getFormatExtension(format)))
+                return format;
+        }
+
+        throw new IllegalArgumentException("Unsupported archive format: " + archiveFile.getName());
+    }
+
+    /**
+     * Runs the given job until it finishes, reporting its progress, and returns the exit code.
+     */
+    private static int run(final FileJob job, BatchJobInteraction interaction, long progressInterval) {
+        final Object lock = new Object();
+        FileJobListener listener = new FileJobListener() {
+            public void jobStateChanged(FileJob source, int oldState, int newState) {
+                synchronized(lock) {
+                    lock.notifyAll();
+                }
+            }
+        };
+        job.addFileJobListener(listener);
+        job.setInteraction(interaction);
+
+        interaction.report("started",
+                           "job", job.getClass().getSimpleName(),
+                           "files", job.getNbFiles());
+        job.start();
+
+        JobTelemetry telemetry = job.getTelemetry();
+        synchronized(lock) {
+            while(!isDone(job)) {
+                try {
+                    lock.wait(progressInterval);
+                }
+                catch(InterruptedException e) {
+                    // Loop one more time
+                }
+
+                if(!isDone(job)) {
+                    AbstractFile currentFile = job.getCurrentFile();
+                    interaction.report("progress",
+                                       "state", telemetry.getState(),
+                                       "status", job.getStatusString(),
+                                       "file", currentFile==null?null:currentFile.getAbsolutePath(),
+                                       "file_index", job.getCurrentFileIndex(),
+                                       "files", job.getNbFiles(),
+                                       "percent", Math.round(job.getTotalPercentDone()*100),
+                                       "files_processed", telemetry.getFilesProcessed(),
+                                       "bytes", telemetry.getBytesProcessed(),
+                                       "bytes_per_second", telemetry.getBytesPerSecond());
+                }
+            }
+        }
+        job.removeFileJobListener(listener);
+
+        // The job releases its resources once its state has changed: its journal is deleted, and the metadata of the
+        // files it transferred is applied if it was interrupted
+        try {
+            job.waitForThread();
+        }
+        catch(InterruptedException e) {
+            LOGGER.debug("Interrupted while waiting for the job to stop", e);
+        }
+
+        // The checksum cache is otherwise saved by the shutdown hook, which is not run in batch mode
+        try {
+            ChecksumCache.saveInstance();
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not save the checksum cache", e);
+        }
+
+        int nbErrors = interaction.getNbErrors();
+        if(job instanceof VerifyChecksumJob) {
+            for(VerifyChecksumJob.Result result : ((VerifyChecksumJob)job).getResults()) {
+                interaction.report("result",
+                                   "file", result.getPath(),
+                                   "status", getResultStatus(result.getStatus()));
+                if(result.getStatus()!=VerifyChecksumJob.Result.OK)
+                    nbErrors++;
+            }
+        }
+
+        int exitCode;
+        if(job.getState()==FileJob.INTERRUPTED)
+            exitCode = EXIT_INTERRUPTED;
+        else if(nbErrors>0)
+            exitCode = EXIT_ERRORS;
+        else
+            exitCode = EXIT_SUCCESS;
+
+        interaction.report("finished",
+                           "state", telemetry.getState(),
+                           "exit_code", exitCode,
+                           "errors", nbErrors,
+                           "files_processed", telemetry.getFilesProcessed(),
+                           "bytes", telemetry.getBytesProcessed(),
+                           "time", telemetry.getEffectiveTime());
+
+        return exitCode;
+    }
+
+    private static boolean isDone(FileJob job) {
+        int state = job.getState();
+        return state==FileJob.FINISHED || state==FileJob.INTERRUPTED;
+    }
+
+    private static String getResultStatus(int status) {
+        switch(status) {
+            case VerifyChecksumJob.Result.OK:
+                return "ok";
+            case VerifyChecksumJob.Result.MISMATCH:
+                return "mismatch";
+            case VerifyChecksumJob.Result.MISSING:
+                return "missing";
+            case VerifyChecksumJob.Result.UNREADABLE:
+                return "unreadable";
+            default:
+                return "pending";
+        }
+    }
+}
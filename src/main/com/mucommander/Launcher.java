@@ -46,6 +46,7 @@ import com.mucommander.ui.action.ActionManager;
 import com.mucommander.ui.dialog.InformationDialog;
 import com.mucommander.ui.dialog.startup.CheckVersionDialog;
 import com.mucommander.ui.dialog.startup.InitialSetupDialog;
+import com.mucommander.ui.dialog.startup.ResumeJobDialog;
 import com.mucommander.ui.main.SplashScreen;
 import com.mucommander.ui.main.WindowManager;
 import com.mucommander.ui.main.commandbar.CommandBarIO;
@@ -607,6 +608,9 @@ public class Launcher {
             // If no theme is configured in the preferences, ask for an initial theme.
             if(showSetup)
                 new InitialSetupDialog(WindowManager.getCurrentMainFrame()).showDialog();
+
+            // Offer to resume the file transfers that did not finish the last time muCommander was run
+            ResumeJobDialog.resumeUnfinishedJobs(WindowManager.getCurrentMainFrame());
         }
         catch(Throwable t) {
             // Startup failed, dispose the splash screen
@@ -623,7 +627,7 @@ public class Launcher {
         }
     }
 
-    private static void configureFilesystems() {
+    static void configureFilesystems() {
         // Configure the SMB subsystem (backed by jCIFS) to maintain compatibility with SMB servers that don't support
         // NTLM v2 authentication such as Samba 3.0.x, which still is widely used and comes pre-installed on
         // Mac OS X Leopard.
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.auth.CredentialsManager;
 import com.mucommander.bookmark.BookmarkManager;
+import com.mucommander.cache.ChecksumCache;
 import com.mucommander.command.CommandManager;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.shell.ShellHistoryManager;
@@ -129,6 +130,10 @@ public class ShutdownHook extends Thread {
         // Saves the tool bar.
         try { ToolBarIO.saveToolBar(); }
         catch(Exception e) {LOGGER.warn("Failed to save toolbar", e); }
+
+        // Saves the checksum cache, only if it was used
+        try { ChecksumCache.saveInstance(); }
+        catch(Exception e) {LOGGER.warn("Failed to save checksum cache", e); }
         
 
         // Shutdown tasks should only be performed once
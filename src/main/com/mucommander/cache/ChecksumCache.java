@@ -0,0 +1,355 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+
+/**
+ * Remembers the checksums of files across sessions, so that files that have not changed do not have to be read again.
+ *
+ * <p>Checksums are keyed by the canonical path of the file and by algorithm, and are valid only as long as the file
+ * has the size and date it had when its checksum was calculated. The cache holds at most
+ * {@link MuPreferences#CHECKSUM_CACHE_SIZE} checksums, the least recently used ones being evicted first. It is loaded
+ * from the preferences folder the first time it is used, and saved there when muCommander shuts down or when a batch
+ * run ends.</p>
+ *
+ * <p>Like any cache based on file dates, this cache cannot detect a file that is modified without its size and date
+ * changing. To narrow this down, the checksums of files modified in the last {@link #RECENT_FILE_DELAY} milliseconds
+ * are not cached: such files may still be being written to, within the date granularity of their file system.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class ChecksumCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumCache.class);
+
+    /** Name of the file the cache is saved to, in the preferences folder */
+    private final static String CACHE_FILE_NAME = "checksum_cache.txt";
+
+    /** First line of the cache file, identifies the format */
+    private final static String FILE_HEADER = "muCommander checksum cache 1";
+
+    /** Encoding of the cache file */
+    private final static String ENCODING = "UTF-8";
+
+    /** Files modified less than this number of milliseconds ago are not cached */
+    public final static long RECENT_FILE_DELAY = 2000;
+
+    /** The instance of this class, loaded the first time it is requested */
+    private static ChecksumCache instance;
+
+    /** Key -> checksum, in access order: the eldest entry is the least recently used one */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** Maximum number of checksums this cache holds */
+    private final int capacity;
+
+    /** The file this cache is saved to, null if it is not saved */
+    private final File file;
+
+    /** True if entries have been added or removed since the cache was loaded */
+    private boolean modified;
+
+    /** Number of checksums that were found in the cache */
+    private long nbHits;
+
+    /** Number of checksums that were not in the cache, or were out of date */
+    private long nbMisses;
+
+    /** Number of checksums that were found out of date */
+    private long nbInvalidated;
+
+
+    /**
+     * Creates an empty cache holding at most the given number of checksums, and saved to the given file.
+     *
+     * @param capacity maximum number of checksums this cache holds, 0 for none
+     * @param file the file this cache is saved to, <code>null</code> if it is not to be saved
+     */
+    public ChecksumCache(int capacity, File file) {
+        this.capacity = Math.max(0, capacity);
+        this.file = file;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size()>ChecksumCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by all jobs, loading it from the preferences folder the first time this method is
+     * called.
+     *
+     * @return the cache shared by all jobs
+     */
+    public static synchronized ChecksumCache getInstance() {
+        if(instance==null) {
+            int capacity = MuConfigurations.getPreferences().getVariable(MuPreference.CHECKSUM_CACHE_SIZE, MuPreferences.DEFAULT_CHECKSUM_CACHE_SIZE);
+            instance = new ChecksumCache(capacity, new File(PlatformManager.getPreferencesFolder().getAbsolutePath(), CACHE_FILE_NAME));
+            if(capacity>0) {
+                try {
+                    instance.load();
+                }
+                catch(IOException e) {
+                    LOGGER.info("Could not load the checksum cache", e);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Saves the shared cache to the preferences folder, if it has been loaded and has changed since.
+     *
+     * @throws IOException if the cache could not be saved
+     */
+    public static void saveInstance() throws IOException {
+        ChecksumCache cache;
+        synchronized(ChecksumCache.class) {
+            cache = instance;
+        }
+
+        if(cache!=null)
+            cache.save();
+    }
+
+    /**
+     * Returns the checksum of the given file calculated with the given algorithm, <code>null</code> if it is not in
+     * the cache or if the file has changed since it was calculated.
+     *
+     * @param file a file
+     * @param algorithm a checksum algorithm
+     * @return the checksum of the file, null if it is not known
+     */
+    public String get(AbstractFile file, String algorithm) {
+        if(capacity==0)
+            return null;
+
+        String key = getKey(file, algorithm);
+        long size = file.getSize();
+        long date = file.getDate();
+
+        synchronized(this) {
+            Entry entry = entries.get(key);
+            if(entry!=null && (entry.size!=size || entry.date!=date)) {
+                entries.remove(key);
+                modified = true;
+                nbInvalidated++;
+                entry = null;
+            }
+
+            if(entry==null) {
+                nbMisses++;
+                return null;
+            }
+
+            nbHits++;
+            return entry.checksum;
+        }
+    }
+
+    /**
+     * Adds the checksum of the given file to the cache. The size and date of the file must be those it had before it
+     * was read: the checksum is not cached if the file has changed since, or if it was modified too recently.
+     *
+     * @param file a file
+     * @param algorithm the algorithm the checksum was calculated with
+     * @param size the size of the file before it was read
+     * @param date the date of the file before it was read
+     * @param checksum the checksum of the file
+     */
+    public void put(AbstractFile file, String algorithm, long size, long date, String checksum) {
+        if(capacity==0 || size<0 || date<=0 || System.currentTimeMillis()-date<RECENT_FILE_DELAY)
+            return;
+
+        if(file.getSize()!=size || file.getDate()!=date)
+            return;
+
+        String key = getKey(file, algorithm);
+        synchronized(this) {
+            entries.put(key, new Entry(size, date, checksum));
+            modified = true;
+        }
+    }
+
+    private static String getKey(AbstractFile file, String algorithm) {
+        return algorithm.toUpperCase()+'\t'+file.getCanonicalPath();
+    }
+
+    /**
+     * Returns the number of checksums that were found in this cache.
+     *
+     * @return the number of checksums that were found in this cache
+     */
+    public synchronized long getHitCount() {
+        return nbHits;
+    }
+
+    /**
+     * Returns the number of checksums that were not found in this cache, including those that were out of date.
+     *
+     * @return the number of checksums that were not found in this cache
+     */
+    public synchronized long getMissCount() {
+        return nbMisses;
+    }
+
+    /**
+     * Returns the number of checksums that were found out of date, because the size or date of their file had changed.
+     *
+     * @return the number of checksums that were found out of date
+     */
+    public synchronized long getInvalidationCount() {
+        return nbInvalidated;
+    }
+
+    /**
+     * Returns the proportion of checksums that were found in this cache, between <code>0</code> and <code>1</code>.
+     *
+     * @return the proportion of checksums that were found in this cache
+     */
+    public synchronized float getHitRate() {
+        long nbLookups = nbHits+nbMisses;
+        return nbLookups==0?0:nbHits/(float)nbLookups;
+    }
+
+    /**
+     * Returns the number of checksums in this cache.
+     *
+     * @return the number of checksums in this cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Loads the checksums saved in the cache file, if it exists. Lines that cannot be parsed are ignored.
+     */
+    void load() throws IOException {
+        if(file==null || !file.exists())
+            return;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            if(!FILE_HEADER.equals(reader.readLine()))
+                return;
+
+            String line;
+            synchronized(this) {
+                while((line=reader.readLine())!=null) {
+                    // algorithm, canonical path, size, date, checksum: the key contains a tab
+                    String fields[] = line.split("\t", 5);
+                    if(fields.length!=5)
+                        continue;
+
+                    try {
+                        entries.put(fields[0]+'\t'+fields[1], new Entry(Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[4]));
+                    }
+                    catch(NumberFormatException e) {
+                        // Skip the line
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Saves the checksums to the cache file, least recently used first, if they have changed since they were loaded.
+     */
+    void save() throws IOException {
+        if(file==null)
+            return;
+
+        StringBuilder sb = new StringBuilder();
+        synchronized(this) {
+            if(!modified)
+                return;
+
+            for(Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                String key = mapEntry.getKey();
+                // The file's path cannot be written on a single line
+                if(key.indexOf('\n')!=-1 || key.indexOf('\r')!=-1 || key.indexOf('\t')!=key.lastIndexOf('\t'))
+                    continue;
+
+                Entry entry = mapEntry.getValue();
+                sb.append(key).append('\t').append(entry.size).append('\t').append(entry.date).append('\t').append(entry.checksum).append('\n');
+            }
+            modified = false;
+        }
+
+        LOGGER.debug("Saving "+size()+" checksums, hit rate="+getHitRate()+", invalidated="+getInvalidationCount());
+
+        // Write to a temporary file first, so that the cache file is never left half-written
+        File tempFile = new File(file.getParentFile(), file.getName()+".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), ENCODING));
+        try {
+            writer.write(FILE_HEADER);
+            writer.write('\n');
+            writer.write(sb.toString());
+        }
+        finally {
+            writer.close();
+        }
+
+        if(!tempFile.renameTo(file)) {
+            file.delete();
+            if(!tempFile.renameTo(file))
+                throw new IOException("Could not rename "+tempFile+" to "+file);
+        }
+    }
+
+
+    /**
+     * A cached checksum and the size and date its file had when it was calculated.
+     */
+    private static class Entry {
+        private final long size;
+        private final long date;
+        private final String checksum;
+
+        private Entry(long size, long date, String checksum) {
+            this.size = size;
+            this.date = date;
+            this.checksum = checksum;
+        }
+    }
+}
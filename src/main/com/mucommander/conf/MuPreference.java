@@ -75,7 +75,18 @@ public enum MuPreference {
 	LIST_HIDDEN_FILES(MuPreferences.LIST_HIDDEN_FILES),
 	SMB_LM_COMPATIBILITY(MuPreferences.SMB_LM_COMPATIBILITY),
 	SMB_USE_EXTENDED_SECURITY(MuPreferences.SMB_USE_EXTENDED_SECURITY),
-	SHOW_TAB_HEADER(MuPreferences.SHOW_SINGLE_TAB_HEADER);
+	SHOW_TAB_HEADER(MuPreferences.SHOW_SINGLE_TAB_HEADER),
+	TAB_SNAPSHOTS_MAX_FILES(MuPreferences.TAB_SNAPSHOTS_MAX_FILES),
+	TRANSFER_THREADS(MuPreferences.TRANSFER_THREADS),
+	TRANSFER_THREADS_PER_VOLUME(MuPreferences.TRANSFER_THREADS_PER_VOLUME),
+	TRANSFER_PRESCAN(MuPreferences.TRANSFER_PRESCAN),
+	TRANSFER_JOURNAL(MuPreferences.TRANSFER_JOURNAL),
+	TRANSFER_JOBS_PER_VOLUME(MuPreferences.TRANSFER_JOBS_PER_VOLUME),
+	INTEGRITY_CHECK_ALGORITHM(MuPreferences.INTEGRITY_CHECK_ALGORITHM),
+	INTEGRITY_CHECK_SYNC(MuPreferences.INTEGRITY_CHECK_SYNC),
+	TRANSFER_PREALLOCATE(MuPreferences.TRANSFER_PREALLOCATE),
+	TRANSFER_SPARSE_FILES(MuPreferences.TRANSFER_SPARSE_FILES),
+	CHECKSUM_CACHE_SIZE(MuPreferences.CHECKSUM_CACHE_SIZE);
 	
 	private String label;
 	
@@ -236,6 +236,10 @@ public class MuPreferences implements MuPreferencesAPI {
 	public static final String SHOW_SINGLE_TAB_HEADER			   = FILE_TABLE_SECTION + '.' + "show_single_tab_header";
 	/** Default value for 'Always show single tab header" */
 	public static final boolean DEFAULT_SHOW_TAB_HEADER	   = false;
+	/** Maximum total number of files that the snapshots kept by inactive tabs can hold. */
+	public static final String  TAB_SNAPSHOTS_MAX_FILES            = FILE_TABLE_SECTION + '.' + "tab_snapshots_max_files";
+	/** Default value for the maximum total number of files that the snapshots kept by inactive tabs can hold. */
+	public static final int     DEFAULT_TAB_SNAPSHOTS_MAX_FILES    = 50000;
 
 	/** Name of the root element's attribute that contains the version of muCommander used to write the CONFIGURATION file. */
 	static final String VERSION_ATTRIBUTE = "version";
@@ -311,6 +315,53 @@ public class MuPreferences implements MuPreferencesAPI {
 
 
 
+	// - File transfer variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the behavior of file transfers. */
+	public static final String  FILE_TRANSFER_SECTION             = "file_transfer";
+	/** Maximum number of files a transfer job copies concurrently, 1 to copy files one at a time. */
+	public static final String  TRANSFER_THREADS                  = FILE_TRANSFER_SECTION + '.' + "threads";
+	/** Default maximum number of files a transfer job copies concurrently. */
+	public static final int     DEFAULT_TRANSFER_THREADS          = 8;
+	/** Maximum number of files a transfer job reads from or writes to a same volume concurrently. */
+	public static final String  TRANSFER_THREADS_PER_VOLUME       = FILE_TRANSFER_SECTION + '.' + "threads_per_volume";
+	/** Default maximum number of files a transfer job reads from or writes to a same volume concurrently. */
+	public static final int     DEFAULT_TRANSFER_THREADS_PER_VOLUME = 4;
+	/** Controls whether the files to transfer are scanned beforehand, to report progress in bytes. */
+	public static final String  TRANSFER_PRESCAN                  = FILE_TRANSFER_SECTION + '.' + "prescan";
+	/** Default value for the pre-scan of the files to transfer. */
+	public static final boolean DEFAULT_TRANSFER_PRESCAN          = true;
+	/** Whether the progress of copy, move and unpack jobs is journaled so that they can be resumed after a crash. */
+	public static final String  TRANSFER_JOURNAL                  = FILE_TRANSFER_SECTION + '.' + "journal";
+	/** Default value for the journaling of file transfers. */
+	public static final boolean DEFAULT_TRANSFER_JOURNAL          = true;
+	/** Maximum number of queued jobs that can run concurrently on a same volume. */
+	public static final String  TRANSFER_JOBS_PER_VOLUME          = FILE_TRANSFER_SECTION + '.' + "jobs_per_volume";
+	/** Default maximum number of queued jobs that can run concurrently on a same volume. */
+	public static final int     DEFAULT_TRANSFER_JOBS_PER_VOLUME  = 1;
+	/** Whether local destination files are given their final size before data is written to them. */
+	public static final String  TRANSFER_PREALLOCATE              = FILE_TRANSFER_SECTION + '.' + "preallocate";
+	/** Default value for the preallocation of local destination files. */
+	public static final boolean DEFAULT_TRANSFER_PREALLOCATE      = true;
+	/** Whether blocks of zeros of local files that seem to be sparse are left as holes in the destination file. */
+	public static final String  TRANSFER_SPARSE_FILES             = FILE_TRANSFER_SECTION + '.' + "sparse_files";
+	/** Default value for the sparse copy of local files. */
+	public static final boolean DEFAULT_TRANSFER_SPARSE_FILES     = true;
+	/** Checksum algorithm used to verify the integrity of transferred files, when enabled. */
+	public static final String  INTEGRITY_CHECK_ALGORITHM         = FILE_TRANSFER_SECTION + '.' + "integrity_check_algorithm";
+	/** Default checksum algorithm used to verify the integrity of transferred files. */
+	public static final String  DEFAULT_INTEGRITY_CHECK_ALGORITHM = "XXH64";
+	/** Whether local destination files are synchronized to the storage device before being read back for verification. */
+	public static final String  INTEGRITY_CHECK_SYNC              = FILE_TRANSFER_SECTION + '.' + "integrity_check_sync";
+	/** Default value for the synchronization of local destination files before verification. */
+	public static final boolean DEFAULT_INTEGRITY_CHECK_SYNC      = false;
+	/** Maximum number of file checksums remembered across sessions, 0 to disable the checksum cache. */
+	public static final String  CHECKSUM_CACHE_SIZE               = FILE_TRANSFER_SECTION + '.' + "checksum_cache_size";
+	/** Default maximum number of file checksums remembered across sessions. */
+	public static final int     DEFAULT_CHECKSUM_CACHE_SIZE       = 100000;
+
+
+
 	// - Variables used for themes -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section controlling which theme should be applied to muCommander. */
@@ -35,6 +35,7 @@ import com.mucommander.commons.conf.Configuration;
 import com.mucommander.commons.conf.ConfigurationException;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.core.GlobalLocationHistory;
+import com.mucommander.core.LocationIndex;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
 import com.mucommander.ui.main.WindowManager;
@@ -88,6 +89,16 @@ public class MuSnapshot {
     public static final String  LOCATION                           = "location";
     /** Describes the number of visited locations saved for the folder panel */
     private static final String LOCATIONS_COUNT                    = "count";
+    /** Section containing the visit statistics of the locations of the location index. */
+    private static final String LOCATION_INDEX_SECTION             = "location_index";
+    /** Path or URL of a location of the location index. */
+    private static final String LOCATION_PATH                      = "path";
+    /** Number of visits of a location of the location index. */
+    private static final String LOCATION_VISITS                    = "visits";
+    /** Date of the last visit of a location of the location index. */
+    private static final String LOCATION_LAST_VISIT                = "last_visit";
+    /** Frecency of a location of the location index at the time of its last visit. */
+    private static final String LOCATION_FRECENCY                  = "frecency";
     
 	// - Last windows variables ----------------------------------------------
     // -----------------------------------------------------------------------
@@ -526,6 +537,66 @@ public class MuSnapshot {
     public static String getRecentLocationVariable(int index) {
     	return getRecentLocationsSection()  + "." + LOCATION + "-" + index; 
     }
+
+    /**
+     * Returns the CONFIGURATION section corresponding to the location at the given index in the
+     * {@link com.mucommander.core.LocationIndex}
+     *
+     * @param index the index of the location in the saved location index
+     * @return the CONFIGURATION section corresponding to the location at the given index
+     */
+    private static String getLocationIndexSection(int index) {
+    	return LOCATION_INDEX_SECTION + "." + LOCATION + "-" + index;
+    }
+
+    /**
+     * Returns the variable that holds the number of locations saved from the location index
+     *
+     * @return the variable that holds the number of locations saved from the location index
+     */
+    public static String getLocationIndexCountVariable() {
+    	return LOCATION_INDEX_SECTION + "." + LOCATIONS_COUNT;
+    }
+
+    /**
+     * Returns the variable that holds the path or URL of the location at the given index in the location index
+     *
+     * @param index the index of the location in the saved location index
+     * @return the variable that holds the path or URL of the location at the given index
+     */
+    public static String getLocationIndexPathVariable(int index) {
+    	return getLocationIndexSection(index) + "." + LOCATION_PATH;
+    }
+
+    /**
+     * Returns the variable that holds the number of visits of the location at the given index in the location index
+     *
+     * @param index the index of the location in the saved location index
+     * @return the variable that holds the number of visits of the location at the given index
+     */
+    public static String getLocationIndexVisitsVariable(int index) {
+    	return getLocationIndexSection(index) + "." + LOCATION_VISITS;
+    }
+
+    /**
+     * Returns the variable that holds the date of the last visit of the location at the given index in the location index
+     *
+     * @param index the index of the location in the saved location index
+     * @return the variable that holds the date of the last visit of the location at the given index
+     */
+    public static String getLocationIndexLastVisitVariable(int index) {
+    	return getLocationIndexSection(index) + "." + LOCATION_LAST_VISIT;
+    }
+
+    /**
+     * Returns the variable that holds the frecency of the location at the given index in the location index
+     *
+     * @param index the index of the location in the saved location index
+     * @return the variable that holds the frecency of the location at the given index
+     */
+    public static String getLocationIndexFrecencyVariable(int index) {
+    	return getLocationIndexSection(index) + "." + LOCATION_FRECENCY;
+    }
     
     private static final String ROOT_ELEMENT = "snapshot";
     
@@ -602,9 +673,14 @@ public class MuSnapshot {
     	
     	setGlobalHistory();
 
+    	setLocationIndex();
+
     	setTextPresenterProperties();
 
         configuration.write();
+
+        // The visits of the session are now saved, they no longer have to be journaled
+        LocationIndex.Instance().compactJournal();
     }
 
     private void setTextPresenterProperties() {
@@ -644,6 +720,21 @@ public class MuSnapshot {
     		configuration.setVariable(getRecentLocationVariable(i), iterator.next().toString());
     }
 
+    private void setLocationIndex() {
+    	List<LocationIndex.Location> locations = LocationIndex.Instance().getVisitStatistics();
+
+    	configuration.setVariable(getLocationIndexCountVariable(), locations.size());
+
+    	Iterator<LocationIndex.Location> iterator = locations.iterator();
+    	for (int i=0; iterator.hasNext(); ++i) {
+    		LocationIndex.Location location = iterator.next();
+    		configuration.setVariable(getLocationIndexPathVariable(i), location.getPath());
+    		configuration.setVariable(getLocationIndexVisitsVariable(i), location.getVisits());
+    		configuration.setVariable(getLocationIndexLastVisitVariable(i), location.getLastVisit());
+    		configuration.setVariable(getLocationIndexFrecencyVariable(i), location.getFrecency());
+    	}
+    }
+
     private void setTabsAttributes(int index, boolean isLeft, FileTableTabs tabs) {
     	int tabsCounter = 0;
     	Iterator<FileTableTab> tabsIterator = tabs.iterator();
@@ -0,0 +1,103 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+/**
+ * Holds the folder change that is underway in a panel, if any, and arbitrates between the folder changes that are
+ * requested while it is: a change requested by the user supersedes the one underway ('latest wins'), whereas a
+ * refresh is dropped, as it would otherwise cancel the user's navigation and list the folder the user is leaving.
+ *
+ * @param <T> type of the folder changes
+ * @author Maxence Bernard
+ */
+class FolderChangeSlot<T extends FolderChangeSlot.Task> {
+
+    /**
+     * A folder change that can be cancelled in favor of a more recent one.
+     */
+    interface Task {
+
+        /**
+         * Cancels this folder change in favor of a more recent one, if it is not too late to do so.
+         *
+         * @return <code>true</code> if the folder change was cancelled
+         */
+        boolean supersede();
+    }
+
+    /** The folder change underway, null if there is none */
+    private T task;
+
+    /**
+     * Returns the folder change underway, <code>null</code> if there is none.
+     *
+     * @return the folder change underway, null if there is none
+     */
+    synchronized T get() {
+        return task;
+    }
+
+    /**
+     * Makes the given folder change the one underway, superseding the previous one if there is one.
+     *
+     * @param task the folder change requested
+     * @return the folder change that was superseded, null if there was none
+     */
+    T replace(T task) {
+        T previousTask;
+        synchronized(this) {
+            previousTask = this.task;
+            this.task = task;
+        }
+
+        if(previousTask!=null)
+            previousTask.supersede();
+
+        return previousTask;
+    }
+
+    /**
+     * Makes the given folder change the one underway, only if there is none.
+     *
+     * @param task the folder change requested
+     * @return <code>true</code> if the folder change was accepted, <code>false</code> if another one is underway
+     */
+    synchronized boolean offer(T task) {
+        if(this.task!=null)
+            return false;
+
+        this.task = task;
+        return true;
+    }
+
+    /**
+     * Called when the given folder change has completed, releases the slot if the folder change is still the one
+     * underway.
+     *
+     * @param task the folder change that has completed
+     * @return <code>true</code> if the folder change was the one underway, <code>false</code> if it was superseded
+     */
+    synchronized boolean release(T task) {
+        if(this.task!=task)
+            return false;
+
+        this.task = null;
+        return true;
+    }
+}
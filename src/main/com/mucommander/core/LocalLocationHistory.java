@@ -111,24 +111,26 @@ public class LocalLocationHistory {
 
 	/**
 	 * Changes current folder to be the previous one in folder history.
-	 * Does nothing if there is no previous folder in history. 
+	 * Does nothing if there is no previous folder in history. The folder is displayed instantly if the panel still
+	 * holds a snapshot of it.
 	 */
 	public synchronized void goBack() {
 		if (historyIndex==0)
 			return;
 
-		folderPanel.tryChangeCurrentFolder(history.get(--historyIndex));
+		folderPanel.tryRestoreCurrentFolder(history.get(--historyIndex));
 	}
 
 	/**
 	 * Changes current folder to be the next one in folder history.
-	 * Does nothing if there is no next folder in history. 
+	 * Does nothing if there is no next folder in history. The folder is displayed instantly if the panel still
+	 * holds a snapshot of it.
 	 */
 	public synchronized void goForward() {
 		if (historyIndex==history.size()-1)
 			return;
 
-		folderPanel.tryChangeCurrentFolder(history.get(++historyIndex));
+		folderPanel.tryRestoreCurrentFolder(history.get(++historyIndex));
 	}
 
 
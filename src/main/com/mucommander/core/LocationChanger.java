@@ -24,6 +24,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,24 +60,46 @@ import com.mucommander.ui.dialog.file.DownloadDialog;
 import com.mucommander.ui.event.LocationManager;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.table.FolderSnapshot;
 import com.mucommander.utils.Callback;
 
 /**
- * 
+ * Changes the current folder of a {@link FolderPanel}.
+ *
+ * <p>Folder changes are performed by {@link ChangeFolderTask} instances that are executed by an executor shared by
+ * all panels, so that threads are reused from one folder change to the next rather than created for each of them.
+ * Folder changes follow 'latest wins' semantics: requesting a new folder change while another one is underway cancels
+ * the previous one (if it is still safe to do so), instead of ignoring the new request. Refreshes are the exception:
+ * they are ignored while another folder change is underway, which would otherwise be cancelled, see
+ * {@link FolderChangeSlot}.</p>
+ *
  * @author Arik Hadas, Maxence Bernard
  */
 public class LocationChanger {
 	private static final Logger LOGGER = LoggerFactory.getLogger(LocationChanger.class);
 
+	/** Executor that runs folder changes for all panels. Idle threads are reused and expire after a minute of inactivity. */
+	private final static ExecutorService FOLDER_CHANGE_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "FolderChange-"+threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MAX_PRIORITY);
+			return thread;
+		}
+	});
+
     /** Last time folder has changed */
     private long lastFolderChangeTime;
 
-	private ChangeFolderThread changeFolderThread;
+	/** The most recently requested folder change */
+	private final FolderChangeSlot<ChangeFolderTask> changeFolderTask = new FolderChangeSlot<ChangeFolderTask>();
 
 	private GlobalLocationHistory globalHistory = GlobalLocationHistory.Instance();
 
-	/** The lock object used to prevent simultaneous folder change operations */
-	private final Object FOLDER_CHANGE_LOCK = new Object();
+	/** The lock object used to prevent folder changes from updating the panel simultaneously */
+	private final Object FOLDER_COMMIT_LOCK = new Object();
 
 	private final static int CANCEL_ACTION = 0;
 	private final static int BROWSE_ACTION = 1;
@@ -100,16 +127,20 @@ public class LocationChanger {
 	 * @param callback the {@link Callback#call()} method will be called when folder has changed
 	 */
 	public void tryChangeCurrentFolderInternal(final FileURL folderURL, final Callback callback) {
+		// An internal change (e.g. switching tabs) supersedes any pending folder change
+		cancelPendingFolderChange();
+
 		mainFrame.setNoEventsMode(true);
 		// Set cursor to hourglass/wait
 		mainFrame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
 		
-    	Thread setLocationThread = new Thread() {
-    		@Override
+    	Runnable setLocationTask = new Runnable() {
     		public void run() {
     			AbstractFile folder = getWorkableLocation(folderURL);
     			try {
-    				locationManager.setCurrentFolder(folder, null, true);
+    				synchronized(FOLDER_COMMIT_LOCK) {
+    					locationManager.setCurrentFolder(folder, null, true);
+    				}
     			} finally {
     				mainFrame.setNoEventsMode(false);
     				// Restore default cursor
@@ -121,9 +152,120 @@ public class LocationChanger {
     	};
 
     	if (EventQueue.isDispatchThread())
-    		setLocationThread.start();
+    		FOLDER_CHANGE_EXECUTOR.execute(setLocationTask);
     	else
-    		setLocationThread.run();
+    		setLocationTask.run();
+	}
+
+	/**
+	 * This method is triggered internally (i.e not by user request) to change the current folder to the given
+	 * folder, displaying it instantly from the given snapshot if there is one. In that case, the folder is
+	 * revalidated in the background once the snapshot has been restored, and refreshed if its date has changed
+	 * since the snapshot was taken. If the snapshot is <code>null</code>, this method behaves like
+	 * {@link #tryChangeCurrentFolderInternal(FileURL, Callback)}.
+	 *
+	 * <p>This is used when switching tabs, each tab keeping a snapshot of the folder it was last displaying.</p>
+	 *
+	 * @param folderURL the URL of the folder to switch to
+	 * @param snapshot a snapshot of the folder to switch to, may be <code>null</code>
+	 * @param callback the {@link Callback#call()} method will be called when folder has changed
+	 */
+	public void tryChangeCurrentFolderInternal(final FileURL folderURL, final FolderSnapshot snapshot, final Callback callback) {
+		if(snapshot==null) {
+			tryChangeCurrentFolderInternal(folderURL, callback);
+			return;
+		}
+
+		// An internal change (e.g. switching tabs) supersedes any pending folder change
+		cancelPendingFolderChange();
+
+		LOGGER.debug("restoring snapshot of folderURL="+folderURL);
+
+		mainFrame.setNoEventsMode(true);
+
+		Runnable restoreLocationTask = new Runnable() {
+			public void run() {
+				try {
+					synchronized(FOLDER_COMMIT_LOCK) {
+						lastFolderChangeTime = System.currentTimeMillis();
+						locationManager.restoreCurrentFolder(snapshot);
+					}
+				} finally {
+					mainFrame.setNoEventsMode(false);
+					// Notify callback that the folder has been set
+					callback.call();
+				}
+
+				revalidateSnapshot(snapshot);
+			}
+		};
+
+		if (EventQueue.isDispatchThread())
+			FOLDER_CHANGE_EXECUTOR.execute(restoreLocationTask);
+		else
+			restoreLocationTask.run();
+	}
+
+	/**
+	 * Checks whether the folder of the given snapshot, which has just been restored, has changed since the snapshot
+	 * was taken, in which case the folder is refreshed. Nothing is done if another folder change has been requested
+	 * in the meantime. This method is I/O-bound and must not be called from the event dispatch thread.
+	 *
+	 * @param snapshot the snapshot that has just been restored
+	 */
+	private void revalidateSnapshot(FolderSnapshot snapshot) {
+		AbstractFile folder = snapshot.getFolder();
+		long folderDate = folder.getDate();
+		if(changeFolderTask.get()!=null || !folder.equals(locationManager.getCurrentFolder()))
+			return;
+
+		if(folderDate!=snapshot.getFolderDate()) {
+			LOGGER.debug("snapshot of "+folder+" is outdated, refreshing");
+			tryRefreshCurrentFolder();
+		}
+	}
+
+	/**
+	 * Cancels the folder change that is currently underway, if there is one and if it is still safe to do so.
+	 */
+	private void cancelPendingFolderChange() {
+		ChangeFolderTask pendingTask = changeFolderTask.get();
+		if(pendingTask!=null)
+			pendingTask.supersede();
+	}
+
+	/**
+	 * Makes the given task the current folder change, cancelling the previous one (if any), and submits it for
+	 * execution.
+	 *
+	 * @param task the folder change to perform
+	 * @return the given task
+	 */
+	private ChangeFolderTask submitFolderChange(ChangeFolderTask task) {
+		// Latest wins: the previous folder change is cancelled if it hasn't started updating the panel yet. If it has,
+		// the new folder change will wait for it to complete before updating the panel.
+		ChangeFolderTask previousTask = changeFolderTask.replace(task);
+		if(previousTask!=null)
+			LOGGER.debug("Superseded folder change "+previousTask);
+
+		task.submit();
+		return task;
+	}
+
+	/**
+	 * Submits the given task for execution if no other folder change is underway, does nothing otherwise.
+	 *
+	 * @param task the refresh to perform
+	 * @return the given task, null if another folder change is underway
+	 */
+	private ChangeFolderTask submitRefresh(ChangeFolderTask task) {
+		if(!changeFolderTask.offer(task)) {
+			LOGGER.debug("Folder change underway, ignoring refresh");
+			return null;
+		}
+
+		task.submit();
+		return task;
 	}
 
 	/**
@@ -148,8 +290,8 @@ public class LocationChanger {
 	/**
 	 * Tries to change the current folder to the new specified one and notifies the user in case of a problem.
 	 *
-	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
-	 * It does nothing and returns <code>null</code> if another folder change is already underway.</p>
+	 * <p>This method submits a task that takes care of the actual folder change and returns it.
+	 * If another folder change is already underway, it is cancelled in favor of this one.</p>
 	 *
 	 * <p>
 	 * This method is <b>not</b> I/O-bound and returns immediately, without any chance of locking the calling thread.
@@ -157,9 +299,9 @@ public class LocationChanger {
 	 *
 	 * @param folder the folder to be made current folder
 	 * @param changeLockedTab - flag that indicates whether to change the presented folder in the currently selected tab although it's locked
-	 * @return the thread that performs the actual folder change, null if another folder change is already underway
+	 * @return the task that performs the actual folder change
 	 */
-	public ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder, boolean changeLockedTab) {
+	public ChangeFolderTask tryChangeCurrentFolder(AbstractFile folder, boolean changeLockedTab) {
 		/* TODO branch setBranchView(false); */
 		return tryChangeCurrentFolder(folder, null, false, changeLockedTab);
 	}
@@ -173,8 +315,8 @@ public class LocationChanger {
 	 * is one, to the first existing local volume otherwise. In the unlikely event that no local volume is workable,
 	 * the user will be notified that the folder could not be changed.</p>
 	 *
-	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
-	 * It does nothing and returns <code>null</code> if another folder change is already underway.</p>
+	 * <p>This method submits a task that takes care of the actual folder change and returns it.
+	 * If another folder change is already underway, it is cancelled in favor of this one.</p>
 	 *
 	 * <p>
 	 * This method is <b>not</b> I/O-bound and returns immediately, without any chance of locking the calling thread.
@@ -183,51 +325,43 @@ public class LocationChanger {
 	 * @param folder the folder to be made current folder
 	 * @param selectThisFileAfter the file to be selected after the folder has been changed (if it exists in the folder), can be null in which case FileTable rules will be used to select current file
 	 * @param changeLockedTab - flag that indicates whether to change the presented folder in the currently selected tab although it's locked
-	 * @return the thread that performs the actual folder change, null if another folder change is already underway  
+	 * @return the task that performs the actual folder change
 	 */
-	public ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder, AbstractFile selectThisFileAfter, boolean findWorkableFolder, boolean changeLockedTab) {
-		LOGGER.debug("folder="+folder+" selectThisFileAfter="+selectThisFileAfter);
+	public ChangeFolderTask tryChangeCurrentFolder(AbstractFile folder, AbstractFile selectThisFileAfter, boolean findWorkableFolder, boolean changeLockedTab) {
+		return submitFolderChange(createTask(folder, selectThisFileAfter, findWorkableFolder, changeLockedTab));
+	}
 
-		synchronized(FOLDER_CHANGE_LOCK) {
-			// Make sure a folder change is not already taking place. This can happen under rare but normal
-			// circumstances, if this method is called before the folder change thread has had the time to call
-			// MainFrame#setNoEventsMode.
-			if(changeFolderThread!=null) {
-				LOGGER.debug("A folder change is already taking place ("+changeFolderThread+"), returning null");
-				return null;
-			}
+	private ChangeFolderTask createTask(AbstractFile folder, AbstractFile selectThisFileAfter, boolean findWorkableFolder, boolean changeLockedTab) {
+		LOGGER.debug("folder="+folder+" selectThisFileAfter="+selectThisFileAfter);
 
-			// Important: the ChangeFolderThread instance must be kept in a local variable (as opposed to the
-			// changeFolderThread field only) before being returned. The reason for this is that ChangeFolderThread
-			// changes the changeFolderThread field to null when finished, and it may do so before this method has
-			// returned (I've seen this happening). Relying solely on the changeFolderThread field could thus cause
-			// a null value to be returned, which is particularly problematic during startup (would cause an NPE).
-			ChangeFolderThread thread = new ChangeFolderThread(folder, findWorkableFolder, changeLockedTab);
+		// Important: the ChangeFolderTask instance must be kept in a local variable (as opposed to the
+		// changeFolderTask slot only) before being returned. The reason for this is that ChangeFolderTask
+		// releases the changeFolderTask slot when finished, and it may do so before this method has
+		// returned. Relying solely on the changeFolderTask field could thus cause a null value to be returned,
+		// which is particularly problematic during startup (would cause an NPE).
+		ChangeFolderTask task = new ChangeFolderTask(folder, findWorkableFolder, changeLockedTab);
 
-			if(selectThisFileAfter!=null)
-				thread.selectThisFileAfter(selectThisFileAfter);
-			thread.start();
+		if(selectThisFileAfter!=null)
+			task.selectThisFileAfter(selectThisFileAfter);
 
-			changeFolderThread = thread;
-			return thread;
-		}
+		return task;
 	}
 
 	/**
 	 * Tries to change the current folder to the specified path and notifies the user in case of a problem.
 	 *
-	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
-	 * It does nothing and returns <code>null</code> if another folder change is already underway or if the given
-	 * path could not be resolved.</p>
+	 * <p>This method submits a task that takes care of the actual folder change and returns it.
+	 * If another folder change is already underway, it is cancelled in favor of this one. This method does nothing
+	 * and returns <code>null</code> if the given path could not be resolved.</p>
 	 *
 	 * <p>
 	 * This method is <b>not</b> I/O-bound and returns immediately, without any chance of locking the calling thread.
 	 * </p>
 	 *
 	 * @param folderPath path to the new current folder. If this path does not resolve into a file, an error message will be displayed.
-	 * @return the thread that performs the actual folder change, null if another folder change is already underway or if the given path could not be resolved
+	 * @return the task that performs the actual folder change, null if the given path could not be resolved
 	 */
-	public ChangeFolderThread tryChangeCurrentFolder(String folderPath) {
+	public ChangeFolderTask tryChangeCurrentFolder(String folderPath) {
 		try {
 			return tryChangeCurrentFolder(FileURL.getFileURL(folderPath), null, false);
 		}
@@ -242,21 +376,21 @@ public class LocationChanger {
 	/**
 	 * Tries to change current folder to the new specified URL and notifies the user in case of a problem.
 	 *
-	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
-	 * It does nothing and returns <code>null</code> if another folder change is already underway.</p>
+	 * <p>This method submits a task that takes care of the actual folder change and returns it.
+	 * If another folder change is already underway, it is cancelled in favor of this one.</p>
 	 *
 	 * <p>
 	 * This method is <b>not</b> I/O-bound and returns immediately, without any chance of locking the calling thread.
 	 * </p>
 	 *
 	 * @param folderURL location to the new current folder. If this URL does not resolve into a file, an error message will be displayed.
-	 * @return the thread that performs the actual folder change, null if another folder change is already underway
+	 * @return the task that performs the actual folder change
 	 */
-	public ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL) {
+	public ChangeFolderTask tryChangeCurrentFolder(FileURL folderURL) {
 		return tryChangeCurrentFolder(folderURL, null, false);
 	}
 
-	public ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL, boolean changeLockedTab) {
+	public ChangeFolderTask tryChangeCurrentFolder(FileURL folderURL, boolean changeLockedTab) {
 		return tryChangeCurrentFolder(folderURL, null, changeLockedTab);
 	}
 
@@ -265,8 +399,8 @@ public class LocationChanger {
 	 * If not <code>null</code>, the specified {@link com.mucommander.auth.CredentialsMapping} is used to authenticate
 	 * the folder, and added to {@link CredentialsManager} if the folder has been successfully changed.</p>
 	 *
-	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
-	 * It does nothing and returns <code>null</code> if another folder change is already underway.</p>
+	 * <p>This method submits a task that takes care of the actual folder change and returns it.
+	 * If another folder change is already underway, it is cancelled in favor of this one.</p>
 	 *
 	 * <p>
 	 * This method is <b>not</b> I/O-bound and returns immediately, without any chance of locking the calling thread.
@@ -274,40 +408,46 @@ public class LocationChanger {
 	 *
 	 * @param folderURL folder's URL to be made current folder. If this URL does not resolve into an existing file, an error message will be displayed.
 	 * @param credentialsMapping the CredentialsMapping to use for authentication, can be null
-	 * @return the thread that performs the actual folder change, null if another folder change is already underway
+	 * @return the task that performs the actual folder change
 	 */
-	public ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL, CredentialsMapping credentialsMapping, boolean changeLockedTab) {
+	public ChangeFolderTask tryChangeCurrentFolder(FileURL folderURL, CredentialsMapping credentialsMapping, boolean changeLockedTab) {
 		LOGGER.debug("folderURL="+folderURL);
 
-		synchronized(FOLDER_CHANGE_LOCK) {
-			// Make sure a folder change is not already taking place. This can happen under rare but normal
-			// circumstances, if this method is called before the folder change thread has had the time to call
-			// MainFrame#setNoEventsMode.
-			if(changeFolderThread!=null) {
-				LOGGER.debug("A folder change is already taking place ("+changeFolderThread+"), returning null");
-				return null;
-			}
+		return submitFolderChange(new ChangeFolderTask(folderURL, credentialsMapping, changeLockedTab));
+	}
 
-			// Important: the ChangeFolderThread instance must be kept in a local variable (as opposed to the
-			// changeFolderThread field only) before being returned. The reason for this is that ChangeFolderThread
-			// changes the changeFolderThread field to null when finished, and it may do so before this method has
-			// returned (I've seen this happening). Relying solely on the changeFolderThread field could thus cause
-			// a null value to be returned, which is particularly problematic during startup (would cause an NPE).
-			ChangeFolderThread thread = new ChangeFolderThread(folderURL, credentialsMapping, changeLockedTab);
-			thread.start();
+	/**
+	 * Tries to change current folder to the specified URL, displaying it instantly if the panel holds a snapshot of
+	 * the folder from when it was last left. In that case, the folder is revalidated in the background once the
+	 * snapshot has been restored, and refreshed if its date has changed since the snapshot was taken. If there is no
+	 * snapshot of the folder, this method behaves like {@link #tryChangeCurrentFolder(FileURL)}.
+	 *
+	 * <p>This is used when going back and forward in the history of the panel.</p>
+	 *
+	 * <p>
+	 * This method is <b>not</b> I/O-bound and returns immediately, without any chance of locking the calling thread.
+	 * </p>
+	 *
+	 * @param folderURL location to the new current folder
+	 * @return the task that performs the actual folder change
+	 */
+	public ChangeFolderTask tryRestoreCurrentFolder(FileURL folderURL) {
+		FolderSnapshot snapshot = folderPanel.getFileTable().getFolderSnapshot(folderURL);
+		if(snapshot==null)
+			return tryChangeCurrentFolder(folderURL);
 
-			changeFolderThread = thread;
-			return thread;
-		}
+		LOGGER.debug("restoring snapshot of folderURL="+folderURL);
+
+		return submitFolderChange(new ChangeFolderTask(snapshot));
 	}
 
 	/**
 	 * Shorthand for {@link #tryRefreshCurrentFolder(AbstractFile)} called with no specific file (<code>null</code>)
 	 * to select after the folder has been changed.
 	 *
-	 * @return the thread that performs the actual folder change, null if another folder change is already underway
+	 * @return the task that performs the actual folder change, null if another folder change is already underway
 	 */
-	public ChangeFolderThread tryRefreshCurrentFolder() {
+	public ChangeFolderTask tryRefreshCurrentFolder() {
 		return tryRefreshCurrentFolder(null);
 	}
 
@@ -315,19 +455,20 @@ public class LocationChanger {
 	 * Refreshes the current folder's contents. If the folder is no longer available, the folder will be changed to a
 	 * 'workable' folder (see {@link #tryChangeCurrentFolder(AbstractFile, AbstractFile, boolean)}.
 	 *
-	 * <p>This method spawns a separate thread that takes care of the actual folder change and returns it.
-	 * It does nothing and returns <code>null</code> if another folder change is already underway.</p>
+	 * <p>This method submits a task that takes care of the actual folder change and returns it.
+	 * It does nothing and returns <code>null</code> if another folder change is already underway: the user's
+	 * navigation is not cancelled by a refresh.</p>
 	 *
 	 * <p>This method is <b>not</b> I/O-bound and returns immediately, without any chance of locking the calling thread.</p>
 	 *
 	 * @param selectThisFileAfter file to be selected after the folder has been refreshed (if it exists in the folder),
 	 * can be null in which case FileTable rules will be used to select current file
-	 * @return the thread that performs the actual folder change, null if another folder change is already underway
+	 * @return the task that performs the actual folder change, null if another folder change is already underway
 	 * @see #tryChangeCurrentFolder(AbstractFile, AbstractFile, boolean)
 	 */
-	public ChangeFolderThread tryRefreshCurrentFolder(AbstractFile selectThisFileAfter) {
+	public ChangeFolderTask tryRefreshCurrentFolder(AbstractFile selectThisFileAfter) {
 		folderPanel.getFoldersTreePanel().refreshFolder(locationManager.getCurrentFolder());
-		return tryChangeCurrentFolder(locationManager.getCurrentFolder(), selectThisFileAfter, true, true);
+		return submitRefresh(createTask(locationManager.getCurrentFolder(), selectThisFileAfter, true, true));
 	}
 	
 	 /**
@@ -345,12 +486,12 @@ public class LocationChanger {
 	 * @throws IOException 
 	 * @throws UnsupportedFileOperationException 
      */
-    private void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) throws UnsupportedFileOperationException, IOException {
+    private void setCurrentFolder(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect, boolean changeLockedTab) throws UnsupportedFileOperationException, IOException {
     	// Update the timestamp right before the folder is set in case FolderChangeMonitor checks the timestamp
         // while FileTable#setCurrentFolder is being called. 
         lastFolderChangeTime = System.currentTimeMillis();
         
-    	locationManager.setCurrentFolder(folder, fileToSelect, changeLockedTab);
+    	locationManager.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
     }
 
     /**
@@ -363,14 +504,14 @@ public class LocationChanger {
     }
 
     /**
-     * Returns the thread that is currently changing the current folder, <code>null</code> is the folder is not being
+     * Returns the task that is currently changing the current folder, <code>null</code> is the folder is not being
      * changed.
      *
-     * @return the thread that is currently changing the current folder, <code>null</code> is the folder is not being
+     * @return the task that is currently changing the current folder, <code>null</code> is the folder is not being
      * changed
      */
-    public ChangeFolderThread getChangeFolderThread() {
-        return changeFolderThread;
+    public ChangeFolderTask getChangeFolderTask() {
+        return changeFolderTask.get();
     }
 
 
@@ -380,7 +521,7 @@ public class LocationChanger {
      * @return <code>true</code> ´if the current folder is currently being changed, <code>false</code> otherwise
      */
     public boolean isFolderChanging() {
-        return changeFolderThread!=null;
+        return getChangeFolderTask()!=null;
     }
     
 	/**
@@ -461,13 +602,17 @@ public class LocationChanger {
 		return null;
 	}
 
-	////////////////////////////////////
-	// ChangeFolderThread inner class //
-	////////////////////////////////////
+	//////////////////////////////////
+	// ChangeFolderTask inner class //
+	//////////////////////////////////
 
 	/**
-	 * This thread takes care of changing current folder without locking the main
-	 * thread. The folder change can be cancelled.
+	 * This task takes care of changing current folder without locking the main
+	 * thread. It is executed by a pooled thread of the folder change executor.
+	 *
+	 * <p>The folder change can be cancelled cooperatively, either by the user (see {@link #tryKill()}) or by a more
+	 * recent folder change that supersedes it. Cancellation is checked at each step of the folder change, up until the
+	 * point where the panel is being updated, after which the task can no longer be cancelled.</p>
 	 *
 	 * <p>A little note out of nowhere: never ever call JComponent.paintImmediately() from a thread
 	 * other than the Event Dispatcher Thread, as will create nasty repaint glitches that
@@ -475,7 +620,7 @@ public class LocationChanger {
 	 *
 	 * @author Maxence Bernard
 	 */
-	public class ChangeFolderThread extends Thread {
+	public class ChangeFolderTask implements Runnable, FolderChangeSlot.Task {
 
 		private AbstractFile folder;
 		private boolean findWorkableFolder;
@@ -483,32 +628,38 @@ public class LocationChanger {
 		private FileURL folderURL;
 		private AbstractFile fileToSelect;
 		private CredentialsMapping credentialsMapping;
+		/** Snapshot of the folder to restore, null if the folder is to be listed */
+		private FolderSnapshot snapshot;
 
-		/** True if this thread has been interrupted by the user using #tryKill */
-		private boolean killed;
-		/** True if an attempt to kill this thread using Thread#interrupt() has already been made */
+		/** True if this task has been cancelled, either by the user using #tryKill or by a newer folder change */
+		private volatile boolean killed;
+		/** True if the thread running this task has already been interrupted */
 		private boolean killedByInterrupt;
-		/** True if an attempt to kill this thread using Thread#stop() has already been made */
-		private boolean killedByStop;
-		/** True if it is unsafe to kill this thread */
+		/** True if this task has been abandoned, i.e. its outcome will be ignored no matter when it completes */
+		private boolean abandoned;
+		/** True if it is unsafe to kill this task */
 		private boolean doNotKill;
 
 		private boolean disposed;
 
-		/** Lock object used to ensure consistency and thread safeness when killing the thread */
+		/** The pooled thread this task is running in, null if the task is not running */
+		private Thread runner;
+
+		/** Released when this task has completed, whether successfully or not */
+		private final CountDownLatch doneLatch = new CountDownLatch(1);
+
+		/** Lock object used to ensure consistency and thread safeness when killing the task */
 		private final Object KILL_LOCK = new Object();
 
 		/* TODO branch private ArrayList childrenList; */
 
 
-		public ChangeFolderThread(AbstractFile folder, boolean findWorkableFolder, boolean changeLockedTab) {
+		public ChangeFolderTask(AbstractFile folder, boolean findWorkableFolder, boolean changeLockedTab) {
 			// Ensure that we work on a raw file instance and not a cached one
 			this.folder = (folder instanceof CachedFile)?((CachedFile)folder).getProxiedFile():folder;
 			this.folderURL = folder.getURL();
 			this.findWorkableFolder = findWorkableFolder;
 			this.changeLockedTab = changeLockedTab;
-
-			setPriority(Thread.MAX_PRIORITY);
 		}
 
 		/**
@@ -517,12 +668,21 @@ public class LocationChanger {
 		 * @param credentialsMapping the CredentialsMapping to use for accessing the folder, <code>null</code> for none
 		 * @param changeLockedTab
 		 */
-		public ChangeFolderThread(FileURL folderURL, CredentialsMapping credentialsMapping, boolean changeLockedTab) {
+		public ChangeFolderTask(FileURL folderURL, CredentialsMapping credentialsMapping, boolean changeLockedTab) {
 			this.folderURL = folderURL;
 			this.changeLockedTab = changeLockedTab;
 			this.credentialsMapping = credentialsMapping;
+		}
 
-			setPriority(Thread.MAX_PRIORITY);
+		/**
+		 * Creates a task that restores the folder of the given snapshot, and then revalidates it.
+		 *
+		 * @param snapshot the snapshot of the folder to restore
+		 */
+		public ChangeFolderTask(FolderSnapshot snapshot) {
+			this.folder = snapshot.getFolder();
+			this.folderURL = folder.getURL();
+			this.snapshot = snapshot;
 		}
 
 		/**
@@ -551,79 +711,201 @@ public class LocationChanger {
 		}
 
 		/**
-		 * Attempts to stop this thread and returns <code>true</code> if an attempt was made.
-		 * An attempt to stop this thread will be made using one of the methods detailed hereunder, only if
-		 * it is still safe to do so: if the thread is too far into the process of changing the current folder,
-		 * this method will have no effect and return <code>false</code>.
+		 * Attempts to stop this task and returns <code>true</code> if an attempt was made.
+		 * An attempt to stop this task will be made only if it is still safe to do so: if the task is too far into the
+		 * process of changing the current folder, this method will have no effect and return <code>false</code>.
 		 *
-		 * <p>The first time this method is called, {@link #interrupt()} is called, giving the thread a chance to stop
-		 * gracefully should it be waiting for a thread or blocked in an interruptible operation such as an
-		 * InterruptibleChannel. This may have no immediate effect if the thread is blocked in a non-interruptible
-		 * operation. This thread will however be marked as 'killed' which will sooner or later cause {@link #run()}
-		 * to stop the thread by simply returning.</p> 
+		 * <p>The first time this method is called, the task is marked as 'killed' and the thread running it is
+		 * interrupted, giving it a chance to stop gracefully should it be waiting for a thread or blocked in an
+		 * interruptible operation such as an InterruptibleChannel. This may have no immediate effect if the thread is
+		 * blocked in a non-interruptible operation, but will sooner or later cause {@link #run()} to return.</p>
 		 *
-		 * <p>The second time this method is called, the deprecated (and unsafe) {@link #stop()} method is called,
-		 * forcing the thread to abort.</p>
+		 * <p>The second time this method is called, the task is abandoned: the panel is released right away and
+		 * whatever the task eventually does when the blocking operation returns is ignored. The pooled thread is never
+		 * forcibly stopped.</p>
 		 *
 		 * <p>Any subsequent calls to this method will have no effect and return <code>false</code>.</p>
 		 *
-		 * @return true if an attempt was made to stop this thread.
+		 * @return true if an attempt was made to stop this task.
 		 */
 		public boolean tryKill() {
 			synchronized(KILL_LOCK) {
-				if(killedByStop) {
-					LOGGER.debug("Thread already killed by #interrupt() and #stop(), there's nothing we can do, returning");
+				if(abandoned) {
+					LOGGER.debug("Task already interrupted and abandoned, there's nothing we can do, returning");
 					return false;
 				}
 
 				if(doNotKill) {
-					LOGGER.debug("Can't kill thread now, it's too late, returning");
+					LOGGER.debug("Can't kill task now, it's too late, returning");
 					return false;
 				}
 
-				// This field needs to be set before actually killing the thread, #run() relies on it
+				// This field needs to be set before actually interrupting the thread, #run() relies on it
 				killed = true;
 
-				// Call Thread#interrupt() the first time this method is called to give the thread a chance to stop
-				// gracefully if it is waiting in Thread#sleep() or Thread#wait() or Thread#join() or in an
-				// interruptible operation such as java.nio.channel.InterruptibleChannel. If this is the case,
-				// InterruptedException or ClosedByInterruptException will be thrown and thus need to be catched by
-				// #run().
+				// Interrupt the thread the first time this method is called to give it a chance to stop gracefully if
+				// it is waiting in Thread#sleep() or Thread#wait() or Thread#join() or in an interruptible operation
+				// such as java.nio.channel.InterruptibleChannel. If this is the case, InterruptedException or
+				// ClosedByInterruptException will be thrown and thus need to be catched by #run().
 				if(!killedByInterrupt) {
-					LOGGER.debug("Killing thread using #interrupt()");
+					LOGGER.debug("Killing task by interrupting its thread");
 
-					// This field needs to be set before actually interrupting the thread, #run() relies on it
 					killedByInterrupt = true;
-					interrupt();
-				}
-				// Call Thread#stop() the first time this method is called
-				else {
-					LOGGER.debug("Killing thread using #stop()");
-
-					killedByStop = true;
-					super.stop();
-					// Execute #cleanup() as it would have been done by #run() had the thread not been stopped.
-					// Note that #run() may end pseudo-gracefully and catch the underlying Exception. In this case
-					// it will also call #cleanup() but the (2nd) call to #cleanup() will be ignored.
-					cleanup(false);
+					interruptRunner();
+
+					// A task that has not started yet will never block: it will return as soon as it is run
+					if(runner!=null)
+						return true;
 				}
 
+				LOGGER.debug("Abandoning task");
+				abandoned = true;
+			}
+
+			// Execute #cleanup() as it would have been done by #run() had the task returned. #run() will also call
+			// #cleanup() when it eventually returns, but the (2nd) call to #cleanup() will be ignored.
+			cleanup(false);
+
+			return true;
+		}
+
+		/**
+		 * Cancels this task in favor of a more recent folder change. Unlike {@link #tryKill()}, no location event is
+		 * fired when the task completes, the superseding folder change being in charge of that.
+		 *
+		 * @return <code>true</code> if this task was cancelled, <code>false</code> if it is too late to cancel it
+		 */
+		public boolean supersede() {
+			synchronized(KILL_LOCK) {
+				if(doNotKill)
+					return false;
+
+				killed = true;
+				if(!killedByInterrupt) {
+					killedByInterrupt = true;
+					interruptRunner();
+				}
 				return true;
 			}
 		}
 
+		/**
+		 * Interrupts the thread this task is running in, if any. Must be called while holding the kill lock.
+		 */
+		private void interruptRunner() {
+			if(runner!=null)
+				runner.interrupt();
+		}
 
-		@Override
-		public void start() {
+		/**
+		 * Returns <code>true</code> if this task has been cancelled, by the user or by a more recent folder change.
+		 *
+		 * @return <code>true</code> if this task has been cancelled
+		 */
+		public boolean isCancelled() {
+			return killed;
+		}
+
+		/**
+		 * Returns <code>true</code> if this task has completed, whether successfully or not.
+		 *
+		 * @return <code>true</code> if this task has completed
+		 */
+		public boolean isDone() {
+			return doneLatch.getCount()==0;
+		}
+
+		/**
+		 * Blocks the calling thread until this task has completed, whether successfully or not.
+		 *
+		 * @throws InterruptedException if the calling thread was interrupted while waiting
+		 */
+		public void waitForCompletion() throws InterruptedException {
+			doneLatch.await();
+		}
+
+		/**
+		 * Notifies listeners that the location is changing and submits this task to the folder change executor.
+		 */
+		void submit() {
 			// Notify listeners that location is changing
 			locationManager.fireLocationChanging(folder==null?folderURL:folder.getURL());
 
-			super.start();
+			FOLDER_CHANGE_EXECUTOR.execute(this);
 		}
 
 
-		@Override
 		public void run() {
+			boolean cancelledBeforeStart;
+			synchronized(KILL_LOCK) {
+				cancelledBeforeStart = killed;
+				if(!cancelledBeforeStart)
+					runner = Thread.currentThread();
+			}
+
+			if(cancelledBeforeStart) {
+				LOGGER.debug("this task has been cancelled before it started, returning");
+				cleanup(false);
+				doneLatch.countDown();
+				return;
+			}
+
+			try {
+				if(snapshot==null)
+					changeFolder();
+				else
+					restoreSnapshot();
+			}
+			finally {
+				releaseRunner();
+			}
+		}
+
+		/**
+		 * Restores the folder from the snapshot, which involves no I/O, and then checks whether the folder has
+		 * changed since the snapshot was taken, in which case the folder is refreshed.
+		 */
+		private void restoreSnapshot() {
+			boolean folderRestored = false;
+
+			synchronized(FOLDER_COMMIT_LOCK) {
+				synchronized(KILL_LOCK) {
+					folderRestored = !killed;
+					doNotKill = folderRestored;
+				}
+
+				if(folderRestored) {
+					mainFrame.setNoEventsMode(true);
+					try {
+						lastFolderChangeTime = System.currentTimeMillis();
+						locationManager.restoreCurrentFolder(snapshot);
+					}
+					finally {
+						mainFrame.setNoEventsMode(false);
+					}
+				}
+			}
+
+			cleanup(folderRestored);
+
+			if(folderRestored)
+				revalidateSnapshot(snapshot);
+		}
+
+		/**
+		 * Detaches this task from the pooled thread that ran it, making sure that the thread is not left in the
+		 * interrupted state, which would otherwise affect the next task it runs.
+		 */
+		private void releaseRunner() {
+			synchronized(KILL_LOCK) {
+				runner = null;
+				// Clear the interrupted flag in case this task has been killed
+				Thread.interrupted();
+			}
+			doneLatch.countDown();
+		}
+
+		private void changeFolder() {
 			LOGGER.debug("starting folder change...");
 			boolean folderChangedSuccessfully = false;
 
@@ -669,9 +951,6 @@ public class LocationChanger {
 					// Set cursor to hourglass/wait
 					mainFrame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
 
-					// Render all actions inactive while changing folder
-					mainFrame.setNoEventsMode(true);
-
 					try {
 						// 2 cases here :
 						// - Thread was created using an AbstractFile instance
@@ -683,7 +962,7 @@ public class LocationChanger {
 
 							synchronized(KILL_LOCK) {
 								if(killed) {
-									LOGGER.debug("this thread has been killed, returning");
+									LOGGER.debug("this task has been killed, returning");
 									break;
 								}
 							}
@@ -804,7 +1083,7 @@ public class LocationChanger {
 
 						synchronized(KILL_LOCK) {
 							if(killed) {
-								LOGGER.debug("this thread has been killed, returning");
+								LOGGER.debug("this task has been killed, returning");
 								break;
 							}
 						}
@@ -822,22 +1101,38 @@ public class LocationChanger {
 							children = folder.ls(chainedFileFilter);                            
 						}*/ 
 
-						synchronized(KILL_LOCK) {
-							if(killed) {
-								LOGGER.debug("this thread has been killed, returning");
-								break;
-							}
-							// From now on, thread cannot be killed (would comprise table integrity)
-							doNotKill = true;
-						}
+						// List the folder's children while the task can still be cancelled, this is where
+						// most of the time is spent for remote or large folders
+						AbstractFile children[] = locationManager.ls(folder);
 
 						// files listed -> 75% complete
 						folderPanel.setProgressValue(75);
 
-						LOGGER.trace("calling setCurrentFolder");
+						// Only one folder change at a time may update the panel: if a folder change that could not be
+						// cancelled is still updating it, wait for it to complete
+						synchronized(FOLDER_COMMIT_LOCK) {
+							synchronized(KILL_LOCK) {
+								if(killed) {
+									LOGGER.debug("this task has been killed, returning");
+									break;
+								}
+								// From now on, task cannot be killed (would comprise table integrity)
+								doNotKill = true;
+							}
 
-						// Change the file table's current folder and select the specified file (if any)
-						setCurrentFolder(folder, fileToSelect, changeLockedTab);
+							// Render all actions inactive while the panel is being updated
+							mainFrame.setNoEventsMode(true);
+
+							try {
+								LOGGER.trace("calling setCurrentFolder");
+
+								// Change the file table's current folder and select the specified file (if any)
+								setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
+							}
+							finally {
+								mainFrame.setNoEventsMode(false);
+							}
+						}
 
 						// folder set -> 95% complete
 						folderPanel.setProgressValue(95);
@@ -857,7 +1152,7 @@ public class LocationChanger {
 						LOGGER.debug("Caught exception", e);
 
 						if(killed) {
-							// If #tryKill() called #interrupt(), the exception we just caught was most likely
+							// If the task was killed, the exception we just caught was most likely
 							// thrown as a result of the thread being interrupted.
 							//
 							// The exception can be a java.lang.InterruptedException (Thread throws those),
@@ -916,10 +1211,8 @@ public class LocationChanger {
 				while(true);
 			}
 
-			synchronized(KILL_LOCK) {
-				// Clean things up
-				cleanup(folderChangedSuccessfully);
-			}
+			// Clean things up
+			cleanup(folderChangedSuccessfully);
 		}
 
 		public void cleanup(boolean folderChangedSuccessfully) {
@@ -935,10 +1228,19 @@ public class LocationChanger {
 
 			LOGGER.trace("cleaning up, folderChangedSuccessfully="+folderChangedSuccessfully);
 
-			// Clear the interrupted flag in case this thread has been killed using #interrupt().
+			// Clear the interrupted flag in case this task has been killed while running in the current thread.
 			// Not doing this could cause some of the code called by this method to be interrupted (because this thread
 			// is interrupted) and throw an exception
-			interrupted();
+			synchronized(KILL_LOCK) {
+				if(runner==Thread.currentThread())
+					Thread.interrupted();
+			}
+
+			boolean isCurrentTask = changeFolderTask.release(this);
+
+			// A superseded task leaves the panel to the folder change that replaced it
+			if(!isCurrentTask)
+				return;
 
 			// Reset location field's progress bar
 			folderPanel.setProgressValue(0);
@@ -946,13 +1248,6 @@ public class LocationChanger {
 			// Restore normal mouse cursor
 			mainFrame.setCursor(Cursor.getDefaultCursor());
 
-			synchronized(FOLDER_CHANGE_LOCK) {
-				changeFolderThread = null;
-			}
-
-			// Make all actions active again
-			mainFrame.setNoEventsMode(false);
-
 			if(!folderChangedSuccessfully) {
 				FileURL failedURL = folder==null?folderURL:folder.getURL();
 				// Notifies listeners that location change has been cancelled by the user or has failed
@@ -964,6 +1259,7 @@ public class LocationChanger {
 		}
 
 		// For debugging purposes
+		@Override
 		public String toString() {
 			return super.toString()+" folderURL="+folderURL+" folder="+folder;
 		}
@@ -0,0 +1,617 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.bookmark.Bookmark;
+import com.mucommander.bookmark.BookmarkListener;
+import com.mucommander.bookmark.BookmarkManager;
+import com.mucommander.commons.conf.Configuration;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuSnapshot;
+import com.mucommander.ui.event.LocationAdapter;
+import com.mucommander.ui.event.LocationEvent;
+
+/**
+ * An in-memory index of the locations known to the application, used to jump to a location by typing a few
+ * characters of it. The index merges the locations that were visited in any {@link com.mucommander.ui.main.FolderPanel},
+ * the bookmarks and the folders cached by the folders tree.
+ *
+ * <p>Locations are ranked by <i>frecency</i>, which combines the frequency and the recency of the visits: each visit
+ * adds one point to the location's score, and scores decay exponentially with time, halving every
+ * {@link #FRECENCY_HALF_LIFE} milliseconds. Bookmarks get a fixed bonus. The visit statistics are saved to the
+ * snapshot file when muCommander shuts down. In the meantime, the statistics of each visited location are appended to
+ * a journal file in the preferences folder as soon as they change, so that a crash does not lose the visits of the
+ * session: the journal is replayed over the snapshot on the next run, and emptied once the snapshot is saved.</p>
+ *
+ * <p>Locations are matched against queries using a fuzzy subsequence match: all the query's characters have to
+ * appear in the location, in the same order but not necessarily contiguously. Matches that are contiguous or that
+ * start at the beginning of a path component score higher. The lower-cased form of the locations is computed when
+ * they are added to the index, so that a query over a full index only takes a fraction of a millisecond.</p>
+ *
+ * @author Arik Hadas
+ */
+public class LocationIndex extends LocationAdapter implements BookmarkListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LocationIndex.class);
+
+	/** Singleton instance, created the first time it is requested */
+	private static LocationIndex instance;
+
+	/** Maximum number of locations held by the index */
+	private static final int MAX_CAPACITY = 2000;
+
+	/** Number of milliseconds after which the frecency of a location that is not visited is halved (a week) */
+	public static final long FRECENCY_HALF_LIFE = 7 * 24 * 60 * 60 * 1000L;
+
+	/** Frecency bonus given to bookmarked locations */
+	private static final double BOOKMARK_BONUS = 1;
+
+	/** Name of the journal file, in the preferences folder */
+	private static final String JOURNAL_FILE_NAME = "location_index.txt";
+
+	/** First line of the journal file, identifies the format */
+	private static final String JOURNAL_HEADER = "muCommander location index 1";
+
+	/** Encoding of the journal file */
+	private static final String ENCODING = "UTF-8";
+
+	/** Location -> indexed location */
+	private Map<String, Location> locations = new HashMap<String, Location>();
+
+	/** Flat view of the indexed locations, in which queries are performed, null when it has to be rebuilt */
+	private Location[] index;
+
+	/** The file visits are appended to, null if they are not journaled */
+	private final File journalFile;
+
+	/** Writer to the journal file, null when it is not open */
+	private Writer journalWriter;
+
+	/**
+	 * Creates an empty index that appends visits to the given journal file, after restoring the visits it contains.
+	 *
+	 * @param journalFile the file visits are appended to, <code>null</code> if they are not to be journaled
+	 */
+	LocationIndex(File journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * Private Constructor
+	 */
+	private LocationIndex() {
+		this(new File(PlatformManager.getPreferencesFolder().getAbsolutePath(), JOURNAL_FILE_NAME));
+
+		Configuration snapshot = MuConfigurations.getSnapshot();
+
+		// Restore the visit statistics from last run
+		int nbLocations = snapshot.getIntegerVariable(MuSnapshot.getLocationIndexCountVariable());
+		if (nbLocations > 0) {
+			for (int i=0; i<nbLocations; ++i) {
+				String path = snapshot.getVariable(MuSnapshot.getLocationIndexPathVariable(i));
+				if (path == null)
+					continue;
+
+				Location location = getOrAdd(path);
+				location.visits = snapshot.getVariable(MuSnapshot.getLocationIndexVisitsVariable(i), 0);
+				location.lastVisit = snapshot.getVariable(MuSnapshot.getLocationIndexLastVisitVariable(i), 0L);
+				location.frecency = snapshot.getVariable(MuSnapshot.getLocationIndexFrecencyVariable(i), 0d);
+			}
+		}
+		// The index was not saved by the last run: seed it with the global history, in which the last accessed
+		// location comes last
+		else {
+			long now = System.currentTimeMillis();
+			List<FileURL> history = GlobalLocationHistory.Instance().getHistory();
+			int nbHistoryLocations = history.size();
+			for (int i=0; i<nbHistoryLocations; ++i)
+				visit(getOrAdd(getPath(history.get(i))), now - (nbHistoryLocations-i));
+		}
+
+		// Restore the visits that were not saved to the snapshot, if the last run did not shut down normally
+		try {
+			loadJournal();
+		}
+		catch (IOException e) {
+			LOGGER.info("Could not load the location index journal", e);
+		}
+
+		bookmarksChanged();
+		BookmarkManager.addBookmarkListener(this);
+	}
+
+	/**
+	 * Returns Singleton instance of this class
+	 *
+	 * @return Singleton instance of this class
+	 */
+	public static synchronized LocationIndex Instance() {
+		if (instance == null)
+			instance = new LocationIndex();
+
+		return instance;
+	}
+
+	/**
+	 * Adds the given folders to the index, if they are not in it already. This is used to index the folders that
+	 * are known to exist without having been visited, e.g. those cached by the folders tree.
+	 *
+	 * @param folders the folders to add to the index
+	 */
+	public synchronized void addLocations(AbstractFile folders[]) {
+		for (AbstractFile folder : folders)
+			getOrAdd(folder.getAbsolutePath());
+
+		trimToCapacity();
+	}
+
+	/**
+	 * Returns the locations that match the given query, ranked by relevance and frecency, the best one first.
+	 *
+	 * @param query the characters to look for, not case-sensitive
+	 * @param maxResults maximum number of locations to return
+	 * @return the locations that match the given query, the best one first
+	 */
+	public synchronized List<String> search(String query, int maxResults) {
+		String lowerCaseQuery = query.toLowerCase();
+		long now = System.currentTimeMillis();
+
+		// Keep the best results sorted by decreasing score, the number of results is expected to be small
+		List<Location> results = new ArrayList<Location>(maxResults+1);
+		List<Double> scores = new ArrayList<Double>(maxResults+1);
+		for (Location location : getIndex()) {
+			int matchScore = match(lowerCaseQuery, location.lowerCasePath);
+			if (location.lowerCaseName != null)
+				matchScore = Math.max(matchScore, match(lowerCaseQuery, location.lowerCaseName));
+			if (matchScore < 0)
+				continue;
+
+			double score = matchScore * (1 + location.getRank(now));
+			int position = scores.size();
+			while (position > 0 && scores.get(position-1) < score)
+				position--;
+
+			if (position < maxResults) {
+				results.add(position, location);
+				scores.add(position, score);
+				if (results.size() > maxResults) {
+					results.remove(maxResults);
+					scores.remove(maxResults);
+				}
+			}
+		}
+
+		List<String> paths = new ArrayList<String>(results.size());
+		for (Location location : results)
+			paths.add(location.path);
+
+		return paths;
+	}
+
+	/**
+	 * Returns the locations that were visited, ranked by frecency, the highest one first.
+	 *
+	 * @return the locations that were visited, the highest ranked one first
+	 */
+	public synchronized List<FileURL> getVisitedLocations() {
+		final long now = System.currentTimeMillis();
+
+		List<Location> visited = new ArrayList<Location>();
+		for (Location location : getIndex())
+			if (location.visits > 0)
+				visited.add(location);
+
+		Collections.sort(visited, new Comparator<Location>() {
+			public int compare(Location location1, Location location2) {
+				return Double.compare(location2.getFrecency(now), location1.getFrecency(now));
+			}
+		});
+
+		List<FileURL> urls = new ArrayList<FileURL>(visited.size());
+		for (Location location : visited) {
+			try {
+				urls.add(FileURL.getFileURL(location.path));
+			} catch (MalformedURLException e) {
+				LOGGER.debug("Got invalid location from the index: " + location.path, e);
+			}
+		}
+
+		return urls;
+	}
+
+	/**
+	 * Returns the rank of the given location, which combines its frecency and bookmark bonus, <code>0</code> if the
+	 * location is not in the index.
+	 *
+	 * @param path path or URL of the location
+	 * @return the rank of the given location
+	 */
+	public synchronized double getRank(String path) {
+		Location location = locations.get(normalize(path));
+
+		return location == null ? 0 : location.getRank(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the locations that were visited along with their visit statistics, so that they can be saved.
+	 *
+	 * @return the locations that were visited
+	 */
+	public synchronized List<Location> getVisitStatistics() {
+		List<Location> visited = new ArrayList<Location>();
+		for (Location location : getIndex())
+			if (location.visits > 0)
+				visited.add(location.copy());
+
+		return visited;
+	}
+
+	/**
+	 * Returns a score representing how well the given query matches the given text, <code>-1</code> if the query's
+	 * characters do not all appear in the text, in the same order. Both strings must be lower-cased.
+	 *
+	 * @param query the characters to look for
+	 * @param text the text to look into
+	 * @return a positive score if the text matches the query, <code>-1</code> otherwise
+	 */
+	static int match(String query, String text) {
+		int queryLength = query.length();
+		int textLength = text.length();
+		if (queryLength > textLength)
+			return -1;
+
+		// Look for the characters from the end of the text, so that the last path component is preferred
+		int score = 0;
+		int queryIndex = queryLength - 1;
+		int previousMatch = -1;
+		for (int i=textLength-1; i>=0 && queryIndex>=0; i--) {
+			if (text.charAt(i) != query.charAt(queryIndex))
+				continue;
+
+			score += 1;
+			// Contiguous characters
+			if (previousMatch == i+1)
+				score += 2;
+			// Character at the beginning of a path component or word
+			if (i == 0 || isSeparator(text.charAt(i-1)))
+				score += 3;
+
+			previousMatch = i;
+			queryIndex--;
+		}
+
+		return queryIndex < 0 ? score : -1;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == '/' || c == '\\' || c == ' ' || c == '-' || c == '_' || c == '.' || c == ':';
+	}
+
+	private Location[] getIndex() {
+		if (index == null)
+			index = locations.values().toArray(new Location[locations.size()]);
+
+		return index;
+	}
+
+	private Location getOrAdd(String path) {
+		String key = normalize(path);
+		Location location = locations.get(key);
+		if (location == null) {
+			location = new Location(key);
+			locations.put(key, location);
+			index = null;
+		}
+
+		return location;
+	}
+
+	/**
+	 * Records a visit to the given location at the given date, and appends its new statistics to the journal.
+	 *
+	 * @param path path or URL of the visited location
+	 * @param now date of the visit
+	 */
+	synchronized void visit(String path, long now) {
+		Location location = getOrAdd(path);
+		visit(location, now);
+		appendToJournal(location);
+		trimToCapacity();
+	}
+
+	private static void visit(Location location, long now) {
+		location.frecency = location.getFrecency(now) + 1;
+		location.lastVisit = now;
+		location.visits++;
+	}
+
+	/**
+	 * Evicts the lowest ranked locations that are not bookmarked when the index exceeds its capacity.
+	 */
+	private void trimToCapacity() {
+		int nbLocations = locations.size();
+		if (nbLocations <= MAX_CAPACITY)
+			return;
+
+		final long now = System.currentTimeMillis();
+		Location sorted[] = getIndex().clone();
+		Arrays.sort(sorted, new Comparator<Location>() {
+			public int compare(Location location1, Location location2) {
+				return Double.compare(location1.getRank(now), location2.getRank(now));
+			}
+		});
+
+		for (int i=0; i<sorted.length && nbLocations>MAX_CAPACITY; i++) {
+			if (sorted[i].bookmarkName == null) {
+				locations.remove(sorted[i].path);
+				nbLocations--;
+			}
+		}
+
+		index = null;
+	}
+
+	/**
+	 * Restores the visit statistics saved in the journal file, if it exists. The statistics of a location are only
+	 * restored if they are more recent than those already in the index. Lines that cannot be parsed, such as a last
+	 * line that was not completely written, are ignored.
+	 */
+	synchronized void loadJournal() throws IOException {
+		if (journalFile == null || !journalFile.exists())
+			return;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), ENCODING));
+		try {
+			if (!JOURNAL_HEADER.equals(reader.readLine()))
+				return;
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// last visit, visits, frecency, path: the path may contain tabs
+				String fields[] = line.split("\t", 4);
+				if (fields.length != 4)
+					continue;
+
+				try {
+					long lastVisit = Long.parseLong(fields[0]);
+					int visits = Integer.parseInt(fields[1]);
+					double frecency = Double.parseDouble(fields[2]);
+
+					Location location = getOrAdd(fields[3]);
+					if (lastVisit >= location.lastVisit) {
+						location.lastVisit = lastVisit;
+						location.visits = visits;
+						location.frecency = frecency;
+					}
+				}
+				catch (NumberFormatException e) {
+					// Skip the line
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		trimToCapacity();
+	}
+
+	/**
+	 * Empties the journal file. This method is to be called once the visit statistics have been saved to the
+	 * snapshot file, the journal only having to hold the visits that have not been saved yet.
+	 */
+	public synchronized void compactJournal() {
+		if (journalFile == null)
+			return;
+
+		closeJournal();
+		if (journalFile.exists() && !journalFile.delete())
+			LOGGER.info("Could not delete the location index journal " + journalFile);
+	}
+
+	/**
+	 * Appends the visit statistics of the given location to the journal file, opening it if needed.
+	 */
+	private void appendToJournal(Location location) {
+		// The path cannot be written on a single line
+		if (journalFile == null || location.path.indexOf('\n') != -1 || location.path.indexOf('\r') != -1)
+			return;
+
+		try {
+			if (journalWriter == null) {
+				boolean isNew = !journalFile.exists() || journalFile.length() == 0;
+				journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), ENCODING));
+				if (isNew) {
+					journalWriter.write(JOURNAL_HEADER);
+					journalWriter.write('\n');
+				}
+			}
+
+			journalWriter.write(location.lastVisit + "\t" + location.visits + "\t" + location.frecency + "\t" + location.path + "\n");
+			journalWriter.flush();
+		}
+		catch (IOException e) {
+			LOGGER.info("Could not write to the location index journal", e);
+			closeJournal();
+		}
+	}
+
+	private void closeJournal() {
+		if (journalWriter == null)
+			return;
+
+		try {
+			journalWriter.close();
+		}
+		catch (IOException e) {
+			LOGGER.debug("Could not close the location index journal", e);
+		}
+		journalWriter = null;
+	}
+
+	private static String getPath(FileURL url) {
+		// Local files are designated by their path, as in the location field
+		if (FileURL.LOCALHOST.equals(url.getHost()) && FileProtocols.FILE.equals(url.getScheme())) {
+			AbstractFile file = FileFactory.getFile(url);
+			if (file != null)
+				return file.getAbsolutePath();
+		}
+
+		return url.toString(false);
+	}
+
+	/**
+	 * Removes the trailing separator of the given path, unless it is a root folder.
+	 */
+	private static String normalize(String path) {
+		int length = path.length();
+		if (length > 1 && (path.endsWith("/") || path.endsWith("\\")) && path.charAt(length-2) != ':')
+			return path.substring(0, length-1);
+
+		return path;
+	}
+
+	///////////////////////
+	/// LocationAdapter ///
+	///////////////////////
+
+	@Override
+	public void locationChanged(LocationEvent locationEvent) {
+		AbstractFile folder = locationEvent.getFolderPanel().getCurrentFolder();
+		String path = folder != null && folder.getURL().equals(locationEvent.getFolderURL()) ?
+				folder.getAbsolutePath() : getPath(locationEvent.getFolderURL());
+
+		visit(path, System.currentTimeMillis());
+	}
+
+	////////////////////////
+	/// BookmarkListener ///
+	////////////////////////
+
+	public synchronized void bookmarksChanged() {
+		for (Location location : getIndex())
+			location.setBookmarkName(null);
+
+		for (Bookmark bookmark : BookmarkManager.getBookmarks())
+			getOrAdd(bookmark.getLocation()).setBookmarkName(bookmark.getName());
+
+		trimToCapacity();
+	}
+
+	/**
+	 * A location of the index, along with its visit statistics.
+	 */
+	public static class Location {
+
+		/** Path of the location for local files, URL for others */
+		private final String path;
+
+		/** Lower-cased path */
+		private final String lowerCasePath;
+
+		/** Name of the bookmark of this location, null if it is not bookmarked */
+		private String bookmarkName;
+
+		/** Lower-cased bookmark name, null if it is not bookmarked */
+		private String lowerCaseName;
+
+		/** Number of visits */
+		private int visits;
+
+		/** Date of the last visit */
+		private long lastVisit;
+
+		/** Frecency at the time of the last visit */
+		private double frecency;
+
+		private Location(String path) {
+			this.path = path;
+			this.lowerCasePath = path.toLowerCase();
+		}
+
+		private Location copy() {
+			Location copy = new Location(path);
+			copy.visits = visits;
+			copy.lastVisit = lastVisit;
+			copy.frecency = frecency;
+
+			return copy;
+		}
+
+		private void setBookmarkName(String bookmarkName) {
+			this.bookmarkName = bookmarkName;
+			this.lowerCaseName = bookmarkName == null ? null : bookmarkName.toLowerCase();
+		}
+
+		/**
+		 * Returns the frecency of this location at the given date.
+		 */
+		private double getFrecency(long now) {
+			if (frecency == 0)
+				return 0;
+
+			return frecency * Math.pow(0.5, (double) Math.max(0, now - lastVisit) / FRECENCY_HALF_LIFE);
+		}
+
+		private double getRank(long now) {
+			return getFrecency(now) + (bookmarkName == null ? 0 : BOOKMARK_BONUS);
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public int getVisits() {
+			return visits;
+		}
+
+		public long getLastVisit() {
+			return lastVisit;
+		}
+
+		public double getFrecency() {
+			return frecency;
+		}
+	}
+}
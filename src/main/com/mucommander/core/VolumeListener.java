@@ -0,0 +1,44 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+/**
+ * Interface to be implemented by classes that wish to be notified of changes to the volumes tracked by
+ * {@link VolumeService}. Those classes need to be registered to receive those events, this can be done by calling
+ * {@link VolumeService#addVolumeListener(VolumeListener)}.
+ *
+ * <p>Events are fired by the volume service's own thread: listeners must not perform lengthy operations and have to
+ * use the event dispatch thread to update Swing components.</p>
+ *
+ * @author Maxence Bernard
+ * @see VolumeService
+ */
+public interface VolumeListener {
+
+    /**
+     * This method is invoked when the list of volumes has changed (e.g. a volume has been mounted or unmounted), or
+     * when the extended name or icon of a volume has been resolved.
+     */
+    public void volumesChanged();
+
+    /**
+     * This method is invoked when the free and total space of the volumes has been refreshed.
+     */
+    public void volumeSpaceChanged();
+}
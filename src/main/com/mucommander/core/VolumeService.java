@@ -0,0 +1,590 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.Icon;
+import javax.swing.filechooser.FileSystemView;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.cache.FastLRUCache;
+import com.mucommander.cache.LRUCache;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.PathFilter;
+import com.mucommander.commons.file.filter.RegexpPathFilter;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.runtime.JavaVersion;
+import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.ui.icon.FileIcons;
+
+/**
+ * This class keeps track of the local volumes and of the free/total space of the volumes that are being displayed,
+ * on behalf of all windows. Information is read from this service without blocking: it is refreshed asynchronously
+ * in a single background thread, and {@link VolumeListener listeners} are notified when it has changed.
+ *
+ * <p>Under Linux, volumes being mounted or unmounted are detected by watching the process' mount table
+ * (<code>/proc/self/mountinfo</code>), which is far cheaper than listing volumes: the volume list is refreshed only
+ * when the mount table has actually changed. Under other platforms, the volume list is refreshed periodically.
+ * The extended names and icons of the volumes are resolved again when the volume list changes. Under Windows, where
+ * the name of a removable drive changes with the medium it holds, they are also resolved again periodically.</p>
+ *
+ * <p>The free/total space of a volume is refreshed periodically for as long as it keeps being read, typically by
+ * the status bar of the window in the foreground.</p>
+ *
+ * @author Maxence Bernard
+ * @see VolumeListener
+ */
+public class VolumeService {
+	private static final Logger LOGGER = LoggerFactory.getLogger(VolumeService.class);
+
+	/** Singleton instance */
+	private final static VolumeService instance = new VolumeService();
+
+	/** Number of milliseconds between each refresh of the volumes' free/total space */
+	private final static int SPACE_REFRESH_PERIOD = 6000;
+
+	/** Number of milliseconds after which the space of a volume that is no longer read stops being refreshed */
+	private final static int SPACE_TIME_TO_LIVE = 60000;
+
+	/** Number of milliseconds between each check of the mount table, under Linux */
+	private final static int MOUNT_CHECK_PERIOD = 2000;
+
+	/** Number of milliseconds between each refresh of the volume list, when the mount table cannot be watched */
+	private final static int VOLUMES_REFRESH_PERIOD = 10000;
+
+	/** Number of milliseconds between each refresh of the volumes' extended names and icons, under Windows */
+	private final static int DETAILS_REFRESH_PERIOD = 30000;
+
+	/** Number of folders whose volume path can be cached */
+	private final static int FOLDER_VOLUME_CACHE_CAPACITY = 50;
+
+	/** Mount table of the current process under Linux, which changes whenever a volume is mounted or unmounted */
+	private final static File MOUNT_INFO = new File("/proc/self/mountinfo");
+
+	/** Thread in which all volume I/O is performed */
+	private final ScheduledExecutorService scheduler;
+
+	/** All local volumes */
+	private volatile AbstractFile allVolumes[];
+
+	/** Local volumes to be displayed */
+	private volatile AbstractFile volumes[];
+
+	/** Filters out volumes from the list based on the exclude regexp defined in the configuration, null if the regexp
+	 * is not defined. */
+	private PathFilter volumeFilter;
+
+	/** static FileSystemView instance, has a (non-null) value only under Windows */
+	private FileSystemView fileSystemView;
+
+	/** Extended volume names, resolved only under Windows */
+	private final Map<AbstractFile, String> extendedNames = new ConcurrentHashMap<AbstractFile, String>();
+
+	/** Volume icons */
+	private final Map<AbstractFile, Icon> icons = new ConcurrentHashMap<AbstractFile, Icon>();
+
+	/** Free/total space of the volumes that are being read, keyed by volume path */
+	private final Map<String, VolumeSpace> spaces = new ConcurrentHashMap<String, VolumeSpace>();
+
+	/** Caches the volume path of folders, keyed by folder URL */
+	private final LRUCache<String, String> folderVolumes = new FastLRUCache<String, String>(FOLDER_VOLUME_CACHE_CAPACITY);
+
+	/** URLs of the folders whose volume is being resolved */
+	private final Set<String> pendingFolders = Collections.synchronizedSet(new HashSet<String>());
+
+	/** Last known contents of the mount table, accessed only by the scheduler thread */
+	private String mountInfo;
+
+	/** Listeners that are notified of volume changes */
+	private final WeakHashMap<VolumeListener, ?> listeners = new WeakHashMap<VolumeListener, Object>();
+
+	/**
+	 * Private Constructor
+	 */
+	private VolumeService() {
+		if(OsFamily.WINDOWS.isCurrent())
+			fileSystemView = FileSystemView.getFileSystemView();
+
+		try {
+			String excludeRegexp = MuConfigurations.getPreferences().getVariable(MuPreference.VOLUME_EXCLUDE_REGEXP);
+			if(excludeRegexp!=null) {
+				volumeFilter = new RegexpPathFilter(excludeRegexp, true);
+				volumeFilter.setInverted(true);
+			}
+		}
+		catch(PatternSyntaxException e) {
+			LOGGER.info("Invalid regexp for conf variable "+MuPreferences.VOLUME_EXCLUDE_REGEXP, e);
+		}
+
+		// Initialize the volumes list, so that it is readily available
+		setVolumes(LocalFile.getVolumes());
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "VolumeService");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		scheduler.execute(new Runnable() {
+			public void run() {
+				try {
+					if(resolveVolumeDetails(false))
+						fireVolumesChanged();
+				}
+				catch(Exception e) {
+					LOGGER.debug("Caught exception while resolving volume names and icons", e);
+				}
+			}
+		});
+
+		if(OsFamily.LINUX.isCurrent() && MOUNT_INFO.exists()) {
+			scheduler.execute(new Runnable() {
+				public void run() {
+					mountInfo = readMountInfo();
+				}
+			});
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						checkMountInfo();
+					}
+					catch(Exception e) {
+						LOGGER.debug("Caught exception while checking the mount table", e);
+					}
+				}
+			}, MOUNT_CHECK_PERIOD, MOUNT_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+		}
+		else {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						refreshVolumes(false);
+					}
+					catch(Exception e) {
+						LOGGER.debug("Caught exception while refreshing volumes", e);
+					}
+				}
+			}, VOLUMES_REFRESH_PERIOD, VOLUMES_REFRESH_PERIOD, TimeUnit.MILLISECONDS);
+		}
+
+		if(fileSystemView!=null) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						if(resolveVolumeDetails(true))
+							fireVolumesChanged();
+					}
+					catch(Exception e) {
+						LOGGER.debug("Caught exception while resolving volume names and icons", e);
+					}
+				}
+			}, DETAILS_REFRESH_PERIOD, DETAILS_REFRESH_PERIOD, TimeUnit.MILLISECONDS);
+		}
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					refreshSpaces();
+				}
+				catch(Exception e) {
+					LOGGER.debug("Caught exception while refreshing volume space", e);
+				}
+			}
+		}, SPACE_REFRESH_PERIOD, SPACE_REFRESH_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	public static VolumeService Instance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the list of volumes to be displayed. The raw list of volumes is fetched using
+	 * {@link LocalFile#getVolumes()} and then filtered using the regexp defined in the
+	 * {@link MuPreferences#VOLUME_EXCLUDE_REGEXP} configuration variable (if defined).
+	 *
+	 * <p>This method does not block: the last known list is returned.</p>
+	 *
+	 * @return the list of volumes to be displayed
+	 */
+	public AbstractFile[] getVolumes() {
+		return volumes;
+	}
+
+	/**
+	 * Returns the list of all local volumes, as returned by {@link LocalFile#getVolumes()}.
+	 *
+	 * <p>This method does not block: the last known list is returned.</p>
+	 *
+	 * @return the list of all local volumes
+	 */
+	public AbstractFile[] getAllVolumes() {
+		return allVolumes;
+	}
+
+	/**
+	 * Returns the extended name of the given volume, e.g. "Local Disk (C:)" for C:\. Extended names are available
+	 * only under Windows.
+	 *
+	 * @param volume one of the volumes returned by {@link #getVolumes()}
+	 * @return the extended name of the given volume, <code>null</code> if it is not available (yet)
+	 */
+	public String getExtendedName(AbstractFile volume) {
+		return extendedNames.get(volume);
+	}
+
+	/**
+	 * Returns the system icon of the given volume, only if system icons are available on the current platform.
+	 *
+	 * @param volume one of the volumes returned by {@link #getVolumes()}
+	 * @return the system icon of the given volume, <code>null</code> if it is not available (yet)
+	 */
+	public Icon getIcon(AbstractFile volume) {
+		return icons.get(volume);
+	}
+
+	/**
+	 * Returns the total and free space of the volume on which the given folder is located, in this order, or
+	 * <code>null</code> if the information has not been retrieved yet, in which case it will be, and listeners will
+	 * be notified. Total/free values are <code>-1</code> if the information is not available.
+	 *
+	 * <p>This method does not block. As long as it keeps being called for a volume, the volume's space is refreshed
+	 * periodically.</p>
+	 *
+	 * @param folder a folder
+	 * @return the total and free space of the folder's volume, <code>null</code> if it is not known yet
+	 */
+	public long[] getVolumeSpace(final AbstractFile folder) {
+		final String folderKey = folder.getURL().toString(false);
+
+		String volumePath = folderVolumes.get(folderKey);
+		VolumeSpace space = volumePath==null?null:spaces.get(volumePath);
+		if(space==null) {
+			// Resolve the folder's volume and retrieve its space in the background, unless it already is
+			if(pendingFolders.add(folderKey)) {
+				scheduler.execute(new Runnable() {
+					public void run() {
+						try {
+							resolveVolumeSpace(folder, folderKey);
+						}
+						catch(Exception e) {
+							LOGGER.debug("Caught exception while resolving the volume of "+folder, e);
+						}
+						finally {
+							pendingFolders.remove(folderKey);
+						}
+					}
+				});
+			}
+
+			return null;
+		}
+
+		return space.read();
+	}
+
+	/**
+	 * Adds the specified VolumeListener to the list of registered listeners.
+	 *
+	 * <p>Listeners are stored as weak references so {@link #removeVolumeListener(VolumeListener)}
+	 * doesn't need to be called for listeners to be garbage collected when they're not used anymore.</p>
+	 *
+	 * @param listener the VolumeListener to add to the list of registered listeners.
+	 */
+	public void addVolumeListener(VolumeListener listener) {
+		synchronized(listeners) {
+			listeners.put(listener, null);
+		}
+	}
+
+	/**
+	 * Removes the specified VolumeListener from the list of registered listeners.
+	 *
+	 * @param listener the VolumeListener to remove from the list of registered listeners.
+	 */
+	public void removeVolumeListener(VolumeListener listener) {
+		synchronized(listeners) {
+			listeners.remove(listener);
+		}
+	}
+
+	/////////////////////////////////////////////////////
+	// Methods called only from the scheduler's thread //
+	/////////////////////////////////////////////////////
+
+	private void setVolumes(AbstractFile newVolumes[]) {
+		allVolumes = newVolumes;
+		volumes = volumeFilter==null?newVolumes:volumeFilter.filter(newVolumes);
+	}
+
+	/**
+	 * Refreshes the volume list, notifying listeners if it has changed. If it has, the extended names and icons of all
+	 * volumes are resolved again, as a volume may have been replaced by another one at the same path.
+	 *
+	 * @param refreshDetails if <code>true</code>, the extended names and icons of all volumes are resolved again even
+	 * if the volume list has not changed
+	 */
+	private void refreshVolumes(boolean refreshDetails) {
+		AbstractFile newVolumes[] = LocalFile.getVolumes();
+		boolean volumesChanged = !Arrays.equals(newVolumes, allVolumes);
+		if(volumesChanged) {
+			LOGGER.debug("Volumes have changed");
+			setVolumes(newVolumes);
+			// Folders may now be located on a different volume
+			folderVolumes.clearAll();
+		}
+
+		if(resolveVolumeDetails(refreshDetails || volumesChanged) || volumesChanged)
+			fireVolumesChanged();
+	}
+
+	/**
+	 * Resolves the extended names and icons of the volumes to be displayed. These are slow to retrieve.
+	 *
+	 * @param all if <code>true</code>, the names and icons of all volumes are resolved, if not, only those of the
+	 * volumes that have none yet
+	 * @return <code>true</code> if any name or icon has been resolved
+	 */
+	private boolean resolveVolumeDetails(boolean all) {
+		AbstractFile displayedVolumes[] = volumes;
+		boolean resolved = false;
+		boolean hasSystemIcons = FileIcons.hasProperSystemIcons();
+
+		for(AbstractFile volume : displayedVolumes) {
+			// Under Windows, show the extended drive name (e.g. "Local Disk (C:)" instead of just "C:")
+			if(fileSystemView!=null && (all || !extendedNames.containsKey(volume))) {
+				extendedNames.put(volume, getExtendedDriveName(volume));
+				resolved = true;
+			}
+
+			// Set system icon for volumes, only if system icons are available on the current platform
+			if(hasSystemIcons && (all || !icons.containsKey(volume))) {
+				Icon icon = FileIcons.getSystemFileIcon(volume);
+				if(icon!=null) {
+					icons.put(volume, icon);
+					resolved = true;
+				}
+			}
+		}
+
+		return resolved;
+	}
+
+	/**
+	 * Returns the extended name of the given local file, e.g. "Local Disk (C:)" for C:\. The returned value is
+	 * interesting only under Windows. This method is I/O bound and very slow.
+	 *
+	 * @param localFile the file for which to return the extended name
+	 * @return the extended name of the given local file
+	 */
+	private String getExtendedDriveName(AbstractFile localFile) {
+		// Note: fileSystemView.getSystemDisplayName(java.io.File) is unfortunately very very slow
+		String name = fileSystemView.getSystemDisplayName((java.io.File)localFile.getUnderlyingFileObject());
+
+		if(name==null || name.equals(""))   // This happens for CD/DVD drives when they don't contain any disc
+			return localFile.getName();
+
+		return name;
+	}
+
+	/**
+	 * Refreshes the volume list if the mount table has changed since it was last checked.
+	 */
+	private void checkMountInfo() {
+		String newMountInfo = readMountInfo();
+		if(newMountInfo==null || newMountInfo.equals(mountInfo))
+			return;
+
+		LOGGER.debug("Mount table has changed");
+		mountInfo = newMountInfo;
+
+		// A different volume may now be mounted on the same path
+		spaces.clear();
+		folderVolumes.clearAll();
+
+		refreshVolumes(true);
+		fireVolumeSpaceChanged();
+	}
+
+	/**
+	 * Returns the contents of the mount table, <code>null</code> if it could not be read.
+	 */
+	private static String readMountInfo() {
+		Reader reader = null;
+		try {
+			reader = new InputStreamReader(new FileInputStream(MOUNT_INFO), "UTF-8");
+			StringBuilder sb = new StringBuilder();
+			char buffer[] = new char[4096];
+			int nbRead;
+			while((nbRead=reader.read(buffer))!=-1)
+				sb.append(buffer, 0, nbRead);
+
+			return sb.toString();
+		}
+		catch(IOException e) {
+			LOGGER.debug("Could not read "+MOUNT_INFO, e);
+			return null;
+		}
+		finally {
+			if(reader!=null) {
+				try { reader.close(); }
+				catch(IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Resolves the volume of the given folder, retrieving the volume's space if it is not known yet, and notifies
+	 * listeners.
+	 */
+	private void resolveVolumeSpace(AbstractFile folder, String folderKey) {
+		String volumePath = folder.exists()?folder.getVolume().getAbsolutePath(true):"";
+
+		if(!spaces.containsKey(volumePath)) {
+			VolumeSpace space = new VolumeSpace(folder);
+			space.refresh();
+			spaces.put(volumePath, space);
+		}
+		folderVolumes.add(folderKey, volumePath);
+
+		fireVolumeSpaceChanged();
+	}
+
+	/**
+	 * Refreshes the space of the volumes that have been read recently, and forgets about the others.
+	 */
+	private void refreshSpaces() {
+		if(spaces.isEmpty())
+			return;
+
+		long now = System.currentTimeMillis();
+		Iterator<VolumeSpace> iterator = spaces.values().iterator();
+		while(iterator.hasNext()) {
+			VolumeSpace space = iterator.next();
+			if(now-space.lastRead>SPACE_TIME_TO_LIVE)
+				iterator.remove();
+			else
+				space.refresh();
+		}
+
+		fireVolumeSpaceChanged();
+	}
+
+	private VolumeListener[] getListeners() {
+		synchronized(listeners) {
+			return listeners.keySet().toArray(new VolumeListener[listeners.size()]);
+		}
+	}
+
+	private void fireVolumesChanged() {
+		for(VolumeListener listener : getListeners())
+			listener.volumesChanged();
+	}
+
+	private void fireVolumeSpaceChanged() {
+		for(VolumeListener listener : getListeners())
+			listener.volumeSpaceChanged();
+	}
+
+	///////////////////
+	// Inner classes //
+	///////////////////
+
+	/**
+	 * Free and total space of a volume.
+	 */
+	private static class VolumeSpace {
+
+		/** Folder located on the volume, used to retrieve its space */
+		private final AbstractFile folder;
+
+		/** Total and free space, in this order */
+		private volatile long space[] = {-1, -1};
+
+		/** Last time the space was read */
+		private volatile long lastRead = System.currentTimeMillis();
+
+		private VolumeSpace(AbstractFile folder) {
+			this.folder = folder;
+		}
+
+		private long[] read() {
+			lastRead = System.currentTimeMillis();
+			return space;
+		}
+
+		/**
+		 * Retrieves the free and total space of the volume. This method is I/O bound.
+		 */
+		private void refresh() {
+			// Free space on current volume, -1 if this information is not available
+			long volumeFree;
+			// Total space on current volume, -1 if this information is not available
+			long volumeTotal;
+
+			// Folder is a local file and Java version is 1.5: call getVolumeInfo() instead of
+			// separate calls to getFreeSpace() and getTotalSpace() as it is twice as fast.
+			if(folder instanceof LocalFile && JavaVersion.JAVA_1_5.isCurrentOrLower()) {
+				try {
+					long volumeInfo[] = ((LocalFile)folder).getVolumeInfo();
+					volumeTotal = volumeInfo[0];
+					volumeFree = volumeInfo[1];
+				}
+				catch(IOException e) {
+					volumeTotal = -1;
+					volumeFree = -1;
+				}
+			}
+			// Java 1.6 and up or any other file type
+			else {
+				try { volumeFree = folder.getFreeSpace(); }
+				catch(IOException e) { volumeFree = -1; }
+
+				try { volumeTotal = folder.getTotalSpace(); }
+				catch(IOException e) { volumeTotal = -1; }
+			}
+
+			space = new long[]{volumeTotal, volumeFree};
+		}
+	}
+}
@@ -18,6 +18,8 @@
 
 package com.mucommander.desktop;
 
+import java.util.List;
+
 import com.mucommander.commons.file.AbstractFile;
 
 /**
@@ -55,6 +57,26 @@ public abstract class AbstractTrash {
      */
     public abstract boolean moveToTrash(AbstractFile file);
 
+    /**
+     * Attempts to move the given files to the trash and returns <code>true</code> if all files could be moved
+     * successfully.
+     *
+     * <p>This implementation calls {@link #moveToTrash(AbstractFile)} for each file. Implementations that can move
+     * several files at once should override it.</p>
+     *
+     * @param files the files to move to the trash
+     * @return true if all files could successfully be moved to the trash
+     */
+    public boolean moveToTrash(List<AbstractFile> files) {
+        boolean success = true;
+        for(AbstractFile file : files) {
+            if(!moveToTrash(file))
+                success = false;
+        }
+
+        return success;
+    }
+
     /**
      * Returns <code>true</code> if this trash can be emptied.
      *
@@ -23,6 +23,7 @@ import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.InformationDialog;
 import com.mucommander.ui.main.WindowManager;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
 
@@ -33,8 +34,9 @@ import java.util.Vector;
  * When {@link #moveToTrash(com.mucommander.commons.file.AbstractFile)} is called, the file is added to a queue.
  * The file is not moved to the trash immediately: the trash will wait a period of {@link #QUEUE_PERIOD} milliseconds
  * for additional files to be added. If files were added during that period, the trash will wait another period and
- * so on. When no more files are added were added during the period, {@link #moveToTrash(java.util.Vector)} is called
- * with the list of queued files to move to the trash.
+ * so on. When no more files are added were added during the period, {@link #moveQueuedFilesToTrash(java.util.List)} is
+ * called with the list of queued files to move to the trash. {@link #moveToTrash(java.util.List)} queues several files at
+ * once.
  * </p>
  *
  * <p>
@@ -69,7 +71,7 @@ public abstract class QueuedTrash extends AbstractTrash {
      * @param queuedFiles a Vector of AbstractFile to move to the trash
      * @return true if all files were moved successfully
      */
-    protected abstract boolean moveToTrash(List<AbstractFile> queuedFiles);
+    protected abstract boolean moveQueuedFilesToTrash(List<AbstractFile> queuedFiles);
 
 
     //////////////////////////////////
@@ -93,16 +95,47 @@ public abstract class QueuedTrash extends AbstractTrash {
             // Queue the given file
             queuedFiles.add(file);
 
-            // Create a new thread and start it if one isn't already running
-            if(moveToTrashThread ==null) {
-                moveToTrashThread = new MoveToTrashThread();
-                moveToTrashThread.start();
-            }
+            startMoveToTrashThread();
         }
 
         return true;
     }
 
+    /**
+     * Implementation notes: this method adds the given files to the queue of files to be moved to the trash at once,
+     * and returns immediately, like {@link #moveToTrash(com.mucommander.commons.file.AbstractFile)} does. The files
+     * for which {@link #canMoveToTrash(com.mucommander.commons.file.AbstractFile)} returns <code>false</code> are not
+     * queued, and <code>false</code> is returned if there is any.
+     */
+    @Override
+    public boolean moveToTrash(List<AbstractFile> files) {
+        List<AbstractFile> filesToQueue = new ArrayList<AbstractFile>(files.size());
+        for(AbstractFile file : files) {
+            if(canMoveToTrash(file))
+                filesToQueue.add(file);
+        }
+
+        if(!filesToQueue.isEmpty()) {
+            synchronized(moveToTrashLock) {
+                queuedFiles.addAll(filesToQueue);
+
+                startMoveToTrashThread();
+            }
+        }
+
+        return filesToQueue.size()==files.size();
+    }
+
+    /**
+     * Creates a new thread and starts it if one isn't already running. Must be called while holding the lock.
+     */
+    private void startMoveToTrashThread() {
+        if(moveToTrashThread ==null) {
+            moveToTrashThread = new MoveToTrashThread();
+            moveToTrashThread.start();
+        }
+    }
+
     @Override
     public void waitForPendingOperations() {
         synchronized(moveToTrashLock) {
@@ -125,7 +158,7 @@ public abstract class QueuedTrash extends AbstractTrash {
      * Performs the actual job of moving files to the trash.
      *
      * <p>The thread starts by waiting {@link com.mucommander.desktop.osx.OSXTrash#QUEUE_PERIOD} milliseconds before moving them to give additional
-     * files a chance to be queued and regrouped as a single call to {@link QueuedTrash#moveToTrash(java.util.List)}.
+     * files a chance to be queued and regrouped as a single call to {@link QueuedTrash#moveQueuedFilesToTrash(java.util.List)}.
      * If more files were queued during that period, the thread will wait an additional {@link com.mucommander.desktop.osx.OSXTrash# QUEUE_PERIOD},
      * and so on.<p>
      */
@@ -146,7 +179,7 @@ public abstract class QueuedTrash extends AbstractTrash {
             while(queueSize!=queuedFiles.size());
 
             synchronized(moveToTrashLock) {     // Files can't be added to queue while files are moved to trash
-                if(!moveToTrash(queuedFiles))
+                if(!moveQueuedFilesToTrash(queuedFiles))
                     InformationDialog.showErrorDialog(WindowManager.getCurrentMainFrame(), Translator.get("delete_dialog.move_to_trash.option"), Translator.get("delete_dialog.move_to_trash.failed"));
 
                 queuedFiles.clear();
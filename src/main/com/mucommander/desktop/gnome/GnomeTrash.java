@@ -252,7 +252,7 @@ public class GnomeTrash extends QueuedTrash {
     }
 
     /**
-     * Implementation of {@link com.mucommander.desktop.QueuedTrash} moveToTrash method.
+     * Implementation of {@link com.mucommander.desktop.QueuedTrash} moveQueuedFilesToTrash method.
      * <p>
      * Try to copy a collection of files to the GNOME's Trash.
      * </p>
@@ -260,7 +260,7 @@ public class GnomeTrash extends QueuedTrash {
      * @return <code>true</code> if movement has been successful or <code>false</code> otherwise
      */
     @Override
-    protected boolean moveToTrash(List<AbstractFile> queuedFiles) {
+    protected boolean moveQueuedFilesToTrash(List<AbstractFile> queuedFiles) {
         int nbFiles = queuedFiles.size();
         String fileInfoContent;
         String trashFileName;
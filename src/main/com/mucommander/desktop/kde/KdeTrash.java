@@ -153,7 +153,7 @@ class KdeTrash extends QueuedTrash {
     ////////////////////////////////
 
     @Override
-    protected boolean moveToTrash(List<AbstractFile> queuedFiles) {
+    protected boolean moveQueuedFilesToTrash(List<AbstractFile> queuedFiles) {
         int nbFiles = queuedFiles.size();
         String tokens[] = new String[nbFiles+3];
 
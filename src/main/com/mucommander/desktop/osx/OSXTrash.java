@@ -181,7 +181,7 @@ public class OSXTrash extends QueuedTrash {
      * </ul>
      */
     @Override
-    protected boolean moveToTrash(List<AbstractFile> queuedFiles) {
+    protected boolean moveQueuedFilesToTrash(List<AbstractFile> queuedFiles) {
         String appleScript;
 
         // Simple script for AppleScript versions with Unicode support, i.e. that allows Unicode characters in the
@@ -125,7 +125,7 @@ public class WindowsTrash extends QueuedTrash {
     ////////////////////////////////
 
     @Override
-    protected boolean moveToTrash(List<AbstractFile> queuedFiles) {
+    protected boolean moveQueuedFilesToTrash(List<AbstractFile> queuedFiles) {
         if(!Shell32.isAvailable())
             return false;
 
@@ -143,7 +143,7 @@ public class XfceTrash extends QueuedTrash {
 	}
 
 	/**
-     * Implementation of {@link com.mucommander.desktop.QueuedTrash} moveToTrash method.
+     * Implementation of {@link com.mucommander.desktop.QueuedTrash} moveQueuedFilesToTrash method.
      * <p>
      * Try to copy a collection of files to the Xfce's Trash.
      * </p>
@@ -151,7 +151,7 @@ public class XfceTrash extends QueuedTrash {
      * @return <code>true</code> if movement has been successful or <code>false</code> otherwise
      */
     @Override
-    protected boolean moveToTrash(List<AbstractFile> queuedFiles) {
+    protected boolean moveQueuedFilesToTrash(List<AbstractFile> queuedFiles) {
         int nbFiles = queuedFiles.size();
         String fileInfoContent;
         String trashFileName;
@@ -0,0 +1,66 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An <code>InputStream</code> whose reads are throttled by a {@link BandwidthLimiter.Share}, so that its throughput
+ * does not exceed the part of the limiter the share is allowed. Large reads are split in chunks that are small enough
+ * for the throughput to be smooth.
+ *
+ * @author Maxence Bernard
+ */
+public class BandwidthLimitInputStream extends FilterInputStream {
+
+    /** The share the bytes read are accounted to */
+    private final BandwidthLimiter.Share share;
+
+    /**
+     * Creates a new <code>BandwidthLimitInputStream</code> reading the given stream, throttled by the given share.
+     *
+     * @param in the underlying stream
+     * @param share the share the bytes read are accounted to
+     */
+    public BandwidthLimitInputStream(InputStream in, BandwidthLimiter.Share share) {
+        super(in);
+        this.share = share;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if(b!=-1)
+            share.acquire(1);
+
+        return b;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        int nbRead = in.read(b, off, Math.min(len, share.getChunkSize()));
+        if(nbRead>0)
+            share.acquire(nbRead);
+
+        return nbRead;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * Limits the throughput shared by several transfers, for instance by all the jobs that copy files to a same host.
+ * A limiter is {@link #getLimiter(AbstractFile) shared} by the transfers to a same host, or to a same volume for
+ * local files.
+ *
+ * <p>Each transfer holds a {@link Share} of the limiter, which has a weight and optionally a throughput limit of its
+ * own. The limiter's throughput is divided between the shares that are active, i.e. that have transferred data within
+ * the last second, in proportion to their weight ; a share whose own limit is lower than its part leaves the
+ * difference to the other shares. Each share is then throttled like a token bucket filling at the rate of its part:
+ * a share that was idle may transfer a short burst at once, after which it is made to wait for the bytes it
+ * transfers.</p>
+ *
+ * <p>Both the limiter's throughput limit and the shares' weights and limits can be changed at any time, the new
+ * parts are effective as of the next bytes transferred.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class BandwidthLimiter {
+
+    /** Time after which a share that has not transferred anything no longer counts, in nanoseconds */
+    final static long ACTIVE_PERIOD = 1000000000L;
+
+    /** Time a share may transfer at once after being idle, in nanoseconds */
+    final static long BURST_PERIOD = 100000000L;
+
+    /** Minimum number of bytes a share is throttled for at once */
+    private final static int MIN_CHUNK_SIZE = 8*1024;
+
+    /** Limiters shared by the transfers to a same host or volume, by key */
+    private final static Map<String, BandwidthLimiter> limiters = new HashMap<String, BandwidthLimiter>();
+
+    /** Sorts shares by increasing limit per unit of weight, unlimited shares last */
+    private final static Comparator<Share> LIMIT_COMPARATOR = new Comparator<Share>() {
+        public int compare(Share share1, Share share2) {
+            return Double.compare(share1.getLimitPerWeight(), share2.getLimitPerWeight());
+        }
+    };
+
+    /**
+     * Source of the time the limiter works with, replaced by a deterministic clock in tests.
+     */
+    interface Clock {
+        /**
+         * Returns the current time in nanoseconds, relative to an arbitrary origin.
+         */
+        long nanoTime();
+    }
+
+    /** Clock based on {@link System#nanoTime()} */
+    private final static Clock SYSTEM_CLOCK = new Clock() {
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final Clock clock;
+
+    /** Throughput limit shared by all the shares in bytes per second, -1 for no limit */
+    private long throughputLimit = -1;
+
+    /** Shares of this limiter, active or not */
+    private final List<Share> shares = new ArrayList<Share>();
+
+    /**
+     * Creates a new limiter with no throughput limit, working with the given clock.
+     *
+     * @param clock the clock this limiter works with
+     */
+    BandwidthLimiter(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the limiter shared by the transfers to the host of the given folder, or to its volume if it is a local
+     * folder. The limiter is created if it does not exist yet.
+     *
+     * @param folder the folder files are transferred to, may be <code>null</code>
+     * @return the limiter shared by the transfers to the same host or volume
+     */
+    public static BandwidthLimiter getLimiter(AbstractFile folder) {
+        String key = folder==null?"":getKey(folder);
+
+        synchronized(limiters) {
+            BandwidthLimiter limiter = limiters.get(key);
+            if(limiter==null) {
+                limiter = new BandwidthLimiter(SYSTEM_CLOCK);
+                limiters.put(key, limiter);
+            }
+            return limiter;
+        }
+    }
+
+    /**
+     * Returns the key of the limiter of the given folder: its scheme and host if it is a remote folder, the URL of its
+     * volume otherwise.
+     */
+    private static String getKey(AbstractFile folder) {
+        FileURL url = folder.getURL();
+        String host = url.getHost();
+        if(host!=null && host.length()>0 && !FileProtocols.FILE.equals(url.getScheme()))
+            return url.getScheme()+"://"+host;
+
+        AbstractFile volume = folder.getVolume();
+        return (volume==null?folder:volume).getURL().toString(false);
+    }
+
+    /**
+     * Sets the throughput limit shared by all the shares of this limiter, in bytes per second. <code>0</code> or
+     * <code>-1</code> disables the limit, leaving only the shares' own limits.
+     *
+     * @param bytesPerSecond the throughput limit in bytes per second, 0 or -1 for no limit
+     */
+    public synchronized void setThroughputLimit(long bytesPerSecond) {
+        this.throughputLimit = bytesPerSecond<=0?-1:bytesPerSecond;
+        updateRates(clock.nanoTime());
+    }
+
+    /**
+     * Returns the throughput limit shared by all the shares of this limiter, in bytes per second, <code>-1</code> if
+     * there is no limit.
+     *
+     * @return the throughput limit in bytes per second, -1 for no limit
+     */
+    public synchronized long getThroughputLimit() {
+        return throughputLimit;
+    }
+
+    /**
+     * Adds a new share to this limiter. The share counts once it starts transferring data, and until it is
+     * {@link Share#remove() removed}.
+     *
+     * @param weight the weight of the share relatively to the other shares, at least 1
+     * @return the new share
+     */
+    public synchronized Share addShare(int weight) {
+        Share share = new Share(weight);
+        shares.add(share);
+        return share;
+    }
+
+    /**
+     * Divides the throughput limit between the active shares, in proportion to their weight and within their own
+     * limit. Shares are considered by increasing limit per unit of weight: as long as a share's limit is lower than its
+     * part of what is left, it gets its limit, and the shares that follow divide the rest.
+     */
+    private void updateRates(long now) {
+        List<Share> activeShares = new ArrayList<Share>();
+        int totalWeight = 0;
+        for(Share share : shares) {
+            share.rate = share.throughputLimit;
+            if(share.isActive(now)) {
+                activeShares.add(share);
+                totalWeight += share.weight;
+            }
+        }
+
+        if(throughputLimit<=0)
+            return;
+
+        Collections.sort(activeShares, LIMIT_COMPARATOR);
+
+        long remaining = throughputLimit;
+        for(Share share : activeShares) {
+            long part = remaining*share.weight/totalWeight;
+            share.rate = Math.max(1, share.throughputLimit>0?Math.min(share.throughputLimit, part):part);
+            remaining = Math.max(0, remaining-share.rate);
+            totalWeight -= share.weight;
+        }
+    }
+
+    /**
+     * Blocks for the given time, in nanoseconds. Interruptions cut the wait short.
+     */
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(nanos/1000000, (int)(nanos%1000000));
+        }
+        catch(InterruptedException e) {
+            // Carry on
+        }
+    }
+
+
+    /**
+     * The part of a {@link BandwidthLimiter} used by a transfer.
+     */
+    public class Share {
+
+        /** Weight of this share relatively to the other shares */
+        private int weight;
+
+        /** Throughput limit of this share in bytes per second, -1 for no limit */
+        private long throughputLimit = -1;
+
+        /** Throughput this share is currently allowed in bytes per second, -1 for no limit */
+        private long rate = -1;
+
+        /** Time at which the bytes reserved so far have been paid for, in nanoseconds */
+        private long nextFreeTime;
+
+        /** Last time this share transferred data, in nanoseconds */
+        private long lastActivityTime;
+
+        /** True once this share has transferred data */
+        private boolean started;
+
+        /** True once this share has been removed from its limiter */
+        private boolean removed;
+
+        private Share(int weight) {
+            this.weight = Math.max(1, weight);
+        }
+
+        private boolean isActive(long now) {
+            return started && !removed && now-lastActivityTime<ACTIVE_PERIOD;
+        }
+
+        private double getLimitPerWeight() {
+            return throughputLimit<=0?Double.MAX_VALUE:throughputLimit/(double)weight;
+        }
+
+        /**
+         * Accounts for the given number of bytes, and returns the time the caller must wait before transferring them
+         * for this share not to exceed its part, in nanoseconds.
+         *
+         * @param nbBytes number of bytes to transfer
+         * @return the time to wait before transferring the bytes, in nanoseconds
+         */
+        public long reserve(long nbBytes) {
+            synchronized(BandwidthLimiter.this) {
+                if(removed)
+                    return 0;
+
+                long now = clock.nanoTime();
+                started = true;
+                lastActivityTime = now;
+                updateRates(now);
+
+                if(rate<=0)
+                    return 0;
+
+                long start = Math.max(nextFreeTime, now-BURST_PERIOD);
+                nextFreeTime = start + (long)(nbBytes*1000000000d/rate);
+
+                return Math.max(0, start-now);
+            }
+        }
+
+        /**
+         * Accounts for the given number of bytes, blocking as long as needed for this share not to exceed its part.
+         *
+         * @param nbBytes number of bytes transferred or to transfer
+         */
+        public void acquire(long nbBytes) {
+            long delay = reserve(nbBytes);
+            if(delay>0)
+                sleep(delay);
+        }
+
+        /**
+         * Returns the number of bytes that should be transferred at once, for a transfer not to be throttled in bursts
+         * that are too long to be smooth, {@link Integer#MAX_VALUE} if this share is not limited.
+         *
+         * @return the number of bytes that should be transferred at once
+         */
+        public int getChunkSize() {
+            synchronized(BandwidthLimiter.this) {
+                return rate<=0?Integer.MAX_VALUE:(int)Math.max(MIN_CHUNK_SIZE, Math.min(Integer.MAX_VALUE, rate/4));
+            }
+        }
+
+        /**
+         * Returns the throughput this share is currently allowed in bytes per second, <code>-1</code> if it is not
+         * limited.
+         *
+         * @return the throughput this share is allowed in bytes per second, -1 for no limit
+         */
+        public long getRate() {
+            synchronized(BandwidthLimiter.this) {
+                return rate;
+            }
+        }
+
+        /**
+         * Sets the weight of this share relatively to the other shares.
+         *
+         * @param weight the weight of this share, at least 1
+         */
+        public void setWeight(int weight) {
+            synchronized(BandwidthLimiter.this) {
+                this.weight = Math.max(1, weight);
+                updateRates(clock.nanoTime());
+            }
+        }
+
+        /**
+         * Sets the throughput limit of this share, in bytes per second. <code>0</code> or <code>-1</code> disables the
+         * limit, leaving only the limiter's.
+         *
+         * @param bytesPerSecond the throughput limit in bytes per second, 0 or -1 for no limit
+         */
+        public void setThroughputLimit(long bytesPerSecond) {
+            synchronized(BandwidthLimiter.this) {
+                this.throughputLimit = bytesPerSecond<=0?-1:bytesPerSecond;
+                updateRates(clock.nanoTime());
+            }
+        }
+
+        /**
+         * Removes this share from its limiter, leaving its part to the other shares. This share no longer limits
+         * anything once removed.
+         */
+        public void remove() {
+            synchronized(BandwidthLimiter.this) {
+                removed = true;
+                shares.remove(this);
+                updateRates(clock.nanoTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.io;
+
+/**
+ * Combines the CRC32 checksums of consecutive blocks of data into the checksum of their concatenation, without
+ * reading the data again. This allows the checksum of a file to be calculated from the checksums of parts of it that
+ * were read concurrently, or in a different order.
+ *
+ * <p>The checksum of the second block is appended to that of the first one by feeding as many zero bits as there are
+ * bits in the second block to the CRC register ; this is done in logarithmic time by squaring the matrix of the
+ * 'zero bit' operator over GF(2), like zlib's <code>crc32_combine</code> does.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class CRC32Combiner {
+
+    /** Reversed CRC-32 polynomial, as used by {@link java.util.zip.CRC32} */
+    private final static long POLYNOMIAL = 0xedb88320L;
+
+    /** Number of bits in a CRC32 checksum */
+    private final static int GF2_DIM = 32;
+
+    /**
+     * Returns the CRC32 checksum of the concatenation of two blocks of data, given the checksums of both blocks and the
+     * length of the second one.
+     *
+     * @param crc1 checksum of the first block
+     * @param crc2 checksum of the second block
+     * @param length2 length of the second block, in bytes
+     * @return the checksum of the first block followed by the second block
+     */
+    public static long combine(long crc1, long crc2, long length2) {
+        if(length2<=0)
+            return crc1;
+
+        long even[] = new long[GF2_DIM];    // operator for an even power of two zero bits
+        long odd[] = new long[GF2_DIM];     // operator for an odd power of two zero bits
+
+        // Operator for one zero bit
+        odd[0] = POLYNOMIAL;
+        long row = 1;
+        for(int n=1; n<GF2_DIM; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        // Operators for two, then four zero bits
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        // Apply length2 zero bytes to crc1, the first squaring yields the operator for one zero byte
+        do {
+            gf2MatrixSquare(even, odd);
+            if((length2&1)!=0)
+                crc1 = gf2MatrixTimes(even, crc1);
+            length2 >>= 1;
+
+            if(length2==0)
+                break;
+
+            gf2MatrixSquare(odd, even);
+            if((length2&1)!=0)
+                crc1 = gf2MatrixTimes(odd, crc1);
+            length2 >>= 1;
+        }
+        while(length2!=0);
+
+        return (crc1^crc2) & 0xffffffffL;
+    }
+
+    /**
+     * Returns the given checksum as an 8 character hexadecimal string, the way checksums are represented in SFV files
+     * and by {@link com.mucommander.commons.io.ChecksumInputStream#getChecksumString()}.
+     *
+     * @param crc a CRC32 checksum
+     * @return the checksum as a hexadecimal string
+     */
+    public static String toHexString(long crc) {
+        return String.format("%08x", crc & 0xffffffffL);
+    }
+
+    private static long gf2MatrixTimes(long matrix[], long vector) {
+        long sum = 0;
+        for(int i=0; vector!=0; i++, vector>>>=1) {
+            if((vector&1)!=0)
+                sum ^= matrix[i];
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long square[], long matrix[]) {
+        for(int n=0; n<GF2_DIM; n++)
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+    }
+}
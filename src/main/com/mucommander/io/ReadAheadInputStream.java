@@ -0,0 +1,281 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.mucommander.commons.io.BufferPool;
+
+/**
+ * An <code>InputStream</code> that reads the underlying stream ahead of its consumer, in a separate thread.
+ *
+ * <p>The reader thread fills a bounded ring of buffers taken from the {@link BufferPool}, which the consumer drains.
+ * When the consumer writes what it reads to a slow destination, the latency of the source is thus overlapped with
+ * that of the destination, instead of the two alternating. The reader blocks once the ring is full, the consumer
+ * blocks when it is empty.</p>
+ *
+ * <p>An <code>IOException</code> thrown by the underlying stream is rethrown to the consumer, once the data read
+ * before the error has been consumed. Closing this stream stops the reader thread and closes the underlying stream,
+ * which unblocks the reader if it is blocked in a read.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    /** Default number of buffers in the ring */
+    public final static int DEFAULT_NB_BUFFERS = 16;
+
+    /** Threads reading the underlying streams, shared by all instances */
+    private final static ExecutorService READER_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ReadAheadInputStream reader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** The underlying stream, read by the reader thread only */
+    private final InputStream in;
+
+    /** Maximum number of filled buffers waiting to be consumed */
+    private final int nbBuffers;
+
+    /** Filled buffers waiting to be consumed, in order */
+    private final LinkedList<Chunk> chunks = new LinkedList<Chunk>();
+
+    /** Buffer being consumed, null if none */
+    private Chunk currentChunk;
+
+    /** Position of the next byte to consume in the current buffer */
+    private int currentPos;
+
+    /** Exception thrown by the underlying stream, rethrown to the consumer once the buffers have been consumed */
+    private IOException readerException;
+
+    /** True when the end of the underlying stream has been reached */
+    private boolean eof;
+
+    /** True when this stream has been closed */
+    private boolean closed;
+
+    /**
+     * Creates a new <code>ReadAheadInputStream</code> using the default number of buffers, and starts reading
+     * the given stream.
+     *
+     * @param in the underlying stream
+     */
+    public ReadAheadInputStream(InputStream in) {
+        this(in, DEFAULT_NB_BUFFERS);
+    }
+
+    /**
+     * Creates a new <code>ReadAheadInputStream</code> using the specified number of buffers, and starts reading
+     * the given stream.
+     *
+     * @param in the underlying stream
+     * @param nbBuffers maximum number of filled buffers waiting to be consumed
+     */
+    public ReadAheadInputStream(InputStream in, int nbBuffers) {
+        this.in = in;
+        this.nbBuffers = Math.max(1, nbBuffers);
+
+        READER_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                readAhead();
+            }
+        });
+    }
+
+    /**
+     * Reads the underlying stream until its end, an error, or until this stream is closed.
+     */
+    private void readAhead() {
+        try {
+            while(true) {
+                synchronized(this) {
+                    while(!closed && chunks.size()>=nbBuffers)
+                        waitUninterruptibly();
+
+                    if(closed)
+                        return;
+                }
+
+                byte buffer[] = BufferPool.getByteArray();
+                int nbRead;
+                try {
+                    nbRead = in.read(buffer, 0, buffer.length);
+                }
+                catch(IOException e) {
+                    BufferPool.releaseByteArray(buffer);
+                    throw e;
+                }
+
+                synchronized(this) {
+                    if(closed || nbRead==-1) {
+                        BufferPool.releaseByteArray(buffer);
+                        eof = nbRead==-1;
+                        notifyAll();
+                        return;
+                    }
+
+                    chunks.add(new Chunk(buffer, nbRead));
+                    notifyAll();
+                }
+            }
+        }
+        catch(IOException e) {
+            synchronized(this) {
+                readerException = e;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Makes sure that a buffer is available for consumption, blocking until one is filled if necessary.
+     * Returns <code>false</code> if the end of the stream has been reached.
+     */
+    private synchronized boolean fill() throws IOException {
+        while(currentChunk==null) {
+            if(closed)
+                throw new IOException("Stream closed");
+
+            if(!chunks.isEmpty()) {
+                currentChunk = chunks.removeFirst();
+                currentPos = 0;
+                // Wake the reader up if it is waiting for a free buffer
+                notifyAll();
+                break;
+            }
+
+            if(readerException!=null)
+                throw readerException;
+
+            if(eof)
+                return false;
+
+            waitUninterruptibly();
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases the current buffer if it has been fully consumed.
+     */
+    private void consumed(int nbBytes) {
+        currentPos += nbBytes;
+        if(currentPos>=currentChunk.length) {
+            BufferPool.releaseByteArray(currentChunk.buffer);
+            currentChunk = null;
+        }
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        }
+        catch(InterruptedException e) {
+            // Loop one more time
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public synchronized int read() throws IOException {
+        if(!fill())
+            return -1;
+
+        int b = currentChunk.buffer[currentPos] & 0xFF;
+        consumed(1);
+
+        return b;
+    }
+
+    @Override
+    public synchronized int read(byte b[], int off, int len) throws IOException {
+        if(len==0)
+            return 0;
+
+        if(!fill())
+            return -1;
+
+        int nbBytes = Math.min(len, currentChunk.length-currentPos);
+        System.arraycopy(currentChunk.buffer, currentPos, b, off, nbBytes);
+        consumed(nbBytes);
+
+        return nbBytes;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+        int available = currentChunk==null?0:currentChunk.length-currentPos;
+        for(Chunk chunk : chunks)
+            available += chunk.length;
+
+        return available;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized(this) {
+            if(closed)
+                return;
+
+            closed = true;
+
+            if(currentChunk!=null) {
+                BufferPool.releaseByteArray(currentChunk.buffer);
+                currentChunk = null;
+            }
+
+            for(Chunk chunk : chunks)
+                BufferPool.releaseByteArray(chunk.buffer);
+            chunks.clear();
+
+            notifyAll();
+        }
+
+        // Unblocks the reader if it is blocked reading the underlying stream
+        in.close();
+    }
+
+
+    /**
+     * A buffer filled by the reader, and the number of bytes it contains.
+     */
+    private static class Chunk {
+        private final byte buffer[];
+        private final int length;
+
+        private Chunk(byte buffer[], int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
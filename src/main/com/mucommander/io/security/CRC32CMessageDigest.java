@@ -0,0 +1,111 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io.security;
+
+import java.security.MessageDigest;
+
+/**
+ * A <code>MessageDigest</code> that calculates the CRC-32C (Castagnoli) checksum of the data it is fed, as used by
+ * iSCSI, ext4 or Btrfs. The digest is 4 bytes long, in big-endian order.
+ *
+ * <p>The checksum is calculated eight bytes at a time using the 'slicing-by-8' method, which is several times
+ * faster than the classic byte-wise table lookup.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class CRC32CMessageDigest extends MessageDigest implements Cloneable {
+
+    /** Name of the algorithm */
+    public final static String ALGORITHM = "CRC32C";
+
+    /** The Castagnoli polynomial, in reversed bit order */
+    private final static int POLYNOMIAL = 0x82F63B78;
+
+    /** TABLES[n][b] is the CRC of byte b followed by n zero bytes */
+    private final static int[][] TABLES = new int[8][256];
+
+    static {
+        for(int i=0; i<256; i++) {
+            int crc = i;
+            for(int j=0; j<8; j++)
+                crc = (crc>>>1)^((crc&1)==0?0:POLYNOMIAL);
+            TABLES[0][i] = crc;
+        }
+
+        for(int n=1; n<8; n++) {
+            for(int i=0; i<256; i++)
+                TABLES[n][i] = (TABLES[n-1][i]>>>8)^TABLES[0][TABLES[n-1][i]&0xFF];
+        }
+    }
+
+    /** The current CRC, inverted */
+    private int crc = 0xFFFFFFFF;
+
+    public CRC32CMessageDigest() {
+        super(ALGORITHM);
+    }
+
+
+    //////////////////////////////////
+    // MessageDigest implementation //
+    //////////////////////////////////
+
+    @Override
+    protected void engineUpdate(byte input) {
+        crc = (crc>>>8)^TABLES[0][(crc^input)&0xFF];
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        int crc = this.crc;
+
+        while(len>=8) {
+            crc ^= (input[offset]&0xFF) | (input[offset+1]&0xFF)<<8 | (input[offset+2]&0xFF)<<16 | (input[offset+3]&0xFF)<<24;
+            crc = t7[crc&0xFF]^t6[(crc>>>8)&0xFF]^t5[(crc>>>16)&0xFF]^t4[crc>>>24]
+                ^t3[input[offset+4]&0xFF]^t2[input[offset+5]&0xFF]^t1[input[offset+6]&0xFF]^t0[input[offset+7]&0xFF];
+            offset += 8;
+            len -= 8;
+        }
+
+        while(len-->0)
+            crc = (crc>>>8)^t0[(crc^input[offset++])&0xFF];
+
+        this.crc = crc;
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        int value = ~crc;
+        engineReset();
+
+        return new byte[] {(byte)(value>>>24), (byte)(value>>>16), (byte)(value>>>8), (byte)value};
+    }
+
+    @Override
+    protected void engineReset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 4;
+    }
+}
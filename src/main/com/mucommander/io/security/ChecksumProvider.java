@@ -0,0 +1,59 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io.security;
+
+import java.security.Provider;
+import java.security.Security;
+
+/**
+ * A security <code>Provider</code> that registers the <code>MessageDigest</code> implementations of this package,
+ * which complement those registered by {@link com.mucommander.commons.io.security.MuProvider}:
+ * <ul>
+ *   <li>{@link CRC32CMessageDigest#ALGORITHM CRC32C}</li>
+ *   <li>{@link XXHash64MessageDigest#ALGORITHM XXH64}</li>
+ * </ul>
+ *
+ * <p>{@link #registerProvider()} must be called once for the algorithms to be available through
+ * <code>MessageDigest.getInstance()</code>.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class ChecksumProvider extends Provider {
+
+    /** True if this provider has already been registered */
+    private static boolean registered;
+
+    private ChecksumProvider() {
+        super("muCommander checksums", 1.0, "Fast non-cryptographic checksums used by muCommander");
+
+        put("MessageDigest."+CRC32CMessageDigest.ALGORITHM, CRC32CMessageDigest.class.getName());
+        put("MessageDigest."+XXHash64MessageDigest.ALGORITHM, XXHash64MessageDigest.class.getName());
+    }
+
+    /**
+     * Registers this provider with the <code>java.security.Security</code> class, if it hasn't been registered already.
+     */
+    public static synchronized void registerProvider() {
+        if(registered)
+            return;
+
+        Security.addProvider(new ChecksumProvider());
+        registered = true;
+    }
+}
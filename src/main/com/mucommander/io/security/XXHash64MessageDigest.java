@@ -0,0 +1,209 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io.security;
+
+import java.security.MessageDigest;
+
+/**
+ * A <code>MessageDigest</code> that calculates the 64-bit xxHash (XXH64) of the data it is fed, with a seed of
+ * <code>0</code>. The digest is 8 bytes long, in big-endian order, like the canonical representation of XXH64.
+ *
+ * <p>xxHash is a non-cryptographic hash that processes 32 bytes per round in four independent lanes: it is one of
+ * the fastest checksums that can be calculated in Java, and has a much lower collision rate than CRC-32 or
+ * Adler-32.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class XXHash64MessageDigest extends MessageDigest implements Cloneable {
+
+    /** Name of the algorithm */
+    public final static String ALGORITHM = "XXH64";
+
+    private final static long PRIME1 = 0x9E3779B185EBCA87L;
+    private final static long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private final static long PRIME3 = 0x165667B19E3779F9L;
+    private final static long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private final static long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /** Accumulators of the four lanes */
+    private long v1, v2, v3, v4;
+
+    /** Bytes that do not fill a 32-byte stripe yet */
+    private byte[] buffer = new byte[32];
+
+    /** Number of bytes in the buffer */
+    private int bufferSize;
+
+    /** Total number of bytes fed so far */
+    private long totalLength;
+
+    public XXHash64MessageDigest() {
+        super(ALGORITHM);
+        engineReset();
+    }
+
+    private static long round(long acc, long input) {
+        acc += input*PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc*PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc*PRIME1+PRIME4;
+    }
+
+    private static long readLong(byte[] b, int offset) {
+        return (b[offset]&0xFFL) | (b[offset+1]&0xFFL)<<8 | (b[offset+2]&0xFFL)<<16 | (b[offset+3]&0xFFL)<<24
+            | (b[offset+4]&0xFFL)<<32 | (b[offset+5]&0xFFL)<<40 | (b[offset+6]&0xFFL)<<48 | (b[offset+7]&0xFFL)<<56;
+    }
+
+    private static long readInt(byte[] b, int offset) {
+        return (b[offset]&0xFFL) | (b[offset+1]&0xFFL)<<8 | (b[offset+2]&0xFFL)<<16 | (b[offset+3]&0xFFL)<<24;
+    }
+
+    /**
+     * Processes the 32-byte stripes starting at the given offset, and returns the number of bytes processed.
+     */
+    private int processStripes(byte[] input, int offset, int len) {
+        long v1 = this.v1, v2 = this.v2, v3 = this.v3, v4 = this.v4;
+        int start = offset;
+
+        while(len>=32) {
+            v1 = round(v1, readLong(input, offset));
+            v2 = round(v2, readLong(input, offset+8));
+            v3 = round(v3, readLong(input, offset+16));
+            v4 = round(v4, readLong(input, offset+24));
+            offset += 32;
+            len -= 32;
+        }
+
+        this.v1 = v1;
+        this.v2 = v2;
+        this.v3 = v3;
+        this.v4 = v4;
+
+        return offset-start;
+    }
+
+
+    //////////////////////////////////
+    // MessageDigest implementation //
+    //////////////////////////////////
+
+    @Override
+    protected void engineUpdate(byte input) {
+        engineUpdate(new byte[]{input}, 0, 1);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        totalLength += len;
+
+        // Complete the stripe started by the previous updates
+        if(bufferSize>0) {
+            int nbBytes = Math.min(len, 32-bufferSize);
+            System.arraycopy(input, offset, buffer, bufferSize, nbBytes);
+            bufferSize += nbBytes;
+            offset += nbBytes;
+            len -= nbBytes;
+
+            if(bufferSize<32)
+                return;
+
+            processStripes(buffer, 0, 32);
+            bufferSize = 0;
+        }
+
+        int nbProcessed = processStripes(input, offset, len);
+        bufferSize = len-nbProcessed;
+        System.arraycopy(input, offset+nbProcessed, buffer, 0, bufferSize);
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long h;
+        if(totalLength>=32) {
+            h = Long.rotateLeft(v1, 1)+Long.rotateLeft(v2, 7)+Long.rotateLeft(v3, 12)+Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        }
+        else {
+            h = PRIME5;
+        }
+
+        h += totalLength;
+
+        int offset = 0;
+        for(; offset+8<=bufferSize; offset+=8) {
+            h ^= round(0, readLong(buffer, offset));
+            h = Long.rotateLeft(h, 27)*PRIME1+PRIME4;
+        }
+
+        if(offset+4<=bufferSize) {
+            h ^= readInt(buffer, offset)*PRIME1;
+            h = Long.rotateLeft(h, 23)*PRIME2+PRIME3;
+            offset += 4;
+        }
+
+        for(; offset<bufferSize; offset++) {
+            h ^= (buffer[offset]&0xFFL)*PRIME5;
+            h = Long.rotateLeft(h, 11)*PRIME1;
+        }
+
+        h ^= h>>>33;
+        h *= PRIME2;
+        h ^= h>>>29;
+        h *= PRIME3;
+        h ^= h>>>32;
+
+        engineReset();
+
+        byte[] digest = new byte[8];
+        for(int i=7; i>=0; i--) {
+            digest[i] = (byte)h;
+            h >>>= 8;
+        }
+        return digest;
+    }
+
+    @Override
+    protected void engineReset() {
+        v1 = PRIME1+PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        bufferSize = 0;
+        totalLength = 0;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 8;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        XXHash64MessageDigest clone = (XXHash64MessageDigest)super.clone();
+        clone.buffer = buffer.clone();
+        return clone;
+    }
+}
@@ -21,13 +21,21 @@ package com.mucommander.job;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractRWArchiveFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
-import com.mucommander.ui.dialog.file.FileCollisionRenameDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class is the parent class of {@link com.mucommander.job.CopyJob} and {@link com.mucommander.job.MoveJob} and
@@ -38,6 +46,7 @@ import java.io.IOException;
  * @see com.mucommander.job.MoveJob
  */
 public abstract class AbstractCopyJob extends TransferFileJob {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractCopyJob.class);
     
     /** Base destination folder */
     protected AbstractFile baseDestFolder;
@@ -53,12 +62,24 @@ public abstract class AbstractCopyJob extends TransferFileJob {
     
     protected boolean append;
     
+    /** Listing of the destination folders, which collisions are checked against */
+    protected final DestinationListing destinationListing = new DestinationListing();
+
     /** The archive that contains the destination files (may be null) */
     protected AbstractRWArchiveFile archiveToOptimize;
 
     /** True when an archive is being optimized */
     protected boolean isOptimizingArchive;
 
+    /** Journal of the unfinished job this job resumes, null if this job does not resume a job */
+    private JobJournal resumedJournal;
+
+    /** Keys of the destination files reserved by {@link #reserveDestination(AbstractFile)} */
+    private final Set<String> reservedDestinations = new HashSet<String>();
+
+    /** Source file whose collision is being resolved by renaming its destination, null if none */
+    private AbstractFile renamedFile;
+
     /**
      * Creates a new <code>AbstractCopyJob</code>.
      *
@@ -78,6 +99,74 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         this.defaultFileExistsAction = fileExistsAction;
     }
 
+    /**
+     * Returns the base destination folder: the bandwidth is shared with the jobs writing to the same host or volume.
+     */
+    @Override
+    protected AbstractFile getBandwidthFolder() {
+        return baseDestFolder!=null?baseDestFolder:super.getBandwidthFolder();
+    }
+
+    /**
+     * Adds the base destination folder to the folders accessed by this job.
+     */
+    @Override
+    protected List<AbstractFile> getAccessedFolders() {
+        List<AbstractFile> folders = super.getAccessedFolders();
+        if(baseDestFolder!=null)
+            folders.add(baseDestFolder);
+        return folders;
+    }
+
+    /**
+     * Makes this job resume the unfinished job recorded in the given journal: files that were transferred already
+     * are skipped, files that were being transferred are resumed. The journal is reused by this job.
+     *
+     * @param journal journal of the unfinished job
+     */
+    void resume(JobJournal journal) {
+        this.resumedJournal = journal;
+    }
+
+    /**
+     * Returns the type of job recorded in the journal of this job, <code>null</code> if this job is not to be
+     * journaled. This implementation returns <code>null</code> ; subclasses that can be resumed by
+     * {@link JobJournal#createJob(ProgressDialog, MainFrame)} override this method.
+     *
+     * @return the type of job recorded in the journal of this job, null if this job is not to be journaled
+     */
+    protected String getJournalType() {
+        return null;
+    }
+
+    /**
+     * Records the parameters this job was created with in the given journal, for the job to be created again by
+     * {@link JobJournal#createJob(ProgressDialog, MainFrame)}. Subclasses that have additional parameters should
+     * override this method and call the super method.
+     *
+     * @param journal the journal of this job
+     */
+    protected void writeJournalParameters(JobJournal journal) {
+        journal.addParameter(JobJournal.BASE_FOLDER_PARAMETER, files.getBaseFolder());
+        for(AbstractFile file : files)
+            journal.addParameter(JobJournal.FILE_PARAMETER, file);
+        journal.addParameter(JobJournal.DESTINATION_FOLDER_PARAMETER, baseDestFolder);
+        journal.addParameter(JobJournal.NEW_NAME_PARAMETER, newName);
+        journal.addParameter(JobJournal.FILE_EXISTS_ACTION_PARAMETER, Integer.toString(defaultFileExistsAction));
+    }
+
+    /**
+     * Returns <code>true</code> if the given file was transferred to the given destination by the unfinished job
+     * this job resumes, in which case it need not be transferred again.
+     *
+     * @param file a source file
+     * @param destFile the destination file
+     * @return true if the file was transferred by the job this job resumes
+     */
+    protected boolean wasCopiedBefore(AbstractFile file, AbstractFile destFile) {
+        return resumedJournal!=null && !file.isDirectory() && resumedJournal.wasCopied(file, destFile);
+    }
+
     /**
      * Creates a destination file given a destination folder and a new file name.
      * @param destFolder a destination folder
@@ -125,10 +214,20 @@ public abstract class AbstractCopyJob extends TransferFileJob {
      */
     protected AbstractFile checkForCollision(AbstractFile file, AbstractFile destFolder, AbstractFile destFile, boolean allowCaseVariation) {
         append = false;
+
+        // The destination file is a partial copy if the file was being transferred by the unfinished job this job
+        // resumes: resume the transfer if possible, overwrite the file otherwise, but never handle it like an existing
+        // file, which could be skipped
+        if(resumedJournal!=null && !file.isDirectory() && resumedJournal.wasStarted(file, destFile)) {
+            append = resumedJournal.canResume(file, destFile);
+            destinationListing.fileAdded(destFile, false);
+            return destFile;
+        }
+
         while (true) {
             // Check for file collisions (file exists in the destination, destination subfolder of source, ...)
             // if a default action hasn't been specified
-            int collision = FileCollisionChecker.checkForCollision(file, destFile);
+            int collision = FileCollisionChecker.checkForCollision(file, destFile, destinationListing);
             
             // If allowCaseVariation is true and both files are equal, test if the destination filename is a variation
             // of the original filename with a different case. If that is the case, do not warn about the source and
@@ -145,11 +244,12 @@ public abstract class AbstractCopyJob extends TransferFileJob {
                 int choice;
                 // Use default action if one has been set, if not show up a dialog
                 if(defaultFileExistsAction==FileCollisionDialog.ASK_ACTION) {
-                    FileCollisionDialog dialog = new FileCollisionDialog(getProgressDialog(), getMainFrame(), collision, file, destFile, true, true);
-                    choice = waitForUserResponse(dialog);
+                    choice = showFileCollisionDialog(collision, file, destFile, true, true);
                     // If 'apply to all' was selected, this choice will be used for any other files (user will not be asked again)
-                    if(dialog.applyToAllSelected())
+                    if(choice!=-1 && (choice&JobInteraction.APPLY_TO_ALL)!=0) {
+                        choice &= ~JobInteraction.APPLY_TO_ALL;
                         defaultFileExistsAction = choice;
+                    }
                 }
                 else
                     choice = defaultFileExistsAction;
@@ -180,12 +280,19 @@ public abstract class AbstractCopyJob extends TransferFileJob {
                         return null;
                     break;
                 } else if (choice == FileCollisionDialog.RENAME_ACTION) {
-                    setPaused(true);
-                    FileCollisionRenameDialog dlg = new FileCollisionRenameDialog(getMainFrame(), destFile);
-                    String destFileName = (String) waitForUserResponseObject(dlg);
-                    setPaused(false);
+                    renamedFile = file;
+                    String destFileName;
+                    try {
+                        destFileName = showRenameDialog(destFile);
+                    }
+                    finally {
+                        renamedFile = null;
+                    }
                     if (destFileName != null) {
                         destFile = createDestinationFile(destFolder, destFileName);
+                        // A destination reserved for the file is free, but may have been created to reserve it
+                        if(destFile!=null && isReserved(destFile))
+                            break;
                     } else {
                         // turn on FileCollisionDialog, so we don't loop indefinitely
                         defaultFileExistsAction = FileCollisionDialog.ASK_ACTION;
@@ -196,9 +303,88 @@ public abstract class AbstractCopyJob extends TransferFileJob {
             }
             break;    // no collision
         }
+
+        // The file is about to be written: a later collision with it is detected without querying it. Folders are
+        // recorded once they have been created.
+        if(!file.isDirectory())
+            destinationListing.fileAdded(destFile, false);
+
         return destFile;
     }
     
+    /**
+     * Reserves the given destination file for the file whose collision is being resolved: the file is created empty
+     * right away, so that its name is taken by the time it is written to by a transfer worker, and recorded so that it
+     * is not given to another file. Folders are not created, the job's thread creates them right after their
+     * collision has been resolved.
+     */
+    @Override
+    protected boolean reserveDestination(AbstractFile file) throws IOException {
+        String key = file.getURL().toString(false);
+        synchronized(reservedDestinations) {
+            if(reservedDestinations.contains(key) || destinationListing.exists(file))
+                return false;
+
+            if(renamedFile==null || !renamedFile.isDirectory()) {
+                try {
+                    file.mkfile();
+                }
+                catch(IOException e) {
+                    // The file was created in the meantime
+                    if(file.exists())
+                        return false;
+                    throw e;
+                }
+                destinationListing.fileAdded(file, false);
+            }
+
+            reservedDestinations.add(key);
+            return true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given destination file was reserved by {@link #reserveDestination(AbstractFile)}.
+     */
+    private boolean isReserved(AbstractFile file) {
+        synchronized(reservedDestinations) {
+            return reservedDestinations.contains(file.getURL().toString(false));
+        }
+    }
+
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        JobJournal journal = resumedJournal;
+        try {
+            if(journal!=null) {
+                journal.open();
+            }
+            else if(getJournalType()!=null && MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_JOURNAL, MuPreferences.DEFAULT_TRANSFER_JOURNAL)) {
+                journal = JobJournal.create(getJournalType());
+                writeJournalParameters(journal);
+            }
+            setJournal(journal);
+        }
+        catch(IOException e) {
+            // Carry on without a journal
+            LOGGER.info("Could not open the job journal, the job will not be resumable", e);
+        }
+    }
+
+    /**
+     * Deletes the journal of this job, if any: the job was either completed or cancelled.
+     */
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        JobJournal journal = getJournal();
+        if(journal!=null)
+            journal.delete();
+    }
+
     /**
      * Optimizes the given writable archive file and notifies the user in case of an error.
      *
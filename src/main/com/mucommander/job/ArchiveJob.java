@@ -21,6 +21,7 @@ package com.mucommander.job;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +65,9 @@ public class ArchiveJob extends TransferFileJob {
 
     public ArchiveJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFile, int archiveFormat, String archiveComment) {
         super(progressDialog, mainFrame, files);
+
+        // Archiving may keep the volumes busy for a long time: wait for other transfers to complete
+        setPriority(NORMAL_PRIORITY);
 		
         this.destFile = destFile;
         this.archiveFormat = archiveFormat;
@@ -92,17 +96,8 @@ public class ArchiveJob extends TransferFileJob {
                     // Create new directory entry in archive file
                     archiver.createEntry(entryRelativePath, file);
 
-                    // Recurse on files
-                    AbstractFile subFiles[] = file.ls();
-                    boolean folderComplete = true;
-                    for(int i=0; i<subFiles.length && getState()!=INTERRUPTED; i++) {
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(subFiles[i]);
-                        if(!processFile(subFiles[i], null))
-                            folderComplete = false;
-                    }
-					
-                    return folderComplete;
+                    // Process files, the folder is complete if all of them are archived
+                    return processChildren(file, file.ls(), null);
                 }
                 else {
                     InputStream in = setCurrentInputStream(file.getInputStream());
@@ -151,6 +146,18 @@ public class ArchiveJob extends TransferFileJob {
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Adds the folder where the archive is to the folders accessed by this job.
+     */
+    @Override
+    protected List<AbstractFile> getAccessedFolders() {
+        List<AbstractFile> folders = super.getAccessedFolders();
+        AbstractFile destFolder = destFile.getParent();
+        if(destFolder!=null)
+            folders.add(destFolder);
+        return folders;
+    }
+
     /**
      * Overriden method to initialize the archiver and handle the case where the destination file already exists.
      */
@@ -163,7 +170,7 @@ public class ArchiveJob extends TransferFileJob {
         if(collision!=FileCollisionChecker.NO_COLLOSION) {
             // File already exists in destination, ask the user what to do (cancel, overwrite,...) but
             // do not offer the multiple files mode options such as 'skip' and 'apply to all'.
-            int choice = waitForUserResponse(new FileCollisionDialog(getProgressDialog(), getMainFrame(), collision, null, destFile, false, false));
+            int choice = showFileCollisionDialog(collision, null, destFile, false, false);
 
             // Overwrite file
             if (choice== FileCollisionDialog.OVERWRITE_ACTION) {
@@ -0,0 +1,285 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.dialog.file.FileCollisionDialog;
+
+/**
+ * A {@link JobInteraction} that never asks the user: errors and file collisions are resolved with fixed policies,
+ * so that jobs can run without a graphical environment, e.g. from a script.
+ *
+ * <p>Errors are retried a given number of times when the job allows it, and then either skipped or cause the job to
+ * be cancelled. Collisions are resolved with one of the actions of {@link FileCollisionDialog} ; when that action
+ * cannot be applied to a collision (e.g. 'overwrite' when the source and destination are the same file), the file
+ * is skipped if the job allows it, the job is cancelled otherwise.</p>
+ *
+ * <p>The errors and collisions are reported to a stream, as {@link #report(String, Object...) events} of one line
+ * each.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class BatchJobInteraction implements JobInteraction {
+
+    /** Skip the files that cannot be processed */
+    public final static int SKIP_ERRORS = 0;
+    /** Cancel the job on the first error */
+    public final static int CANCEL_ON_ERROR = 1;
+
+    /** What to do with errors once retried: {@link #SKIP_ERRORS} or {@link #CANCEL_ON_ERROR} */
+    private final int errorPolicy;
+
+    /** Number of times an error is retried before the error policy is applied */
+    private final int maxRetries;
+
+    /** Action of {@link FileCollisionDialog} used to resolve collisions */
+    private final int collisionAction;
+
+    /** Stream the events are reported to */
+    private final PrintStream out;
+
+    /** Error message -> number of times the error has been retried */
+    private final Map<String, Integer> retries = new HashMap<String, Integer>();
+
+    /** Number of errors that could not be recovered from */
+    private int nbErrors;
+
+    /** True if a new name could not be found for a destination file, in which case files are no longer renamed */
+    private boolean renameFailed;
+
+    /**
+     * Creates a new <code>BatchJobInteraction</code>.
+     *
+     * @param errorPolicy what to do with errors once retried: {@link #SKIP_ERRORS} or {@link #CANCEL_ON_ERROR}
+     * @param maxRetries number of times an error is retried before the error policy is applied
+     * @param collisionAction action used to resolve file collisions, one of the actions of
+     * {@link FileCollisionDialog} except {@link FileCollisionDialog#ASK_ACTION}
+     * @param out stream the events are reported to
+     */
+    public BatchJobInteraction(int errorPolicy, int maxRetries, int collisionAction, PrintStream out) {
+        this.errorPolicy = errorPolicy;
+        this.maxRetries = maxRetries;
+        this.collisionAction = collisionAction;
+        this.out = out;
+    }
+
+    /**
+     * Returns the number of errors that could not be recovered from, i.e. that caused a file to be skipped or the
+     * job to be cancelled.
+     *
+     * @return the number of errors that could not be recovered from
+     */
+    public synchronized int getNbErrors() {
+        return nbErrors;
+    }
+
+    /**
+     * Reports an event to the output stream, as a line holding a JSON object with the event's name and the given
+     * properties.
+     *
+     * @param event name of the event
+     * @param properties names and values of the event's properties, in turn. Values that are neither numbers nor
+     * booleans are written as strings.
+     */
+    public synchronized void report(String event, Object... properties) {
+        StringBuilder sb = new StringBuilder("{\"event\":");
+        appendString(sb, event);
+        for(int i=0; i<properties.length-1; i+=2) {
+            sb.append(',');
+            appendString(sb, properties[i].toString());
+            sb.append(':');
+            Object value = properties[i+1];
+            if(value instanceof Number || value instanceof Boolean)
+                sb.append(value);
+            else if(value==null)
+                sb.append("null");
+            else
+                appendString(sb, value.toString());
+        }
+        sb.append('}');
+
+        out.println(sb);
+        out.flush();
+    }
+
+    /**
+     * Appends the given string to the buffer, as a JSON string.
+     */
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if(c<0x20)
+                        sb.append(String.format("\\u%04x", (int)c));
+                    else
+                        sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static boolean contains(int values[], int value) {
+        for(int v : values)
+            if(v==value)
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the action to fall back to when the collision action cannot be applied: 'skip' if the job allows it,
+     * 'cancel' otherwise.
+     */
+    private static int getFallbackAction(boolean multipleFilesMode) {
+        return multipleFilesMode?FileCollisionDialog.SKIP_ACTION:FileCollisionDialog.CANCEL_ACTION;
+    }
+
+    /**
+     * Returns the name of the given collision action, as reported in events.
+     */
+    private static String getActionName(int action) {
+        switch(action) {
+            case FileCollisionDialog.SKIP_ACTION:
+                return "skip";
+            case FileCollisionDialog.OVERWRITE_ACTION:
+                return "overwrite";
+            case FileCollisionDialog.OVERWRITE_IF_OLDER_ACTION:
+                return "overwrite-if-older";
+            case FileCollisionDialog.RESUME_ACTION:
+                return "resume";
+            case FileCollisionDialog.RENAME_ACTION:
+                return "rename";
+            default:
+                return "cancel";
+        }
+    }
+
+
+    ///////////////////////////////////
+    // JobInteraction implementation //
+    ///////////////////////////////////
+
+    public synchronized int askError(FileJob job, String title, String message, String actionTexts[], int actionValues[]) {
+        int action;
+        Integer nbRetries = retries.get(message);
+        if(contains(actionValues, FileJob.RETRY_ACTION) && (nbRetries==null || nbRetries<maxRetries)) {
+            retries.put(message, nbRetries==null?1:nbRetries+1);
+            action = FileJob.RETRY_ACTION;
+        }
+        else {
+            retries.remove(message);
+            nbErrors++;
+
+            if(errorPolicy==SKIP_ERRORS && contains(actionValues, FileJob.SKIP_ACTION))
+                action = FileJob.SKIP_ACTION;
+            // Jobs that cannot skip files may only be told that the error occurred
+            else if(!contains(actionValues, FileJob.CANCEL_ACTION) && contains(actionValues, FileJob.OK_ACTION))
+                action = FileJob.OK_ACTION;
+            else
+                action = -1;
+        }
+
+        report("error",
+               "title", title,
+               "message", message,
+               "action", action==FileJob.RETRY_ACTION?"retry":action==FileJob.SKIP_ACTION?"skip":action==FileJob.OK_ACTION?"ok":"cancel");
+
+        return action;
+    }
+
+    public synchronized int askFileCollision(FileJob job, int collisionType, AbstractFile sourceFile, AbstractFile destFile, boolean multipleFilesMode, boolean allowRename) {
+        int action = collisionAction;
+
+        // Apply the same restrictions as FileCollisionDialog
+        if(action==FileCollisionDialog.SKIP_ACTION && !multipleFilesMode)
+            action = FileCollisionDialog.CANCEL_ACTION;
+        else if(action!=FileCollisionDialog.SKIP_ACTION && action!=FileCollisionDialog.CANCEL_ACTION) {
+            if(collisionType!=FileCollisionChecker.DESTINATION_FILE_ALREADY_EXISTS || destFile.isDirectory())
+                action = getFallbackAction(multipleFilesMode);
+            else if(action!=FileCollisionDialog.OVERWRITE_ACTION && sourceFile==null)
+                action = getFallbackAction(multipleFilesMode);
+            else if(action==FileCollisionDialog.RENAME_ACTION && (!allowRename || renameFailed))
+                action = getFallbackAction(multipleFilesMode);
+            else if(action==FileCollisionDialog.RESUME_ACTION) {
+                // A destination file that is not smaller than the source has been transferred already
+                long destSize = destFile.getSize();
+                long sourceSize = sourceFile.getSize();
+                if(destSize==-1 || (sourceSize!=-1 && destSize>=sourceSize))
+                    action = getFallbackAction(multipleFilesMode);
+            }
+        }
+
+        report("collision",
+               "file", destFile.getAbsolutePath(),
+               "action", getActionName(action));
+
+        return action;
+    }
+
+    public synchronized String askNewName(FileJob job, AbstractFile destFile) {
+        String rawName = destFile.getNameWithoutExtension();
+        String extension = destFile.getExtension();
+        AbstractFile parent = destFile.getParent();
+
+        // Find the first name in the format filename_N.ext that is neither used nor reserved by the job for another file
+        try {
+            String filename;
+            int count = 1;
+            while(true) {
+                filename = rawName + "_" + count++;
+                if(extension!=null)
+                    filename += "." + extension;
+
+                if(job.reserveDestination(parent.getChild(filename)))
+                    return filename;
+            }
+        }
+        catch(IOException e) {
+            // The collision will be resolved with the fallback action
+            renameFailed = true;
+            nbErrors++;
+            report("error",
+                   "title", destFile.getAbsolutePath(),
+                   "message", String.valueOf(e.getMessage()),
+                   "action", getActionName(getFallbackAction(true)));
+            return null;
+        }
+    }
+}
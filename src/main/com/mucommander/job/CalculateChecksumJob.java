@@ -22,12 +22,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.cache.ChecksumCache;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
@@ -59,104 +66,125 @@ import com.mucommander.ui.viewer.ViewerRegistrar;
  * </pre>
  * </p>
  *
+ * <p>Several checksums can be calculated at once, each in its own checksum file: each file is read only once,
+ * and fed to all the algorithms. Files are read concurrently by transfer workers, the lines of the checksum files
+ * are nonetheless written in the order the files are visited, whatever the order their checksums are calculated in.</p>
+ *
+ * <p>Checksums are looked up in, and added to, the {@link ChecksumCache}: files that have not changed since their
+ * checksum was last calculated are not read again.</p>
+ *
  * @author Maxence Bernard
  */
 public class CalculateChecksumJob extends TransferFileJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CalculateChecksumJob.class);
-	
-    /** The checksum file where the checksum of each file is written */
-    private AbstractFile checksumFile;
-    /** The OutputStream of the checksum file */
-    private OutputStream checksumFileOut;
+
+    /** Maximum number of files whose checksums can be calculated ahead of the first file whose line is not written yet */
+    private final static int MAX_PENDING_LINES = 4096;
+
+    /** Interval in milliseconds at which the job's state is checked while waiting for lines to be written */
+    private final static long LINE_WAIT_INTERVAL = 200;
+
+    /** The checksum files where the checksum of each file is written, one per algorithm */
+    private AbstractFile checksumFiles[];
+    /** The OutputStreams of the checksum files */
+    private OutputStream checksumFileOuts[];
 
     /** The path to the base source folder, i.e. the folder which contains all the files this job operates on */
     private String baseSourcePath;
 
-    /** True if the SFV format is used rather than the default 'SUMS' format */
-    private boolean useSfvFormat;
+    /** For each checksum file, true if the SFV format is used rather than the default 'SUMS' format */
+    private boolean useSfvFormat[];
 
-    /** The MessageDigest that serves to calculate the checksum */
-    private MessageDigest digest;
+    /** The MessageDigests that serve to calculate the checksums, new instances are used for each file */
+    private MessageDigest digests[];
+
+    /** Number of files whose checksums have been submitted for calculation so far */
+    private int nbSubmittedFiles;
+
+    /** Sequence number of the next file whose lines are to be written. Guarded by pendingLines. */
+    private int nextLine;
+
+    /** Sequence number -> lines of the files whose checksums have been calculated but cannot be written yet,
+     * null lines for files that failed */
+    private final Map<Integer, String[]> pendingLines = new HashMap<Integer, String[]>();
 
 
     public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile checksumFile, MessageDigest digest) {
+        this(progressDialog, mainFrame, files, new AbstractFile[]{checksumFile}, new MessageDigest[]{digest});
+    }
+
+    /**
+     * Creates a new job that calculates the checksums of the given files with each of the given digests, in a single
+     * pass, and writes them to the checksum file at the same index.
+     */
+    public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile checksumFiles[], MessageDigest digests[]) {
         super(progressDialog, mainFrame, files);
 
-        this.checksumFile = checksumFile;
-        this.digest = digest;
-        this.useSfvFormat = digest.getAlgorithm().equalsIgnoreCase("CRC32");
+        // The user is waiting for the checksums, which only read the files: do not queue behind transfers
+        setPriority(HIGH_PRIORITY);
+
+        this.checksumFiles = checksumFiles;
+        this.digests = digests;
+        this.checksumFileOuts = new OutputStream[checksumFiles.length];
+        this.useSfvFormat = new boolean[digests.length];
+        for(int i=0; i<digests.length; i++)
+            useSfvFormat[i] = digests[i].getAlgorithm().equalsIgnoreCase("CRC32");
 
         this.baseSourcePath = getBaseSourceFolder().getAbsolutePath(true);
     }
 
+    /**
+     * Calculates the checksums of the given file with all the digests, reading it once unless all the checksums are
+     * in the cache. Returns a checksum per digest, or <code>null</code> if the file could not be read. Called by the
+     * thread processing the file.
+     */
+    private String[] calculateChecksums(AbstractFile file) {
+        ChecksumCache cache = ChecksumCache.getInstance();
+        String checksums[] = new String[digests.length];
+        boolean allCached = true;
+        for(int i=0; i<digests.length; i++) {
+            checksums[i] = cache.get(file, digests[i].getAlgorithm());
+            allCached &= checksums[i]!=null;
+        }
 
-    ////////////////////////////////////
-    // TransferFileJob implementation //
-    ////////////////////////////////////
+        if(allCached)
+            return checksums;
 
-    @Override
-    protected boolean processFile(AbstractFile file, Object recurseParams) {
-        // Skip directories
-        if(file.isDirectory()) {
-            do {		// Loop for retry
-                try {
-                    // for each file in folder...
-                    AbstractFile children[] = file.ls();
-                    for(int i=0; i<children.length && getState()!=INTERRUPTED; i++) {
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(children[i]);
-                        processFile(children[i], null);
-                    }
+        // The size and date the checksums are valid for
+        long size = file.getSize();
+        long date = file.getDate();
 
-                    return true;
-                }
-                catch(IOException e) {
-                    // file.ls() failed
-                    int ret = showErrorDialog(Translator.get("error"), Translator.get("cannot_read_folder", file.getName()));
-                    // Retry loops
-                    if(ret==RETRY_ACTION)
-                        continue;
-                    // Cancel, skip or close dialog returns false
-                    return false;
-                }
-            } while(true);
-        }
-
-        // Calculate the file's checksum
         do {		// Loop for retry
             InputStream in = null;
-            String line;
-            String checksum;
             try {
-                // Resets the digest before use
-                digest.reset();
-
-                in = null;
                 in = setCurrentInputStream(file.getInputStream());
 
-                // Determine the path relative to the base source folder
-                String relativePath = file.getAbsolutePath();
-                relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
+                // Each digest sees the bytes read by the stream it wraps
+                ChecksumInputStream checksumIns[] = new ChecksumInputStream[digests.length];
+                for(int i=0; i<digests.length; i++) {
+                    if(checksums[i]==null)
+                        in = checksumIns[i] = new ChecksumInputStream(in, newDigest(digests[i]));
+                }
 
-                // Write a new line in the checksum file, in the appropriate format
-                checksum = AbstractFile.calculateChecksum(in, digest);
-                if(useSfvFormat) {
-                    // SFV format for CRC32 checksums
-                    line = relativePath + " " + checksum;     // 1 space character
+                byte buffer[] = BufferPool.getByteArray();
+                try {
+                    while(in.read(buffer, 0, buffer.length)!=-1);
                 }
-                else {
-                    // 'SUMS' format for other checksum algorithms
-                    line = checksum + "  " + relativePath;    // 2 space characters, that's how the format is
+                finally {
+                    BufferPool.releaseByteArray(buffer);
                 }
 
-                line += '\n';
-
                 // Close the InputStream, we're done with it
                 in.close();
 
-                checksumFileOut.write(line.getBytes("utf-8"));
+                for(int i=0; i<digests.length; i++) {
+                    if(checksumIns[i]!=null) {
+                        checksums[i] = checksumIns[i].getChecksumString();
+                        cache.put(file, digests[i].getAlgorithm(), size, date, checksums[i]);
+                    }
+                }
 
-                return true;
+                return checksums;
             }
             catch(IOException e) {
                 // Close the InputStream, a new one will be created when retrying
@@ -170,7 +198,7 @@ public class CalculateChecksumJob extends TransferFileJob {
                 // If that is the case, the exception should not be interpreted as an error.
                 // Same goes if the current file was skipped.
                 if(getState()==INTERRUPTED || wasCurrentFileSkipped())
-                    return false;
+                    return null;
 
                 LOGGER.debug("Caught IOException", e);
                 
@@ -178,21 +206,166 @@ public class CalculateChecksumJob extends TransferFileJob {
                 // Retry loops
                 if(ret==RETRY_ACTION) {
                     // Reset processed bytes currentFileByteCounter
-                    getCurrentFileByteCounter().reset();
+                    resetTransferByteCounters();
 
                     continue;
                 }
 
                 // Cancel, skip or close dialog return false
-                return false;
+                return null;
             }
         } while(true);
     }
 
+    /**
+     * Returns a new instance of the given digest, so that files can be processed concurrently.
+     */
+    private static MessageDigest newDigest(MessageDigest digest) throws IOException {
+        try {
+            return MessageDigest.getInstance(digest.getAlgorithm(), digest.getProvider());
+        }
+        catch(NoSuchAlgorithmException e) {
+            // Should never happen, the digest was created by the same provider
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Records the checksums calculated for the file with the given sequence number, and writes the lines of the files
+     * that are next in sequence. Called by the thread that calculated the checksums.
+     *
+     * @param sequence sequence number of the file, in the order files are visited
+     * @param file the file
+     * @param checksums checksums of the file, <code>null</code> if they could not be calculated
+     */
+    private void checksumsCalculated(int sequence, AbstractFile file, String checksums[]) {
+        String lines[] = null;
+        if(checksums!=null) {
+            // Determine the path relative to the base source folder
+            String relativePath = file.getAbsolutePath();
+            relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
+
+            // Create a new line for each checksum file, in the appropriate format
+            lines = new String[checksums.length];
+            for(int i=0; i<checksums.length; i++) {
+                if(useSfvFormat[i]) {
+                    // SFV format for CRC32 checksums
+                    lines[i] = relativePath + " " + checksums[i] + '\n';     // 1 space character
+                }
+                else {
+                    // 'SUMS' format for other checksum algorithms
+                    lines[i] = checksums[i] + "  " + relativePath + '\n';    // 2 space characters, that's how the format is
+                }
+            }
+        }
+
+        int index = 0;
+        synchronized(pendingLines) {
+            pendingLines.put(sequence, lines);
+
+            try {
+                while(pendingLines.containsKey(nextLine)) {
+                    lines = pendingLines.remove(nextLine);
+                    if(lines!=null) {
+                        for(index=0; index<lines.length; index++)
+                            checksumFileOuts[index].write(lines[index].getBytes("utf-8"));
+                    }
+                    nextLine++;
+                }
+                return;
+            }
+            catch(IOException e) {
+                // The checksum files are closed when the job is interrupted
+                if(getState()==INTERRUPTED)
+                    return;
+
+                LOGGER.debug("Caught IOException", e);
+            }
+            finally {
+                pendingLines.notifyAll();
+            }
+        }
+
+        // The checksum files could not be written, there is no point in going further
+        showErrorDialog(Translator.get("error"),
+                        Translator.get("cannot_write_file", checksumFiles[index].getName()),
+                        new String[] {CANCEL_TEXT},
+                        new int[]  {CANCEL_ACTION}
+                        );
+        interrupt();
+    }
+
+    /**
+     * Blocks until the lines of the file with the given sequence number have been written, or the job has been
+     * interrupted. This bounds the number of lines held in memory when a large file delays those of the files after it.
+     */
+    private void waitForLine(int sequence) {
+        synchronized(pendingLines) {
+            while(nextLine<=sequence && getState()!=INTERRUPTED) {
+                try {
+                    pendingLines.wait(LINE_WAIT_INTERVAL);
+                }
+                catch(InterruptedException e) {
+                    // Loop one more time
+                }
+            }
+        }
+    }
+
+
+    ////////////////////////////////////
+    // TransferFileJob implementation //
+    ////////////////////////////////////
+
+    @Override
+    protected boolean processFile(final AbstractFile file, Object recurseParams) {
+        // Skip directories
+        if(file.isDirectory()) {
+            do {		// Loop for retry
+                try {
+                    // for each file in folder...
+                    processChildren(file, file.ls(), null);
+
+                    return true;
+                }
+                catch(IOException e) {
+                    // file.ls() failed
+                    int ret = showErrorDialog(Translator.get("error"), Translator.get("cannot_read_folder", file.getName()));
+                    // Retry loops
+                    if(ret==RETRY_ACTION)
+                        continue;
+                    // Cancel, skip or close dialog returns false
+                    return false;
+                }
+            } while(true);
+        }
+
+        // Calculate the file's checksums, concurrently with other files
+        final int sequence = nbSubmittedFiles++;
+        waitForLine(sequence-MAX_PENDING_LINES);
+
+        return processFileConcurrently(file, file, new Callable<Boolean>() {
+            public Boolean call() {
+                String checksums[] = null;
+                try {
+                    checksums = calculateChecksums(file);
+                    return checksums!=null;
+                }
+                finally {
+                    checksumsCalculated(sequence, file, checksums);
+                }
+            }
+        });
+    }
+
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
-        // This job modifies the folder where the checksum file is
-        return folder.equalsCanonical(checksumFile.getParent());     // Note: parent may be null
+        // This job modifies the folders where the checksum files are
+        for(AbstractFile checksumFile : checksumFiles) {
+            if(folder.equalsCanonical(checksumFile.getParent()))     // Note: parent may be null
+                return true;
+        }
+        return false;
     }
 
 
@@ -200,16 +373,39 @@ public class CalculateChecksumJob extends TransferFileJob {
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Returns <code>true</code>: the checksums of several files are calculated concurrently.
+     */
+    @Override
+    protected boolean isConcurrentTransferSupported() {
+        return true;
+    }
+
     @Override
     protected void jobStarted() {
         super.jobStarted();
 
+        for(int i=0; i<checksumFiles.length; i++) {
+            if(!openChecksumFile(i)) {
+                interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Opens the checksum file at the given index for writing, after asking the user what to do if it already exists.
+     * Returns <code>false</code> if the job is to be interrupted.
+     */
+    private boolean openChecksumFile(int index) {
+        AbstractFile checksumFile = checksumFiles[index];
+
         // Check for file collisions, i.e. if the file already exists in the destination
         int collision = FileCollisionChecker.checkForCollision(null, checksumFile);
         if(collision!=FileCollisionChecker.NO_COLLOSION) {
             // File already exists in destination, ask the user what to do (cancel, overwrite,...) but
             // do not offer the multiple files mode options such as 'skip' and 'apply to all'.
-            int choice = waitForUserResponse(new FileCollisionDialog(getProgressDialog(), getMainFrame(), collision, null, checksumFile, false, false));
+            int choice = showFileCollisionDialog(collision, null, checksumFile, false, false);
 
             // Overwrite file
             if (choice== FileCollisionDialog.OVERWRITE_ACTION) {
@@ -217,8 +413,7 @@ public class CalculateChecksumJob extends TransferFileJob {
             }
             // 'Cancel' or close dialog interrupts the job
             else {
-                interrupt();
-                return;
+                return false;
             }
         }
 
@@ -226,10 +421,9 @@ public class CalculateChecksumJob extends TransferFileJob {
         do {
             try {
                 // Tries to get an OutputStream on the destination file
-                this.checksumFileOut = checksumFile.getOutputStream();
-
-                break;
+                checksumFileOuts[index] = checksumFile.getOutputStream();
 
+                return true;
             }
             catch(Exception e) {
                 int choice = showErrorDialog(Translator.get("error"),
@@ -243,8 +437,7 @@ public class CalculateChecksumJob extends TransferFileJob {
                     continue;
 
                 // 'Cancel' or close dialog interrupts the job
-                interrupt();
-                return;
+                return false;
             }
         } while(true);
     }
@@ -253,19 +446,26 @@ public class CalculateChecksumJob extends TransferFileJob {
     protected void jobCompleted() {
         super.jobCompleted();
 
-        // Open the checksum file in a viewer
-        ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
+        // Open the checksum files in a viewer
+        if(getMainFrame()==null)
+            return;
+        for(AbstractFile checksumFile : checksumFiles)
+            ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
     }
 
     @Override
     protected void jobStopped() {
         super.jobStopped();
         
-        // Close the checksum file's OutputStream
-        if(checksumFileOut !=null) {
-            try { checksumFileOut.close(); }
-            catch(IOException e2){
-                // No need to inform the user
+        // Close the checksum files' OutputStreams
+        synchronized(pendingLines) {
+            for(OutputStream checksumFileOut : checksumFileOuts) {
+                if(checksumFileOut !=null) {
+                    try { checksumFileOut.close(); }
+                    catch(IOException e2){
+                        // No need to inform the user
+                    }
+                }
             }
         }
     }
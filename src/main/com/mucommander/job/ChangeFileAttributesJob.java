@@ -71,16 +71,8 @@ public class ChangeFileAttributesJob extends FileJob {
         if(recurseOnDirectories && file.isDirectory()) {
             do {		// Loop for retries
                 try {
-                    AbstractFile children[] = file.ls();
-                    int nbChildren = children.length;
-
-                    for(int i=0; i<nbChildren && getState()!=INTERRUPTED; i++) {
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(children[i]);
-                        processFile(children[i], null);
-                    }
-
-                    break;
+                    // The attributes of the folder are changed by folderProcessed, after those of its children
+                    return processChildren(file, file.ls(), null);
                 }
                 catch(IOException e) {
                     // Unable to open source file
@@ -95,6 +87,24 @@ public class ChangeFileAttributesJob extends FileJob {
             while(true);
         }
 
+        return changeAttributes(file);
+    }
+
+    /**
+     * Changes the attributes of the given folder, once those of its children have been changed.
+     */
+    @Override
+    protected boolean folderProcessed(AbstractFile folder, Object recurseParams, boolean success) {
+        return changeAttributes(folder);
+    }
+
+    /**
+     * Changes the permissions or the date of the given file.
+     *
+     * @param file the file whose attributes are to be changed
+     * @return <code>true</code> if the attributes of the file were changed
+     */
+    private boolean changeAttributes(AbstractFile file) {
         if(permissions!=-1) {
             if(!file.isFileOperationSupported(FileOperation.CHANGE_PERMISSION))
                 return false;
@@ -0,0 +1,326 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * A checksum file, listing the checksums of files with a same algorithm. The following formats are supported:
+ * <ul>
+ *   <li>the 'SUMS' format written by {@link CalculateChecksumJob} and <code>md5sum</code>-like tools:
+ *   <code>checksum  path</code>, or <code>checksum *path</code> for files hashed in binary mode</li>
+ *   <li>the SFV format written for CRC32 checksums by {@link CalculateChecksumJob} and {@link SplitFileJob}:
+ *   <code>path checksum</code>, lines starting with <code>;</code> being comments</li>
+ *   <li>the BSD format written by <code>shasum --tag</code> and <code>md5</code>:
+ *   <code>ALGORITHM (path) = checksum</code></li>
+ * </ul>
+ *
+ * <p>As written by GNU coreutils, lines in the 'SUMS' and BSD formats may start with a backslash, in which case the
+ * backslashes and newlines in the path are escaped as <code>\\</code> and <code>\n</code>.</p>
+ *
+ * <p>The algorithm is determined by the file's name (<code>.sfv</code>, <code>.md5</code>, <code>.sha1</code>,
+ * <code>SHA256SUMS</code>...) or by the BSD format's tags, and failing that by the length of the checksums.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class ChecksumFile {
+
+    /** Suffix of the checksum files named after their algorithm, e.g. <code>MD5SUMS</code> */
+    private final static String SUMS_SUFFIX = "SUMS";
+
+    /** Minimum length of a checksum in hexadecimal form, that of a CRC32 checksum */
+    private final static int MIN_CHECKSUM_LENGTH = 8;
+
+    /** The algorithm the checksums were calculated with, null if it could not be determined */
+    private final String algorithm;
+
+    /** The files listed in the checksum file, in the order they appear */
+    private final List<Entry> entries;
+
+    private ChecksumFile(String algorithm, List<Entry> entries) {
+        this.algorithm = algorithm;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads and parses the given checksum file. Lines that cannot be parsed are ignored.
+     *
+     * @param file the checksum file
+     * @return the parsed checksum file
+     * @throws IOException if the file could not be read
+     */
+    public static ChecksumFile parse(AbstractFile file) throws IOException {
+        InputStream in = file.getInputStream();
+        try {
+            return parse(file.getName(), file.getExtension(), in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses the checksum file with the given name and extension, whose contents are read from the given stream.
+     * The stream is not closed.
+     *
+     * @param name name of the checksum file
+     * @param extension extension of the checksum file, <code>null</code> if it has none
+     * @param in the contents of the checksum file
+     * @return the parsed checksum file
+     * @throws IOException if the file could not be read
+     */
+    static ChecksumFile parse(String name, String extension, InputStream in) throws IOException {
+        boolean sfv = "sfv".equalsIgnoreCase(extension);
+        String algorithm = getAlgorithm(sfv?"CRC32":getAlgorithmName(name, extension));
+
+        List<Entry> entries = new ArrayList<Entry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "utf-8"));
+        String line;
+        while((line=reader.readLine())!=null) {
+            Entry entry = null;
+            if(!sfv) {
+                // Paths that contain backslashes or newlines are escaped
+                boolean escaped = line.startsWith("\\");
+                if(escaped)
+                    line = line.substring(1);
+
+                entry = parseBSDLine(line, escaped);
+                if(entry!=null) {
+                    if(algorithm==null)
+                        algorithm = getAlgorithm(line.substring(0, line.indexOf(" (")));
+                }
+                else {
+                    entry = parseSumsLine(line, escaped);
+                }
+            }
+            else {
+                entry = parseSFVLine(line);
+            }
+
+            if(entry!=null)
+                entries.add(entry);
+        }
+
+        // Fall back to the length of the checksums
+        if(algorithm==null && !entries.isEmpty())
+            algorithm = getAlgorithm(entries.get(0).checksum.length());
+
+        return new ChecksumFile(algorithm, entries);
+    }
+
+    private static Entry parseSFVLine(String line) {
+        line = line.trim();
+        if(line.length()==0 || line.startsWith(";"))
+            return null;
+
+        int pos = line.lastIndexOf(' ');
+        if(pos<=0)
+            return null;
+
+        return createEntry(line.substring(0, pos).trim(), line.substring(pos+1));
+    }
+
+    private static Entry parseSumsLine(String line, boolean escaped) {
+        if(line.length()==0 || line.startsWith("#"))
+            return null;
+
+        // The checksum is separated from the path by a space and a ' ' (text mode) or '*' (binary mode)
+        int pos = line.indexOf(' ');
+        if(pos<=0 || pos+2>line.length() || (line.charAt(pos+1)!=' ' && line.charAt(pos+1)!='*'))
+            return null;
+
+        return createEntry(line.substring(pos+2), line.substring(0, pos), escaped);
+    }
+
+    private static Entry parseBSDLine(String line, boolean escaped) {
+        int start = line.indexOf(" (");
+        int end = line.lastIndexOf(") = ");
+        // The algorithm is a single word
+        if(start<=0 || end<start || line.lastIndexOf(' ', start-1)!=-1)
+            return null;
+
+        return createEntry(line.substring(start+2, end), line.substring(end+4).trim(), escaped);
+    }
+
+    private static Entry createEntry(String path, String checksum) {
+        return createEntry(path, checksum, false);
+    }
+
+    private static Entry createEntry(String path, String checksum, boolean escaped) {
+        if(path.length()==0 || checksum.length()<MIN_CHECKSUM_LENGTH || !isHexadecimal(checksum))
+            return null;
+
+        if(escaped) {
+            path = unescape(path);
+            if(path==null)
+                return null;
+        }
+
+        return new Entry(path, checksum.toLowerCase());
+    }
+
+    /**
+     * Unescapes the backslashes and newlines of the given path, returns <code>null</code> if it contains an invalid
+     * escape sequence.
+     */
+    private static String unescape(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for(int i=0; i<path.length(); i++) {
+            char c = path.charAt(i);
+            if(c=='\\') {
+                if(++i==path.length())
+                    return null;
+
+                c = path.charAt(i);
+                if(c=='n')
+                    c = '\n';
+                else if(c!='\\')
+                    return null;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isHexadecimal(String s) {
+        if(s.length()==0)
+            return false;
+
+        for(int i=0; i<s.length(); i++) {
+            if(Character.digit(s.charAt(i), 16)==-1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name of the algorithm the given checksum file is named after, e.g. <code>sha1</code> for
+     * <code>files.sha1</code> and <code>SHA256</code> for <code>SHA256SUMS</code>, <code>null</code> if it does
+     * not look like a checksum file's name.
+     */
+    private static String getAlgorithmName(String name, String extension) {
+        if(name.toUpperCase().endsWith(SUMS_SUFFIX))
+            return name.substring(0, name.length()-SUMS_SUFFIX.length());
+
+        return extension;
+    }
+
+    /**
+     * Returns the name of the available <code>MessageDigest</code> algorithm matching the given name, regardless of
+     * case and dashes, <code>null</code> if there is none.
+     */
+    private static String getAlgorithm(String name) {
+        if(name==null)
+            return null;
+
+        name = normalize(name);
+        for(String algorithm : Security.getAlgorithms("MessageDigest")) {
+            if(normalize(algorithm).equals(name))
+                return algorithm;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the most common algorithm producing checksums of the given length in hexadecimal form, <code>null</code>
+     * if there is none.
+     */
+    private static String getAlgorithm(int checksumLength) {
+        switch(checksumLength) {
+            case 8:
+                return getAlgorithm("CRC32");
+            case 32:
+                return getAlgorithm("MD5");
+            case 40:
+                return getAlgorithm("SHA1");
+            case 64:
+                return getAlgorithm("SHA256");
+            case 96:
+                return getAlgorithm("SHA384");
+            case 128:
+                return getAlgorithm("SHA512");
+            default:
+                return null;
+        }
+    }
+
+    private static String normalize(String algorithm) {
+        return algorithm.replace("-", "").toUpperCase();
+    }
+
+    /**
+     * Returns the name of the algorithm the checksums were calculated with, as can be passed to
+     * {@link java.security.MessageDigest#getInstance(String)}, <code>null</code> if it could not be determined.
+     *
+     * @return the name of the algorithm the checksums were calculated with, null if it is unknown
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the files listed in this checksum file, in the order they appear.
+     *
+     * @return the files listed in this checksum file
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+
+    /**
+     * A file listed in a checksum file.
+     */
+    public static class Entry {
+        private final String path;
+        private final String checksum;
+
+        private Entry(String path, String checksum) {
+            this.path = path;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Returns the path of the file, relative to the checksum file's folder. Paths may use '/' or '\' as a separator.
+         *
+         * @return the path of the file, relative to the checksum file's folder
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the expected checksum of the file, in lower case hexadecimal form.
+         *
+         * @return the expected checksum of the file
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+}
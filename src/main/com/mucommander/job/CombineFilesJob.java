@@ -19,23 +19,36 @@
 package com.mucommander.job;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.io.CRC32Combiner;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
 
 /**
  * This job combines files into one file, optionally checking the CRC of the merged file.
+ *
+ * <p>When the merged file is local, it is preallocated and each part is written at its position in it, concurrently
+ * with other parts if transfer workers are enabled. The CRC of the merged file is then combined from the CRCs of the
+ * parts, instead of being calculated by reading the merged file back.</p>
  * @author Mariusz Jakubowski
  */
 public class CombineFilesJob extends AbstractCopyJob {
@@ -44,12 +57,22 @@ public class CombineFilesJob extends AbstractCopyJob {
 	AbstractFile destFile = null;
 	private OutputStream out;
 	private AbstractFile crcFile;
+	/** The merged file if it is written with positional writes, null if it is written through a stream */
+	private File localDestFile;
+	/** Position of the next part in the merged file */
+	private long nextPartPosition;
+	/** CRC32 of each part written at its position, -1 for the parts that have not been written */
+	private long partChecksums[];
 
 
 	public CombineFilesJob(ProgressDialog progressDialog, MainFrame mainFrame,
 			FileSet files, AbstractFile destFile,
 			int fileExistsAction) {
 		super(progressDialog, mainFrame, files, destFile, null, fileExistsAction);
+
+		// Combining rewrites a whole file and is seldom urgent: let the transfers started by the user go first
+		setPriority(LOW_PRIORITY);
+
         this.errorDialogTitle = Translator.get("combine_files_dialog.error_title");
 	}
 
@@ -68,6 +91,9 @@ public class CombineFilesJob extends AbstractCopyJob {
         
         if(getState()==INTERRUPTED)
             return false;
+
+        if (localDestFile != null)
+        	return writePartConcurrently(file);
         
         try {
 			InputStream in = file.getInputStream();
@@ -88,6 +114,74 @@ public class CombineFilesJob extends AbstractCopyJob {
         
 		return true;
 	}
+
+	/**
+	 * Writes the part currently being processed at its position in the merged file, in a transfer worker if
+	 * possible.
+	 * @param part the part
+	 */
+	private boolean writePartConcurrently(final AbstractFile part) {
+		final int index = getCurrentFileIndex();
+		final long position = nextPartPosition;
+		nextPartPosition += part.getSize();
+
+		return processFileConcurrently(part, destFile, new Callable<Boolean>() {
+			public Boolean call() {
+				return writePart(part, index, position);
+			}
+		});
+	}
+
+	/**
+	 * Copies the given part to the merged file at the given position, and records its CRC.
+	 */
+	private boolean writePart(AbstractFile part, int index, long position) {
+		RandomAccessFile raf = null;
+		byte buffer[] = BufferPool.getByteArray();
+		try {
+			CheckedInputStream in = new CheckedInputStream(setCurrentInputStream(part.getInputStream()), new CRC32());
+			raf = new RandomAccessFile(localDestFile, "rw");
+			raf.seek(position);
+
+			long written = 0;
+			int nbRead;
+			while ((nbRead=in.read(buffer)) != -1) {
+				raf.write(buffer, 0, nbRead);
+				written += nbRead;
+			}
+			// The parts following this one have been positioned according to its size
+			if (written != part.getSize())
+				throw new IOException("Size of "+part+" has changed");
+
+			partChecksums[index] = in.getChecksum().getValue();
+		} catch (IOException e) {
+            LOGGER.debug("Caught exception", e);
+            showErrorDialog(errorDialogTitle,
+                    Translator.get("error_while_transferring", destFile.getName()),
+                    new String[]{CANCEL_TEXT},
+                    new int[]{CANCEL_ACTION}
+                    );
+            interrupt();
+			return false;
+		} finally {
+			BufferPool.releaseByteArray(buffer);
+			closeCurrentInputStream();
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+					LOGGER.debug("Caught exception", e);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	protected boolean isConcurrentTransferSupported() {
+		return localDestFile != null;
+	}
 	
 	/**
 	 * Creates the destination (merged) file.
@@ -103,7 +197,22 @@ public class CombineFilesJob extends AbstractCopyJob {
         }
         
         try {
-    		out = destFile.getOutputStream();
+        	long totalSize = getTotalPartsSize();
+        	if (destFile.hasAncestor(LocalFile.class) && totalSize >= 0) {
+        		localDestFile = (File)destFile.getAncestor(LocalFile.class).getUnderlyingFileObject();
+        		partChecksums = new long[getNbFiles()];
+        		Arrays.fill(partChecksums, -1);
+
+        		RandomAccessFile raf = new RandomAccessFile(localDestFile, "rw");
+        		try {
+        			raf.setLength(0);
+        			FileChannelTransfer.preallocate(raf, totalSize);
+        		} finally {
+        			raf.close();
+        		}
+        	} else {
+        		out = destFile.getOutputStream();
+        	}
         } catch(IOException e) {
         	LOGGER.debug("Caught exception", e);
             showErrorDialog(errorDialogTitle,
@@ -115,6 +224,37 @@ public class CombineFilesJob extends AbstractCopyJob {
         }
 	}
 	
+	/**
+	 * Returns the total size of the parts, <code>-1</code> if the size of a part is unknown.
+	 */
+	private long getTotalPartsSize() {
+		long totalSize = 0;
+		for (AbstractFile part : files) {
+			long size = part.getSize();
+			if (size < 0)
+				return -1;
+			totalSize += size;
+		}
+		return totalSize;
+	}
+
+	/**
+	 * Returns the CRC of the merged file combined from the CRCs of the parts, <code>null</code> if the merged file
+	 * was not written with positional writes or if some parts have not been written.
+	 */
+	private String getCombinedChecksum() {
+		if (localDestFile == null)
+			return null;
+
+		long crc = 0;
+		for (int i=0; i<partChecksums.length; i++) {
+			if (partChecksums[i] == -1)
+				return null;
+			crc = CRC32Combiner.combine(crc, partChecksums[i], files.elementAt(i).getSize());
+		}
+		return CRC32Combiner.toHexString(crc);
+	}
+
 	/**
 	 * Checks if CRC file exists.
 	 * @param file firts part
@@ -134,6 +274,21 @@ public class CombineFilesJob extends AbstractCopyJob {
     protected void jobStopped() {
 		super.jobStopped();
 		closeOutputStream();
+		truncateDestFile();
+	}
+
+	/**
+	 * Removes the preallocated space that follows the parts written to the merged file without gaps, if the job was
+	 * interrupted. Parts that are still being written by transfer workers may extend the file again.
+	 */
+	private void truncateDestFile() {
+		if (localDestFile == null || getState() != INTERRUPTED)
+			return;
+
+		long length = 0;
+		for (int i=0; i<partChecksums.length && partChecksums[i] != -1; i++)
+			length += files.elementAt(i).getSize();
+		FileChannelTransfer.truncate(localDestFile, length);
 	}
 	
 	@Override
@@ -161,8 +316,10 @@ public class CombineFilesJob extends AbstractCopyJob {
 			BufferedReader crcReader = new BufferedReader(new InputStreamReader(crcIn));
 			String crcLine = crcReader.readLine();
 			crcLine = crcLine.substring(crcLine.lastIndexOf(' ')+1).trim();
-			String crcDest = destFile.calculateChecksum("CRC32");
-			if (!crcLine.equals(crcDest)) {
+			String crcDest = getCombinedChecksum();
+			if (crcDest == null)
+				crcDest = destFile.calculateChecksum("CRC32");
+			if (!crcLine.equalsIgnoreCase(crcDest)) {
 	            showErrorDialog(errorDialogTitle,
 	                    Translator.get("combine_files_job.crc_check_failed", crcDest, crcLine),
 	                    new String[]{OK_TEXT},
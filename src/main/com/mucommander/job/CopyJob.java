@@ -28,7 +28,6 @@ import com.mucommander.commons.file.AbstractArchiveFile;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractRWArchiveFile;
 import com.mucommander.commons.file.FileFactory;
-import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
@@ -69,6 +68,9 @@ public class CopyJob extends AbstractCopyJob {
     public CopyJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFolder, String newName, int mode, int fileExistsAction) {
         super(progressDialog, mainFrame, files, destFolder, newName, fileExistsAction);
 
+        // Copies may keep the volumes busy for a long time: wait for other transfers to complete
+        setPriority(NORMAL_PRIORITY);
+
         this.mode = mode;
         this.errorDialogTitle = Translator.get(mode==DOWNLOAD_MODE?"download_dialog.error_title":"copy_dialog.error_title");
     }
@@ -80,7 +82,7 @@ public class CopyJob extends AbstractCopyJob {
     ////////////////////////////////////
 
     /**
-     * Copies recursively the given file or folder. 
+     * Copies the given file, or creates the given folder and queues its children to be copied.
      *
      * @param file the file or folder to move
      * @param recurseParams destination folder where the given file will be copied (null for top level files)
@@ -97,7 +99,7 @@ public class CopyJob extends AbstractCopyJob {
         AbstractFile destFolder = recurseParams==null?baseDestFolder:(AbstractFile)recurseParams;
 		
         // Is current file in base folder ?
-        boolean isFileInBaseFolder = files.indexOf(file)!=-1;
+        boolean isFileInBaseFolder = isTopLevelFile(file);
 
         // Determine filename in destination
         String destFileName;
@@ -116,18 +118,23 @@ public class CopyJob extends AbstractCopyJob {
         if(file.isSymlink())
             return true;
 
+        // Do nothing if the file was copied by the unfinished job this job resumes
+        if(wasCopiedBefore(file, destFile))
+            return true;
+
         destFile = checkForCollision(file, destFolder, destFile, false);
         if (destFile == null)
             return false;
 
-        // Copy directory recursively
+        // Copy directory and its children
         if(file.isDirectory()) {
             // Create the folder in the destination folder if it doesn't exist
-            if(!(destFile.exists() && destFile.isDirectory())) {
+            if(!(destinationListing.exists(destFile) && destinationListing.isDirectory(destFile))) {
                 // Loop for retry
                 do {
                     try {
                         destFile.mkdir();
+                        destinationListing.folderCreated(destFile);
                     }
                     catch(IOException e) {
                         // Unable to create folder
@@ -143,34 +150,10 @@ public class CopyJob extends AbstractCopyJob {
                 } while(true);
             }
 			
-            // and copy each file in this folder recursively
+            // and copy each file in this folder, see folderProcessed
             do {		// Loop for retry
                 try {
-                    // for each file in folder...
-                    AbstractFile subFiles[] = file.ls();
-//filesDiscovered(subFiles);
-                    for(int i=0; i<subFiles.length && getState()!=INTERRUPTED; i++) {
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(subFiles[i]);
-                        processFile(subFiles[i], destFile);
-                    }
-
-                    // Set currentDestFile back to the enclosing folder in case an overridden processFile method
-                    // needs to work with the folder after calling super.processFile.
-                    currentDestFile = destFile;
-
-                    // Only when finished with folder, set destination folder's date to match the original folder one
-                    if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.changeDate(file.getDate());
-                        }
-                        catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
-                    }
-
-                    return true;
+                    return processChildren(file, ls(file), destFile);
                 }
                 catch(IOException e) {
                     // file.ls() failed
@@ -185,13 +168,40 @@ public class CopyJob extends AbstractCopyJob {
         }
         // File is a regular file, copy it
         else  {
-            // Copy the file
+            // Copy the file, concurrently with other files if possible
+            if(isConcurrentTransferSupported())
+                return tryCopyFileConcurrently(file, destFile, append, errorDialogTitle, null);
+
             return tryCopyFile(file, destFile, append, errorDialogTitle);
         }
     }
 
 
 
+    /**
+     * Called once all the children of the given folder have been copied, to set the destination folder's date to
+     * match the original folder one.
+     *
+     * @param folder the folder whose children have been copied
+     * @param recurseParams the folder's destination
+     * @param success <code>true</code> if all children were copied
+     * @return <code>true</code>: a folder is copied even if some of its children could not be
+     */
+    @Override
+    protected boolean folderProcessed(AbstractFile folder, Object recurseParams, boolean success) {
+        AbstractFile destFile = (AbstractFile)recurseParams;
+
+        // Set currentDestFile back to the enclosing folder in case an overridden processFile method
+        // needs to work with the folder after calling super.processFile.
+        currentDestFile = destFile;
+
+        // Some files may still be written to the folder or have their metadata changed: its date is
+        // changed once all files have been transferred.
+        changeFolderDateLater(destFile, folder.getDate());
+
+        return true;
+    }
+
     // This job modifies baseDestFolder and its subfolders
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
@@ -203,6 +213,42 @@ public class CopyJob extends AbstractCopyJob {
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Returns <code>true</code>: files are copied concurrently, unless a subclass that needs to process them after
+     * they have been copied overrides this method.
+     */
+    @Override
+    protected boolean isConcurrentTransferSupported() {
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code>: source files are not processed after they have been copied.
+     */
+    @Override
+    protected boolean isDeferredVerificationSupported() {
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code>: all regular files contained by the folders are copied.
+     */
+    @Override
+    protected boolean isPreScanSupported() {
+        return true;
+    }
+
+    @Override
+    protected String getJournalType() {
+        return JobJournal.COPY_JOB;
+    }
+
+    @Override
+    protected void writeJournalParameters(JobJournal journal) {
+        super.writeJournalParameters(journal);
+        journal.addParameter(JobJournal.MODE_PARAMETER, Integer.toString(mode));
+    }
+
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
@@ -20,14 +20,20 @@
 package com.mucommander.job;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.commons.file.AbstractArchiveEntryFile;
 import com.mucommander.commons.file.AbstractArchiveFile;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractRWArchiveFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.desktop.AbstractTrash;
 import com.mucommander.desktop.DesktopManager;
 import com.mucommander.text.Translator;
@@ -38,11 +44,16 @@ import com.mucommander.ui.main.MainFrame;
  * This class is responsible for deleting a set of files. This job can operate in two modes, depending on the boolean
  * value specified in the construtor:
  * <ul>
- *  <li>moveToTrash enabled: files are moved to the trash returned by {@link DesktopManager#getTrash()}.
+ *  <li>moveToTrash enabled: files are moved to the trash returned by {@link DesktopManager#getTrash()}, in batches of
+ * {@link #TRASH_BATCH_SIZE} files.
  *  <li>moveToTrash disabled: files are permanently deleted, i.e deleted files cannot be recovered. In this mode,
  * folders are deleted recursively
  * </ul>
  *
+ * <p>Files that are permanently deleted are deleted concurrently by a pool of workers, {@link MuPreferences#TRANSFER_THREADS}
+ * at most and {@link MuPreferences#TRANSFER_THREADS_PER_VOLUME} per volume, while the job's thread walks the folders.
+ * A folder is deleted once all its children have been, by the thread that deleted the last of them.</p>
+ *
  * @author Maxence Bernard
  */
 public class DeleteJob extends FileJob {
@@ -63,6 +74,15 @@ public class DeleteJob extends FileJob {
     /** True when an archive is being optimized */
     private boolean isOptimizingArchive;
 
+    /** Maximum number of files moved to the trash at once */
+    private final static int TRASH_BATCH_SIZE = 1000;
+
+    /** Files waiting to be moved to the trash */
+    private final List<AbstractFile> filesToTrash = new ArrayList<AbstractFile>();
+
+    /** Deletes files concurrently, null until a file is deleted concurrently */
+    private TransferWorkerPool workerPool;
+
 
     /**
      * Creates a new DeleteJob without starting it.
@@ -76,6 +96,9 @@ public class DeleteJob extends FileJob {
     public DeleteJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, boolean moveToTrash) {
         super(progressDialog, mainFrame, files);
 
+        // Deleting large folders may keep the volume busy for a long time: wait for other jobs to complete
+        setPriority(NORMAL_PRIORITY);
+
         this.errorDialogTitle = Translator.get("delete_dialog.error_title");
 
         this.moveToTrash = moveToTrash;
@@ -84,17 +107,149 @@ public class DeleteJob extends FileJob {
     }
 
     /**
-     * Deletes the given file, either by moving it to the trash (if {@link #moveToTrash} is true) or by deleting the
-     * file directly.
+     * Queues the given file to be moved to the trash, and moves the queued files to the trash once there are
+     * {@link #TRASH_BATCH_SIZE} of them.
+     *
+     * @param file the file to move to the trash
+     */
+    private void queueForTrash(AbstractFile file) {
+        boolean batchFull;
+        synchronized(filesToTrash) {
+            filesToTrash.add(file);
+            batchFull = filesToTrash.size()>=TRASH_BATCH_SIZE;
+        }
+
+        if(batchFull)
+            flushTrash();
+    }
+
+    /**
+     * Moves the queued files to the trash, and unmarks them once they have been. The files that are still there once
+     * the batch has been moved are moved one by one, giving the user the choice to skip the file, retry or cancel for
+     * each of them that cannot be moved.
+     */
+    private void flushTrash() {
+        List<AbstractFile> files;
+        synchronized(filesToTrash) {
+            files = new ArrayList<AbstractFile>(filesToTrash);
+            filesToTrash.clear();
+        }
+
+        if(files.isEmpty())
+            return;
+
+        // Trashes may move files asynchronously: whether a file was moved is told by whether it is still there
+        trash.moveToTrash(files);
+        trash.waitForPendingOperations();
+
+        for(AbstractFile file : files) {
+            if(getState()==INTERRUPTED)
+                return;
+
+            if(!file.exists() || tryMoveToTrash(file))
+                unmarkFile(file);
+        }
+    }
+
+    /**
+     * Moves the given file to the trash, giving the user the choice to skip the file, retry or cancel if it could not
+     * be moved.
+     *
+     * @param file the file to move to the trash
+     * @return <code>true</code> if the file has been moved to the trash
+     */
+    private boolean tryMoveToTrash(AbstractFile file) {
+        do {		// Loop for retry
+            if(trash.moveToTrash(file)) {
+                trash.waitForPendingOperations();
+                if(!file.exists())
+                    return true;
+            }
+
+            LOGGER.debug("Could not move "+file+" to the trash");
+
+            int ret = showErrorDialog(errorDialogTitle,
+                                      Translator.get(file.isDirectory()?"cannot_delete_folder":"cannot_delete_file", file.getName())
+                                      );
+            // Retry loops
+            if(ret==RETRY_ACTION)
+                continue;
+            // Cancel, skip or close dialog returns false
+            return false;
+        } while(true);
+    }
+
+    /**
+     * Deletes the given file in a worker thread if possible, or in the job's thread otherwise.
      *
      * @param file the file to delete
-     * @throws IOException if an error occurred while deleting the file
+     * @param parent the folder being deleted the file is a child of, <code>null</code> for a top-level file
+     * @return <code>false</code> if the file could not be deleted, <code>true</code> if it was deleted or, for a file
+     * in a folder being deleted, is being deleted. A top-level file being deleted by a worker is unmarked by the worker
+     * once it has been deleted, <code>false</code> is returned for it.
      */
-    private void deleteFile(AbstractFile file) throws IOException {
-        if(moveToTrash)
-            trash.moveToTrash(file);
-        else
-            file.delete();
+    private boolean deleteConcurrently(final AbstractFile file, final PendingFolder parent) {
+        TransferWorkerPool pool = getWorkerPool(file);
+        if(pool==null)
+            return tryDeleteFile(file);
+
+        if(parent!=null)
+            parent.childStarted();
+
+        boolean submitted = pool.submit(new Runnable() {
+            public void run() {
+                boolean success = getState()!=INTERRUPTED && tryDeleteFile(file);
+                if(parent==null && success)
+                    unmarkFile(file);
+
+                childDeleted(parent, success);
+            }
+        }, file, file);
+
+        if(!submitted)
+            childDeleted(parent, false);
+
+        return submitted && parent!=null;
+    }
+
+    /**
+     * Called when a child of the given folder has been deleted or has failed to be. Once all the children of the
+     * folder have been, the folder is deleted, and so on up the tree.
+     *
+     * @param folder the folder the deleted file is a child of, <code>null</code> for a top-level file
+     * @param success <code>true</code> if the file was deleted
+     */
+    private void childDeleted(PendingFolder folder, boolean success) {
+        // Iterate rather than recurse: the deletion of the last file of a deep tree can complete many folders
+        while(folder!=null && folder.childDone(success)) {
+            // A folder one of the children of which could not be deleted is not empty
+            success = folder.isSuccess() && getState()!=INTERRUPTED && tryDeleteFile(folder.folder);
+            folder.setDone(success);
+            folder = folder.parent;
+        }
+    }
+
+    /**
+     * Returns the pool of workers the given file can be deleted by, <code>null</code> if the file has to be deleted
+     * by the job's thread.
+     */
+    private TransferWorkerPool getWorkerPool(AbstractFile file) {
+        // Archive entries cannot be deleted concurrently
+        if(file.hasAncestor(AbstractArchiveEntryFile.class))
+            return null;
+
+        synchronized(this) {
+            if(workerPool==null) {
+                int nbThreads = MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_THREADS, MuPreferences.DEFAULT_TRANSFER_THREADS);
+                if(nbThreads<=1)
+                    return null;
+
+                int volumeLimit = MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_THREADS_PER_VOLUME, MuPreferences.DEFAULT_TRANSFER_THREADS_PER_VOLUME);
+                workerPool = new TransferWorkerPool(this, nbThreads, volumeLimit);
+            }
+
+            return workerPool;
+        }
     }
 
 
@@ -103,57 +258,87 @@ public class DeleteJob extends FileJob {
     ////////////////////////////
 
     /**
-     * Deletes recursively the given file or folder. 
+     * Deletes the given file, or queues the children of the given folder to be deleted before the folder.
      *
      * @param file the file or folder to delete
-     * @param recurseParams not used
+     * @param recurseParams the folder being deleted the file is a child of, <code>null</code> for top-level files
      * 
-     * @return <code>true</code> if the file has been completely deleted.
+     * @return <code>true</code> if the file has been completely deleted. Top-level files that are moved to the trash
+     * or deleted by a worker are unmarked once they have been, <code>false</code> is returned for them.
      */
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
         if(getState()==INTERRUPTED)
             return false;
 
-        // Delete files recursively, only if trash is not used.
-        int ret;
-        if(!moveToTrash && file.isDirectory()) {
+        // Folders are moved to the trash along with their contents
+        if(moveToTrash) {
+            queueForTrash(file);
+            return false;
+        }
+
+        PendingFolder parent = (PendingFolder)recurseParams;
+
+        // Delete files recursively.
+        // Important: symlinks must *not* be followed -- following symlinks could have disastrous effects.
+        if(file.isDirectory() && !file.isSymlink()) {
             String filePath = file.getAbsolutePath();
             filePath = filePath.substring(getBaseSourceFolder().getAbsolutePath(false).length()+1, filePath.length());
 
-            // Important: symlinks must *not* be followed -- following symlinks could have disastrous effects.
-            if(!file.isSymlink()) {
-                do {		// Loop for retry
-                    // Delete each file in this folder
-                    try {
-                        AbstractFile subFiles[] = file.ls();
-                        for(int i=0; i<subFiles.length && getState()!=INTERRUPTED; i++) {
-                            // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                            nextFile(subFiles[i]);
-                            processFile(subFiles[i], null);
-                        }
-                        break;
-                    }
-                    catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
-
-                        ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_file", filePath));
-                        // Retry loops
-                        if(ret==RETRY_ACTION)
-                            continue;
-                        // Cancel, skip or close dialog returns false
-                        return false;
-                    }
-                } while(true);
-            }
+            do {		// Loop for retry
+                // Delete each file in this folder, the folder is deleted once all of them have been
+                try {
+                    AbstractFile children[] = file.ls();
+                    return processChildren(file, children, new PendingFolder(file, parent));
+                }
+                catch(IOException e) {
+                    LOGGER.debug("IOException caught", e);
+
+                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_file", filePath));
+                    // Retry loops
+                    if(ret==RETRY_ACTION)
+                        continue;
+                    // Cancel, skip or close dialog returns false
+                    return false;
+                }
+            } while(true);
         }
-        // Return now if the job was interrupted, so that we do not attempt to delete this folder
-        if(getState()==INTERRUPTED)
-            return false;
 
+        return deleteConcurrently(file, parent);
+    }
+
+    /**
+     * Called once all the children of the given folder have been submitted for deletion. The folder is deleted once
+     * they have all been deleted, possibly after this method has returned.
+     *
+     * @param folder the folder whose children have been submitted for deletion
+     * @param recurseParams the pending deletion of the folder
+     * @param success <code>true</code> if no child failed to be deleted so far
+     * @return <code>true</code> if the folder is being deleted or, for a top-level folder, has been deleted
+     */
+    @Override
+    protected boolean folderProcessed(AbstractFile folder, Object recurseParams, boolean success) {
+        PendingFolder pendingFolder = (PendingFolder)recurseParams;
+        childDeleted(pendingFolder, success);
+
+        // Wait for the whole tree of a top-level folder to be deleted, for the folder to be unmarked only if it was
+        if(pendingFolder.parent==null)
+            return pendingFolder.waitUntilDone();
+
+        return true;
+    }
+
+    /**
+     * Deletes the given file, giving the user the choice to skip the file, retry or cancel if it could not be deleted.
+     *
+     * @param file the file to delete
+     * @return <code>true</code> if the file has been deleted
+     */
+    private boolean tryDeleteFile(AbstractFile file) {
+        int ret;
         do {		// Loop for retry
             try {
-                deleteFile(file);
+                file.delete();
 
                 return true;
             }
@@ -183,12 +368,39 @@ public class DeleteJob extends FileJob {
     // Overridden methods //
     ////////////////////////
 
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+
+        if(moveToTrash)
+            flushTrash();
+
+        TransferWorkerPool pool;
+        synchronized(this) {
+            pool = workerPool;
+        }
+
+        if(pool!=null)
+            pool.awaitCompletion();
+    }
+
     @Override
     protected void jobStopped() {
         super.jobStopped();
 
-        if(moveToTrash)
+        // Files that were queued when the job was interrupted are not moved to the trash
+        if(moveToTrash) {
+            synchronized(filesToTrash) {
+                filesToTrash.clear();
+            }
             trash.waitForPendingOperations();
+        }
+
+        // Let the workers terminate once their current file has been deleted
+        synchronized(this) {
+            if(workerPool!=null)
+                workerPool.shutdown();
+        }
     }
 
     @Override
@@ -227,4 +439,69 @@ public class DeleteJob extends FileJob {
 
         return Translator.get("delete.deleting_file", getCurrentFilename());
     }
+
+
+    /**
+     * A folder that is deleted once all its children have been deleted.
+     */
+    private static class PendingFolder {
+        private final AbstractFile folder;
+
+        /** The folder this folder is a child of, null for a top-level folder */
+        private final PendingFolder parent;
+
+        /** Number of children being deleted, plus one until all children have been submitted */
+        private int nbPending = 1;
+
+        /** False if a child could not be deleted, or if the folder could not be */
+        private boolean success = true;
+
+        /** True once the folder has been deleted or has failed to be */
+        private boolean done;
+
+        private PendingFolder(AbstractFile folder, PendingFolder parent) {
+            this.folder = folder;
+            this.parent = parent;
+
+            if(parent!=null)
+                parent.childStarted();
+        }
+
+        private synchronized void childStarted() {
+            nbPending++;
+        }
+
+        /**
+         * Returns <code>true</code> if the given child was the last one to be processed.
+         */
+        private synchronized boolean childDone(boolean childSuccess) {
+            if(!childSuccess)
+                success = false;
+
+            return --nbPending==0;
+        }
+
+        private synchronized boolean isSuccess() {
+            return success;
+        }
+
+        private synchronized void setDone(boolean success) {
+            this.success = success;
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized boolean waitUntilDone() {
+            while(!done) {
+                try {
+                    wait();
+                }
+                catch(InterruptedException e) {
+                    // Loop one more time
+                }
+            }
+
+            return success;
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes files in a separate thread, in the order they are queued, on behalf of a {@link MoveJob}: the source files
+ * that have been copied are deleted while the next files are being copied.
+ *
+ * <p>At most {@link #MAX_PENDING_DELETIONS} deletions can be pending: {@link #add(Runnable)} blocks once the queue is
+ * full, so that the copies cannot get ahead of the deletions by more than that. Deletions that are still queued when
+ * the job is interrupted are not carried out.</p>
+ *
+ * @author Maxence Bernard
+ */
+class DeletionQueue {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeletionQueue.class);
+
+    /** Maximum number of deletions that can be queued */
+    private final static int MAX_PENDING_DELETIONS = 1024;
+
+    /** The job the files are deleted for */
+    private final FileJob job;
+
+    /** Carries out the deletions, in the order they were queued */
+    private final ExecutorService executor;
+
+    /** Number of deletions that have been queued and have not completed yet */
+    private int nbPendingDeletions;
+
+    /**
+     * Creates a new queue for the given job.
+     *
+     * @param job the job the files are deleted for
+     */
+    DeletionQueue(final FileJob job) {
+        this.job = job;
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, job.getClass().getName()+" deleter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues the given deletion, blocking while the queue is full.
+     *
+     * @param deletion deletes a file
+     */
+    void add(final Runnable deletion) {
+        synchronized(this) {
+            while(nbPendingDeletions>=MAX_PENDING_DELETIONS && job.getState()!=FileJob.INTERRUPTED)
+                waitUninterruptibly();
+
+            nbPendingDeletions++;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if(job.getState()!=FileJob.INTERRUPTED)
+                            deletion.run();
+                    }
+                    catch(RuntimeException e) {
+                        LOGGER.warn("Caught exception while deleting file", e);
+                    }
+                    finally {
+                        deletionDone();
+                    }
+                }
+            });
+        }
+        catch(RejectedExecutionException e) {
+            // The queue has been shut down, the job was interrupted
+            deletionDone();
+        }
+    }
+
+    /**
+     * Blocks until all the deletions that have been queued have completed.
+     */
+    synchronized void awaitCompletion() {
+        while(nbPendingDeletions>0)
+            waitUninterruptibly();
+    }
+
+    /**
+     * Stops the deletion thread once the deletion that is running has completed.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private synchronized void deletionDone() {
+        nbPendingDeletions--;
+        notifyAll();
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        }
+        catch(InterruptedException e) {
+            // Loop one more time
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileProtocols;
+
+/**
+ * Tells whether the files a job writes to exist, and whether they are folders, from a listing of their parent
+ * folder rather than by querying each file.
+ *
+ * <p>Checking for collisions file by file calls {@link AbstractFile#exists()} and {@link AbstractFile#isDirectory()}
+ * on each destination file, which on remote file systems such as SFTP, FTP or SMB costs one or two round trips per
+ * file. Instead, a destination folder is listed once, the first time a file in it is looked up, and the names and
+ * types of its children are kept. The listings are updated as the job adds files, and the folders the job creates
+ * are known to be empty without being listed. When a folder cannot be listed, the files it contains are queried
+ * individually. Local files are always queried individually: queries are cheap, and only the file system knows how
+ * it matches names.</p>
+ *
+ * <p>Whether a file system ignores the case of names cannot be told from its protocol. A name that is not in the
+ * listing but differs only in case from a name that is, is thus looked up by querying the file: the file system
+ * decides whether both names match.</p>
+ *
+ * <p>A listing does not reflect the changes made to a folder by others than the job: an instance belongs to a
+ * single job, while it runs. At most {@link #MAX_FOLDERS} listings of folders the job has not written to are kept,
+ * the least recently used ones are discarded and listed again if needed. The listings of folders the job writes to
+ * are never discarded, as they hold the files the job is about to write.</p>
+ *
+ * <p>This class is thread-safe. Folders are listed without holding the lock, so that a slow listing only holds up
+ * the threads looking up files in the same folder: these wait for it to complete rather than listing the folder
+ * again. The files the job adds to a folder while it is being listed are added to its listing once it is complete.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class DestinationListing {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DestinationListing.class);
+
+    /** Maximum number of listings of folders the job has not written to that are kept */
+    final static int MAX_FOLDERS = 64;
+
+    /** Folder key -> listing of the folder, null if the folder could not be listed, in access order */
+    private final Map<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f, true);
+
+    /** Keys of the folders the job has written to, whose listings are never discarded */
+    private final Set<String> writtenFolders = new HashSet<String>();
+
+    /** Key of the folders being listed -> files added by the job to the folder while it is being listed */
+    private final Map<String, Listing> pendingFolders = new HashMap<String, Listing>();
+
+    /** Number of folders that have been listed */
+    private int nbListings;
+
+    /**
+     * Creates a new <code>DestinationListing</code>, with no folder listed yet.
+     */
+    public DestinationListing() {
+    }
+
+    /**
+     * Returns <code>true</code> if the given file exists, according to the listing of its parent folder.
+     *
+     * @param file a destination file
+     * @return true if the file exists
+     */
+    public boolean exists(AbstractFile file) {
+        AbstractFile folder = getListedFolder(file);
+        if(folder!=null) {
+            Listing listing = getListing(folder);
+            if(listing!=null) {
+                synchronized(this) {
+                    if(!listing.isAmbiguous(file.getName()))
+                        return listing.contains(file.getName());
+                }
+            }
+        }
+
+        return file.exists();
+    }
+
+    /**
+     * Returns <code>true</code> if the given file exists and is a folder, according to the listing of its parent
+     * folder.
+     *
+     * @param file a destination file
+     * @return true if the file is a folder
+     */
+    public boolean isDirectory(AbstractFile file) {
+        AbstractFile folder = getListedFolder(file);
+        if(folder!=null) {
+            Listing listing = getListing(folder);
+            if(listing!=null) {
+                synchronized(this) {
+                    if(!listing.isAmbiguous(file.getName()))
+                        return listing.isDirectory(file.getName());
+                }
+            }
+        }
+
+        return file.isDirectory();
+    }
+
+    /**
+     * Records that the given file has been, or is about to be, written by the job.
+     *
+     * @param file the file written by the job
+     * @param directory true if the file is a folder
+     */
+    public synchronized void fileAdded(AbstractFile file, boolean directory) {
+        AbstractFile folder = getListedFolder(file);
+        if(folder==null)
+            return;
+
+        // Folders that have not been listed yet will be listed with the file
+        String key = getFolderKey(folder);
+        Listing listing = getWritableListing(key);
+        if(listing!=null) {
+            listing.put(file.getName(), directory);
+            writtenFolders.add(key);
+        }
+    }
+
+    /**
+     * Records that the given folder has been created by the job: it exists, and is empty. The folder may have been
+     * created with {@link AbstractFile#mkdirs()}, its parents are recorded as existing too.
+     *
+     * @param folder the folder created by the job
+     */
+    public synchronized void folderCreated(AbstractFile folder) {
+        if(isLocal(folder))
+            return;
+
+        String key = getFolderKey(folder);
+        listings.put(key, new Listing());
+        writtenFolders.add(key);
+
+        AbstractFile parent;
+        for(AbstractFile file=folder; (parent=file.getParent())!=null; file=parent) {
+            String parentKey = getFolderKey(parent);
+            Listing listing = getWritableListing(parentKey);
+            if(listing!=null) {
+                writtenFolders.add(parentKey);
+                // The parents of a folder that was listed already are known to exist
+                if(!listing.put(file.getName(), true))
+                    break;
+            }
+        }
+
+        discardListings();
+    }
+
+    /**
+     * Returns the number of folders that have been listed so far.
+     *
+     * @return the number of folders that have been listed
+     */
+    public synchronized int getNbListings() {
+        return nbListings;
+    }
+
+    /**
+     * Returns the folder whose listing tells whether the given file exists, <code>null</code> if the file is to be
+     * queried individually.
+     */
+    private static AbstractFile getListedFolder(AbstractFile file) {
+        return isLocal(file)?null:file.getParent();
+    }
+
+    private static boolean isLocal(AbstractFile file) {
+        return FileProtocols.FILE.equals(file.getURL().getScheme());
+    }
+
+    /**
+     * Returns the listing the files added by the job to the given folder are to be recorded in: its listing, or the
+     * files added while it is being listed. Returns <code>null</code> if the folder is neither listed nor being
+     * listed, or could not be listed.
+     */
+    private Listing getWritableListing(String key) {
+        Listing listing = listings.get(key);
+        return listing==null?pendingFolders.get(key):listing;
+    }
+
+    /**
+     * Returns the listing of the given folder, listing it if it is not known yet, <code>null</code> if it cannot be
+     * listed. The folder is listed without holding the lock, if it is already being listed by another thread this
+     * method waits for it to complete. The returned listing must be read holding the lock.
+     */
+    private Listing getListing(AbstractFile folder) {
+        String key = getFolderKey(folder);
+        synchronized(this) {
+            while(true) {
+                if(listings.containsKey(key))
+                    return listings.get(key);
+
+                if(!pendingFolders.containsKey(key))
+                    break;
+
+                try {
+                    wait();
+                }
+                catch(InterruptedException e) {
+                    // Let the caller query the file
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+
+            pendingFolders.put(key, new Listing());
+        }
+
+        Listing listing = null;
+        try {
+            AbstractFile children[] = folder.ls();
+
+            listing = new Listing();
+            for(AbstractFile child : children)
+                listing.put(child.getName(), child.isDirectory());
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not list "+folder+", its files will be queried individually", e);
+        }
+        finally {
+            synchronized(this) {
+                Listing addedFiles = pendingFolders.remove(key);
+                if(listing!=null)
+                    nbListings++;
+
+                // The job may have created the folder while it was being listed: it is known to be empty
+                if(listings.containsKey(key)) {
+                    listing = listings.get(key);
+                }
+                else {
+                    if(listing!=null)
+                        listing.putAll(addedFiles);
+                    listings.put(key, listing);
+                    discardListings();
+                }
+
+                notifyAll();
+            }
+        }
+
+        return listing;
+    }
+
+    /**
+     * Discards the least recently used listings of folders the job has not written to, in excess of
+     * {@link #MAX_FOLDERS}.
+     */
+    private void discardListings() {
+        int nbDiscardable = listings.size()-writtenFolders.size();
+        Iterator<String> keys = listings.keySet().iterator();
+        while(nbDiscardable>MAX_FOLDERS && keys.hasNext()) {
+            if(!writtenFolders.contains(keys.next())) {
+                keys.remove();
+                nbDiscardable--;
+            }
+        }
+    }
+
+    private static String getFolderKey(AbstractFile folder) {
+        String key = folder.getURL().toString(false);
+        // Folder URLs may or may not end with a separator
+        if(key.length()>1 && key.endsWith("/"))
+            key = key.substring(0, key.length()-1);
+
+        return key;
+    }
+
+
+    /**
+     * The names and types of a folder's children.
+     */
+    private static class Listing {
+        /** Name -> true for folders */
+        private final Map<String, Boolean> names = new HashMap<String, Boolean>();
+
+        /** Names in lower case */
+        private final Set<String> lowerCaseNames = new HashSet<String>();
+
+        /**
+         * Adds a child, returns <code>true</code> if there was no child with that name.
+         */
+        private boolean put(String name, boolean directory) {
+            lowerCaseNames.add(name.toLowerCase(Locale.ENGLISH));
+            return names.put(name, directory)==null;
+        }
+
+        /**
+         * Adds the children of the given listing.
+         */
+        private void putAll(Listing listing) {
+            for(Map.Entry<String, Boolean> entry : listing.names.entrySet())
+                put(entry.getKey(), entry.getValue());
+        }
+
+        private boolean contains(String name) {
+            return names.containsKey(name);
+        }
+
+        private boolean isDirectory(String name) {
+            Boolean directory = names.get(name);
+            return directory!=null && directory;
+        }
+
+        /**
+         * Returns <code>true</code> if the given name is not in the listing but differs only in case from a name that
+         * is: whether both names match depends on the file system.
+         */
+        private boolean isAmbiguous(String name) {
+            return !names.containsKey(name) && lowerCaseNames.contains(name.toLowerCase(Locale.ENGLISH));
+        }
+    }
+}
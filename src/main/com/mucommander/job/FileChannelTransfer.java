@@ -0,0 +1,409 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.io.BandwidthLimiter;
+
+/**
+ * Copies the contents of a local file to another local file using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * which lets the operating system copy the data without moving it through the Java heap (e.g. with
+ * <code>copy_file_range</code> or <code>sendfile</code> under Linux).
+ *
+ * <p>The data is transferred in chunks, so that the transfer can be monitored and controlled like a stream copy:
+ * the number of bytes transferred is reported to a {@link ByteCounter} after each chunk, a throughput limit can be
+ * set, the transfer can be paused by setting a limit of <code>0</code>, and it can be aborted at any time by
+ * {@link #close() closing} it.</p>
+ *
+ * <p>If enabled in the preferences, the destination file is given its final length before any data is written to it
+ * ({@link MuPreferences#TRANSFER_PREALLOCATE}), and source files that seem to contain holes are copied without
+ * writing their blocks of zeros, leaving holes in the destination file instead ({@link MuPreferences#TRANSFER_SPARSE_FILES}).
+ * Sparse copies move the data through the Java heap, so they are used only for files in which sampled blocks are
+ * found empty.</p>
+ *
+ * @author Maxence Bernard
+ */
+class FileChannelTransfer {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileChannelTransfer.class);
+
+    /** Maximum number of bytes transferred at once */
+    final static int CHUNK_SIZE = 8*1024*1024;
+
+    /** Minimum number of bytes transferred at once when the throughput is limited */
+    private final static int MIN_CHUNK_SIZE = 64*1024;
+
+    /** Interval in milliseconds at which a paused transfer checks whether it was closed */
+    private final static long PAUSE_CHECK_INTERVAL = 500;
+
+    /** Size of the blocks that are left as holes in the destination when they contain only zeros */
+    private final static int SPARSE_BLOCK_SIZE = 4096;
+
+    /** Number of blocks of the source file that are sampled to determine whether it may contain holes */
+    private final static int NB_SPARSE_SAMPLES = 16;
+
+    /** Minimum size of the files that may be copied as sparse files */
+    private final static long MIN_SPARSE_FILE_SIZE = 1024*1024;
+
+    private final FileInputStream in;
+    private final RandomAccessFile out;
+    private final FileChannel inChannel;
+    private final FileChannel outChannel;
+
+    /** Counts the bytes transferred */
+    private final ByteCounter byteCounter;
+
+    /** Throughput limit in bytes per second, 0 to pause the transfer, -1 for no limit */
+    private long throughputLimit = -1;
+
+    /** Share of the bandwidth limiter the transfer is accounted to, null if none */
+    private BandwidthLimiter.Share bandwidthShare;
+
+    /** Position in the source file up to which its contents have been copied */
+    private volatile long position;
+
+    /** True if the destination file may be given its final length before data is written to it */
+    private boolean preallocate = true;
+
+    /** True once the transfer has been closed */
+    private boolean closed;
+
+    /**
+     * Creates a new transfer between the given streams.
+     *
+     * @param in the source file's stream
+     * @param out the destination file, whose contents up to the position the transfer starts from are preserved
+     * @param byteCounter counter the number of bytes transferred is added to
+     */
+    FileChannelTransfer(FileInputStream in, RandomAccessFile out, ByteCounter byteCounter) {
+        this.in = in;
+        this.out = out;
+        this.inChannel = in.getChannel();
+        this.outChannel = out.getChannel();
+        this.byteCounter = byteCounter;
+    }
+
+    /**
+     * Sets the throughput limit in bytes per second, <code>0</code> to pause the transfer, <code>-1</code> to disable
+     * any limit. The new limit is effective as of the next chunk.
+     *
+     * @param bytesPerSecond throughput limit in bytes per second, 0 to pause, -1 for no limit
+     */
+    synchronized void setThroughputLimit(long bytesPerSecond) {
+        this.throughputLimit = bytesPerSecond;
+        notifyAll();
+    }
+
+    /**
+     * Sets the share of a {@link BandwidthLimiter} the transfer is accounted to, in addition to its own throughput
+     * limit. This method must be called before the transfer starts.
+     *
+     * @param share the share the transfer is accounted to, null for none
+     */
+    void setBandwidthShare(BandwidthLimiter.Share share) {
+        this.bandwidthShare = share;
+    }
+
+    /**
+     * Sets whether the destination file may be given its final length before data is written to it, if enabled in the
+     * preferences. This must be disabled when the transfer is journaled: the length of the destination file is then
+     * what tells how much of it was written, should the transfer be interrupted by a crash. This method must be
+     * called before the transfer starts.
+     *
+     * @param preallocate true if the destination file may be preallocated
+     */
+    void setPreallocate(boolean preallocate) {
+        this.preallocate = preallocate;
+    }
+
+    /**
+     * Transfers the source file's contents from the given position to its end, and writes them to the destination
+     * file at the same position. The number of bytes transferred is reported to the byte counter after each chunk.
+     *
+     * <p>If the transfer fails, the destination file may be larger than the data that was written to it ;
+     * {@link #truncate(File, long)} it to {@link #getPosition()} to resume the transfer later on.</p>
+     *
+     * @param position position in the source file to start from
+     * @return the number of bytes transferred
+     * @throws IOException if an I/O error occurred, or if the transfer was closed
+     */
+    long transfer(long position) throws IOException {
+        long size = inChannel.size();
+        long nbTransferred;
+        this.position = position;
+
+        if(preallocate)
+            preallocate(out, size);
+
+        byte sparseBuffer[] = isSparseCopyEnabled() && mayContainHoles(position, size)?BufferPool.getByteArray():null;
+        outChannel.position(position);
+        try {
+            nbTransferred = transfer(position, size, sparseBuffer);
+        }
+        finally {
+            if(sparseBuffer!=null)
+                BufferPool.releaseByteArray(sparseBuffer);
+        }
+
+        // Create the hole at the end of a sparse file, or remove what is left of the preallocated space if the source
+        // file was truncated while being transferred
+        long length = this.position;
+        if(out.length()!=length)
+            out.setLength(length);
+
+        return nbTransferred;
+    }
+
+    private long transfer(long position, long size, byte sparseBuffer[]) throws IOException {
+        long nbTransferred = 0;
+
+        // Bytes transferred and start time of the current throttling window
+        long windowBytes = 0;
+        long windowStart = System.currentTimeMillis();
+        long windowLimit = -1;
+
+        while(position<size) {
+            long limit = waitWhilePaused();
+            if(limit!=windowLimit) {
+                windowLimit = limit;
+                windowBytes = 0;
+                windowStart = System.currentTimeMillis();
+            }
+
+            long nbBytes;
+            if(sparseBuffer!=null) {
+                nbBytes = copySparseChunk(position, sparseBuffer);
+            }
+            else {
+                long chunkSize = limit>0?Math.max(MIN_CHUNK_SIZE, Math.min(CHUNK_SIZE, limit/4)):CHUNK_SIZE;
+                if(bandwidthShare!=null)
+                    chunkSize = Math.min(chunkSize, bandwidthShare.getChunkSize());
+                nbBytes = inChannel.transferTo(position, Math.min(chunkSize, size-position), outChannel);
+            }
+            // The source file was truncated while being transferred
+            if(nbBytes<=0)
+                break;
+
+            position += nbBytes;
+            this.position = position;
+            nbTransferred += nbBytes;
+            byteCounter.add(nbBytes);
+
+            if(bandwidthShare!=null)
+                bandwidthShare.acquire(nbBytes);
+
+            // Sleep long enough for the average throughput not to exceed the limit
+            if(limit>0) {
+                windowBytes += nbBytes;
+                long delay = windowBytes*1000/limit - (System.currentTimeMillis()-windowStart);
+                if(delay>0) {
+                    try {
+                        Thread.sleep(delay);
+                    }
+                    catch(InterruptedException e) {
+                        // Carry on
+                    }
+                }
+            }
+        }
+
+        return nbTransferred;
+    }
+
+    /**
+     * Copies a buffer's worth of the source file from the given position, writing only the blocks that do not contain
+     * only zeros. Returns the number of bytes read from the source file, <code>-1</code> if its end was reached.
+     */
+    private int copySparseChunk(long position, byte buffer[]) throws IOException {
+        int nbRead = inChannel.read(ByteBuffer.wrap(buffer), position);
+        if(nbRead<=0)
+            return nbRead;
+
+        // Write runs of blocks that contain data, skip blocks of zeros
+        int runStart = -1;
+        for(int offset=0; offset<nbRead; offset+=SPARSE_BLOCK_SIZE) {
+            boolean empty = isZero(buffer, offset, Math.min(SPARSE_BLOCK_SIZE, nbRead-offset));
+            if(!empty && runStart==-1) {
+                runStart = offset;
+            }
+            else if(empty && runStart!=-1) {
+                write(buffer, runStart, offset-runStart, position+runStart);
+                runStart = -1;
+            }
+        }
+
+        if(runStart!=-1)
+            write(buffer, runStart, nbRead-runStart, position+runStart);
+
+        return nbRead;
+    }
+
+    private void write(byte buffer[], int offset, int length, long position) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buffer, offset, length);
+        while(bb.hasRemaining())
+            position += outChannel.write(bb, position);
+    }
+
+    private static boolean isZero(byte buffer[], int offset, int length) {
+        for(int i=offset+length-1; i>=offset; i--) {
+            if(buffer[i]!=0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the source file may contain holes: Java offers no way to find them, so blocks
+     * spread over the file are read, and the file is considered sparse if one of them contains only zeros.
+     */
+    private boolean mayContainHoles(long position, long size) throws IOException {
+        long length = size-position;
+        if(length<MIN_SPARSE_FILE_SIZE)
+            return false;
+
+        byte block[] = new byte[SPARSE_BLOCK_SIZE];
+        long interval = (length-SPARSE_BLOCK_SIZE)/(NB_SPARSE_SAMPLES-1);
+        for(int i=0; i<NB_SPARSE_SAMPLES; i++) {
+            int nbRead = inChannel.read(ByteBuffer.wrap(block), position+i*interval);
+            if(nbRead>0 && isZero(block, 0, nbRead))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isSparseCopyEnabled() {
+        return MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_SPARSE_FILES, MuPreferences.DEFAULT_TRANSFER_SPARSE_FILES);
+    }
+
+    /**
+     * Returns the position in the source file up to which its contents have been copied. The destination file
+     * contains the same data up to this position.
+     *
+     * @return the position in the source file up to which its contents have been copied
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Gives the destination file the specified length before data is written to it, if it is smaller and if this is
+     * enabled in the preferences ({@link MuPreferences#TRANSFER_PREALLOCATE}), so that its length is not updated as
+     * it grows and so that data can be written at any position in it. Errors are ignored.
+     *
+     * <p>This does not reserve disk space: the JDK offers no way to allocate space, and on most filesystems (ext4,
+     * XFS, NTFS...) extending a file leaves a hole that is allocated only as data is written to it. A full disk is
+     * still reported while the data is being written. Until then, the file has its final length although it contains
+     * only zeros past the data that was written, so a transfer that preallocates its destination cannot be resumed
+     * after a crash.</p>
+     *
+     * @param out the destination file
+     * @param size the final size of the destination file
+     * @return <code>true</code> if the file was extended
+     */
+    static boolean preallocate(RandomAccessFile out, long size) {
+        if(!MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_PREALLOCATE, MuPreferences.DEFAULT_TRANSFER_PREALLOCATE))
+            return false;
+
+        try {
+            if(out.length()>=size)
+                return false;
+
+            out.setLength(size);
+            return true;
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not preallocate "+size+" bytes", e);
+            return false;
+        }
+    }
+
+    /**
+     * Truncates the given file to the specified length if it is larger, removing the space that was preallocated
+     * but not written to after a failed transfer. Errors are ignored.
+     *
+     * @param file the file to truncate
+     * @param length the length of the data that was written to the file
+     */
+    static void truncate(File file, long length) {
+        if(file.length()<=length)
+            return;
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not truncate "+file, e);
+        }
+    }
+
+    /**
+     * Blocks while the transfer is paused, and returns the current throughput limit.
+     */
+    private synchronized long waitWhilePaused() throws IOException {
+        while(throughputLimit==0 && !closed) {
+            try {
+                wait(PAUSE_CHECK_INTERVAL);
+            }
+            catch(InterruptedException e) {
+                // Loop one more time
+            }
+        }
+
+        if(closed)
+            throw new IOException("Transfer closed");
+
+        return throughputLimit;
+    }
+
+    /**
+     * Closes the source and destination files, aborting the transfer if it is in progress.
+     */
+    void close() {
+        synchronized(this) {
+            closed = true;
+            notifyAll();
+        }
+
+        try { in.close(); }
+        catch(IOException e) {}
+
+        try { out.close(); }
+        catch(IOException e) {}
+    }
+}
@@ -59,7 +59,43 @@ public class FileCollisionChecker {
      * @return an int describing the collision type, or {@link #NO_COLLOSION} if no collision was detected (see constants)
      */
     public static int checkForCollision(AbstractFile sourceFile, AbstractFile destFile) {
+        int collision = checkForSourceCollision(sourceFile, destFile);
+        if(collision!=NO_COLLOSION)
+            return collision;
 
+        // File exists in destination
+        if(destFile.exists() && !destFile.isDirectory())
+            return DESTINATION_FILE_ALREADY_EXISTS;
+
+        return NO_COLLOSION;
+    }
+
+    /**
+     * Same as {@link #checkForCollision(AbstractFile, AbstractFile)}, except that whether the destination file exists
+     * is looked up in the given listing of the destination folders, instead of querying the file.
+     *
+     * @param sourceFile source file, can be null in which case the only collision checked against is {@link #DESTINATION_FILE_ALREADY_EXISTS}.
+     * @param destFile destination file, cannot be null
+     * @param listing listing of the destination folders
+     * @return an int describing the collision type, or {@link #NO_COLLOSION} if no collision was detected (see constants)
+     */
+    public static int checkForCollision(AbstractFile sourceFile, AbstractFile destFile, DestinationListing listing) {
+        int collision = checkForSourceCollision(sourceFile, destFile);
+        if(collision!=NO_COLLOSION)
+            return collision;
+
+        // File exists in destination
+        if(listing.exists(destFile) && !listing.isDirectory(destFile))
+            return DESTINATION_FILE_ALREADY_EXISTS;
+
+        return NO_COLLOSION;
+    }
+
+    /**
+     * Checks for the collisions between the source and destination files, which do not depend on the destination
+     * file existing.
+     */
+    private static int checkForSourceCollision(AbstractFile sourceFile, AbstractFile destFile) {
         if(sourceFile!=null) {
             // Source and destination are equal
             if(destFile.equalsCanonical(sourceFile))
@@ -70,10 +106,6 @@ public class FileCollisionChecker {
                 return SOURCE_PARENT_OF_DESTINATION;
         }
 
-        // File exists in destination
-        if(destFile.exists() && !destFile.isDirectory())
-            return DESTINATION_FILE_ALREADY_EXISTS;
-
         return NO_COLLOSION;
     }
 }
@@ -19,6 +19,11 @@
 
 package com.mucommander.job;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 import org.slf4j.Logger;
@@ -28,10 +33,9 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.job.progress.JobProgress;
-import com.mucommander.job.ui.DialogResult;
-import com.mucommander.job.ui.UserInputHelper;
+import com.mucommander.job.ui.DialogJobInteraction;
 import com.mucommander.text.Translator;
-import com.mucommander.ui.dialog.QuestionDialog;
+import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
@@ -47,10 +51,12 @@ import com.mucommander.ui.notifier.NotificationType;
  * will be used to display visual indications of the job's progress.
  * <p>
  * The actual processing is performed in a separate thread. A FileJob needs to be started explicitely using
- * {@link #start()}. The lifecycle of a FileJob is as follows:<br>
+ * {@link #start()}, which hands it over to the {@link JobScheduler}: unless it has a {@link #HIGH_PRIORITY high priority},
+ * the job waits in the {@link #QUEUED} state until the volumes it uses are available. The lifecycle of a FileJob is as
+ * follows:<br>
  * <br>
  * <pre>
- * {@link #NOT_STARTED} -> {@link #RUNNING} -> {@link #FINISHED}
+ * {@link #NOT_STARTED} -> ({@link #QUEUED} ->) {@link #RUNNING} -> {@link #FINISHED}
  *                         ^                |
  *                         |                -> {@link #INTERRUPTED}
  *                         |                |                      
@@ -68,6 +74,9 @@ public abstract class FileJob implements Runnable {
     /** Thread in which the file job is performed */
     private Thread jobThread;
 
+    /** Thread in which the file job was started, kept once the job has stopped so that it can be waited for */
+    private volatile Thread startedThread;
+
     /** Lock used when job is being paused */
     private final Object pauseLock = new Object();
 
@@ -96,6 +105,12 @@ public abstract class FileJob implements Runnable {
     /** Files which are going to be processed */
     protected FileSet files;
 
+    /** Top-level files, created the first time {@link #isTopLevelFile(AbstractFile)} is called */
+    private volatile Set<AbstractFile> topLevelFiles;
+
+    /** Walks the folders whose children are processed, see {@link #processChildren(AbstractFile, AbstractFile[], Object)} */
+    private final FileWalker walker = new FileWalker(this);
+
     /** Number of files that this job contains */
     private int nbFiles;
 
@@ -110,6 +125,9 @@ public abstract class FileJob implements Runnable {
 
     /** If set to true, processed files will be unmarked from current table */
     private boolean autoUnmark = true;
+
+    /** The table processed files are unmarked from, null until this job has started */
+    private volatile FileTable activeTable;
 	
     /** File to be selected after job has finished (can be null if not set) */
     private AbstractFile fileToSelect;
@@ -130,6 +148,23 @@ public abstract class FileJob implements Runnable {
     /** Indicates that this job has naturally finished (i.e. without being interrupted), this is a permanent state */
     public final static int FINISHED = 4;
 
+    /** Indicates that this job has been started and is waiting in the {@link JobScheduler} queue for the volumes it
+     * uses to be available, this is a temporary state */
+    public final static int QUEUED = 5;
+
+
+    /** Priority of jobs that run as soon as they are started, regardless of the other jobs using the same volumes */
+    public final static int HIGH_PRIORITY = 2;
+
+    /** Priority of jobs that wait for the volumes they use to be available, before jobs with a lower priority */
+    public final static int NORMAL_PRIORITY = 1;
+
+    /** Priority of jobs that wait for the volumes they use to be available, after jobs with a higher priority */
+    public final static int LOW_PRIORITY = 0;
+
+    /** Priority of this job, see {@link #getPriority()} */
+    private volatile int priority = HIGH_PRIORITY;
+
 
     /** Current state of this job */
     private int jobState = NOT_STARTED;
@@ -140,8 +175,17 @@ public abstract class FileJob implements Runnable {
     /** Information about this job progress */
     private JobProgress jobProgress;
 
+    /** Records where the time of this job goes */
+    private final JobTelemetry telemetry = new JobTelemetry(this);
+
     /** True if the user asked to automatically skip errors */
-    private boolean autoSkipErrors;
+    private volatile boolean autoSkipErrors;
+
+    /** Lock that serializes the dialogs asking for user input, which may be requested by several threads */
+    private final Object userInputLock = new Object();
+
+    /** Asks the user for the decisions this job cannot make on its own */
+    private JobInteraction interaction;
 
 //    private int nbFilesProcessed;
 //    private int nbFilesDiscovered;
@@ -171,6 +215,7 @@ public abstract class FileJob implements Runnable {
     public FileJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files) {
         this(mainFrame, files);
         this.progressDialog = progressDialog;
+        this.interaction = new DialogJobInteraction(progressDialog, mainFrame);
     }
 
 	
@@ -182,6 +227,7 @@ public abstract class FileJob implements Runnable {
      */
     public FileJob(MainFrame mainFrame, FileSet files) {
         this.mainFrame = mainFrame;
+        this.interaction = new DialogJobInteraction(null, mainFrame);
         this.files = files;
         this.nbFiles = files.size();
         this.baseSourceFolder = files.getBaseFolder();
@@ -237,25 +283,94 @@ public abstract class FileJob implements Runnable {
 	
 	
     /**
-     * Starts file job in a separate thread.
+     * Starts file job in a separate thread, as soon as the {@link JobScheduler} allows it.
      */
     public void start() {
         // Return if job has already been started
         if(getState()!=NOT_STARTED)
             return;
 
+        JobScheduler.getInstance().schedule(this);
+    }
+
+    /**
+     * Starts processing files in a separate thread. This method is called by the {@link JobScheduler} once the
+     * volumes this job uses are available.
+     */
+    void startThread() {
+        // Return if job has already been started, or if it was interrupted while queued
+        int state = getState();
+        if(state!=NOT_STARTED && state!=QUEUED)
+            return;
+
         // Pause auto-refresh during file job as it potentially modifies the current folders contents
         // and would potentially cause folder panel to auto-refresh
-        getMainFrame().getLeftPanel().getFolderChangeMonitor().setPaused(true);
-        getMainFrame().getRightPanel().getFolderChangeMonitor().setPaused(true);
+        if(mainFrame!=null) {
+            mainFrame.getLeftPanel().getFolderChangeMonitor().setPaused(true);
+            mainFrame.getRightPanel().getFolderChangeMonitor().setPaused(true);
+        }
 
         setState(RUNNING);
         startDate = System.currentTimeMillis();
+        telemetry.register();
 
         jobThread = new Thread(this, getClass().getName());
+        startedThread = jobThread;
         jobThread.start();
     }
 
+    /**
+     * Waits for the thread of this job to terminate, once the job has finished or has been interrupted: the job has
+     * then released its resources, such as its journal. Returns immediately if the job has not been started.
+     * This method must not be called by the job's thread.
+     *
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public void waitForThread() throws InterruptedException {
+        Thread thread = startedThread;
+        if(thread!=null)
+            thread.join();
+    }
+
+
+    /**
+     * Returns the priority of this job: {@link #HIGH_PRIORITY}, {@link #NORMAL_PRIORITY} or {@link #LOW_PRIORITY}.
+     * Jobs have a high priority by default ; jobs that may keep the volumes they use busy for a long time should
+     * lower their priority, for the {@link JobScheduler} to limit the number of jobs using a same volume.
+     *
+     * @return the priority of this job
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of this job. If the job is waiting in the {@link JobScheduler} queue, its new priority
+     * is taken into account immediately: in particular, raising it to {@link #HIGH_PRIORITY} starts it.
+     *
+     * @param priority {@link #HIGH_PRIORITY}, {@link #NORMAL_PRIORITY} or {@link #LOW_PRIORITY}
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+
+        if(getState()==QUEUED)
+            JobScheduler.getInstance().priorityChanged(this);
+    }
+
+    /**
+     * Returns the folders this job reads from or writes to, whose volumes the {@link JobScheduler} shares between
+     * jobs. This implementation returns the base source folder ; subclasses that write to other volumes should
+     * override this method and add their folders.
+     *
+     * @return the folders this job reads from or writes to
+     */
+    protected List<AbstractFile> getAccessedFolders() {
+        List<AbstractFile> folders = new ArrayList<AbstractFile>();
+        if(baseSourceFolder!=null)
+            folders.add(baseSourceFolder);
+        return folders;
+    }
+
 
 	/**
 	 * Returns the dialog showing progress of this job.
@@ -268,13 +383,33 @@ public abstract class FileJob implements Runnable {
 
 	/**
 	 * Returns the main frame.
-	 * @return the mainFrame
+	 * @return the mainFrame, <code>null</code> if this job does not run in a main frame
 	 */
 	protected MainFrame getMainFrame() {
 		return mainFrame;
 	}
 
 
+    /**
+     * Returns the {@link JobInteraction} this job asks for the decisions it cannot make on its own.
+     *
+     * @return the interaction of this job
+     */
+    public JobInteraction getInteraction() {
+        return interaction;
+    }
+
+    /**
+     * Sets the {@link JobInteraction} this job asks for the decisions it cannot make on its own, instead of asking
+     * the user with dialogs. This method must be called before the job is started.
+     *
+     * @param interaction the interaction of this job
+     */
+    public void setInteraction(JobInteraction interaction) {
+        this.interaction = interaction;
+    }
+
+
 	/**
      * Returns the current state of this FileJob. See constant fields for possible return values.
      *
@@ -426,6 +561,8 @@ public abstract class FileJob implements Runnable {
 
         // Notify that the job has been stopped
         jobStopped();
+
+        telemetry.unregister();
     }
 
 	
@@ -448,8 +585,8 @@ public abstract class FileJob implements Runnable {
                 // Switch to RUNNING state and notify listeners
                 setState(RUNNING);
             }
-            // Pause job if it not paused already
-            else if(paused && getState()!=PAUSED && getState()!=INTERRUPTED && getState()!=FINISHED) {
+            // Pause job if it not paused already. Queued jobs are not paused: they have not started yet.
+            else if(paused && getState()!=PAUSED && getState()!=INTERRUPTED && getState()!=FINISHED && getState()!=QUEUED) {
                 // Memorize pause time in order to calculate pause time when the job is resumed
                 setPauseStartDate();
                 // Call the jobPaused method to notify of the new job's state
@@ -492,6 +629,82 @@ public abstract class FileJob implements Runnable {
     }
 
 
+    /**
+     * Processes the given children of a folder, by calling {@link #processFile(AbstractFile, Object) processFile()}
+     * for each of them and then {@link #folderProcessed(AbstractFile, Object, boolean) folderProcessed()} for the folder.
+     * This method is meant to be called by <code>processFile()</code> for folders, instead of recursing: the folders
+     * being processed are kept in an explicit stack, so that the depth of the trees this job can process is not limited.
+     *
+     * <p>When called for a top-level file, this method returns once all files under the folder have been processed.
+     * Otherwise, the children are only queued and processed after <code>processFile()</code> has returned: the
+     * work that must be done after the children have been processed belongs in <code>folderProcessed()</code>.</p>
+     *
+     * @param folder the folder whose children are to be processed
+     * @param children the children of the folder
+     * @param recurseParams the parameters to pass to <code>processFile()</code> for each child
+     * @return the value returned by <code>folderProcessed()</code> for a top-level folder, <code>true</code> otherwise
+     */
+    protected boolean processChildren(AbstractFile folder, AbstractFile children[], Object recurseParams) {
+        boolean topLevel = !walker.isWalking();
+
+        walker.push(folder, children, recurseParams);
+
+        return !topLevel || walker.walk();
+    }
+
+    /**
+     * Called once all the children of a folder passed to {@link #processChildren(AbstractFile, AbstractFile[], Object)}
+     * have been processed, or when this job has been interrupted while processing them. The value returned by this
+     * method is the result of the processing of the folder, as if it had been returned by
+     * {@link #processFile(AbstractFile, Object) processFile()}.
+     *
+     * <p>This implementation returns <code>success</code>, subclasses may override it to complete the processing of
+     * the folder.</p>
+     *
+     * @param folder the folder whose children have been processed
+     * @param recurseParams the parameters that were passed to <code>processFile()</code> for each child
+     * @param success <code>true</code> if all children were processed successfully and this job was not interrupted
+     * @return <code>true</code> if the folder was processed successfully
+     */
+    protected boolean folderProcessed(AbstractFile folder, Object recurseParams, boolean success) {
+        return success;
+    }
+
+    /**
+     * Unmarks the given top-level file in the active table, if 'auto unmark' is enabled. This is done for the files
+     * {@link #processFile(AbstractFile, Object) processFile()} reports as processed successfully ; subclasses that
+     * complete the processing of a top-level file after <code>processFile()</code> has returned <code>false</code>,
+     * for example in another thread, call this method once the file has been processed successfully.
+     *
+     * @param file the top-level file that has been processed successfully
+     */
+    protected void unmarkFile(AbstractFile file) {
+        FileTable activeTable = this.activeTable;
+        if(autoUnmark && activeTable!=null) {
+            // Do not repaint rows individually as it would be too expensive
+            activeTable.setFileMarked(file, false, false);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is one of the top-level files this job processes, i.e. one of
+     * {@link #files}. The files are looked up in a set created the first time this method is called, which must not
+     * happen before all top-level files have been added.
+     *
+     * @param file the file to test
+     * @return true if the given file is one of the top-level files
+     */
+    protected boolean isTopLevelFile(AbstractFile file) {
+        Set<AbstractFile> topLevelFiles = this.topLevelFiles;
+        if(topLevelFiles==null) {
+            topLevelFiles = new HashSet<AbstractFile>(files);
+            this.topLevelFiles = topLevelFiles;
+        }
+
+        return topLevelFiles.contains(file);
+    }
+
+
 //    protected void fileDiscovered(AbstractFile file) {
 //        this.nbFilesDiscovered++;
 //    }
@@ -584,6 +797,18 @@ public abstract class FileJob implements Runnable {
     protected void jobStopped() {
         LOGGER.debug("called");
     }
+
+
+    /**
+     * This method is called by {@link #run()} after the last call to {@link #processFile(AbstractFile,Object)} has
+     * returned, and before the job is stopped and {@link #jobCompleted()} is called. 
+     * This method implementation does nothing but it can be overriden by subclasses that process files
+     * asynchronously, to wait for those files to be processed.
+     *
+     * <p>Note that this method will NOT be called if the job was interrupted before all files were processed.</p>
+     */
+    protected void waitForPendingFiles() {
+    }
 	
 	
     /**
@@ -603,8 +828,21 @@ public abstract class FileJob implements Runnable {
 	
     /**
      * Displays an error dialog with the specified title and message and returns the selection action's value.
+     * {@link #CANCEL_ACTION} is returned without displaying the dialog once this job has been cancelled, for instance
+     * from the dialog of another thread of this job.
      */
     protected int showErrorDialog(String title, String message, String actionTexts[], int actionValues[]) {
+        // Dialogs are shown one at a time: 'skip all' may have been selected while waiting for another dialog, and
+        // the job may have been cancelled
+        synchronized(userInputLock) {
+            if(getState()==INTERRUPTED)
+                return CANCEL_ACTION;
+
+            return doShowErrorDialog(title, message, actionTexts, actionValues);
+        }
+    }
+
+    private int doShowErrorDialog(String title, String message, String actionTexts[], int actionValues[]) {
         // Return SKIP_ACTION if 'skip all' has previously been selected and 'skip' is in the list of actions.
         if(autoSkipErrors) {
             for (int actionValue : actionValues)
@@ -612,32 +850,20 @@ public abstract class FileJob implements Runnable {
                     return SKIP_ACTION;
         }
 
-        // Send a system notification if a notifier is available and enabled
-        if(AbstractNotifier.isAvailable() && AbstractNotifier.getNotifier().isEnabled())
-            AbstractNotifier.getNotifier().displayBackgroundNotification(NotificationType.JOB_ERROR, title, message);
-
-        QuestionDialog dialog;
-        if(getProgressDialog()==null)
-            dialog = new QuestionDialog(getMainFrame(), 
-                                        title,
-                                        message,
-                                        getMainFrame(),
-                                        actionTexts,
-                                        actionValues,
-                                        0);
-        else
-            dialog = new QuestionDialog(getProgressDialog(), 
-                                        title,
-                                        message,
-                                        getMainFrame(),
-                                        actionTexts,
-                                        actionValues,
-                                        0);
+        int userChoice;
+        long startTime = userInputRequested();
+        try {
+            userChoice = interaction.askError(this, title, message, actionTexts, actionValues);
+        }
+        finally {
+            userInputReceived(startTime);
+        }
 
         // Cancel or close dialog stops this job
-        int userChoice = waitForUserResponse(dialog);
         if(userChoice==-1 || userChoice==CANCEL_ACTION)
             interrupt();
+        else if(userChoice==RETRY_ACTION)
+            telemetry.retried();
         // Keep 'skip all' choice for further error and return SKIP_ACTION
         else if(userChoice==SKIP_ALL_ACTION) {
             autoSkipErrors = true;
@@ -649,24 +875,79 @@ public abstract class FileJob implements Runnable {
 	
 	
     /**
-     * Waits for the user's answer to the given question dialog, putting this
-     * job in pause mode while waiting for the user.
+     * Asks the {@link #getInteraction() interaction} of this job what to do about a collision between a source file
+     * and a destination file, and returns the chosen action. This job is paused while waiting for the answer. If
+     * several threads of this job ask at the same time, the questions are asked one after the other, and
+     * {@link FileCollisionDialog#CANCEL_ACTION} is returned without asking once this job has been cancelled.
+     *
+     * @see JobInteraction#askFileCollision(FileJob, int, AbstractFile, AbstractFile, boolean, boolean)
      */
-    protected int waitForUserResponse(DialogResult dialog) {
-        Object userInput = waitForUserResponseObject(dialog);
-        return (Integer) userInput;
+    protected int showFileCollisionDialog(int collisionType, AbstractFile sourceFile, AbstractFile destFile, boolean multipleFilesMode, boolean allowRename) {
+        synchronized(userInputLock) {
+            if(getState()==INTERRUPTED)
+                return FileCollisionDialog.CANCEL_ACTION;
+
+            long startTime = userInputRequested();
+            try {
+                return interaction.askFileCollision(this, collisionType, sourceFile, destFile, multipleFilesMode, allowRename);
+            }
+            finally {
+                userInputReceived(startTime);
+            }
+        }
     }
-    
-    protected Object waitForUserResponseObject(DialogResult dialog) {
-        // Put this job in pause mode while waiting for user response
+
+    /**
+     * Asks the {@link #getInteraction() interaction} of this job for a new name for the given destination file, and
+     * returns it. This job is paused while waiting for the answer. <code>null</code> is returned without asking once
+     * this job has been cancelled.
+     *
+     * @see JobInteraction#askNewName(FileJob, AbstractFile)
+     */
+    protected String showRenameDialog(AbstractFile destFile) {
+        synchronized(userInputLock) {
+            if(getState()==INTERRUPTED)
+                return null;
+
+            long startTime = userInputRequested();
+            try {
+                return interaction.askNewName(this, destFile);
+            }
+            finally {
+                userInputReceived(startTime);
+            }
+        }
+    }
+
+    /**
+     * Reserves the given file as the destination of the file whose collision is being resolved by renaming it,
+     * see {@link JobInteraction#askNewName(FileJob, AbstractFile)}. Returns <code>false</code> if the file exists or
+     * is reserved already, in which case another name must be chosen. This implementation only checks that the file
+     * does not exist ; jobs that write files concurrently override it so that two files are not given the same name.
+     *
+     * @param file the destination file to reserve
+     * @return true if the file has been reserved, false if it exists or is reserved already
+     * @throws IOException if the file could not be reserved
+     */
+    protected boolean reserveDestination(AbstractFile file) throws IOException {
+        return !file.exists();
+    }
+
+    /**
+     * Puts this job in pause mode while waiting for user input, and returns the time the wait started.
+     */
+    private long userInputRequested() {
+        long startTime = System.nanoTime();
         setPaused(true);
-        
-        UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
-        Object userInput = jobUserInput.getUserInput();
-        
-        // Back to work
+        return startTime;
+    }
+
+    /**
+     * Puts this job back to work once user input has been received.
+     */
+    private void userInputReceived(long startTime) {
+        telemetry.phaseEnded(JobTelemetry.Phase.DIALOG, startTime);
         setPaused(false);
-        return userInput;
     }
     
 	
@@ -675,6 +956,9 @@ public abstract class FileJob implements Runnable {
      * Check and if needed, refreshes both file tables's current folders, based on the job's refresh policy.
      */
     protected void refreshTables() {
+        if(mainFrame==null)
+            return;
+
     	FolderPanel activePanel = getMainFrame().getActivePanel();
     	FolderPanel inactivePanel = getMainFrame().getInactivePanel();
 
@@ -772,6 +1056,16 @@ public abstract class FileJob implements Runnable {
 		return jobProgress;		
 	}
 
+    /**
+     * Returns the telemetry of this job: the time spent in each phase of the processing of files, and the rate and
+     * latency at which files are processed.
+     *
+     * @return the telemetry of this job
+     */
+    public JobTelemetry getTelemetry() {
+        return telemetry;
+    }
+
     /**
      * Returns the base source folder.
      * @return the baseSourceFolder
@@ -789,7 +1083,7 @@ public abstract class FileJob implements Runnable {
      * This method is public as a side-effect of this class implementing <code>Runnable</code>.
      */
     public final void run() {
-        FileTable activeTable = getMainFrame().getActiveTable();
+        activeTable = mainFrame==null?null:mainFrame.getActiveTable();
         AbstractFile currentFile;
 
         // Notify that this job has started
@@ -806,7 +1100,9 @@ public abstract class FileJob implements Runnable {
             nextFile(currentFile);
 
             // Process current file
+            long fileStartTime = telemetry.fileStarted();
             boolean success = processFile(currentFile, null);
+            telemetry.fileEnded(currentFile, fileStartTime);
 
             // Stop if job was interrupted
             if(getState()==INTERRUPTED)
@@ -814,14 +1110,17 @@ public abstract class FileJob implements Runnable {
 
             // Unmark file in active table if 'auto unmark' is enabled
             // and file was processed successfully
-            if(autoUnmark && success) {
-                // Do not repaint rows individually as it would be too expensive
-                activeTable.setFileMarked(currentFile, false, false);
-            }
+            if(success)
+                unmarkFile(currentFile);
 
             // If last file was reached without any user interruption, all files have been processed with or
             // without errors, switch to FINISHED state and notify listeners
             if(i==nbFiles-1) {
+                // Wait for files that are still being processed asynchronously, if any
+                waitForPendingFiles();
+                if(getState()==INTERRUPTED)
+                    break;
+
                 currentFileIndex++;
                 stop();
                 jobCompleted();
@@ -850,10 +1149,11 @@ public abstract class FileJob implements Runnable {
 	
 	
     /**
-     * Automatically called by {@link #run()} for each file that needs to be processed.
+     * Automatically called by {@link #run()} for each file that needs to be processed, and for the children of the
+     * folders passed to {@link #processChildren(AbstractFile, AbstractFile[], Object)}.
      *
      * @param file the file or folder to process
-     * @param recurseParams array of parameters which can be used when calling this method recursively, contains <code>null</code> when called by {@link #run()}
+     * @param recurseParams parameters passed to {@link #processChildren(AbstractFile, AbstractFile[], Object)} for the children of a folder, contains <code>null</code> when called by {@link #run()}
      *
      * @return <code>true</code> if the operation was sucessful
      */
@@ -0,0 +1,210 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * Walks the files processed by a job in a separate thread, concurrently with the job, to total the number and the
+ * size of the regular files the job has to process. Once the scan is complete, the job can report its progress
+ * based on the number of bytes processed rather than on the number of top-level files.
+ *
+ * <p>The scanner walks the tree in the same order as the job, and generally ahead of it as it only fetches files
+ * attributes. The folder listings it makes are kept for the job to reuse, see {@link #ls(AbstractFile)}, so that
+ * the tree is not listed twice. To limit memory usage, listings are no longer kept once they hold
+ * {@link #MAX_CACHED_FILES} files in total ; folders are then listed a second time by the job.</p>
+ *
+ * <p>Symbolic links are not followed, and are not accounted for.</p>
+ *
+ * @author Maxence Bernard
+ */
+class FileTreeScanner implements Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileTreeScanner.class);
+
+    /** Maximum number of files the listings that have not been reused by the job yet can hold */
+    private final static int MAX_CACHED_FILES = 100000;
+
+    /** The job the files are scanned for */
+    private final FileJob job;
+
+    /** Top-level files to scan */
+    private final List<AbstractFile> files;
+
+    /** Folder URL -> children of the folder, for folders the job has not listed yet */
+    private final ConcurrentHashMap<String, AbstractFile[]> listings = new ConcurrentHashMap<String, AbstractFile[]>();
+
+    /** Number of files held by listings */
+    private final AtomicInteger nbCachedFiles = new AtomicInteger();
+
+    /** Number of regular files found so far */
+    private volatile int nbFiles;
+
+    /** Total size of the regular files found so far */
+    private volatile long nbBytes;
+
+    /** True when the whole tree has been scanned */
+    private volatile boolean complete;
+
+    /** True if the scan has been stopped before completion */
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new scanner for the given top-level files, without starting it.
+     *
+     * @param job the job the files are scanned for
+     * @param files the top-level files to scan
+     */
+    FileTreeScanner(FileJob job, List<AbstractFile> files) {
+        this.job = job;
+        this.files = files;
+    }
+
+    /**
+     * Starts scanning files in a separate thread.
+     */
+    void start() {
+        Thread thread = new Thread(this, job.getClass().getName()+" scanner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the scan as soon as possible, and releases the listings that have not been reused.
+     */
+    void stop() {
+        stopped = true;
+        listings.clear();
+    }
+
+    /**
+     * Returns <code>true</code> if the whole tree has been scanned, i.e. if {@link #getNbFiles()} and
+     * {@link #getNbBytes()} return final values.
+     *
+     * @return true if the whole tree has been scanned
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the number of regular files found so far.
+     *
+     * @return the number of regular files found so far
+     */
+    int getNbFiles() {
+        return nbFiles;
+    }
+
+    /**
+     * Returns the total size of the regular files found so far.
+     *
+     * @return the total size of the regular files found so far
+     */
+    long getNbBytes() {
+        return nbBytes;
+    }
+
+    /**
+     * Returns the children of the given folder, as listed by the scanner if it has already listed the folder,
+     * or by listing the folder otherwise. A listing is handed out only once: it is meant to be called by the job,
+     * once per folder.
+     *
+     * @param folder the folder to list
+     * @return the children of the given folder
+     * @throws IOException if the folder could not be listed
+     */
+    AbstractFile[] ls(AbstractFile folder) throws IOException {
+        AbstractFile children[] = listings.remove(getKey(folder));
+        if(children!=null) {
+            nbCachedFiles.addAndGet(-children.length);
+            return children;
+        }
+
+        return folder.ls();
+    }
+
+    private static String getKey(AbstractFile folder) {
+        return folder.getURL().toString(false);
+    }
+
+    private boolean isStopped() {
+        return stopped || job.getState()==FileJob.INTERRUPTED;
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    public void run() {
+        // Depth-first walk, in the same order as the job
+        LinkedList<AbstractFile> stack = new LinkedList<AbstractFile>(files);
+        int nbFiles = 0;
+        long nbBytes = 0;
+
+        while(!stack.isEmpty()) {
+            if(isStopped())
+                return;
+
+            AbstractFile file = stack.removeFirst();
+            if(file.isSymlink())
+                continue;
+
+            if(file.isDirectory()) {
+                AbstractFile children[];
+                try {
+                    children = file.ls();
+                }
+                catch(IOException e) {
+                    // The job will report the error when it lists the folder
+                    LOGGER.debug("Failed to list "+file, e);
+                    continue;
+                }
+
+                // Keep the listing for the job, unless too many files are held already
+                if(nbCachedFiles.get()+children.length<=MAX_CACHED_FILES) {
+                    nbCachedFiles.addAndGet(children.length);
+                    listings.put(getKey(file), children);
+                }
+
+                for(int i=children.length-1; i>=0; i--)
+                    stack.addFirst(children[i]);
+            }
+            else {
+                nbFiles++;
+                nbBytes += Math.max(0, file.getSize());
+
+                this.nbFiles = nbFiles;
+                this.nbBytes = nbBytes;
+            }
+        }
+
+        complete = true;
+        LOGGER.debug("Scan complete: "+nbFiles+" files, "+nbBytes+" bytes");
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.util.LinkedList;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * Walks the folders processed by a job without recursing, see {@link FileJob#processChildren(AbstractFile, AbstractFile[], Object)}.
+ *
+ * <p>The folders whose children are being processed are kept in an explicit stack, innermost last, along with the
+ * position of the next child to process. When {@link FileJob#processFile(AbstractFile, Object)} queues the children
+ * of a folder, they are pushed on the stack and processed once <code>processFile</code> has returned, so the depth of
+ * the trees a job can process is not limited by the size of the thread's stack. Files are processed in the same
+ * depth-first order as by a recursive walk, and {@link FileJob#folderProcessed(AbstractFile, Object, boolean)} is
+ * called for a folder once all its children have been processed.</p>
+ *
+ * <p>This class is not thread-safe: it is meant to be used by the job's thread only.</p>
+ *
+ * @author Maxence Bernard
+ */
+class FileWalker {
+
+    /** The job the files are walked for */
+    private final FileJob job;
+
+    /** Folders whose children are being processed, innermost last */
+    private final LinkedList<Folder> folders = new LinkedList<Folder>();
+
+    /**
+     * Creates a new walker for the given job.
+     *
+     * @param job the job the files are walked for
+     */
+    FileWalker(FileJob job) {
+        this.job = job;
+    }
+
+    /**
+     * Returns <code>true</code> if a walk is in progress, i.e. if the children of some folder are being processed.
+     *
+     * @return true if a walk is in progress
+     */
+    boolean isWalking() {
+        return !folders.isEmpty();
+    }
+
+    /**
+     * Queues the children of the given folder, to be processed before the rest of the children of the folders that
+     * are already queued.
+     *
+     * @param folder the folder whose children are queued
+     * @param children the children of the folder
+     * @param recurseParams the parameters to pass to <code>processFile</code> for each child
+     */
+    void push(AbstractFile folder, AbstractFile children[], Object recurseParams) {
+        folders.addLast(new Folder(folder, children, recurseParams));
+    }
+
+    /**
+     * Processes the queued folders and the folders queued while processing them, until none is left or the job is
+     * interrupted.
+     *
+     * @return the value returned by <code>folderProcessed</code> for the first queued folder
+     */
+    boolean walk() {
+        boolean success = true;
+
+        while(!folders.isEmpty()) {
+            Folder folder = folders.getLast();
+
+            if(folder.index<folder.children.length && job.getState()!=FileJob.INTERRUPTED) {
+                AbstractFile child = folder.children[folder.index++];
+
+                // Notify job that we're starting to process this file
+                job.nextFile(child);
+                long fileStartTime = job.getTelemetry().fileStarted();
+                if(!job.processFile(child, folder.recurseParams))
+                    folder.success = false;
+                job.getTelemetry().fileEnded(child, fileStartTime);
+            }
+            else {
+                folders.removeLast();
+
+                boolean folderSuccess = job.folderProcessed(folder.folder, folder.recurseParams, folder.success && job.getState()!=FileJob.INTERRUPTED);
+                if(folders.isEmpty())
+                    success = folderSuccess;
+                else if(!folderSuccess)
+                    folders.getLast().success = false;
+            }
+        }
+
+        return success;
+    }
+
+
+    /**
+     * A folder whose children are being processed.
+     */
+    private static class Folder {
+        private final AbstractFile folder;
+        private final AbstractFile children[];
+        private final Object recurseParams;
+
+        /** Index of the next child to process */
+        private int index;
+
+        /** False if one of the children could not be processed */
+        private boolean success = true;
+
+        private Folder(AbstractFile folder, AbstractFile children[], Object recurseParams) {
+            this.folder = folder;
+            this.children = children;
+            this.recurseParams = recurseParams;
+        }
+    }
+}
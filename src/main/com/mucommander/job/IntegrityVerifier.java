@@ -0,0 +1,260 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.cache.ChecksumCache;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.io.security.MuProvider;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.io.security.ChecksumProvider;
+
+/**
+ * Reads transferred files back to verify their integrity, on behalf of {@link TransferFileJob}.
+ *
+ * <p>The checksum algorithm is chosen in the preferences ({@link MuPreferences#INTEGRITY_CHECK_ALGORITHM}). The
+ * checksum of a destination file is calculated in a background thread by a {@link Verification}, so that the job
+ * can carry on with the next file while the destination is being read back.</p>
+ *
+ * @author Maxence Bernard
+ */
+class IntegrityVerifier {
+	private static final Logger LOGGER = LoggerFactory.getLogger(IntegrityVerifier.class);
+
+    /** Algorithm used when the one specified in the preferences is not available */
+    private final static String FALLBACK_ALGORITHM = "Adler32";
+
+    /** Threads reading destination files back, shared by all jobs */
+    private final static ExecutorService VERIFIER_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Integrity verifier");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        // Register additional MessageDigest implementations provided by the muCommander API and by muCommander
+        MuProvider.registerProvider();
+        ChecksumProvider.registerProvider();
+    }
+
+    private IntegrityVerifier() {
+    }
+
+    /**
+     * Returns the checksum algorithm to verify transfers with: the one specified in the preferences if it is
+     * available, {@link #FALLBACK_ALGORITHM} otherwise.
+     *
+     * @return the checksum algorithm to verify transfers with
+     */
+    static String getAlgorithm() {
+        String algorithm = MuConfigurations.getPreferences().getVariable(MuPreference.INTEGRITY_CHECK_ALGORITHM, MuPreferences.DEFAULT_INTEGRITY_CHECK_ALGORITHM);
+        try {
+            MessageDigest.getInstance(algorithm);
+            return algorithm;
+        }
+        catch(NoSuchAlgorithmException e) {
+            LOGGER.info("Unknown integrity check algorithm "+algorithm+", using "+FALLBACK_ALGORITHM);
+            return FALLBACK_ALGORITHM;
+        }
+    }
+
+    /**
+     * Forces the given file's data to the storage device if it is a local file and if this is enabled in the
+     * preferences ({@link MuPreferences#INTEGRITY_CHECK_SYNC}), so that the data that is read back has been written
+     * to the device. Errors are ignored.
+     *
+     * @param file the file to synchronize
+     */
+    static void syncLocalFile(AbstractFile file) {
+        if(!MuConfigurations.getPreferences().getVariable(MuPreference.INTEGRITY_CHECK_SYNC, MuPreferences.DEFAULT_INTEGRITY_CHECK_SYNC))
+            return;
+
+        AbstractFile localFile = file.getAncestor(LocalFile.class);
+        if(localFile==null)
+            return;
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile((File)localFile.getUnderlyingFileObject(), "rw");
+            try {
+                raf.getFD().sync();
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not sync "+file, e);
+        }
+    }
+
+
+    /**
+     * Verification of a transferred file: calculates the checksum of the destination file in a background thread,
+     * as soon as it is created, and compares it with the checksum of the source file.
+     */
+    static class Verification {
+
+        /** The source file */
+        final AbstractFile sourceFile;
+
+        /** The destination file being read back */
+        final AbstractFile destFile;
+
+        /** Checksum of the source file, to be set before {@link #matches()} is called */
+        String sourceChecksum;
+
+        /** Title of the dialog reporting a failed verification, if the verification is checked later on */
+        String errorDialogTitle;
+
+        /** Algorithm of the source checksum, null if the source checksum is not to be cached */
+        private String cacheAlgorithm;
+
+        /** Size and date of the source file before it was read, the source checksum is cached for */
+        private long sourceSize, sourceDate;
+
+        /** Checksum of the destination file, being calculated */
+        private final Future<String> destinationChecksum;
+
+        /** The stream the destination file is being read from, null until it is opened */
+        private InputStream in;
+
+        /** True if this verification has been cancelled */
+        private boolean cancelled;
+
+        /**
+         * Creates a new <code>Verification</code> and starts reading the destination file back.
+         *
+         * @param sourceFile the source file
+         * @param destFile the destination file
+         * @param algorithm the checksum algorithm
+         */
+        Verification(AbstractFile sourceFile, AbstractFile destFile, final String algorithm) {
+            this.sourceFile = sourceFile;
+            this.destFile = destFile;
+
+            destinationChecksum = VERIFIER_EXECUTOR.submit(new Callable<String>() {
+                public String call() throws IOException, NoSuchAlgorithmException {
+                    return calculateDestinationChecksum(algorithm);
+                }
+            });
+        }
+
+        private String calculateDestinationChecksum(String algorithm) throws IOException, NoSuchAlgorithmException {
+            syncLocalFile(destFile);
+
+            InputStream in;
+            synchronized(this) {
+                if(cancelled)
+                    throw new IOException("Verification cancelled");
+
+                this.in = in = destFile.getInputStream();
+            }
+
+            try {
+                return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(algorithm));
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        /**
+         * Waits for the checksum of the destination file to be calculated and returns <code>true</code> if it
+         * matches the {@link #sourceChecksum checksum of the source file}.
+         *
+         * @return true if the checksums of the source and destination files match
+         * @throws IOException if the destination file could not be read, or if the verification was cancelled
+         */
+        boolean matches() throws IOException {
+            String checksum;
+            try {
+                checksum = destinationChecksum.get();
+            }
+            catch(InterruptedException e) {
+                throw new IOException("Verification interrupted");
+            }
+            catch(ExecutionException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof IOException)
+                    throw (IOException)cause;
+                throw new IOException(String.valueOf(cause));
+            }
+
+            LOGGER.debug("Source checksum= "+sourceChecksum+", destination checksum= "+checksum);
+
+            return checksum.equals(sourceChecksum);
+        }
+
+        /**
+         * Specifies that the {@link #sourceChecksum checksum of the source file} was calculated by reading the file,
+         * and is to be added to the {@link ChecksumCache} once confirmed by the destination's.
+         *
+         * @param algorithm the algorithm the checksum was calculated with
+         * @param size the size of the source file before it was read
+         * @param date the date of the source file before it was read
+         */
+        void setSourceChecksumCacheable(String algorithm, long size, long date) {
+            this.cacheAlgorithm = algorithm;
+            this.sourceSize = size;
+            this.sourceDate = date;
+        }
+
+        /**
+         * Adds the checksum of the source file to the {@link ChecksumCache}, if it was calculated by reading the file.
+         * To be called once the checksums of the source and destination files have been found to match.
+         */
+        void cacheSourceChecksum() {
+            if(cacheAlgorithm!=null)
+                ChecksumCache.getInstance().put(sourceFile, cacheAlgorithm, sourceSize, sourceDate, sourceChecksum);
+        }
+
+        /**
+         * Cancels this verification: the destination file stops being read, and {@link #matches()} throws an
+         * <code>IOException</code>.
+         */
+        synchronized void cancel() {
+            cancelled = true;
+
+            if(in!=null) {
+                try { in.close(); }
+                catch(IOException e) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * Decides how a {@link FileJob} gets the decisions it cannot make on its own: what to do when an error occurs, and
+ * when a file collides with an existing one.
+ *
+ * <p>Jobs ask the user by default, with the dialogs of {@link com.mucommander.job.ui.DialogJobInteraction}.
+ * {@link BatchJobInteraction} answers with fixed policies instead, so that jobs can run without a graphical
+ * environment.</p>
+ *
+ * <p>The methods of this interface are called by the threads of the job, one call at a time. The job is paused
+ * until they return.</p>
+ *
+ * @author Maxence Bernard
+ */
+public interface JobInteraction {
+
+    /** Flag combined with the action returned by {@link #askFileCollision askFileCollision} when the action is to be
+     * applied to the following collisions as well */
+    public final static int APPLY_TO_ALL = 0x100;
+
+    /**
+     * Asks what to do about an error.
+     *
+     * @param job the job the error occurred in
+     * @param title title of the error
+     * @param message description of the error
+     * @param actionTexts labels of the possible actions
+     * @param actionValues values of the possible actions
+     * @return one of the given action values, <code>-1</code> to cancel the job
+     */
+    public int askError(FileJob job, String title, String message, String actionTexts[], int actionValues[]);
+
+    /**
+     * Asks what to do about a collision between a source file and a destination file.
+     *
+     * @param job the job the collision occurred in
+     * @param collisionType the type of collision, see {@link FileCollisionChecker}
+     * @param sourceFile the source file, may be <code>null</code>
+     * @param destFile the destination file
+     * @param multipleFilesMode true if the job processes several files, which allows the action to be applied to
+     * all collisions
+     * @param allowRename true if the destination file may be renamed
+     * @return one of the actions of {@link com.mucommander.ui.dialog.file.FileCollisionDialog}, combined with
+     * {@link #APPLY_TO_ALL} if it applies to the following collisions as well, <code>-1</code> to cancel the job
+     */
+    public int askFileCollision(FileJob job, int collisionType, AbstractFile sourceFile, AbstractFile destFile, boolean multipleFilesMode, boolean allowRename);
+
+    /**
+     * Asks for a new name for a destination file which already exists. Implementations that choose the name
+     * themselves must reserve it with {@link FileJob#reserveDestination(AbstractFile)}: files written concurrently
+     * could otherwise be given the same name.
+     *
+     * @param job the job the collision occurred in
+     * @param destFile the destination file
+     * @return the new name of the destination file, <code>null</code> to ask again what to do about the collision
+     */
+    public String askNewName(FileJob job, AbstractFile destFile);
+}
@@ -0,0 +1,668 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.commons.file.AbstractArchiveEntryFile;
+import com.mucommander.commons.file.AbstractArchiveFile;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ArchiveEntry;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * Records the progress of a copy, move or unpack job in a file, so that the job can be resumed if muCommander is
+ * not shut down properly while the job is running.
+ *
+ * <p>A journal starts with the parameters the job was created with, followed by a record each time the job starts
+ * transferring a file, and each time a file has been transferred. Records are appended as the job progresses, and
+ * flushed to the storage device at most once per {@link #SYNC_INTERVAL}: files whose records were lost are simply
+ * handled like existing files when the job is resumed. The journal is deleted when the job stops, whether it was
+ * completed or cancelled by the user ; journals that remain when muCommander starts are those of jobs that did not
+ * stop, see {@link #getUnfinishedJournals()}.</p>
+ *
+ * <p>When the job is resumed, files that were transferred already are not transferred again, and files that were
+ * being transferred are resumed in append mode, provided that the source file's size and date have not changed
+ * since and that the destination file is smaller than the source file. The number of bytes that were written to
+ * the destination file is given by the destination file's size: journaled transfers do not preallocate their
+ * destination. Files that were being transferred and cannot be resumed are overwritten, without going through
+ * collision handling: the destination file is a partial copy the job wrote.</p>
+ *
+ * <p>The journal file is locked while the job is running, so that several instances of muCommander do not resume
+ * each other's jobs. File URLs are recorded without their credentials, which are looked up in the
+ * {@link com.mucommander.auth.CredentialsManager} when the job is resumed.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class JobJournal {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JobJournal.class);
+
+    /** Name of the folder journals are stored in, within the preferences folder */
+    private final static String JOURNALS_FOLDER_NAME = "journals";
+
+    /** Extension of journal files */
+    private final static String JOURNAL_EXTENSION = ".journal";
+
+    /** Minimum interval in milliseconds between two flushes of the journal to the storage device */
+    private final static long SYNC_INTERVAL = 1000;
+
+    /** Encoding of journal files */
+    private final static String ENCODING = "UTF-8";
+
+    // Record types
+    private final static String JOB_TYPE_RECORD = "type";
+    private final static String PARAMETER_RECORD = "param";
+    private final static String STARTED_RECORD = "started";
+    private final static String COPIED_RECORD = "copied";
+
+    // Job types
+    final static String COPY_JOB = "copy";
+    final static String MOVE_JOB = "move";
+    final static String UNPACK_JOB = "unpack";
+
+    // Job parameters
+    final static String BASE_FOLDER_PARAMETER = "base_folder";
+    final static String FILE_PARAMETER = "file";
+    final static String DESTINATION_FOLDER_PARAMETER = "destination_folder";
+    final static String NEW_NAME_PARAMETER = "new_name";
+    final static String FILE_EXISTS_ACTION_PARAMETER = "file_exists_action";
+    final static String MODE_PARAMETER = "mode";
+    final static String RENAME_MODE_PARAMETER = "rename_mode";
+    final static String ARCHIVE_DEPTH_PARAMETER = "archive_depth";
+    final static String ENTRY_PARAMETER = "entry";
+
+    /** The journal file */
+    private final File file;
+
+    /** Type of the job, null if the journal has no job type record */
+    private String jobType;
+
+    /** Parameter name -> parameter values, in the order they were recorded */
+    private final Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+
+    /** URLs of the source files that had been transferred when the journal was read */
+    private final Set<String> copiedFiles = new HashSet<String>();
+
+    /** URL -> record of the source files that were being transferred when the journal was read */
+    private final Map<String, StartedFile> startedFiles = new HashMap<String, StartedFile>();
+
+    /** Stream records are written to, null if the journal is not open */
+    private FileOutputStream out;
+
+    /** Lock held on the journal file while it is open */
+    private FileLock lock;
+
+    /** Time at which the journal was last flushed to the storage device */
+    private long lastSyncTime;
+
+    private JobJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates and opens a new journal for a job of the given type.
+     *
+     * @param jobType the type of job
+     * @return the new journal
+     * @throws IOException if the journal could not be created
+     */
+    static JobJournal create(String jobType) throws IOException {
+        return create(getJournalsFolder(), jobType);
+    }
+
+    /**
+     * Creates and opens a new journal for a job of the given type, in the given folder.
+     *
+     * @param folder the folder to create the journal in
+     * @param jobType the type of job
+     * @return the new journal
+     * @throws IOException if the journal could not be created
+     */
+    static JobJournal create(File folder, String jobType) throws IOException {
+        if(!folder.exists() && !folder.mkdirs())
+            throw new IOException("Could not create "+folder);
+
+        JobJournal journal = new JobJournal(File.createTempFile("job", JOURNAL_EXTENSION, folder));
+        journal.jobType = jobType;
+        journal.open();
+        journal.write(JOB_TYPE_RECORD, jobType);
+
+        return journal;
+    }
+
+    /**
+     * Returns the journals of the jobs that did not stop, excluding those of jobs that are running in another
+     * instance of muCommander.
+     *
+     * @return the journals of the jobs that did not stop
+     */
+    public static List<JobJournal> getUnfinishedJournals() {
+        List<JobJournal> journals = new ArrayList<JobJournal>();
+
+        File files[] = getJournalsFolder().listFiles();
+        if(files==null)
+            return journals;
+
+        for(File file : files) {
+            if(!file.getName().endsWith(JOURNAL_EXTENSION) || isLocked(file))
+                continue;
+
+            try {
+                JobJournal journal = read(file);
+                if(journal.jobType!=null)
+                    journals.add(journal);
+                else
+                    file.delete();
+            }
+            catch(IOException e) {
+                LOGGER.info("Could not read job journal "+file, e);
+            }
+        }
+
+        return journals;
+    }
+
+    private static File getJournalsFolder() {
+        return new File(PlatformManager.getPreferencesFolder().getAbsolutePath(), JOURNALS_FOLDER_NAME);
+    }
+
+    /**
+     * Returns <code>true</code> if the given journal file is locked by a running job.
+     */
+    private static boolean isLocked(File file) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file, true);
+            FileLock lock = out.getChannel().tryLock();
+            if(lock==null)
+                return true;
+
+            lock.release();
+            return false;
+        }
+        catch(OverlappingFileLockException e) {
+            // Locked by this instance
+            return true;
+        }
+        catch(IOException e) {
+            return true;
+        }
+        finally {
+            if(out!=null) {
+                try { out.close(); }
+                catch(IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * Reads the given journal file, without opening it for new records.
+     *
+     * @param file the journal file
+     * @return the journal
+     * @throws IOException if the journal file could not be read
+     */
+    static JobJournal read(File file) throws IOException {
+        JobJournal journal = new JobJournal(file);
+        journal.read();
+
+        return journal;
+    }
+
+    /**
+     * Reads the records of the journal file. Only records terminated by a line separator are taken into account:
+     * the last record may have been partially written.
+     */
+    private void read() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte buffer[] = new byte[8192];
+            int nbRead;
+            while((nbRead=in.read(buffer))!=-1)
+                bout.write(buffer, 0, nbRead);
+        }
+        finally {
+            in.close();
+        }
+
+        String lines[] = new String(bout.toByteArray(), ENCODING).split("\n", -1);
+        // The last element follows the last line separator
+        for(int i=0; i<lines.length-1; i++) {
+            String fields[] = lines[i].split("\t", -1);
+            for(int j=0; j<fields.length; j++)
+                fields[j] = unescape(fields[j]);
+
+            String record = fields[0];
+            if(JOB_TYPE_RECORD.equals(record) && fields.length==2) {
+                jobType = fields[1];
+            }
+            else if(PARAMETER_RECORD.equals(record) && fields.length==3) {
+                getParameterValues(fields[1], true).add(fields[2]);
+            }
+            else if(STARTED_RECORD.equals(record) && fields.length==5) {
+                try {
+                    startedFiles.put(fields[1], new StartedFile(Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[4]));
+                }
+                catch(NumberFormatException e) {
+                    LOGGER.debug("Invalid record in "+file+": "+lines[i]);
+                }
+            }
+            else if(COPIED_RECORD.equals(record) && fields.length==2) {
+                copiedFiles.add(fields[1]);
+                startedFiles.remove(fields[1]);
+            }
+            else {
+                LOGGER.debug("Invalid record in "+file+": "+lines[i]);
+            }
+        }
+    }
+
+    /**
+     * Opens the journal for new records to be appended to it.
+     *
+     * @throws IOException if the journal could not be opened, or if it is locked by another job
+     */
+    synchronized void open() throws IOException {
+        if(out!=null)
+            return;
+
+        out = new FileOutputStream(file, true);
+        try {
+            lock = out.getChannel().tryLock();
+        }
+        catch(OverlappingFileLockException e) {
+            lock = null;
+        }
+
+        if(lock==null) {
+            out.close();
+            out = null;
+            throw new IOException(file+" is in use");
+        }
+    }
+
+    /**
+     * Closes the journal and deletes it.
+     */
+    synchronized void delete() {
+        close();
+        if(!file.delete())
+            LOGGER.info("Could not delete job journal "+file);
+    }
+
+    /**
+     * Closes the journal, leaving it on disk.
+     */
+    private synchronized void close() {
+        if(out==null)
+            return;
+
+        try {
+            lock.release();
+            out.close();
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not close job journal "+file, e);
+        }
+
+        out = null;
+        lock = null;
+    }
+
+    /**
+     * Appends a record with the given fields to the journal. If the record cannot be written, the journal is closed
+     * and subsequent records are ignored: failing to journal the job must not fail the job.
+     */
+    private synchronized void write(String... fields) {
+        if(out==null)
+            return;
+
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<fields.length; i++) {
+            if(i>0)
+                sb.append('\t');
+            sb.append(escape(fields[i]));
+        }
+        sb.append('\n');
+
+        try {
+            out.write(sb.toString().getBytes(ENCODING));
+
+            long now = System.currentTimeMillis();
+            if(now-lastSyncTime>=SYNC_INTERVAL) {
+                out.getFD().sync();
+                lastSyncTime = now;
+            }
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not write to job journal "+file+", the job will not be resumable", e);
+            close();
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String s) {
+        if(s.indexOf('\\')==-1)
+            return s;
+
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if(c=='\\' && i<s.length()-1) {
+                c = s.charAt(++i);
+                switch(c) {
+                    case 't': c = '\t'; break;
+                    case 'n': c = '\n'; break;
+                    case 'r': c = '\r'; break;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String getKey(AbstractFile file) {
+        return file.getURL().toString(false);
+    }
+
+
+    ////////////////
+    // Parameters //
+    ////////////////
+
+    /**
+     * Records a parameter of the job. Parameters may have several values, which are recorded in turn.
+     *
+     * @param name name of the parameter
+     * @param value value of the parameter
+     */
+    void addParameter(String name, String value) {
+        if(value==null)
+            return;
+
+        getParameterValues(name, true).add(value);
+        write(PARAMETER_RECORD, name, value);
+    }
+
+    /**
+     * Records a file parameter of the job.
+     *
+     * @param name name of the parameter
+     * @param file value of the parameter
+     */
+    void addParameter(String name, AbstractFile file) {
+        if(file!=null)
+            addParameter(name, getKey(file));
+    }
+
+    private List<String> getParameterValues(String name, boolean create) {
+        List<String> values = parameters.get(name);
+        if(values==null && create) {
+            values = new ArrayList<String>();
+            parameters.put(name, values);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the first value of the given parameter, <code>null</code> if the parameter was not recorded.
+     */
+    private String getParameter(String name) {
+        List<String> values = getParameterValues(name, false);
+        return values==null?null:values.get(0);
+    }
+
+    private List<String> getParameters(String name) {
+        List<String> values = getParameterValues(name, false);
+        return values==null?Collections.<String>emptyList():values;
+    }
+
+    private int getIntParameter(String name) throws IOException {
+        try {
+            return Integer.parseInt(getParameter(name));
+        }
+        catch(NumberFormatException e) {
+            throw new IOException("Invalid value for "+name+" in "+file);
+        }
+    }
+
+    private AbstractFile getFileParameter(String url) throws IOException {
+        if(url==null)
+            throw new IOException("Missing file parameter in "+file);
+
+        return FileFactory.getFile(url, true);
+    }
+
+
+    //////////////
+    // Progress //
+    //////////////
+
+    /**
+     * Records that the job starts transferring the given file to the given destination file.
+     *
+     * @param sourceFile the file being transferred
+     * @param destFile the file it is transferred to
+     */
+    void fileStarted(AbstractFile sourceFile, AbstractFile destFile) {
+        write(STARTED_RECORD, getKey(sourceFile), Long.toString(sourceFile.getSize()), Long.toString(sourceFile.getDate()), getKey(destFile));
+    }
+
+    /**
+     * Records that the given file has been transferred.
+     *
+     * @param sourceFile the file that has been transferred
+     */
+    void fileCopied(AbstractFile sourceFile) {
+        write(COPIED_RECORD, getKey(sourceFile));
+    }
+
+    /**
+     * Returns <code>true</code> if the given source file had been transferred to the given destination file when
+     * the journal was read, and the destination file still has the size of the source file.
+     *
+     * @param sourceFile the source file
+     * @param destFile the destination file
+     * @return true if the file had been transferred and need not be transferred again
+     */
+    synchronized boolean wasCopied(AbstractFile sourceFile, AbstractFile destFile) {
+        return copiedFiles.contains(getKey(sourceFile))
+            && destFile.exists()
+            && destFile.getSize()==sourceFile.getSize();
+    }
+
+    /**
+     * Returns <code>true</code> if the given source file was being transferred to the given destination file when
+     * the journal was read, and had not been transferred entirely. The destination file, if it exists and is not a
+     * folder, is then a partial copy written by the job: it must be resumed or overwritten, not handled like an
+     * existing file.
+     *
+     * @param sourceFile the source file
+     * @param destFile the destination file
+     * @return true if the file was being transferred to the given destination file
+     */
+    synchronized boolean wasStarted(AbstractFile sourceFile, AbstractFile destFile) {
+        StartedFile startedFile = startedFiles.get(getKey(sourceFile));
+        return startedFile!=null
+            && startedFile.destination.equals(getKey(destFile))
+            && !destFile.isDirectory();
+    }
+
+    /**
+     * Returns <code>true</code> if the given source file was being transferred to the given destination file when
+     * the journal was read, and the transfer can be resumed: the source file has the same size and date as when the
+     * transfer started, and the destination file is smaller than the source file.
+     *
+     * @param sourceFile the source file
+     * @param destFile the destination file
+     * @return true if the transfer of the file can be resumed in append mode
+     */
+    synchronized boolean canResume(AbstractFile sourceFile, AbstractFile destFile) {
+        StartedFile startedFile = startedFiles.get(getKey(sourceFile));
+        return startedFile!=null
+            && startedFile.destination.equals(getKey(destFile))
+            && sourceFile.getSize()==startedFile.size
+            && sourceFile.getDate()==startedFile.date
+            && destFile.exists()
+            && !destFile.isDirectory()
+            && destFile.getSize()<startedFile.size;
+    }
+
+
+    ////////////
+    // Resume //
+    ////////////
+
+    /**
+     * Returns the title of the progress dialog of the journaled job.
+     *
+     * @return the title of the progress dialog of the journaled job
+     */
+    public String getJobTitle() {
+        if(MOVE_JOB.equals(jobType))
+            return Translator.get("move_dialog.moving");
+        if(UNPACK_JOB.equals(jobType))
+            return Translator.get("unpack_dialog.unpacking");
+        return Translator.get("copy_dialog.copying");
+    }
+
+    /**
+     * Returns the destination folder of the journaled job, as a URL.
+     *
+     * @return the destination folder of the journaled job
+     */
+    public String getDestinationFolder() {
+        return getParameter(DESTINATION_FOLDER_PARAMETER);
+    }
+
+    /**
+     * Creates a job that resumes the journaled job, without starting it. The journal is reused by the new job.
+     *
+     * @param progressDialog dialog which shows the job's progress
+     * @param mainFrame mainFrame the job is triggered by
+     * @return a job that resumes the journaled job
+     * @throws IOException if the files of the job could not be resolved
+     */
+    public AbstractCopyJob createJob(ProgressDialog progressDialog, MainFrame mainFrame) throws IOException {
+        FileSet files = new FileSet(getFileParameter(getParameter(BASE_FOLDER_PARAMETER)));
+        for(String url : getParameters(FILE_PARAMETER)) {
+            AbstractFile file = getFileParameter(url);
+            // Files moved entirely are no longer there
+            if(!MOVE_JOB.equals(jobType) || file.exists())
+                files.add(file);
+        }
+
+        AbstractFile destFolder = getFileParameter(getParameter(DESTINATION_FOLDER_PARAMETER));
+        String newName = getParameter(NEW_NAME_PARAMETER);
+        int fileExistsAction = getIntParameter(FILE_EXISTS_ACTION_PARAMETER);
+
+        AbstractCopyJob job;
+        if(COPY_JOB.equals(jobType)) {
+            job = new CopyJob(progressDialog, mainFrame, files, destFolder, newName, getIntParameter(MODE_PARAMETER), fileExistsAction);
+        }
+        else if(MOVE_JOB.equals(jobType)) {
+            job = new MoveJob(progressDialog, mainFrame, files, destFolder, newName, fileExistsAction, Boolean.parseBoolean(getParameter(RENAME_MODE_PARAMETER)));
+        }
+        else if(UNPACK_JOB.equals(jobType)) {
+            List<String> entryPaths = getParameters(ENTRY_PARAMETER);
+            if(entryPaths.isEmpty()) {
+                job = new UnpackJob(progressDialog, mainFrame, files, destFolder, fileExistsAction);
+            }
+            else {
+                AbstractArchiveFile archiveFile = files.size()==0?null:files.elementAt(0).getAncestor(AbstractArchiveFile.class);
+                if(archiveFile==null)
+                    throw new IOException("Missing archive file in "+file);
+
+                List<ArchiveEntry> selectedEntries = new Vector<ArchiveEntry>();
+                for(String entryPath : entryPaths)
+                    selectedEntries.add((ArchiveEntry)archiveFile.getArchiveEntryFile(entryPath).getAncestor(AbstractArchiveEntryFile.class).getUnderlyingFileObject());
+
+                job = new UnpackJob(progressDialog, mainFrame, archiveFile, getIntParameter(ARCHIVE_DEPTH_PARAMETER), destFolder, newName, fileExistsAction, selectedEntries);
+            }
+        }
+        else {
+            throw new IOException("Unknown job type "+jobType+" in "+file);
+        }
+
+        job.resume(this);
+        return job;
+    }
+
+    /**
+     * Deletes the journal, without resuming the job.
+     */
+    public void discard() {
+        delete();
+    }
+
+
+    /**
+     * Size and date a source file had when the job started transferring it, and the destination file it was
+     * transferred to.
+     */
+    private static class StartedFile {
+        private final long size;
+        private final long date;
+        private final String destination;
+
+        private StartedFile(long size, long date, String destination) {
+            this.size = size;
+            this.date = date;
+            this.destination = destination;
+        }
+    }
+}
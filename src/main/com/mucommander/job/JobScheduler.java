@@ -0,0 +1,293 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+
+/**
+ * Decides when the jobs that are {@link FileJob#start() started} actually run.
+ *
+ * <p>Jobs with a {@link FileJob#HIGH_PRIORITY high priority} run as soon as they are started. Other jobs run only if
+ * fewer than {@link MuPreferences#TRANSFER_JOBS_PER_VOLUME} such jobs are running on each of the volumes they
+ * {@link FileJob#getAccessedFolders() access} ; otherwise they wait in the {@link FileJob#QUEUED} state, so that
+ * several large transfers to a same drive do not thrash it. Queued jobs are started by order of priority, and in the
+ * order they were started for a same priority. The volumes a queued job waits for are reserved for it: jobs queued
+ * after it cannot overtake it on these volumes.</p>
+ *
+ * <p>The scheduler can be {@link #setPaused(boolean) paused}, which pauses the running jobs and holds the queue.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class JobScheduler implements FileJobListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
+
+    /** The instance of this class */
+    private final static JobScheduler instance = new JobScheduler();
+
+    /** Sorts jobs by decreasing priority, preserving the order of jobs that have the same priority */
+    private final static Comparator<FileJob> PRIORITY_COMPARATOR = new Comparator<FileJob>() {
+        public int compare(FileJob job1, FileJob job2) {
+            return job2.getPriority()-job1.getPriority();
+        }
+    };
+
+    /** Queued jobs -> keys of the volumes they access, in the order the jobs were started */
+    private final Map<FileJob, Set<String>> queuedJobs = new LinkedHashMap<FileJob, Set<String>>();
+
+    /** Running jobs -> keys of the volumes they have been counted on, empty for high priority jobs */
+    private final Map<FileJob, Set<String>> runningJobs = new HashMap<FileJob, Set<String>>();
+
+    /** Volume key -> number of running jobs counted on the volume */
+    private final Map<String, Integer> volumeUsage = new HashMap<String, Integer>();
+
+    /** Jobs that were paused by {@link #setPaused(boolean)} */
+    private final Set<FileJob> pausedJobs = new HashSet<FileJob>();
+
+    /** True if the scheduler is paused */
+    private boolean paused;
+
+    private JobScheduler() {
+    }
+
+    /**
+     * Returns the instance of <code>JobScheduler</code>.
+     *
+     * @return the instance of JobScheduler
+     */
+    public static JobScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Runs the given job now if it has a high priority or if the volumes it uses are available, queues it otherwise.
+     *
+     * @param job the job to schedule
+     */
+    void schedule(FileJob job) {
+        job.addFileJobListener(this);
+
+        if(job.getPriority()==FileJob.HIGH_PRIORITY) {
+            synchronized(this) {
+                runningJobs.put(job, Collections.<String>emptySet());
+            }
+            job.startThread();
+            return;
+        }
+
+        Set<String> volumes = getVolumeKeys(job);
+        job.setState(FileJob.QUEUED);
+        synchronized(this) {
+            queuedJobs.put(job, volumes);
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Called when the priority of a queued job has changed.
+     *
+     * @param job the job whose priority has changed
+     */
+    void priorityChanged(FileJob job) {
+        dispatch();
+    }
+
+    /**
+     * Starts the queued jobs that can be started.
+     */
+    private void dispatch() {
+        List<FileJob> jobsToStart = new ArrayList<FileJob>();
+
+        synchronized(this) {
+            int volumeLimit = Math.max(1, MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_JOBS_PER_VOLUME, MuPreferences.DEFAULT_TRANSFER_JOBS_PER_VOLUME));
+            Set<String> reservedVolumes = new HashSet<String>();
+
+            for(FileJob job : getQueuedJobs()) {
+                Set<String> volumes = queuedJobs.get(job);
+                boolean highPriority = job.getPriority()==FileJob.HIGH_PRIORITY;
+
+                if(highPriority || (!paused && isAvailable(volumes, reservedVolumes, volumeLimit))) {
+                    queuedJobs.remove(job);
+                    if(highPriority) {
+                        runningJobs.put(job, Collections.<String>emptySet());
+                    }
+                    else {
+                        runningJobs.put(job, volumes);
+                        for(String volume : volumes)
+                            volumeUsage.put(volume, getVolumeUsage(volume)+1);
+                    }
+                    jobsToStart.add(job);
+                }
+                else {
+                    // Jobs with a lower priority, or queued later, must not overtake this one
+                    reservedVolumes.addAll(volumes);
+                }
+            }
+        }
+
+        for(FileJob job : jobsToStart) {
+            LOGGER.debug("Starting "+job);
+            job.startThread();
+        }
+    }
+
+    private boolean isAvailable(Set<String> volumes, Set<String> reservedVolumes, int volumeLimit) {
+        for(String volume : volumes) {
+            if(reservedVolumes.contains(volume) || getVolumeUsage(volume)>=volumeLimit)
+                return false;
+        }
+        return true;
+    }
+
+    private int getVolumeUsage(String volume) {
+        Integer usage = volumeUsage.get(volume);
+        return usage==null?0:usage;
+    }
+
+    /**
+     * Returns the keys of the volumes the given job accesses.
+     */
+    private static Set<String> getVolumeKeys(FileJob job) {
+        Set<String> volumes = new HashSet<String>();
+        for(AbstractFile folder : job.getAccessedFolders()) {
+            AbstractFile volume = folder.getVolume();
+            volumes.add((volume==null?folder:volume).getURL().toString(false));
+        }
+        return volumes;
+    }
+
+    /**
+     * Pauses or resumes the scheduler. Pausing the scheduler pauses the running jobs, except those that have a high
+     * priority, and holds the queued jobs until the scheduler is resumed. Resuming the scheduler resumes the jobs
+     * it paused.
+     *
+     * @param paused true to pause the scheduler, false to resume it
+     */
+    public void setPaused(boolean paused) {
+        List<FileJob> jobs = new ArrayList<FileJob>();
+
+        synchronized(this) {
+            if(this.paused==paused)
+                return;
+            this.paused = paused;
+
+            if(paused) {
+                for(FileJob job : runningJobs.keySet()) {
+                    if(job.getPriority()!=FileJob.HIGH_PRIORITY && job.getState()==FileJob.RUNNING)
+                        jobs.add(job);
+                }
+                pausedJobs.addAll(jobs);
+            }
+            else {
+                jobs.addAll(pausedJobs);
+                pausedJobs.clear();
+            }
+        }
+
+        for(FileJob job : jobs)
+            job.setPaused(paused);
+
+        if(!paused)
+            dispatch();
+    }
+
+    /**
+     * Returns <code>true</code> if the scheduler is paused.
+     *
+     * @return true if the scheduler is paused
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Returns the queued jobs, in the order they will be started.
+     *
+     * @return the queued jobs, in the order they will be started
+     */
+    public synchronized List<FileJob> getQueuedJobs() {
+        List<FileJob> jobs = new ArrayList<FileJob>(queuedJobs.keySet());
+        Collections.sort(jobs, PRIORITY_COMPARATOR);
+        return jobs;
+    }
+
+    /**
+     * Returns the position of the given job in the queue, <code>0</code> if it is the next job to be started,
+     * <code>-1</code> if it is not queued.
+     *
+     * @param job a job
+     * @return the position of the given job in the queue, -1 if it is not queued
+     */
+    public synchronized int getQueuePosition(FileJob job) {
+        return getQueuedJobs().indexOf(job);
+    }
+
+    /**
+     * Returns the number of jobs that are running.
+     *
+     * @return the number of jobs that are running
+     */
+    public synchronized int getNbRunningJobs() {
+        return runningJobs.size();
+    }
+
+
+    ////////////////////////////////////
+    // FileJobListener implementation //
+    ////////////////////////////////////
+
+    public void jobStateChanged(FileJob source, int oldState, int newState) {
+        if(newState!=FileJob.FINISHED && newState!=FileJob.INTERRUPTED)
+            return;
+
+        synchronized(this) {
+            queuedJobs.remove(source);
+            pausedJobs.remove(source);
+
+            Set<String> volumes = runningJobs.remove(source);
+            if(volumes!=null) {
+                for(String volume : volumes) {
+                    int usage = getVolumeUsage(volume)-1;
+                    if(usage>0)
+                        volumeUsage.put(volume, usage);
+                    else
+                        volumeUsage.remove(volume);
+                }
+            }
+        }
+
+        dispatch();
+    }
+}
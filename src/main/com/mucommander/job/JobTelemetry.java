@@ -0,0 +1,359 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.job;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * Records where the time of a {@link FileJob} goes: the time spent in each {@link Phase} of the processing of files,
+ * the number of files and bytes processed, the number of retries, and the distribution of the time it took to
+ * process each file.
+ *
+ * <p>Phases are recorded by the threads that carry them out, the job's thread or transfer workers: phases of files
+ * processed concurrently add up, and their total may thus exceed the job's elapsed time. The time per file is sampled
+ * in a fixed-size reservoir, from which percentiles are estimated.</p>
+ *
+ * <p>The telemetry of a job is registered as an MBean while the job is running, see {@link JobTelemetryMBean}, and a
+ * summary of it is logged at debug level when the job stops.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class JobTelemetry implements JobTelemetryMBean {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JobTelemetry.class);
+
+    /**
+     * The phases the processing of a file is divided into.
+     */
+    public enum Phase {
+        /** Listing folders */
+        LISTING,
+        /** Opening source files */
+        OPENING,
+        /** Reading source files */
+        READING,
+        /** Writing destination files, or copying files without reading them, e.g. with a remote or kernel copy */
+        WRITING,
+        /** Verifying the integrity of files */
+        VERIFYING,
+        /** Preserving the date, permissions and other metadata of files */
+        METADATA,
+        /** Waiting for the user to answer a dialog */
+        DIALOG
+    }
+
+    /** Domain of the MBeans' names */
+    private final static String MBEAN_DOMAIN = "com.mucommander";
+
+    /** Maximum number of file times sampled */
+    final static int MAX_SAMPLES = 4096;
+
+    /** Sequence number of the MBeans, making their names unique */
+    private final static AtomicInteger mbeanSequence = new AtomicInteger();
+
+    private final FileJob job;
+
+    /** Time spent in each phase in nanoseconds, indexed by phase ordinal */
+    private final AtomicLong phaseTimes[];
+
+    /** Number of times the user chose to retry */
+    private final AtomicInteger nbRetries = new AtomicInteger();
+
+    /** Number of files processed */
+    private long nbFiles;
+
+    /** Sampled times per file in nanoseconds, the first <code>min(nbFiles, MAX_SAMPLES)</code> are used */
+    private final long fileTimes[] = new long[MAX_SAMPLES];
+
+    /** Chooses the samples to replace once the reservoir is full */
+    private final Random random = new Random();
+
+    /** True if the file being processed by the job's thread has been handed over to a transfer worker */
+    private boolean fileHandedOver;
+
+    /** Name of the MBean, null if it is not registered */
+    private ObjectName mbeanName;
+
+    JobTelemetry(FileJob job) {
+        this.job = job;
+
+        phaseTimes = new AtomicLong[Phase.values().length];
+        for(int i=0; i<phaseTimes.length; i++)
+            phaseTimes[i] = new AtomicLong();
+    }
+
+    /**
+     * Adds the time elapsed since the given start time to the specified phase.
+     *
+     * @param phase the phase the time was spent in
+     * @param startTime the time the phase started at, as returned by {@link System#nanoTime()}
+     */
+    public void phaseEnded(Phase phase, long startTime) {
+        addPhaseTime(phase, System.nanoTime()-startTime);
+    }
+
+    /**
+     * Adds the given time to the specified phase.
+     *
+     * @param phase the phase the time was spent in
+     * @param nanos the time spent in the phase, in nanoseconds
+     */
+    public void addPhaseTime(Phase phase, long nanos) {
+        if(nanos>0)
+            phaseTimes[phase.ordinal()].addAndGet(nanos);
+    }
+
+    /**
+     * Returns the time spent in the given phase so far, in milliseconds.
+     *
+     * @param phase a phase
+     * @return the time spent in the phase, in milliseconds
+     */
+    public long getPhaseTime(Phase phase) {
+        return phaseTimes[phase.ordinal()].get()/1000000;
+    }
+
+    /**
+     * Counts a retry chosen by the user.
+     */
+    void retried() {
+        nbRetries.incrementAndGet();
+    }
+
+    /**
+     * Called by the job's thread before it processes a file, returns the time the file started being processed at.
+     */
+    long fileStarted() {
+        fileHandedOver = false;
+        return System.nanoTime();
+    }
+
+    /**
+     * Called by the job's thread when the file being processed has been handed over to a transfer worker, which
+     * records the file's time itself.
+     */
+    void fileHandedOver() {
+        fileHandedOver = true;
+    }
+
+    /**
+     * Called by the job's thread after it processed a file, with the time returned by {@link #fileStarted()}. The
+     * time of folders is not recorded, as it includes that of their contents.
+     */
+    void fileEnded(AbstractFile file, long startTime) {
+        if(!fileHandedOver && !file.isDirectory())
+            fileProcessed(System.nanoTime()-startTime);
+    }
+
+    /**
+     * Counts a file that was processed in the given time.
+     *
+     * @param nanos the time it took to process the file, in nanoseconds
+     */
+    synchronized void fileProcessed(long nanos) {
+        if(nbFiles<MAX_SAMPLES) {
+            fileTimes[(int)nbFiles] = nanos;
+        }
+        else {
+            // Reservoir sampling: each file has the same probability of being sampled
+            long index = (long)(random.nextDouble()*(nbFiles+1));
+            if(index<MAX_SAMPLES)
+                fileTimes[(int)index] = nanos;
+        }
+        nbFiles++;
+    }
+
+    /**
+     * Returns the given percentile of the time it took to process a file, in milliseconds, <code>0</code> if no file
+     * has been processed yet.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile of the time per file, in milliseconds
+     */
+    public synchronized double getFileLatencyPercentile(double percentile) {
+        int nbSamples = (int)Math.min(nbFiles, MAX_SAMPLES);
+        if(nbSamples==0)
+            return 0;
+
+        long samples[] = new long[nbSamples];
+        System.arraycopy(fileTimes, 0, samples, 0, nbSamples);
+        Arrays.sort(samples);
+        int index = (int)Math.ceil(percentile/100*nbSamples)-1;
+
+        return samples[Math.max(0, Math.min(nbSamples-1, index))]/1000000d;
+    }
+
+    /**
+     * Registers this telemetry as an MBean. Errors are logged and otherwise ignored.
+     */
+    synchronized void register() {
+        if(mbeanName!=null)
+            return;
+
+        try {
+            ObjectName name = new ObjectName(MBEAN_DOMAIN+":type=FileJob,name="+getJobName()+"-"+mbeanSequence.incrementAndGet());
+            getMBeanServer().registerMBean(this, name);
+            mbeanName = name;
+        }
+        catch(JMException e) {
+            LOGGER.info("Could not register job telemetry MBean", e);
+        }
+    }
+
+    /**
+     * Unregisters this telemetry's MBean, if it is registered, and logs a summary of the job's telemetry.
+     */
+    synchronized void unregister() {
+        LOGGER.debug(getSummary());
+
+        if(mbeanName==null)
+            return;
+
+        try {
+            getMBeanServer().unregisterMBean(mbeanName);
+        }
+        catch(JMException e) {
+            LOGGER.debug("Could not unregister job telemetry MBean", e);
+        }
+        mbeanName = null;
+    }
+
+    private static MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    /**
+     * Returns a one-line summary of the telemetry of the job, which has stopped, in English.
+     */
+    private synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getJobName()).append(job.getState()==FileJob.INTERRUPTED?" interrupted":" finished").append(" after ").append(getEffectiveTime()).append(" ms: ");
+        sb.append(nbFiles).append(" files (").append(String.format("%.1f", getFilesPerSecond())).append("/s), ");
+        sb.append(getBytesProcessed()).append(" bytes (").append(getBytesPerSecond()).append(" B/s), ");
+        sb.append(getRetries()).append(" retries, file latency p50 ").append(String.format("%.1f", getFileLatencyP50()));
+        sb.append(" ms p99 ").append(String.format("%.1f", getFileLatencyP99())).append(" ms ;");
+        for(Phase phase : Phase.values())
+            sb.append(' ').append(phase.name().toLowerCase()).append(' ').append(getPhaseTime(phase)).append(" ms");
+
+        return sb.toString();
+    }
+
+
+    ///////////////////////////////////////
+    // JobTelemetryMBean implementation //
+    ///////////////////////////////////////
+
+    public String getJobName() {
+        return job.getClass().getSimpleName();
+    }
+
+    public String getState() {
+        switch(job.getState()) {
+            case FileJob.NOT_STARTED:
+                return "not started";
+            case FileJob.RUNNING:
+                return "running";
+            case FileJob.PAUSED:
+                return "paused";
+            case FileJob.INTERRUPTED:
+                return "interrupted";
+            case FileJob.FINISHED:
+                return "finished";
+            case FileJob.QUEUED:
+                return "queued";
+            default:
+                return "unknown";
+        }
+    }
+
+    public long getEffectiveTime() {
+        return job.getEffectiveJobTime();
+    }
+
+    public synchronized long getFilesProcessed() {
+        return nbFiles;
+    }
+
+    public double getFilesPerSecond() {
+        long time = getEffectiveTime();
+        return time<=0?0:getFilesProcessed()*1000d/time;
+    }
+
+    public long getBytesProcessed() {
+        return job instanceof TransferFileJob?((TransferFileJob)job).getTotalByteCounter().getByteCount():0;
+    }
+
+    public long getBytesPerSecond() {
+        long time = getEffectiveTime();
+        return time<=0?0:getBytesProcessed()*1000/time;
+    }
+
+    public int getRetries() {
+        return nbRetries.get();
+    }
+
+    public double getFileLatencyP50() {
+        return getFileLatencyPercentile(50);
+    }
+
+    public double getFileLatencyP99() {
+        return getFileLatencyPercentile(99);
+    }
+
+    public long getListingTime() {
+        return getPhaseTime(Phase.LISTING);
+    }
+
+    public long getOpeningTime() {
+        return getPhaseTime(Phase.OPENING);
+    }
+
+    public long getReadingTime() {
+        return getPhaseTime(Phase.READING);
+    }
+
+    public long getWritingTime() {
+        return getPhaseTime(Phase.WRITING);
+    }
+
+    public long getVerifyingTime() {
+        return getPhaseTime(Phase.VERIFYING);
+    }
+
+    public long getMetadataTime() {
+        return getPhaseTime(Phase.METADATA);
+    }
+
+    public long getDialogTime() {
+        return getPhaseTime(Phase.DIALOG);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.job;
+
+/**
+ * Management interface of {@link JobTelemetry}, through which the telemetry of running jobs is exposed as MBeans.
+ * Times are expressed in milliseconds.
+ *
+ * @author Maxence Bernard
+ */
+public interface JobTelemetryMBean {
+
+    /** Returns the name of the job's class */
+    String getJobName();
+
+    /** Returns the job's state, as a word */
+    String getState();
+
+    /** Returns the time the job has been running, excluding pauses */
+    long getEffectiveTime();
+
+    /** Returns the number of files processed so far, not counting folders */
+    long getFilesProcessed();
+
+    /** Returns the average number of files processed per second */
+    double getFilesPerSecond();
+
+    /** Returns the number of bytes processed so far, <code>0</code> for jobs that do not transfer files */
+    long getBytesProcessed();
+
+    /** Returns the average number of bytes processed per second */
+    long getBytesPerSecond();
+
+    /** Returns the number of times the user chose to retry after an error */
+    int getRetries();
+
+    /** Returns the median time it took to process a file */
+    double getFileLatencyP50();
+
+    /** Returns the 99th percentile of the time it took to process a file */
+    double getFileLatencyP99();
+
+    /** Returns the time spent listing folders */
+    long getListingTime();
+
+    /** Returns the time spent opening source files */
+    long getOpeningTime();
+
+    /** Returns the time spent reading source files */
+    long getReadingTime();
+
+    /** Returns the time spent writing destination files */
+    long getWritingTime();
+
+    /** Returns the time spent verifying the integrity of files */
+    long getVerifyingTime();
+
+    /** Returns the time spent preserving the metadata of files */
+    long getMetadataTime();
+
+    /** Returns the time spent waiting for the user to answer dialogs */
+    long getDialogTime();
+}
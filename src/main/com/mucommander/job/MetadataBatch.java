@@ -0,0 +1,263 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.apple.eio.FileManager;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.FilePermissions;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.runtime.OsFamily;
+
+/**
+ * Gathers the metadata to preserve on the files copied by a {@link TransferFileJob} -date, permissions and under
+ * Mac OS X, file type and creator- and applies it in batches, in a background thread, while the next files are
+ * being copied.
+ *
+ * <p>The metadata is read from the source file when the file is {@link #addFile(AbstractFile, AbstractFile) added},
+ * so the source file may be deleted right after. The dates of the destination folders are applied only when the
+ * batch is {@link #flush(boolean) flushed}, in the order the folders were added, which is from the innermost
+ * folders to the outermost ones: creating files in a folder after its date was set would change it.</p>
+ *
+ * @author Maxence Bernard
+ */
+class MetadataBatch {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetadataBatch.class);
+
+    /** Number of files whose metadata is applied at once */
+    private final static int BATCH_SIZE = 256;
+
+    /** Applies the batches of all jobs, in the order they were submitted */
+    private final static ExecutorService APPLIER_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Metadata applier");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** Metadata of the files added since the last batch was submitted */
+    private List<FileMetadata> files = new ArrayList<FileMetadata>();
+
+    /** Dates of the destination folders, in the order the folders were added */
+    private Map<AbstractFile, Long> folderDates = new LinkedHashMap<AbstractFile, Long>();
+
+    /**
+     * Returns <code>true</code> if the metadata of the given destination file can be applied in the background:
+     * local files can, files inside archives cannot as archives do not support concurrent modifications.
+     *
+     * @param destFile a destination file
+     * @return true if the metadata of the given destination file can be applied in the background
+     */
+    static boolean canDefer(AbstractFile destFile) {
+        return destFile.hasAncestor(LocalFile.class);
+    }
+
+    /**
+     * Reads the metadata of the given source file, to be applied to the given destination file with the next batch.
+     *
+     * @param sourceFile the source file
+     * @param destFile the destination file
+     */
+    void addFile(AbstractFile sourceFile, AbstractFile destFile) {
+        FileMetadata metadata = new FileMetadata(sourceFile, destFile);
+
+        synchronized(this) {
+            files.add(metadata);
+            if(files.size()>=BATCH_SIZE)
+                submit(files, null);
+        }
+    }
+
+    /**
+     * Records the date to give the given destination folder once all files have been copied. A folder that is added
+     * more than once is given its date in the order of its last addition.
+     *
+     * @param folder the destination folder
+     * @param date the date to give the folder
+     */
+    synchronized void addFolderDate(AbstractFile folder, long date) {
+        folderDates.remove(folder);
+        folderDates.put(folder, date);
+    }
+
+    /**
+     * Applies the metadata that hasn't been applied yet, then the dates of the folders.
+     *
+     * @param wait true to wait for the metadata to be applied
+     */
+    void flush(boolean wait) {
+        Future<?> future;
+        synchronized(this) {
+            if(files.isEmpty() && folderDates.isEmpty())
+                return;
+
+            future = submit(files, folderDates);
+            folderDates = new LinkedHashMap<AbstractFile, Long>();
+        }
+
+        if(!wait)
+            return;
+
+        // Batches are applied by a single thread: once the last one is applied, all of them are
+        try {
+            future.get();
+        }
+        catch(InterruptedException e) {
+            LOGGER.debug("Interrupted while waiting for metadata to be applied", e);
+        }
+        catch(ExecutionException e) {
+            LOGGER.debug("Error while applying metadata", e.getCause());
+        }
+    }
+
+    /**
+     * Submits the given files' metadata and folder dates to the applier thread, and starts a new batch.
+     */
+    private Future<?> submit(final List<FileMetadata> batch, final Map<AbstractFile, Long> dates) {
+        files = new ArrayList<FileMetadata>();
+
+        return APPLIER_EXECUTOR.submit(new Runnable() {
+            public void run() {
+                for(FileMetadata metadata : batch)
+                    metadata.apply();
+
+                if(dates!=null) {
+                    for(Map.Entry<AbstractFile, Long> entry : dates.entrySet())
+                        changeDate(entry.getKey(), entry.getValue());
+                }
+            }
+        });
+    }
+
+    /**
+     * Changes the date of the given file if it supports it. Errors are ignored.
+     *
+     * @param file the file whose date to change
+     * @param date the new date
+     */
+    static void changeDate(AbstractFile file, long date) {
+        if(!file.isFileOperationSupported(FileOperation.CHANGE_DATE))
+            return;
+
+        try {
+            file.changeDate(date);
+        }
+        catch (IOException e) {
+            LOGGER.debug("failed to change the date of "+file, e);
+            // Fail silently
+        }
+    }
+
+    /**
+     * Reads the metadata of the given source file and applies it to the given destination file right away.
+     *
+     * @param sourceFile the source file
+     * @param destFile the destination file
+     */
+    static void apply(AbstractFile sourceFile, AbstractFile destFile) {
+        new FileMetadata(sourceFile, destFile).apply();
+    }
+
+
+    /**
+     * The metadata of a source file, to be applied to its destination file.
+     */
+    private static class FileMetadata {
+        private final AbstractFile destFile;
+        private final long date;
+        /** Permissions to give the destination file, -1 if they cannot be changed */
+        private final int permissions;
+        /** Mac OS X file type and creator to give the destination file, null if they are not preserved */
+        private final int typeAndCreator[];
+
+        private FileMetadata(AbstractFile sourceFile, AbstractFile destFile) {
+            this.destFile = destFile;
+            this.date = sourceFile.getDate();
+
+            // Preserve only the permissions bits that are supported by the source file and use default permissions
+            // for the rest of them, like AbstractFile#importPermissions does
+            if(destFile.isFileOperationSupported(FileOperation.CHANGE_PERMISSION)) {
+                FilePermissions sourcePermissions = sourceFile.getPermissions();
+                int mask = sourcePermissions.getMask().getIntValue();
+                permissions = (sourcePermissions.getIntValue()&mask) | (FilePermissions.DEFAULT_FILE_PERMISSIONS.getIntValue()&~mask);
+            }
+            else {
+                permissions = -1;
+            }
+
+            // Under Mac OS X only, preserving the file type and creator
+            int typeAndCreator[] = null;
+            if(OsFamily.MAC_OS_X.isCurrent()
+                && sourceFile.hasAncestor(LocalFile.class)
+                && destFile.hasAncestor(LocalFile.class)) {
+
+                String sourcePath = sourceFile.getAbsolutePath();
+                try {
+                    typeAndCreator = new int[]{FileManager.getFileType(sourcePath), FileManager.getFileCreator(sourcePath)};
+                }
+                catch(IOException e) {
+                    LOGGER.debug("Error while getting Mac OS X file type and creator of source", e);
+                }
+            }
+            this.typeAndCreator = typeAndCreator;
+        }
+
+        /**
+         * Applies the metadata to the destination file. Errors are ignored.
+         */
+        private void apply() {
+            changeDate(destFile, date);
+
+            if(permissions!=-1) {
+                try {
+                    destFile.changePermissions(permissions);
+                }
+                catch(IOException e) {
+                    LOGGER.debug("failed to change the permissions of "+destFile, e);
+                    // Fail silently
+                }
+            }
+
+            if(typeAndCreator!=null) {
+                try {
+                    FileManager.setFileTypeAndCreator(destFile.getAbsolutePath(), typeAndCreator[0], typeAndCreator[1]);
+                }
+                catch(IOException e) {
+                    // Swallow the exception and do not interrupt the transfer
+                    LOGGER.debug("Error while setting Mac OS X file type and creator on destination", e);
+                }
+            }
+        }
+    }
+}
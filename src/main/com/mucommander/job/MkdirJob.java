@@ -101,7 +101,7 @@ public class MkdirJob extends FileJob {
                 if(collision!=FileCollisionChecker.NO_COLLOSION) {
                     // File already exists in destination, ask the user what to do (cancel, overwrite,...) but
                     // do not offer the multiple files mode options such as 'skip' and 'apply to all'.
-                    int choice = waitForUserResponse(new FileCollisionDialog(getMainFrame(), getMainFrame(), collision, null, file, false, false));
+                    int choice = showFileCollisionDialog(collision, null, file, false, false);
 
                     // Overwrite file
                     if (choice==FileCollisionDialog.OVERWRITE_ACTION) {
@@ -20,10 +20,17 @@
 package com.mucommander.job;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.commons.file.AbstractArchiveEntryFile;
 import com.mucommander.commons.file.AbstractArchiveFile;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractRWArchiveFile;
@@ -38,6 +45,10 @@ import com.mucommander.ui.main.MainFrame;
 /**
  * This job recursively moves a group of files.
  *
+ * <p>Files that cannot be renamed are copied, and the source files are deleted by a {@link DeletionQueue} once they
+ * have been copied, while the next files are being copied. The source folders are deleted once all the files of their
+ * top-level folder have been moved, innermost first, unless some of their files could not be moved.</p>
+ *
  * @author Maxence Bernard
  */
 public class MoveJob extends AbstractCopyJob {
@@ -46,6 +57,15 @@ public class MoveJob extends AbstractCopyJob {
     /** True if this job corresponds to a single file renaming */
     protected boolean renameMode = false;
 
+    /** Deletes the source files that have been copied, created when first needed */
+    private DeletionQueue deletionQueue;
+
+    /** Source folders to delete once the files of their top-level folder have been moved, innermost first */
+    private final List<AbstractFile> foldersToDelete = new ArrayList<AbstractFile>();
+
+    /** Keys of the source folders that could not be moved totally, and must not be deleted */
+    private final Set<String> incompleteFolders = Collections.synchronizedSet(new HashSet<String>());
+
     
     /**
      * Creates a new MoveJob without starting it.
@@ -61,6 +81,9 @@ public class MoveJob extends AbstractCopyJob {
     public MoveJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFolder, String newName, int fileExistsAction, boolean renameMode) {
         super(progressDialog, mainFrame, files, destFolder, newName, fileExistsAction);
 
+        // Moves across volumes may keep them busy for a long time: wait for other transfers to complete
+        setPriority(NORMAL_PRIORITY);
+
         this.errorDialogTitle = Translator.get("move_dialog.error_title");
         this.renameMode = renameMode;
     }
@@ -71,7 +94,7 @@ public class MoveJob extends AbstractCopyJob {
     ////////////////////////////////////
 
     /**
-     * Moves recursively the given file or folder. 
+     * Moves the given file, or creates the given folder and queues its children to be moved.
      *
      * @param file the file or folder to move
      * @param recurseParams destination folder where the given file will be moved (null for top level files)
@@ -88,7 +111,7 @@ public class MoveJob extends AbstractCopyJob {
         AbstractFile destFolder = recurseParams==null?baseDestFolder:(AbstractFile)recurseParams;
 		
         // Is current file at the base folder level ?
-        boolean isFileInBaseFolder = files.indexOf(file)!=-1;
+        boolean isFileInBaseFolder = isTopLevelFile(file);
 
         // Determine filename in destination
         String originalName = file.getName();
@@ -123,6 +146,10 @@ public class MoveJob extends AbstractCopyJob {
             } while(true);
         }
 
+        // Only delete the source file if it was copied by the unfinished job this job resumes
+        if(wasCopiedBefore(file, destFile))
+            return deleteSourceFileLater(file);
+
         destFile = checkForCollision(file, destFolder, destFile, renameMode);
         if (destFile == null)
             return false;
@@ -149,13 +176,14 @@ public class MoveJob extends AbstractCopyJob {
         }
         // Rename couldn't be used or didn't succeed: move the file manually
 
-        // Move the directory and all its children recursively, by copying files to the destination and then deleting them.
+        // Move the directory and all its children, by copying files to the destination and then deleting them.
         if(file.isDirectory()) {
             // create the destination folder if it doesn't exist
-            if(!(destFile.exists() && destFile.isDirectory())) {
+            if(!(destinationListing.exists(destFile) && destinationListing.isDirectory(destFile))) {
                 do {		// Loop for retry
                     try {
                         destFile.mkdir();
+                        destinationListing.folderCreated(destFile);
                     }
                     catch(IOException e) {
                         int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_create_folder", destFile.getAbsolutePath()));
@@ -169,36 +197,10 @@ public class MoveJob extends AbstractCopyJob {
                 } while(true);
             }
 			
-            // move each file in this folder recursively
+            // move each file in this folder, the folder is deleted once they all have been
             do {		// Loop for retry
                 try {
-                    AbstractFile subFiles[] = file.ls();
-                    boolean isFolderEmpty = true;
-                    for (AbstractFile subFile : subFiles) {
-                        // Return now if the job was interrupted, so that we do not attempt to delete this folder
-                        if (getState() == INTERRUPTED)
-                            return false;
-
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(subFile);
-                        if (!processFile(subFile, destFile))
-                            isFolderEmpty = false;
-                    }
-
-                    // Only when finished with folder, set destination folder's date to match the original folder one
-                    if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.changeDate(file.getDate());
-                        }
-                        catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
-                    }
-
-                    // If one file failed to be moved, return false (failure) since this folder could not be moved totally
-                    if(!isFolderEmpty)
-                        return false;
+                    return processChildren(file, ls(file), destFile);
                 }
                 catch(IOException e) {
                     // file.ls() failed
@@ -209,27 +211,6 @@ public class MoveJob extends AbstractCopyJob {
                     // Cancel, skip or close dialog returns false
                     return false;
                 }
-                break;
-            } while(true);
-
-            // Return now if the job was interrupted, so that we do not attempt to delete this folder
-            if(getState()==INTERRUPTED)
-                return false;
-
-            // finally, delete the empty folder
-            do {		// Loop for retry
-                try  {
-                    file.delete();
-                    return true;
-                }
-                catch(IOException e) {
-                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_folder", file.getAbsolutePath()));
-                    // Retry loops
-                    if(ret==RETRY_ACTION)
-                        continue;
-                    // Cancel, skip or close dialog returns false
-                    return false;
-                }
             } while(true);
         }
         // File is a regular file, move it by copying it to the destination and then deleting it
@@ -237,29 +218,178 @@ public class MoveJob extends AbstractCopyJob {
 
             // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
             // try the hard way by copying the file first, and then deleting the source file.
-            if(tryCopyFile(file, destFile, append, errorDialogTitle) && getState()!=INTERRUPTED) {
-                // Delete the source file
-                do {		// Loop for retry
-                    try  {
-                        file.delete();
-                        // All OK
-                        return true;
-                    }
-                    catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
+            // The file is copied concurrently with other files if possible, and deleted once it has been copied
+            // -and verified, if integrity checks are enabled.
+            final AbstractFile sourceFile = file;
+            return tryCopyFileConcurrently(file, destFile, append, errorDialogTitle, new Callable<Boolean>() {
+                public Boolean call() {
+                    return deleteSourceFileLater(sourceFile);
+                }
+            });
+        }
+    }
 
-                        int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                        // Retry loops
-                        if(ret==RETRY_ACTION)
-                            continue;
-                        // Cancel, skip or close dialog returns false
-                        return false;
-                    }
-                } while(true);
+    /**
+     * Deletes the given source file after it has been copied, giving the user the choice to skip the file, retry or
+     * cancel if it could not be deleted.
+     *
+     * @param file the source file to delete
+     * @return true if the file was deleted
+     */
+    private boolean tryDeleteSourceFile(AbstractFile file) {
+        do {		// Loop for retry
+            try  {
+                file.delete();
+                // All OK
+                return true;
             }
+            catch(IOException e) {
+                LOGGER.debug("IOException caught", e);
 
-            return false;
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
+                // Retry loops
+                if(ret==RETRY_ACTION)
+                    continue;
+                // Cancel, skip or close dialog returns false
+                return false;
+            }
+        } while(true);
+    }
+
+    /**
+     * Deletes the given source file once it has been copied, in the deletion thread. Files inside archives are
+     * deleted right away, as archives cannot be read and modified concurrently.
+     *
+     * @param file the source file to delete
+     * @return false if the file could not be deleted, true if it was or is to be deleted
+     */
+    private boolean deleteSourceFileLater(final AbstractFile file) {
+        if(file.hasAncestor(AbstractArchiveEntryFile.class))
+            return tryDeleteSourceFile(file);
+
+        getDeletionQueue().add(new Runnable() {
+            public void run() {
+                if(!tryDeleteSourceFile(file))
+                    markIncomplete(file.getParent());
+            }
+        });
+
+        return true;
+    }
+
+    private synchronized DeletionQueue getDeletionQueue() {
+        if(deletionQueue==null)
+            deletionQueue = new DeletionQueue(this);
+
+        return deletionQueue;
+    }
+
+    /**
+     * Blocks until the source files that have been copied have been deleted.
+     */
+    private void waitForPendingDeletions() {
+        DeletionQueue queue;
+        synchronized(this) {
+            queue = deletionQueue;
+        }
+
+        if(queue!=null)
+            queue.awaitCompletion();
+    }
+
+    /**
+     * Marks the given source folder and its parents as not moved totally, so that they are not deleted.
+     *
+     * @param folder a source folder one of the files of which could not be moved
+     */
+    private void markIncomplete(AbstractFile folder) {
+        // The parents of a folder that is marked already are marked too
+        while(folder!=null && incompleteFolders.add(folder.getURL().toString(false)))
+            folder = folder.getParent();
+    }
+
+    /**
+     * Waits for the files being moved to be copied and deleted, then deletes the source folders that were moved
+     * totally, innermost first.
+     *
+     * @return <code>true</code> if the last folder, i.e. the top-level one, was deleted
+     */
+    private boolean deleteSourceFolders() {
+        waitForPendingTransfers();
+        waitForPendingDeletions();
+
+        boolean deleted = false;
+        for(AbstractFile folder : foldersToDelete) {
+            // Return now if the job was interrupted, so that we do not attempt to delete the folders
+            if(getState()==INTERRUPTED) {
+                deleted = false;
+                break;
+            }
+
+            deleted = !incompleteFolders.contains(folder.getURL().toString(false)) && tryDeleteSourceFolder(folder);
+            if(!deleted)
+                markIncomplete(folder);
         }
+        foldersToDelete.clear();
+
+        return deleted;
+    }
+
+    /**
+     * Deletes the given source folder once its files have been moved, giving the user the choice to skip the folder,
+     * retry or cancel if it could not be deleted.
+     *
+     * @param folder the source folder to delete
+     * @return true if the folder was deleted
+     */
+    private boolean tryDeleteSourceFolder(AbstractFile folder) {
+        do {		// Loop for retry
+            try  {
+                folder.delete();
+                return true;
+            }
+            catch(IOException e) {
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_folder", folder.getAbsolutePath()));
+                // Retry loops
+                if(ret==RETRY_ACTION)
+                    continue;
+                // Cancel, skip or close dialog returns false
+                return false;
+            }
+        } while(true);
+    }
+
+    /**
+     * Called once all the children of the given folder have been processed, to set the destination folder's date to
+     * match the original folder one. Source folders are deleted once all the files of their top-level folder have
+     * been copied and deleted.
+     *
+     * @param folder the folder whose children have been processed
+     * @param recurseParams the folder's destination
+     * @param success <code>true</code> if all children were processed successfully
+     * @return <code>true</code> if the folder was moved totally, or for a folder that is not a top-level one, if its
+     * files are being moved
+     */
+    @Override
+    protected boolean folderProcessed(AbstractFile folder, Object recurseParams, boolean success) {
+        AbstractFile destFile = (AbstractFile)recurseParams;
+
+        // Return now if the job was interrupted, so that we do not attempt to delete this folder
+        if(getState()==INTERRUPTED)
+            return false;
+
+        // Set destination folder's date to match the original folder one, once all files have been transferred
+        changeFolderDateLater(destFile, folder.getDate());
+
+        // If one file failed to be moved, this folder cannot be moved totally
+        if(!success)
+            markIncomplete(folder);
+
+        foldersToDelete.add(folder);
+        if(!isTopLevelFile(folder))
+            return success;
+
+        return deleteSourceFolders();
     }
 
     // This job modifies baseDestFolder and its subfolders
@@ -273,6 +403,73 @@ public class MoveJob extends AbstractCopyJob {
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Marks the parent of the given source file as not moved totally.
+     */
+    @Override
+    protected void concurrentTransferFailed(AbstractFile sourceFile) {
+        markIncomplete(sourceFile.getParent());
+    }
+
+    /**
+     * Waits for the source files that have been copied to be deleted.
+     */
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+
+        waitForPendingDeletions();
+    }
+
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        // Let the deletion thread terminate, deletions that are still queued are not carried out if the job was interrupted
+        synchronized(this) {
+            if(deletionQueue!=null)
+                deletionQueue.shutdown();
+        }
+    }
+
+    /**
+     * Returns <code>true</code>: files that cannot be renamed are copied concurrently, and deleted once they have
+     * been copied.
+     */
+    @Override
+    protected boolean isConcurrentTransferSupported() {
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if files are moved to another volume: all regular files contained by the folders are
+     * then copied. Files moved within a same volume are simply renamed, scanning them would be a waste of time.
+     */
+    @Override
+    protected boolean isPreScanSupported() {
+        AbstractFile baseSourceFolder = getBaseSourceFolder();
+        if(renameMode || baseSourceFolder==null)
+            return false;
+
+        AbstractFile sourceVolume = baseSourceFolder.getVolume();
+        AbstractFile destVolume = baseDestFolder.getVolume();
+        return sourceVolume!=null && destVolume!=null && !sourceVolume.equalsCanonical(destVolume);
+    }
+
+    /**
+     * Returns the type of move jobs, unless this job renames files: renaming a file is an atomic operation.
+     */
+    @Override
+    protected String getJournalType() {
+        return renameMode?null:JobJournal.MOVE_JOB;
+    }
+
+    @Override
+    protected void writeJournalParameters(JobJournal journal) {
+        super.writeJournalParameters(journal);
+        journal.addParameter(JobJournal.RENAME_MODE_PARAMETER, Boolean.toString(renameMode));
+    }
+
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
@@ -77,7 +77,7 @@ public class PropertiesJob extends FileJob {
 
     /**
      * Adds the given file to the total of files or folders and the total size,
-     * and recurses if it is a folder.
+     * and queues its children if it is a folder.
      */
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
@@ -85,17 +85,12 @@ public class PropertiesJob extends FileJob {
         if(getState()==INTERRUPTED)
             return false;
 
-        // If file is a directory, increase folder counter and recurse
+        // If file is a directory, increase folder counter and process its children
         if (file.isDirectory() && !file.isSymlink()) {
             nbFolders++;
 
             try {
-                AbstractFile subFiles[] = file.ls();
-                for(int i=0; i<subFiles.length && getState()!=INTERRUPTED; i++) {
-                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                    nextFile(subFiles[i]);
-                    processFile(subFiles[i], null);
-                }
+                processChildren(file, file.ls(), null);
             }
             catch(IOException e) {
                 // Should we tell the user?
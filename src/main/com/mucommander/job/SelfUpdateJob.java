@@ -86,6 +86,9 @@ public class SelfUpdateJob extends CopyJob {
     private SelfUpdateJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destJar, AbstractFile tempDestJar) {
         super(progressDialog, mainFrame, files, tempDestJar.getParent(), tempDestJar.getName(), CopyJob.DOWNLOAD_MODE, FileCollisionDialog.OVERWRITE_ACTION);
 
+        // The user is waiting for the update to be installed
+        setPriority(HIGH_PRIORITY);
+
         this.destJar = destJar;
         this.tempDestJar = tempDestJar;
         this.classLoader = getClass().getClassLoader();
@@ -254,6 +257,22 @@ public class SelfUpdateJob extends CopyJob {
         }
     }
 
+    /**
+     * Returns <code>false</code>: the new JAR is moved to its final destination as soon as it has been copied.
+     */
+    @Override
+    protected boolean isConcurrentTransferSupported() {
+        return false;
+    }
+
+    /**
+     * Returns <code>null</code>: the update is not resumed after muCommander has been restarted.
+     */
+    @Override
+    protected String getJournalType() {
+        return null;
+    }
+
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
         if(!super.processFile(file, recurseParams))
@@ -89,6 +89,9 @@ public class SendMailJob extends TransferFileJob {
     public SendMailJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet filesToSend, String recipientString, String mailSubject, String mailBody) {
         super(progressDialog, mainFrame, filesToSend);
 
+        // Sending mails mostly waits on the network, the user is waiting for it
+        setPriority(HIGH_PRIORITY);
+
         this.boundary = "mucommander"+System.currentTimeMillis();
         this.recipientString = recipientString;
         this.mailSubject = mailSubject;
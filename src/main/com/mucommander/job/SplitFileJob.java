@@ -18,11 +18,18 @@
 
 package com.mucommander.job;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,11 +39,13 @@ import com.mucommander.commons.file.DummyFile;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.io.CRC32Combiner;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionProperties;
 import com.mucommander.ui.action.impl.SplitFileAction;
@@ -46,6 +55,11 @@ import com.mucommander.ui.main.MainFrame;
 
 /**
  * This job split the file into parts with given size.
+ *
+ * <p>When the source file is local and the destination folder has enough free space for all the parts, the parts are
+ * written concurrently by transfer workers, each reading its part of the source file from the part's position. The
+ * CRC of the source file is then combined from the CRCs of the parts. Otherwise the parts are written one after the
+ * other, the user being asked to insert new media when the destination is full.</p>
  * @author Mariusz Jakubowski
  */
 public class SplitFileJob extends AbstractCopyJob {
@@ -57,6 +71,10 @@ public class SplitFileJob extends AbstractCopyJob {
 	private AbstractFile destFolder;
 	private long sizeLeft;
 	private boolean recalculateCRC = false;
+	/** True if the parts are written concurrently, from positioned reads of the source file */
+	private boolean parallel;
+	/** CRC32 of each part written concurrently, -1 for the parts that have not been written */
+	private long partChecksums[];
 
 
 	/**
@@ -82,6 +100,10 @@ public class SplitFileJob extends AbstractCopyJob {
 	public SplitFileJob(ProgressDialog progressDialog, MainFrame mainFrame, 
 			AbstractFile file, AbstractFile destFolder, long partSize, int parts) {
         super(progressDialog, mainFrame, new FileSet(), destFolder, null, FileCollisionDialog.ASK_ACTION);
+
+        // Splitting rewrites a whole file and is seldom urgent: let the transfers started by the user go first
+        setPriority(LOW_PRIORITY);
+
         this.partSize = partSize;
         this.setNbFiles(parts);
         this.sourceFile = file;
@@ -120,7 +142,38 @@ public class SplitFileJob extends AbstractCopyJob {
 	@Override
     protected void jobStarted() {
 		super.jobStarted();
-		createInputStream();
+		parallel = isParallelSplitPossible();
+		if (parallel) {
+			// Parts read the source file themselves: close the stream opened by the constructor
+			closeCurrentInputStream();
+			origFileStream = null;
+			partChecksums = new long[getNbFiles()];
+			Arrays.fill(partChecksums, -1);
+		} else {
+			createInputStream();
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the parts can be written concurrently: the source file must be local, so that it
+	 * can be read from any position, and the destination must have room for all the parts, as new media cannot be
+	 * asked for while several parts are being written.
+	 */
+	private boolean isParallelSplitPossible() {
+		if (!sourceFile.hasAncestor(LocalFile.class)) {
+			return false;
+		}
+		try {
+			return destFolder.getFreeSpace() >= sourceFile.getSize();
+		} catch (IOException e) {
+			LOGGER.debug("Could not get free space of "+destFolder, e);
+			return false;
+		}
+	}
+
+	@Override
+	protected boolean isConcurrentTransferSupported() {
+		return parallel;
 	}
 
 	/**
@@ -166,6 +219,9 @@ public class SplitFileJob extends AbstractCopyJob {
         destFile = checkForCollision(sourceFile, baseDestFolder, destFile, false);
         if (destFile == null)
             return false;
+
+        if (parallel)
+        	return writePartConcurrently(file, destFile);
         
         OutputStream out = null;
         try {
@@ -197,30 +253,8 @@ public class SplitFileJob extends AbstractCopyJob {
 					throw e;
 				}
 			}
-			
-	        // Preserve source file's date
-            if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                try {
-                    destFile.changeDate(sourceFile.getDate());
-                }
-                catch (IOException e) {
-                    LOGGER.debug("failed to change date of "+destFile, e);
-                    // Fail silently
-                }
-            }
 
-	        // Preserve source file's permissions: preserve only the permissions bits that are supported by the source
-            // file and use default permissions for the rest of them.
-            if(destFile.isFileOperationSupported(FileOperation.CHANGE_PERMISSION)) {
-                try {
-                    // use #importPermissions(AbstractFile, int) to avoid isDirectory test
-                    destFile.importPermissions(sourceFile, FilePermissions.DEFAULT_FILE_PERMISSIONS);
-                }
-                catch (IOException e) {
-                    LOGGER.debug("failed to import "+sourceFile+" permissions into "+destFile, e);
-                    // Fail silently
-                }
-            }
+			preserveFileAttributes(destFile);
 		}
         catch (IOException e) {
             LOGGER.debug("Caught exception", e);
@@ -244,6 +278,114 @@ public class SplitFileJob extends AbstractCopyJob {
     	return true;
     }
 
+    /**
+     * Writes the part currently being processed in a transfer worker, concurrently with other parts.
+     * @param part the part, holding its size
+     * @param destFile the file the part is written to
+     */
+    private boolean writePartConcurrently(AbstractFile part, final AbstractFile destFile) {
+    	final int index = getCurrentFileIndex();
+    	final long position = index * partSize;
+    	final long length = part.getSize();
+
+    	return processFileConcurrently(part, destFile, new Callable<Boolean>() {
+    		public Boolean call() {
+    			return writePart(destFile, index, position, length);
+    		}
+    	});
+    }
+
+    /**
+     * Copies <code>length</code> bytes of the source file starting at <code>position</code> to the given file, and
+     * records their CRC.
+     */
+    private boolean writePart(AbstractFile destFile, int index, long position, long length) {
+    	File source = (File)sourceFile.getAncestor(LocalFile.class).getUnderlyingFileObject();
+    	OutputStream out = null;
+    	try {
+    		FileInputStream fin = new FileInputStream(source);
+    		try {
+    			fin.getChannel().position(position);
+    		} catch (IOException e) {
+    			fin.close();
+    			throw e;
+    		}
+    		CheckedInputStream in = new CheckedInputStream(setCurrentInputStream(fin), new CRC32());
+
+    		out = destFile.getOutputStream();
+    		if (StreamUtils.copyStream(in, out, BufferPool.getDefaultBufferSize(), length) < length)
+    			throw new EOFException("Unexpected end of "+source);
+    		partChecksums[index] = in.getChecksum().getValue();
+
+    		preserveFileAttributes(destFile);
+    	}
+    	catch (IOException e) {
+    		LOGGER.debug("Caught exception", e);
+
+    		showErrorDialog(errorDialogTitle,
+    				Translator.get("error_while_transferring", destFile.getName()),
+    				new String[]{CANCEL_TEXT},
+    				new int[]{CANCEL_ACTION}
+    				);
+    		return false;
+    	} finally {
+    		closeCurrentInputStream();
+    		try {
+    			if (out!=null)
+    				out.close();
+    		}
+    		catch(IOException e2) {
+    		}
+    	}
+
+    	return true;
+    }
+
+    /**
+     * Returns the CRC of the source file combined from the CRCs of its parts, <code>null</code> if some parts have
+     * not been written.
+     */
+    private String getCombinedChecksum() {
+    	long sourceSize = sourceFile.getSize();
+    	long crc = 0;
+    	for (int i=0; i<partChecksums.length; i++) {
+    		if (partChecksums[i] == -1) {
+    			return null;
+    		}
+    		crc = CRC32Combiner.combine(crc, partChecksums[i], Math.min(partSize, sourceSize - i*partSize));
+    	}
+    	return CRC32Combiner.toHexString(crc);
+    }
+
+    /**
+     * Preserves the source file's date and permissions in the given part.
+     */
+    private void preserveFileAttributes(AbstractFile destFile) {
+        // Preserve source file's date
+        if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+            try {
+                destFile.changeDate(sourceFile.getDate());
+            }
+            catch (IOException e) {
+                LOGGER.debug("failed to change date of "+destFile, e);
+                // Fail silently
+            }
+        }
+
+        // Preserve source file's permissions: preserve only the permissions bits that are supported by the source
+        // file and use default permissions for the rest of them.
+        if(destFile.isFileOperationSupported(FileOperation.CHANGE_PERMISSION)) {
+            try {
+                // use #importPermissions(AbstractFile, int) to avoid isDirectory test
+                destFile.importPermissions(sourceFile, FilePermissions.DEFAULT_FILE_PERMISSIONS);
+            }
+            catch (IOException e) {
+                LOGGER.debug("failed to import "+sourceFile+" permissions into "+destFile, e);
+                // Fail silently
+            }
+        }
+    }
+
 
     // This job modifies baseDestFolder and its subfolders
     @Override
@@ -255,16 +397,19 @@ public class SplitFileJob extends AbstractCopyJob {
     protected void jobCompleted() {
     	// create checksum file
     	if (isIntegrityCheckEnabled()) {
-            if(origFileStream!=null && (origFileStream instanceof ChecksumInputStream)) {
+            if(parallel || (origFileStream!=null && (origFileStream instanceof ChecksumInputStream))) {
             	String crcFileName = sourceFile.getName() + ".sfv";
                 try {
-	            	String sourceChecksum;
-	            	if (recalculateCRC ) {
+	            	String sourceChecksum = null;
+	            	if (parallel) {
+	            		sourceChecksum = getCombinedChecksum();
+	            	} else if (!recalculateCRC) {
+	                	sourceChecksum = ((ChecksumInputStream)origFileStream).getChecksumString();
+	            	}
+	            	if (sourceChecksum == null) {
 	            		origFileStream = sourceFile.getInputStream();
 						sourceChecksum = AbstractFile.calculateChecksum(origFileStream, MessageDigest.getInstance("CRC32"));
 						origFileStream.close();
-	            	} else {
-	                	sourceChecksum = ((ChecksumInputStream)origFileStream).getChecksumString();
 	            	}
 					AbstractFile crcFile = baseDestFolder.getDirectChild(crcFileName);
 					OutputStream crcStream = crcFile.getOutputStream();
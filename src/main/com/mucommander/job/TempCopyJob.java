@@ -48,6 +48,9 @@ public class TempCopyJob extends CopyJob {
      */
     public TempCopyJob(ProgressDialog progressDialog, MainFrame mainFrame, AbstractFile fileToCopy) {
         super(progressDialog, mainFrame, new FileSet(fileToCopy.getParent(), fileToCopy), FileFactory.getTemporaryFolder(), getTemporaryFileName(fileToCopy), COPY_MODE, FileCollisionDialog.OVERWRITE_ACTION);
+
+        // The user is waiting for the file to be opened
+        setPriority(HIGH_PRIORITY);
     }
 
     /**
@@ -59,8 +62,27 @@ public class TempCopyJob extends CopyJob {
      */
     public TempCopyJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet filesToCopy) {
         super(progressDialog, mainFrame, filesToCopy, getTemporaryFolder(filesToCopy), null, COPY_MODE, FileCollisionDialog.OVERWRITE_ACTION);
+
+        // The user is waiting for the files to be opened
+        setPriority(HIGH_PRIORITY);
+    }
+
+
+    /**
+     * Returns <code>false</code>: temporary files are used as soon as they have been copied.
+     */
+    @Override
+    protected boolean isConcurrentTransferSupported() {
+        return false;
     }
 
+    /**
+     * Returns <code>null</code>: temporary files are not needed after muCommander has been restarted.
+     */
+    @Override
+    protected String getJournalType() {
+        return null;
+    }
 
     protected static AbstractFile getTemporaryFolder(FileSet files) {
         AbstractFile tempFolder;
@@ -44,9 +44,6 @@ import com.mucommander.ui.main.quicklist.RecentExecutedFilesQL;
 public class TempExecJob extends TempCopyJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TempExecJob.class);
 	
-    /** Files to execute */
-    private FileSet filesToExecute;
-
     /**
      * Creates a new <code>TempExecJob</code> that operates on a single file.
      *
@@ -68,8 +65,6 @@ public class TempExecJob extends TempCopyJob {
      */
     public TempExecJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet filesToExecute) {
         super(progressDialog, mainFrame, filesToExecute);
-
-        this.filesToExecute = filesToExecute;
     }
 
 
@@ -85,7 +80,7 @@ public class TempExecJob extends TempCopyJob {
         // TODO: temporary files seem to remain after the JVM quits under Mac OS X, even if the files permissions are unchanged
 
         // Execute the file, only if it is one of the top-level files
-        if(filesToExecute.indexOf(file)!=-1) {
+        if(isTopLevelFile(file)) {
             if(!currentDestFile.isDirectory()) {        // Do not change directories' permissions
                 try {
                     // Make the temporary file read only
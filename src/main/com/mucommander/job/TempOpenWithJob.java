@@ -47,9 +47,6 @@ public class TempOpenWithJob extends TempCopyJob {
     /** The command to execute, appended with the temporary file path(s) */
     private Command command;
 
-    /** Files to execute */
-    private FileSet filesToOpen;
-
     /** This list is populated with temporary files, as they are created by processFile() */
     private FileSet tempFiles;
 
@@ -78,7 +75,6 @@ public class TempOpenWithJob extends TempCopyJob {
     public TempOpenWithJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet filesToOpen, Command command) {
         super(progressDialog, mainFrame, filesToOpen);
         this.command  = command;
-        this.filesToOpen = filesToOpen;
         tempFiles = new FileSet(baseDestFolder);
     }
 
@@ -95,7 +91,7 @@ public class TempOpenWithJob extends TempCopyJob {
         // TODO: temporary files seem to be left after the JVM quits under Mac OS X, even if the files permissions are unchanged
 
         // Add the file to the list of files to open, only if it is one of the top-level files
-        if(filesToOpen.indexOf(file)!=-1) {
+        if(isTopLevelFile(file)) {
             if(!currentDestFile.isDirectory()) {        // Do not change directories' permissions
                 try {
                     // Make the temporary file read only
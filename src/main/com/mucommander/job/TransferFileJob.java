@@ -19,27 +19,42 @@
 
 package com.mucommander.job;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.apple.eio.FileManager;
+import com.mucommander.cache.ChecksumCache;
+import com.mucommander.commons.file.AbstractArchiveEntryFile;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileOperation;
-import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.ThroughputLimitInputStream;
 import com.mucommander.commons.io.security.MuProvider;
-import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.io.BandwidthLimitInputStream;
+import com.mucommander.io.BandwidthLimiter;
+import com.mucommander.io.ReadAheadInputStream;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
@@ -50,6 +65,14 @@ import com.mucommander.ui.main.MainFrame;
  *
  * <p>What makes TransferFileJob different from FileJob (and explains its very inspired name) is that a class
  * implementing TransferFileJob has to be able to give progress information about the file currently being processed.
+ *
+ * <p>Subclasses that support it can have independent files transferred concurrently by a pool of workers, see
+ * {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String, Callable)}. Each thread that transfers
+ * a file, be it the job's thread or a worker, has its own input stream and current file byte counters.</p>
+ *
+ * <p>Subclasses that support it can also have the files they process scanned beforehand by a {@link FileTreeScanner},
+ * concurrently with the job: the job's progress is then reported in bytes rather than in top-level files. Such
+ * subclasses should list folders with {@link #ls(AbstractFile)} to reuse the scanner's listings.</p>
  * 
  * @author Maxence Bernard
  */
@@ -68,26 +91,43 @@ public abstract class TransferFileJob extends FileJob {
     /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCounter()} */
     private ByteCounter totalSkippedByteCounter;
 
-    /** InputStream currently being processed, may be null */
-    private ThroughputLimitInputStream tlin;
+    /** Transfer carried out by the job's thread */
+    private final Transfer jobTransfer;
+
+    /** Transfers carried out by the transfer workers, keyed by worker thread */
+    private final Map<Thread, Transfer> workerTransfers = new ConcurrentHashMap<Thread, Transfer>();
+
+    /** Workers that transfer files concurrently, created the first time a file can be transferred concurrently */
+    private TransferWorkerPool workerPool;
+
+    /** Number of files that the transfer workers failed to transfer */
+    private final AtomicInteger nbFailedTransfers = new AtomicInteger();
+
+    /** Scans the files to process to total their size, null if the files are not scanned */
+    private FileTreeScanner scanner;
+
+    /** Number of regular files that have been passed to {@link #nextFile(AbstractFile)} so far */
+    private volatile int nbVisitedFiles;
+
+    /** Total size of the regular files that have been passed to {@link #nextFile(AbstractFile)} so far */
+    private volatile long nbVisitedBytes;
+
+    /** Journal the progress of this job is recorded in, null if the job is not journaled */
+    private JobJournal journal;
+
+    /** Metadata of the transferred files that is yet to be applied */
+    private final MetadataBatch metadataBatch = new MetadataBatch();
 
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
 
-    /** Has the file currently being processed been skipped ? */
-    private boolean currentFileSkipped;
+    /** Share of the bandwidth shared with the other jobs transferring to the same host or volume, null until the job is started */
+    private volatile BandwidthLimiter.Share bandwidthShare;
 
     /** If true, all transfers will be checked for integrity: the checksum of the source and destination file will
      *  be calculated and compared to verify they match. */
     private boolean integrityCheckEnabled;
 
-    /** True when the checksum of the source or destination file is being calculated. */
-    private boolean isCheckingIntegrity;
-
-    /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
-     * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
-    private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
-
 
     static {
         // Register additional MessageDigest implementations provided by the muCommander API
@@ -102,10 +142,12 @@ public abstract class TransferFileJob extends FileJob {
 
         this.currentFileByteCounter = new ByteCounter();
         this.currentFileSkippedByteCounter = new ByteCounter();
+        this.jobTransfer = new Transfer(currentFileByteCounter, currentFileSkippedByteCounter, null);
 
-        // Account the current file's byte counter in the total byte counter
-        this.totalByteCounter = new ByteCounter(currentFileByteCounter);
-        this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter);
+        // Account the current file's byte counter in the total byte counter, as well as the byte counters of the
+        // files being transferred by workers
+        this.totalByteCounter = new WorkersByteCounter(currentFileByteCounter, false);
+        this.totalSkippedByteCounter = new WorkersByteCounter(currentFileSkippedByteCounter, true);
     }
 
 	
@@ -114,8 +156,19 @@ public abstract class TransferFileJob extends FileJob {
      * As much as the source and destination protocols allow, the source file's date and permissions will be preserved.
      */
     protected void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        Transfer transfer = getTransfer();
+        JobTelemetry telemetry = getTelemetry();
+
         // Reset this field in case it was set to true for the previous file
-        isCheckingIntegrity = false;
+        transfer.checkingIntegrity = false;
+
+        // The checksum algorithm used for checking the integrity of the file, if enabled
+        String algorithm = integrityCheckEnabled?IntegrityVerifier.getAlgorithm():null;
+
+        // The source's checksum if it is in the cache already, and the size and date it is cached for otherwise
+        String cachedSourceChecksum = integrityCheckEnabled?ChecksumCache.getInstance().get(sourceFile, algorithm):null;
+        long sourceSize = sourceFile.getSize();
+        long sourceDate = sourceFile.getDate();
 
         // Throw a specific FileTransferException if source and destination files are identical
         if(sourceFile.equalsCanonical(destFile))
@@ -127,6 +180,7 @@ public abstract class TransferFileJob extends FileJob {
 
         boolean copied = false;
         if(sourceFile.isFileOperationSupported(FileOperation.COPY_REMOTELY)) {
+            long startTime = System.nanoTime();
             try {
                 sourceFile.copyRemotelyTo(destFile);
                 copied = true;
@@ -134,6 +188,20 @@ public abstract class TransferFileJob extends FileJob {
             catch(IOException e) {
                 // The file will be copied manually
             }
+            telemetry.phaseEnded(JobTelemetry.Phase.WRITING, startTime);
+        }
+
+        // Copy local files using FileChannel#transferTo(), unless the integrity of the file is to be checked and its
+        // checksum is not in the cache: the checksum would then have to be calculated by reading the file a second time
+        if(!copied && (!integrityCheckEnabled || cachedSourceChecksum!=null) && sourceFile.hasAncestor(LocalFile.class) && destFile.hasAncestor(LocalFile.class)) {
+            long startTime = System.nanoTime();
+            try {
+                copyLocalFile(sourceFile, destFile, append, transfer);
+            }
+            finally {
+                telemetry.phaseEnded(JobTelemetry.Phase.WRITING, startTime);
+            }
+            copied = true;
         }
 
         // If the file wasn't copied using copyRemotelyTo(), or if copyRemotelyTo() failed
@@ -142,24 +210,35 @@ public abstract class TransferFileJob extends FileJob {
             // Copy source file stream to destination file
             try {
                 long inLength = sourceFile.getSize();
+                // Number of bytes at the beginning of the source that are already in the destination, and are only
+                // read to calculate the source's checksum
+                long checksumOnlyLength = 0;
 
                 // Try to open InputStream
+                long openStartTime = System.nanoTime();
                 try  {
                     long destFileSize = destFile.getSize();
                     if(append && destFileSize!=-1) {
-                        in = sourceFile.getInputStream(destFileSize);
-                        // Do not calculate checksum, as it needs to be calculated on the whole file
+                        if(integrityCheckEnabled && cachedSourceChecksum==null) {
+                            // Read the source from the beginning rather than from the resume position, so that its
+                            // checksum is calculated without reading it a second time
+                            in = new ChecksumInputStream(readAhead(sourceFile.getInputStream(), sourceFile, destFile, inLength), MessageDigest.getInstance(algorithm));
+                            checksumOnlyLength = destFileSize;
+                        }
+                        else {
+                            in = readAhead(sourceFile.getInputStream(destFileSize), sourceFile, destFile, inLength-destFileSize);
+                            // Increase current file ByteCounter by the number of bytes skipped
+                            transfer.byteCounter.add(destFileSize);
+                        }
 
                         inLength -= destFileSize;
-                        // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
                         // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                        transfer.skippedByteCounter.add(destFileSize);
                     }
                     else {
-                        in = sourceFile.getInputStream();
-                        if(integrityCheckEnabled)
-                            in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
+                        in = readAhead(sourceFile.getInputStream(), sourceFile, destFile, inLength);
+                        if(integrityCheckEnabled && cachedSourceChecksum==null)
+                            in = new ChecksumInputStream(in, MessageDigest.getInstance(algorithm));
                     }
 
                     setCurrentInputStream(in);
@@ -168,9 +247,34 @@ public abstract class TransferFileJob extends FileJob {
                     LOGGER.debug("IOException caught, throwing FileTransferException", e);
                     throw new FileTransferException(FileTransferException.OPENING_SOURCE);
                 }
+                finally {
+                    telemetry.phaseEnded(JobTelemetry.Phase.OPENING, openStartTime);
+                }
+
+                // Feed the part of the source that is already in the destination to the checksum
+                if(checksumOnlyLength>0) {
+                    try {
+                        readFully(transfer.tlin, checksumOnlyLength);
+                    }
+                    catch(IOException e) {
+                        LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                        throw new FileTransferException(FileTransferException.READING_SOURCE);
+                    }
+                }
 
-                // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                // Copy source stream to destination file. The time spent reading the source is accounted as it is
+                // read, the rest of the copy is spent writing the destination
+                TimedInputStream timedIn = new TimedInputStream(transfer.tlin);
+                long copyStartTime = System.nanoTime();
+                try {
+                    if(destFile.hasAncestor(LocalFile.class))
+                        copyStreamToLocalFile(timedIn, destFile, append, inLength, journal==null);
+                    else
+                        destFile.copyStream(timedIn, append, inLength);
+                }
+                finally {
+                    telemetry.addPhaseTime(JobTelemetry.Phase.WRITING, System.nanoTime()-copyStartTime-timedIn.time);
+                }
             }
             finally {
                 // This block will always be executed, even if an exception
@@ -181,92 +285,292 @@ public abstract class TransferFileJob extends FileJob {
             }
         }
 
-        // Preserve source file's date
-        if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+        // Preserve source file's date, permissions and under Mac OS X, file type and creator: in the background while
+        // the next files are being copied if possible, right away otherwise
+        long metadataStartTime = System.nanoTime();
+        if(MetadataBatch.canDefer(destFile))
+            metadataBatch.addFile(sourceFile, destFile);
+        else
+            MetadataBatch.apply(sourceFile, destFile);
+        telemetry.phaseEnded(JobTelemetry.Phase.METADATA, metadataStartTime);
+
+        // This block is executed only if integrity check has been enabled (disabled by default)
+        if(integrityCheckEnabled) {
+            // Indicate that integrity is being checked, the value is reset when the next file starts
+            transfer.checkingIntegrity = true;
+            long verificationStartTime = System.nanoTime();
             try {
-                destFile.changeDate(sourceFile.getDate());
+                verifyFile(sourceFile, destFile, algorithm, cachedSourceChecksum, sourceSize, sourceDate, in, transfer);
             }
-            catch (IOException e) {
-                LOGGER.debug("failed to change the date of "+destFile, e);
-                // Fail silently
+            finally {
+                telemetry.phaseEnded(JobTelemetry.Phase.VERIFYING, verificationStartTime);
             }
         }
+    }
 
-        // Preserve source file's permissions: preserve only the permissions bits that are supported by the source file
-        // and use default permissions for the rest of them.
-        if(destFile.isFileOperationSupported(FileOperation.CHANGE_PERMISSION)) {
+    /**
+     * Verifies the integrity of the given file, which has just been copied: reads the destination file back in the
+     * background, and compares its checksum with that of the source file, right away or once the next file has been
+     * copied if the transfer allows it.
+     */
+    private void verifyFile(AbstractFile sourceFile, AbstractFile destFile, String algorithm, String cachedSourceChecksum,
+                            long sourceSize, long sourceDate, InputStream in, Transfer transfer) throws FileTransferException {
+        // Start reading the destination file back in the background
+        IntegrityVerifier.Verification verification = new IntegrityVerifier.Verification(sourceFile, destFile, algorithm);
+        transfer.verification = verification;
+
+        if(cachedSourceChecksum!=null) {
+            // The source file has not changed since its checksum was last calculated
+            verification.sourceChecksum = cachedSourceChecksum;
+        }
+        else if(in!=null && (in instanceof ChecksumInputStream)) {
+            // The file was copied with a ChecksumInputStream, the checksum is already calculated, simply
+            // retrieve it
+            verification.sourceChecksum = ((ChecksumInputStream)in).getChecksumString();
+            verification.setSourceChecksumCacheable(algorithm, sourceSize, sourceDate);
+        }
+        else {
+            // The file was copied using AbstractFile#copyRemotelyTo(): we have to calculate the source file's
+            // checksum from scratch, while the destination is being read back.
             try {
-                destFile.importPermissions(sourceFile, FilePermissions.DEFAULT_FILE_PERMISSIONS);  // use #importPermissions(AbstractFile, int) to avoid isDirectory test
+                verification.sourceChecksum = calculateChecksum(sourceFile, algorithm);
+                verification.setSourceChecksumCacheable(algorithm, sourceSize, sourceDate);
             }
-            catch(IOException e) {
-                LOGGER.debug("failed to import "+sourceFile+" permissions into "+destFile, e);
-                // Fail silently
+            catch(Exception e) {
+                verification.cancel();
+                transfer.verification = null;
+                throw new FileTransferException(FileTransferException.READING_SOURCE);
             }
         }
 
-        // Under Mac OS X only, preserving the file type and creator
-        if(OsFamily.MAC_OS_X.isCurrent()
-            && sourceFile.hasAncestor(LocalFile.class)
-            && destFile.hasAncestor(LocalFile.class)) {
-
-            String sourcePath = sourceFile.getAbsolutePath();
+        // Leave the verification pending if the caller allows it: it is then checked once the next file has been
+        // copied, see #checkPendingVerification(Transfer)
+        if(!transfer.deferVerification) {
             try {
-                FileManager.setFileTypeAndCreator(destFile.getAbsolutePath(), FileManager.getFileType(sourcePath), FileManager.getFileCreator(sourcePath));
+                checkVerification(verification);
             }
-            catch(IOException e) {
-                // Swallow the exception and do not interrupt the transfer
-                LOGGER.debug("Error while setting Mac OS X file type and creator on destination", e);
+            finally {
+                transfer.verification = null;
             }
         }
+    }
 
-        // This block is executed only if integrity check has been enabled (disabled by default)
-        if(integrityCheckEnabled) {
-            String sourceChecksum;
-            String destinationChecksum;
+    /**
+     * Waits for the destination checksum of the given verification to be calculated, and throws a
+     * <code>FileTransferException</code> if it does not match the source checksum.
+     */
+    private static void checkVerification(IntegrityVerifier.Verification verification) throws FileTransferException {
+        boolean matches;
+        try {
+            matches = verification.matches();
+        }
+        catch(IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.READING_DESTINATION);
+        }
 
-            // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+        // Compare both checksums and throw an exception if they don't match
+        if(!matches)
+            throw new FileTransferException(FileTransferException.CHECKSUM_MISMATCH);
 
-            if(in!=null && (in instanceof ChecksumInputStream)) {
-                // The file was copied with a ChecksumInputStream, the checksum is already calculated, simply
-                // retrieve it
-                sourceChecksum = ((ChecksumInputStream)in).getChecksumString();
+        // The source's checksum has been confirmed by the destination's, it can be cached
+        verification.cacheSourceChecksum();
+    }
+
+    /**
+     * Reads and discards the given number of bytes from the given stream.
+     */
+    private static void readFully(InputStream in, long length) throws IOException {
+        byte buffer[] = BufferPool.getByteArray();
+        try {
+            while(length>0) {
+                int nbRead = in.read(buffer, 0, (int)Math.min(buffer.length, length));
+                if(nbRead==-1)
+                    throw new EOFException();
+                length -= nbRead;
             }
-            else {
-                // The file was copied using AbstractFile#copyRemotelyTo(), or the transfer was resumed:
-                // we have to calculate the source file's checksum from scratch.
+        }
+        finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+    }
+
+    /**
+     * Copies the given local source file to the specified local destination file using a {@link FileChannelTransfer},
+     * optionally resuming the operation.
+     */
+    private void copyLocalFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, Transfer transfer) throws FileTransferException {
+        File source = (File)sourceFile.getAncestor(LocalFile.class).getUnderlyingFileObject();
+        File dest = (File)destFile.getAncestor(LocalFile.class).getUnderlyingFileObject();
+
+        FileInputStream fin;
+        try {
+            fin = new FileInputStream(source);
+        }
+        catch(IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.OPENING_SOURCE);
+        }
+
+        RandomAccessFile fout;
+        long position;
+        try {
+            fout = new RandomAccessFile(dest, "rw");
+            position = append?fout.length():0;
+            // Discard the previous contents of the file, like a FileOutputStream not in append mode would
+            if(!append)
+                fout.setLength(0);
+        }
+        catch(IOException e) {
+            try { fin.close(); }
+            catch(IOException e2) {}
+
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+        }
+
+        FileChannelTransfer channelTransfer = new FileChannelTransfer(fin, fout, transfer.byteCounter);
+        channelTransfer.setBandwidthShare(bandwidthShare);
+        // The length of the destination file tells how much of it was written when a journaled job is resumed
+        channelTransfer.setPreallocate(journal==null);
+        setCurrentChannelTransfer(transfer, channelTransfer);
+        boolean transferred = false;
+        try {
+            if(append) {
+                // Increase current file and skipped ByteCounters by the number of bytes skipped
+                transfer.byteCounter.add(position);
+                transfer.skippedByteCounter.add(position);
+            }
+
+            channelTransfer.transfer(position);
+            transferred = true;
+        }
+        catch(IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+        }
+        finally {
+            setCurrentChannelTransfer(transfer, null);
+            channelTransfer.close();
+
+            // Do not leave preallocated space after the data that was written, for the transfer to be resumable
+            if(!transferred)
+                FileChannelTransfer.truncate(dest, channelTransfer.getPosition());
+        }
+    }
+
+    /**
+     * Copies the given stream to the given local file, like {@link AbstractFile#copyStream(InputStream, boolean, long)}
+     * does, but gives the file its final length before writing to it if <code>preallocate</code> is <code>true</code>
+     * and if enabled in the preferences, see {@link FileChannelTransfer#preallocate(RandomAccessFile, long)}.
+     */
+    private static void copyStreamToLocalFile(InputStream in, AbstractFile destFile, boolean append, long length, boolean preallocate) throws FileTransferException {
+        File dest = (File)destFile.getAncestor(LocalFile.class).getUnderlyingFileObject();
+
+        RandomAccessFile out;
+        long position;
+        try {
+            out = new RandomAccessFile(dest, "rw");
+            position = append?out.length():0;
+            if(!append)
+                out.setLength(0);
+            out.seek(position);
+        }
+        catch(IOException e) {
+            LOGGER.debug("IOException caught, throwing FileTransferException", e);
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+        }
+
+        boolean preallocated = preallocate && length>0 && FileChannelTransfer.preallocate(out, position+length);
+        boolean closed = false;
+        byte buffer[] = BufferPool.getByteArray();
+        try {
+            int nbRead;
+            while(true) {
                 try {
-                    sourceChecksum = calculateChecksum(sourceFile);
+                    nbRead = in.read(buffer, 0, buffer.length);
                 }
-                catch(Exception e) {
+                catch(IOException e) {
+                    LOGGER.debug("IOException caught, throwing FileTransferException", e);
                     throw new FileTransferException(FileTransferException.READING_SOURCE);
                 }
-            }
 
-            LOGGER.debug("Source checksum= "+sourceChecksum);
+                if(nbRead==-1)
+                    break;
+
+                try {
+                    out.write(buffer, 0, nbRead);
+                }
+                catch(IOException e) {
+                    LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+                }
+                position += nbRead;
+            }
 
-            // Calculate the destination file's checksum
             try {
-                destinationChecksum = calculateChecksum(destFile);
+                // Remove the preallocated space that was not written to, if the source turned out shorter than expected
+                if(preallocated && out.length()>position)
+                    out.setLength(position);
+
+                closed = true;
+                out.close();
             }
-            catch(Exception e) {
-                throw new FileTransferException(FileTransferException.READING_DESTINATION);
+            catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
             }
+        }
+        finally {
+            BufferPool.releaseByteArray(buffer);
 
-            LOGGER.debug("Destination checksum= "+destinationChecksum);
+            if(!closed) {
+                // Do not leave preallocated space after the data that was written, for the transfer to be resumable
+                if(preallocated) {
+                    try { out.setLength(position); }
+                    catch(IOException e) {}
+                }
 
-            // Compare both checksums and throw an exception if they don't match
-            if(!sourceChecksum.equals(destinationChecksum)) {
-                throw new FileTransferException(FileTransferException.CHECKSUM_MISMATCH);
+                try { out.close(); }
+                catch(IOException e) {}
             }
         }
     }
 
-    private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
-        currentFileByteCounter.reset();
+    /**
+     * Wraps the given source stream in a {@link ReadAheadInputStream} unless both files are local: the source is then
+     * read in a separate thread while the destination is being written, so that the latency of a remote source or
+     * destination is overlapped with that of the other end. Files that fit in a single buffer are not worth the
+     * extra thread.
+     */
+    private static InputStream readAhead(InputStream in, AbstractFile sourceFile, AbstractFile destFile, long length) {
+        if((length>=0 && length<=BufferPool.getDefaultBufferSize())
+            || (sourceFile.hasAncestor(LocalFile.class) && destFile.hasAncestor(LocalFile.class)))
+            return in;
+
+        return new ReadAheadInputStream(in);
+    }
+
+    /**
+     * Registers the given channel transfer as the one currently carried out by the given transfer, so that it can be
+     * paused, throttled and aborted like an input stream.
+     */
+    private synchronized void setCurrentChannelTransfer(Transfer transfer, FileChannelTransfer channelTransfer) {
+        transfer.channelTransfer = channelTransfer;
+        if(channelTransfer==null)
+            return;
+
+        if(getState()==INTERRUPTED)
+            channelTransfer.close();
+        else
+            channelTransfer.setThroughputLimit(getState()==PAUSED?0:getStreamThroughputLimit());
+    }
+
+    private String calculateChecksum(AbstractFile file, String algorithm) throws IOException, NoSuchAlgorithmException {
+        getTransfer().byteCounter.reset();
         InputStream in = setCurrentInputStream(file.getInputStream());
         try {
-            return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
+            return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(algorithm));
         }
         finally {
             closeCurrentInputStream();
@@ -278,14 +582,56 @@ public abstract class TransferFileJob extends FileJob {
      * displaying a generic error dialog {@link #showErrorDialog(String, String) #showErrorDialog()} if something went wrong, 
      * and giving the user the choice to skip the file, retry or cancel.
      *
+     * <p>If this job {@link #isDeferredVerificationSupported() allows it}, the integrity of the file is verified once
+     * the next file has been copied, so that the destination is read back while the next file is being copied.</p>
+     *
      * @return true if the file was properly copied, false if the transfer was interrupted / aborted by the user
      *
      */
     protected boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+        return tryCopyFile(sourceFile, destFile, append, errorDialogTitle, isDeferredVerificationSupported());
+    }
+
+    private boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle, boolean deferVerification) {
+        Transfer transfer = getTransfer();
+
+        // Only the job's thread leaves verifications pending: the verification of the previous file is checked once
+        // this file has been copied
+        if(transfer==jobTransfer) {
+            transfer.pendingVerification = transfer.verification;
+            transfer.verification = null;
+        }
+        else {
+            deferVerification = false;
+        }
+
+        boolean copied = copyFileWithRetries(sourceFile, destFile, append, errorDialogTitle, transfer, deferVerification);
+
+        checkPendingVerification(transfer);
+
+        return copied;
+    }
+
+    private boolean copyFileWithRetries(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle,
+                                        Transfer transfer, boolean deferVerification) {
+        JobJournal journal = this.journal;
+        if(journal!=null)
+            journal.fileStarted(sourceFile, destFile);
+
         // Copy file to destination
         do {				// Loop for retry
             try {
+                transfer.deferVerification = deferVerification;
                 copyFile(sourceFile, destFile, append);
+
+                if(transfer.verification!=null) {
+                    // The file is recorded as copied once its pending verification has been checked
+                    transfer.verification.errorDialogTitle = errorDialogTitle;
+                }
+                else if(journal!=null) {
+                    journal.fileCopied(sourceFile);
+                }
+
                 return true;
             }
             catch(FileTransferException e) {
@@ -330,8 +676,8 @@ public abstract class TransferFileJob extends FileJob {
                 // Retry action (append or retry)
                 if(choice==RETRY_ACTION || choice==APPEND_ACTION) {
                     // Reset current file byte counters
-                    currentFileByteCounter.reset();
-                    currentFileSkippedByteCounter.reset();
+                    transfer.byteCounter.reset();
+                    transfer.skippedByteCounter.reset();
                     // Append resumes transfer
                     append = choice==APPEND_ACTION;
                     continue;
@@ -343,40 +689,426 @@ public abstract class TransferFileJob extends FileJob {
         } while(true);
     }
 
+    /**
+     * Checks the verification the given transfer has left pending for a file copied earlier, if any. A failed
+     * verification is reported like {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)} does, and the
+     * file is copied again, and verified right away, if the user chooses to retry.
+     */
+    private void checkPendingVerification(Transfer transfer) {
+        IntegrityVerifier.Verification verification = transfer.pendingVerification;
+        if(verification==null)
+            return;
+
+        int reason;
+        long startTime = System.nanoTime();
+        try {
+            checkVerification(verification);
+
+            JobJournal journal = this.journal;
+            if(journal!=null)
+                journal.fileCopied(verification.sourceFile);
+
+            return;
+        }
+        catch(FileTransferException e) {
+            reason = e.getReason();
+        }
+        finally {
+            transfer.pendingVerification = null;
+            getTelemetry().phaseEnded(JobTelemetry.Phase.VERIFYING, startTime);
+        }
+
+        // The verification was cancelled because the job was interrupted
+        if(getState()==INTERRUPTED)
+            return;
+
+        String destName = verification.destFile.getName();
+        int choice = showErrorDialog(verification.errorDialogTitle, reason==FileTransferException.CHECKSUM_MISMATCH
+                ?Translator.get("integrity_check_file_error", destName)
+                :Translator.get("cannot_read_file", destName));
+
+        if(choice==RETRY_ACTION) {
+            // Reset current file byte counters
+            transfer.byteCounter.reset();
+            transfer.skippedByteCounter.reset();
+
+            tryCopyFile(verification.sourceFile, verification.destFile, false, verification.errorDialogTitle, false);
+        }
+    }
+
+    /**
+     * Copies the given source file to the specified destination file like
+     * {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)} does, but in a transfer worker, concurrently
+     * with other files, if this job {@link #isConcurrentTransferSupported() supports it} and if both files allow it.
+     * This method must be called by the job's thread ; it blocks until a worker is available to transfer the file,
+     * and returns without waiting for the transfer to complete.
+     *
+     * <p>The given <code>Callable</code> is called, by the thread that transferred the file, after the file has been
+     * successfully transferred. It may be used to finish processing the file, for instance to delete the source file.
+     * Its return value indicates whether the file was processed successfully or not.</p>
+     *
+     * <p>{@link #waitForPendingTransfers()} waits for the files submitted by this method to be transferred, and
+     * {@link #getNbFailedTransfers()} returns the number of files that could not be transferred.</p>
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the destination file
+     * @param append true to resume the transfer
+     * @param errorDialogTitle title of the error dialogs
+     * @param whenCopied called after the file has been transferred, may be <code>null</code>
+     * @return <code>true</code> if the file was transferred or is being transferred, <code>false</code> if the
+     * transfer failed or the job was interrupted
+     */
+    protected boolean tryCopyFileConcurrently(final AbstractFile sourceFile, final AbstractFile destFile, final boolean append,
+                                              final String errorDialogTitle, final Callable<Boolean> whenCopied) {
+        return processFileConcurrently(sourceFile, destFile, new Callable<Boolean>() {
+            public Boolean call() {
+                return tryCopyFile(sourceFile, destFile, append, errorDialogTitle)
+                    && getState()!=INTERRUPTED
+                    && TransferFileJob.call(whenCopied);
+            }
+        });
+    }
+
+    /**
+     * Runs the given task in a transfer worker, concurrently with other files, if this job
+     * {@link #isConcurrentTransferSupported() supports it} and if both files allow it ; runs it in the calling thread
+     * otherwise. This method must be called by the job's thread ; it blocks until a worker is available to run the
+     * task, and returns without waiting for the task to complete.
+     *
+     * <p>The task reads the source file through {@link #setCurrentInputStream(InputStream)}, like
+     * {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)} does, so that the file is accounted in the
+     * job's progress and is paused, throttled and stopped with the job. Its return value indicates whether the file was
+     * processed successfully or not ; failures are counted in {@link #getNbFailedTransfers()}.</p>
+     *
+     * @param sourceFile the file the task reads
+     * @param destFile the file the task writes, may be the source file if the task writes nothing
+     * @param task processes the file
+     * @return <code>true</code> if the file was processed or is being processed, <code>false</code> if the task
+     * failed or the job was interrupted
+     */
+    protected boolean processFileConcurrently(final AbstractFile sourceFile, AbstractFile destFile, final Callable<Boolean> task) {
+        TransferWorkerPool pool = getWorkerPool(sourceFile, destFile);
+        if(pool==null)
+            return call(task);
+
+        // The worker records the time it took to process the file
+        getTelemetry().fileHandedOver();
+
+        return pool.submit(new Runnable() {
+            public void run() {
+                boolean success = false;
+
+                if(getState()!=INTERRUPTED) {
+                    Transfer transfer = new Transfer(new ByteCounter(), new ByteCounter(), sourceFile);
+                    workerTransfers.put(Thread.currentThread(), transfer);
+                    long startTime = System.nanoTime();
+                    try {
+                        success = call(task);
+                    }
+                    finally {
+                        getTelemetry().fileProcessed(System.nanoTime()-startTime);
+                        transfer.closeInputStream();
+
+                        // Move the file's byte counts to the totals, atomically with respect to the totals' readers
+                        synchronized(totalSkippedByteCounter) {
+                            totalSkippedByteCounter.add(transfer.skippedByteCounter, true);
+                        }
+                        synchronized(totalByteCounter) {
+                            totalByteCounter.add(transfer.byteCounter, true);
+                            workerTransfers.remove(Thread.currentThread());
+                        }
+                    }
+                }
+
+                if(!success) {
+                    nbFailedTransfers.incrementAndGet();
+                    concurrentTransferFailed(sourceFile);
+                }
+            }
+        }, sourceFile, destFile);
+    }
+
+    /**
+     * Called by the transfer worker that failed to transfer the given file, or to process it after it was transferred,
+     * see {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String, Callable)}.
+     * This implementation does nothing.
+     *
+     * @param sourceFile the file that could not be transferred
+     */
+    protected void concurrentTransferFailed(AbstractFile sourceFile) {
+    }
+
+    /**
+     * Resets the byte counters of the file that the calling thread is transferring, before its transfer is retried.
+     */
+    protected void resetTransferByteCounters() {
+        Transfer transfer = getTransfer();
+        transfer.byteCounter.reset();
+        transfer.skippedByteCounter.reset();
+    }
+
+    /**
+     * Blocks until all the files submitted to {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String, Callable)}
+     * or {@link #processFileConcurrently(AbstractFile, AbstractFile, Callable)} have been transferred. Returns immediately if no file is being transferred by a worker.
+     */
+    protected void waitForPendingTransfers() {
+        if(workerPool!=null)
+            workerPool.awaitCompletion();
+    }
+
+    /**
+     * Returns the number of files submitted to {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String, Callable)}
+     * that could not be transferred, so far.
+     *
+     * @return the number of files that transfer workers failed to transfer
+     */
+    protected int getNbFailedTransfers() {
+        return nbFailedTransfers.get();
+    }
+
+    /**
+     * Returns the children of the given folder. If the files processed by this job are being scanned, the listing
+     * made by the scanner is reused if the scanner has listed the folder already. Subclasses should list folders using
+     * this method, once per folder.
+     *
+     * @param folder the folder to list
+     * @return the children of the given folder
+     * @throws IOException if the folder could not be listed
+     */
+    protected AbstractFile[] ls(AbstractFile folder) throws IOException {
+        FileTreeScanner scanner = this.scanner;
+        long startTime = System.nanoTime();
+        try {
+            return scanner==null?folder.ls():scanner.ls(folder);
+        }
+        finally {
+            getTelemetry().phaseEnded(JobTelemetry.Phase.LISTING, startTime);
+        }
+    }
+
+    /**
+     * Returns the journal the progress of this job is recorded in, <code>null</code> if this job is not journaled.
+     *
+     * @return the journal of this job, null if this job is not journaled
+     */
+    protected JobJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal the progress of this job is recorded in: the files transferred by
+     * {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)} are recorded in it.
+     *
+     * @param journal the journal of this job, null if this job is not journaled
+     */
+    void setJournal(JobJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Returns <code>true</code> if the files processed by this job can be scanned beforehand to total their size,
+     * in order to report progress in bytes. This implementation returns <code>false</code> ; subclasses that
+     * transfer all the regular files contained by the top-level folders, and that are called with those files
+     * by {@link #nextFile(AbstractFile)}, can override this method.
+     *
+     * @return true if the files processed by this job can be scanned beforehand
+     */
+    protected boolean isPreScanSupported() {
+        return false;
+    }
+
+    /**
+     * Returns the number of regular files that remain to be processed, <code>-1</code> if it is not known (yet).
+     * The number is known once the files processed by this job have been scanned.
+     *
+     * @return the number of regular files that remain to be processed, -1 if it is not known
+     */
+    public int getNbFilesRemaining() {
+        FileTreeScanner scanner = this.scanner;
+        if(scanner==null || !scanner.isComplete())
+            return -1;
+
+        int nbFilesRemaining = scanner.getNbFiles() - nbVisitedFiles + workerTransfers.size();
+        if(isRegularFile(getCurrentFile()) && getCurrentTransfer()==jobTransfer)
+            nbFilesRemaining++;
+
+        return Math.max(0, nbFilesRemaining);
+    }
+
+    /**
+     * Returns the total size of the regular files processed by this job, <code>-1</code> if it is not known (yet).
+     * The size is known once the files processed by this job have been scanned.
+     *
+     * @return the total size of the regular files processed by this job, -1 if it is not known
+     */
+    public long getTotalSize() {
+        FileTreeScanner scanner = this.scanner;
+        if(scanner==null || !scanner.isComplete())
+            return -1;
+
+        return scanner.getNbBytes();
+    }
+
+    /**
+     * Returns the number of bytes of the regular files that have been processed so far: the size of the files that
+     * have been passed to {@link #nextFile(AbstractFile)}, minus what remains to be transferred of the files that
+     * are being transferred.
+     */
+    private long getNbProcessedBytes() {
+        long nbBytes = nbVisitedBytes;
+
+        for(Transfer transfer : workerTransfers.values())
+            nbBytes -= getNbRemainingBytes(transfer.file, transfer);
+
+        AbstractFile currentFile = getCurrentFile();
+        if(isRegularFile(currentFile) && getCurrentTransfer()==jobTransfer)
+            nbBytes -= getNbRemainingBytes(currentFile, jobTransfer);
+
+        return nbBytes;
+    }
+
+    private static long getNbRemainingBytes(AbstractFile file, Transfer transfer) {
+        long size = Math.max(0, file.getSize());
+        return size - Math.min(size, transfer.byteCounter.getByteCount());
+    }
+
+    private static boolean isRegularFile(AbstractFile file) {
+        return file!=null && !file.isDirectory() && !file.isSymlink();
+    }
+
+    /**
+     * Returns <code>true</code> if this job can have files transferred concurrently by
+     * {@link #tryCopyFileConcurrently(AbstractFile, AbstractFile, boolean, String, Callable)}.
+     * This implementation returns <code>false</code>, subclasses that can process files while they are being
+     * transferred should override this method.
+     *
+     * @return true if this job can have files transferred concurrently
+     */
+    protected boolean isConcurrentTransferSupported() {
+        return false;
+    }
+
+    /**
+     * Returns the pool of workers the given file can be transferred by, <code>null</code> if the file has to be
+     * transferred by the job's thread.
+     */
+    private TransferWorkerPool getWorkerPool(AbstractFile sourceFile, AbstractFile destFile) {
+        if(!isConcurrentTransferSupported())
+            return null;
+
+        // Archive entries cannot be read or written concurrently
+        if(sourceFile.hasAncestor(AbstractArchiveEntryFile.class) || destFile.hasAncestor(AbstractArchiveEntryFile.class))
+            return null;
+
+        if(workerPool==null) {
+            int nbThreads = MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_THREADS, MuPreferences.DEFAULT_TRANSFER_THREADS);
+            if(nbThreads<=1)
+                return null;
+
+            int volumeLimit = MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_THREADS_PER_VOLUME, MuPreferences.DEFAULT_TRANSFER_THREADS_PER_VOLUME);
+            synchronized(this) {
+                workerPool = new TransferWorkerPool(this, nbThreads, volumeLimit);
+            }
+        }
+
+        return workerPool;
+    }
+
+    private static boolean call(Callable<Boolean> callable) {
+        if(callable==null)
+            return true;
+
+        try {
+            return callable.call();
+        }
+        catch(Exception e) {
+            LOGGER.debug("Caught exception", e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the transfer carried out by the calling thread.
+     */
+    private Transfer getTransfer() {
+        Transfer transfer = workerTransfers.get(Thread.currentThread());
+        return transfer==null?jobTransfer:transfer;
+    }
+
+    /**
+     * Returns the transfer of the file that is currently being processed, as returned by {@link #getCurrentFile()}.
+     */
+    private Transfer getCurrentTransfer() {
+        if(!workerTransfers.isEmpty()) {
+            AbstractFile currentFile = getCurrentFile();
+            for(Transfer transfer : workerTransfers.values()) {
+                if(transfer.file==currentFile)
+                    return transfer;
+            }
+        }
+
+        return jobTransfer;
+    }
+
+    /**
+     * Returns the throughput limit of each input stream. The limit applies to all the files this job transfers
+     * concurrently, it is enforced by this job's share of the bandwidth: streams are limited only if the job has no
+     * share yet.
+     */
+    private long getStreamThroughputLimit() {
+        return bandwidthShare==null?throughputLimit:-1;
+    }
+
 
     /**
      * Registers the given InputStream as currently in use, in order to:
      * <ul>
      * <li>count the number of bytes that have been read from it (see {@link #getCurrentFileByteCounter()})
      * <li>block read methods calls when the job is paused
-     * <li>limit the throughput if a limit has been specified (see {@link #setThroughputLimit(long)})
+     * <li>limit the throughput if a limit has been specified (see {@link #setThroughputLimit(long)}), and to this
+     * job's share of the throughput shared with other jobs (see {@link #setSharedThroughputLimit(long)})
      * <li>close the InputStream when the job is stopped
      * </ul>
      *
      * <p>This method should be called by subclasses when creating a new InputStream, before the InputStream is used.
+     * The InputStream is registered for the calling thread only.
      *
      * @param in the InputStream to be used
      * @return the 'augmented' InputStream using the given stream as the underlying InputStream
      */
     protected synchronized InputStream setCurrentInputStream(InputStream in) {
-        if(tlin==null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
+        final Transfer transfer = getTransfer();
+
+        // Account the time spent reading the stream, unless it is read to verify the integrity of a file, which is
+        // accounted as a whole
+        in = new TimedInputStream(in) {
+            @Override
+            protected void timeSpent(long nanos) {
+                if(!transfer.checkingIntegrity)
+                    getTelemetry().addPhaseTime(JobTelemetry.Phase.READING, nanos);
+            }
+        };
+
+        BandwidthLimiter.Share share = bandwidthShare;
+        if(share!=null)
+            in = new BandwidthLimitInputStream(in, share);
+
+        if(transfer.tlin==null) {
+            transfer.tlin = new ThroughputLimitInputStream(new CounterInputStream(in, transfer.byteCounter),
+                    getState()==PAUSED?0:getStreamThroughputLimit());
         }
         else {
-            tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
+            transfer.tlin.setUnderlyingInputStream(new CounterInputStream(in, transfer.byteCounter));
         }
 
-        return tlin;
+        return transfer.tlin;
     }
 
     /**
-     * Closes the currently registered source InputStream.
+     * Closes the source InputStream currently registered by the calling thread.
      */
     protected synchronized void closeCurrentInputStream() {
-        if(tlin !=null) {
-            try { tlin.close(); }
-            catch(IOException e) {}
-        }
+        getTransfer().closeInputStream();
     }
 
 
@@ -400,13 +1132,37 @@ public abstract class TransferFileJob extends FileJob {
         this.integrityCheckEnabled = integrityCheckEnabled;
     }
 
+    /**
+     * Gives the specified destination folder the specified date once all files have been transferred, after the
+     * metadata of the files. Folders should be passed to this method once their contents have been transferred,
+     * so that the innermost folders are given their date first.
+     *
+     * @param destFolder the destination folder
+     * @param date the date to give the folder
+     */
+    protected void changeFolderDateLater(AbstractFile destFolder, long date) {
+        metadataBatch.addFolderDate(destFolder, date);
+    }
+
+    /**
+     * Returns <code>true</code> if the integrity of a copied file may be verified once the next file has been copied,
+     * rather than before {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)} returns. This
+     * implementation returns <code>false</code> ; subclasses that do not process the source file after it has been
+     * copied, and that can copy it again later on, may override this method to return <code>true</code>.
+     *
+     * @return true if the integrity of a copied file may be verified once the next file has been copied
+     */
+    protected boolean isDeferredVerificationSupported() {
+        return false;
+    }
+
     /**
      * Returns <code>true</code> if the integrity of the current file is being verified.
      *
      * @return true if the integrity of the current file is being verified
      */
     protected boolean isCheckingIntegrity() {
-        return isCheckingIntegrity;
+        return getCurrentTransfer().checkingIntegrity;
     }
 
 
@@ -414,14 +1170,15 @@ public abstract class TransferFileJob extends FileJob {
      * Interrupts the current file transfer and advance to the next one.
      */
     public synchronized void skipCurrentFile() {
-        if(tlin !=null) {
-            LOGGER.debug("skipping current file, closing "+ tlin);
+        Transfer transfer = getCurrentTransfer();
+        if(transfer.tlin !=null || transfer.channelTransfer!=null) {
+            LOGGER.debug("skipping current file, closing "+ transfer.tlin);
 
             // Prevents an error from being reported when the current InputStream is closed
-            currentFileSkipped = true;
+            transfer.skipped = true;
 
             // Close the current input stream to interrupt the transfer
-            closeCurrentInputStream();
+            transfer.closeInputStream();
         }
 
         // Resume job if currently paused 
@@ -435,7 +1192,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the file that is currently being processed has been skipped
      */
     public synchronized boolean wasCurrentFileSkipped() {
-        return currentFileSkipped;
+        return getTransfer().skipped;
     }
 
     /**
@@ -458,7 +1215,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been processed in the current file
      */
     public ByteCounter getCurrentFileByteCounter() {
-        return currentFileByteCounter;
+        return getCurrentTransfer().byteCounter;
     }
 
     /**
@@ -468,7 +1225,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been skipped in the current file
      */
     public ByteCounter getCurrentFileSkippedByteCounter() {
-        return currentFileSkippedByteCounter;
+        return getCurrentTransfer().skippedByteCounter;
     }
 
     /**
@@ -503,7 +1260,8 @@ public abstract class TransferFileJob extends FileJob {
 
     /**
      * Sets a transfer throughput limit in bytes per seconds, replacing any previous limit.
-     * This limit corresponds to the number of bytes that can be read from a registered InputStream.
+     * This limit corresponds to the number of bytes that can be read from the registered InputStreams, all files
+     * transferred concurrently included.
      *
      * <p>Specifying 0 or -1 disables any throughput limit, the transfer will be carried out at full speed.
      *
@@ -518,9 +1276,14 @@ public abstract class TransferFileJob extends FileJob {
         this.throughputLimit = bytesPerSecond<=0?-1:bytesPerSecond;
 
         synchronized(this) {
-            if(getState()!=PAUSED && tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+            if(getState()!=PAUSED)
+                setThroughputLimits(getStreamThroughputLimit());
         }
+
+        // Leave the bandwidth this job cannot use to the other jobs
+        BandwidthLimiter.Share share = bandwidthShare;
+        if(share!=null)
+            share.setThroughputLimit(this.throughputLimit);
     }
 
     /**
@@ -532,6 +1295,75 @@ public abstract class TransferFileJob extends FileJob {
     public long getThroughputLimit() {
         return throughputLimit;
     }
+
+    /**
+     * Sets the throughput limit shared by all the jobs that transfer files to the same host or volume as this job, in
+     * bytes per second, replacing any previous limit. The limit is divided between the jobs that are transferring
+     * data, in proportion to their priority, and is effective immediately. Jobs limited by their own
+     * {@link #setThroughputLimit(long) limit} leave the rest of their part to the other jobs.
+     *
+     * @param bytesPerSecond new shared throughput limit in bytes per second, 0 or -1 to disable the limit
+     */
+    public void setSharedThroughputLimit(long bytesPerSecond) {
+        getBandwidthLimiter().setThroughputLimit(bytesPerSecond);
+    }
+
+    /**
+     * Returns the throughput limit shared by all the jobs that transfer files to the same host or volume as this job,
+     * in bytes per second, <code>-1</code> if there is no limit.
+     *
+     * @return the shared throughput limit in bytes per second, -1 for no limit
+     */
+    public long getSharedThroughputLimit() {
+        return getBandwidthLimiter().getThroughputLimit();
+    }
+
+    /**
+     * Returns the limiter of the bandwidth shared with the jobs that transfer files to the same host or volume.
+     */
+    private BandwidthLimiter getBandwidthLimiter() {
+        return BandwidthLimiter.getLimiter(getBandwidthFolder());
+    }
+
+    /**
+     * Returns the folder whose host or volume the bandwidth is shared on with other jobs. This implementation returns
+     * the base source folder ; jobs that write files should return their destination folder.
+     *
+     * @return the folder whose host or volume the bandwidth is shared on
+     */
+    protected AbstractFile getBandwidthFolder() {
+        return getBaseSourceFolder();
+    }
+
+    /**
+     * Returns the weight of this job's share of the bandwidth, which follows its priority.
+     */
+    private int getBandwidthWeight() {
+        return getPriority()+1;
+    }
+
+    /**
+     * Overridden to give this job a part of the shared bandwidth that follows its new priority.
+     */
+    @Override
+    public void setPriority(int priority) {
+        super.setPriority(priority);
+
+        BandwidthLimiter.Share share = bandwidthShare;
+        if(share!=null)
+            share.setWeight(getBandwidthWeight());
+    }
+
+    /**
+     * Applies the given throughput limit to the input streams of all transfers. Must be called while holding this
+     * job's lock.
+     */
+    private void setThroughputLimits(long bytesPerSecond) {
+        jobTransfer.setThroughputLimit(bytesPerSecond);
+
+        for(Transfer transfer : workerTransfers.values())
+            transfer.setThroughputLimit(bytesPerSecond);
+    }
     
 
     ////////////////////////
@@ -539,18 +1371,59 @@ public abstract class TransferFileJob extends FileJob {
     ////////////////////////
 
     /**
-     * Overrides {@link FileJob#jobStopped()} to stop any file processing by closing the source InputStream.
+     * Overrides {@link FileJob#jobStarted()} to take a share of the bandwidth shared with the other jobs, and to start
+     * scanning the files to process, if this job supports it and the scan is enabled.
+     */
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        BandwidthLimiter.Share share = getBandwidthLimiter().addShare(getBandwidthWeight());
+        share.setThroughputLimit(throughputLimit);
+        bandwidthShare = share;
+
+        if(isPreScanSupported() && MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_PRESCAN, MuPreferences.DEFAULT_TRANSFER_PRESCAN)) {
+            scanner = new FileTreeScanner(this, files);
+            scanner.start();
+        }
+    }
+
+    /**
+     * Overrides {@link FileJob#jobStopped()} to stop any file processing by closing the source InputStream, and to
+     * leave this job's share of the bandwidth to the other jobs.
      */
     @Override
     protected void jobStopped() {
         super.jobStopped();
 
+        BandwidthLimiter.Share share = bandwidthShare;
+        if(share!=null)
+            share.remove();
+
+        if(scanner!=null)
+            scanner.stop();
+
         synchronized(this) {
-            if(tlin !=null) {
-                LOGGER.debug("closing current InputStream "+ tlin);
+            if(jobTransfer.tlin !=null || jobTransfer.channelTransfer!=null) {
+                LOGGER.debug("closing current InputStream "+ jobTransfer.tlin);
 
-                closeCurrentInputStream();
+                jobTransfer.closeInputStream();
             }
+
+            for(Transfer transfer : workerTransfers.values())
+                transfer.closeInputStream();
+
+            // Stop reading destination files back
+            jobTransfer.cancelVerifications();
+            for(Transfer transfer : workerTransfers.values())
+                transfer.cancelVerifications();
+
+            // Apply the metadata of the files that have been transferred, if the job was interrupted
+            metadataBatch.flush(false);
+
+            // Let the workers terminate once their current file has been aborted
+            if(workerPool!=null)
+                workerPool.shutdown();
         }
     }
 
@@ -564,8 +1437,7 @@ public abstract class TransferFileJob extends FileJob {
         super.jobPaused();
 
         synchronized(this) {
-            if(tlin !=null)
-                tlin.setThroughputLimit(0);
+            setThroughputLimits(0);
         }
     }
 
@@ -580,8 +1452,7 @@ public abstract class TransferFileJob extends FileJob {
 
         synchronized(this) {
             // Restore previous throughput limit (if any, -1 by default)
-            if(tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+            setThroughputLimits(getStreamThroughputLimit());
         }
     }
 
@@ -596,22 +1467,56 @@ public abstract class TransferFileJob extends FileJob {
         totalSkippedByteCounter.add(currentFileSkippedByteCounter, true);
 
         // Reset some fields that need it
-        currentFileSkipped = false;
+        jobTransfer.skipped = false;
+
+        // Account the file in the files processed so far
+        if(scanner!=null && isRegularFile(file)) {
+            nbVisitedBytes += Math.max(0, file.getSize());
+            nbVisitedFiles++;
+        }
 
         super.nextFile(file);
     }
 
     /**
-     * Method overridden to return a more accurate percentage of job processed so far by taking into account the current
-     * file's percentage of completion.
+     * Overridden to check the verification left pending for the last file, to wait for the files that are being
+     * transferred by workers, if any, and for the metadata of the transferred files to be applied.
+     */
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+
+        jobTransfer.pendingVerification = jobTransfer.verification;
+        jobTransfer.verification = null;
+        checkPendingVerification(jobTransfer);
+
+        waitForPendingTransfers();
+
+        // All files have been transferred, their metadata can be applied and then the folders given their date
+        metadataBatch.flush(true);
+    }
+
+    /**
+     * Method overridden to return a more accurate percentage of job processed so far. If the files processed by this
+     * job have been scanned, the percentage is the number of bytes processed over the total size of the files.
+     * Otherwise, it is based on the number of top-level files processed, taking into account the current file's
+     * percentage of completion.
      */
     @Override
     public float getTotalPercentDone() {
+        long totalSize = getTotalSize();
+        if(totalSize>0) {
+            if(getState()==FINISHED)
+                return 1;
+
+            return Math.max(0, Math.min(1, getNbProcessedBytes()/(float)totalSize));
+        }
+
         float nbFilesProcessed = getCurrentFileIndex();
         int nbFiles = getNbFiles();
 
         // If file is in base folder and is not a directory...
-        if(getCurrentFile()!=null && nbFilesProcessed!=nbFiles && files.indexOf(getCurrentFile())!=-1 && !getCurrentFile().isDirectory()) {
+        if(getCurrentFile()!=null && nbFilesProcessed!=nbFiles && isTopLevelFile(getCurrentFile()) && !getCurrentFile().isDirectory()) {
             // Add current file's progress
             long currentFileSize = getCurrentFile().getSize();
             if(currentFileSize>0)
@@ -652,4 +1557,148 @@ public abstract class TransferFileJob extends FileJob {
 //
 //        return nbFilesProcessed/getNbFilesDiscovered();
 //    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Holds the state of the file transfer carried out by a thread: the job's thread, or one of the transfer workers.
+     */
+    private class Transfer {
+        /** Number of bytes processed in the file being transferred */
+        private final ByteCounter byteCounter;
+        /** Number of bytes skipped in the file being transferred */
+        private final ByteCounter skippedByteCounter;
+        /** The file being transferred by a worker, null for the job's thread */
+        private final AbstractFile file;
+        /** InputStream currently being processed, may be null */
+        private ThroughputLimitInputStream tlin;
+        /** Local file transfer currently being carried out instead of a stream copy, may be null */
+        private FileChannelTransfer channelTransfer;
+        /** Has the file being transferred been skipped ? */
+        private volatile boolean skipped;
+        /** True when the checksum of the source or destination file is being calculated */
+        private volatile boolean checkingIntegrity;
+        /** True if the verification of the file being transferred may be left pending, to be checked later on */
+        private boolean deferVerification;
+        /** Verification of the file being transferred, or of the last file transferred if it was left pending */
+        private volatile IntegrityVerifier.Verification verification;
+        /** Verification left pending for the previous file, being checked */
+        private volatile IntegrityVerifier.Verification pendingVerification;
+
+        private Transfer(ByteCounter byteCounter, ByteCounter skippedByteCounter, AbstractFile file) {
+            this.byteCounter = byteCounter;
+            this.skippedByteCounter = skippedByteCounter;
+            this.file = file;
+        }
+
+        private void closeInputStream() {
+            if(tlin!=null) {
+                try { tlin.close(); }
+                catch(IOException e) {}
+            }
+
+            if(channelTransfer!=null)
+                channelTransfer.close();
+        }
+
+        private void cancelVerifications() {
+            IntegrityVerifier.Verification verification = this.verification;
+            if(verification!=null)
+                verification.cancel();
+
+            verification = pendingVerification;
+            if(verification!=null)
+                verification.cancel();
+        }
+
+        private void setThroughputLimit(long bytesPerSecond) {
+            if(tlin!=null)
+                tlin.setThroughputLimit(bytesPerSecond);
+
+            if(channelTransfer!=null)
+                channelTransfer.setThroughputLimit(bytesPerSecond);
+        }
+    }
+
+    /**
+     * Measures the time spent in the read methods of the underlying stream.
+     */
+    private static class TimedInputStream extends FilterInputStream {
+        /** Time spent reading the underlying stream, in nanoseconds */
+        private long time;
+
+        private TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        /**
+         * Called after each read with the time it took, in nanoseconds. This implementation does nothing.
+         */
+        protected void timeSpent(long nanos) {
+        }
+
+        private void readEnded(long startTime) {
+            long nanos = System.nanoTime()-startTime;
+            time += nanos;
+            timeSpent(nanos);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long startTime = System.nanoTime();
+            try {
+                return in.read();
+            }
+            finally {
+                readEnded(startTime);
+            }
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            long startTime = System.nanoTime();
+            try {
+                return in.read(b, off, len);
+            }
+            finally {
+                readEnded(startTime);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long startTime = System.nanoTime();
+            try {
+                return in.skip(n);
+            }
+            finally {
+                readEnded(startTime);
+            }
+        }
+    }
+
+    /**
+     * A total byte counter that also accounts for the files being transferred by workers.
+     */
+    private class WorkersByteCounter extends ByteCounter {
+        /** True to account for the workers' skipped bytes, false for their processed bytes */
+        private final boolean skippedBytes;
+
+        private WorkersByteCounter(ByteCounter currentFileByteCounter, boolean skippedBytes) {
+            super(currentFileByteCounter);
+            this.skippedBytes = skippedBytes;
+        }
+
+        @Override
+        public synchronized long getByteCount() {
+            long byteCount = super.getByteCount();
+            for(Transfer transfer : workerTransfers.values())
+                byteCount += (skippedBytes?transfer.skippedByteCounter:transfer.byteCounter).getByteCount();
+
+            return byteCount;
+        }
+    }
 }
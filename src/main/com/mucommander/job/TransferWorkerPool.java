@@ -0,0 +1,229 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * A pool of threads that transfer files on behalf of a {@link TransferFileJob}, allowing several independent files
+ * to be transferred concurrently. {@link DeleteJob} uses it to delete files concurrently.
+ *
+ * <p>In addition to the total number of files in flight, the number of files that are read from or written to
+ * a same volume concurrently is capped, so that a slow volume cannot monopolize the workers, and that a volume
+ * is not hammered with more concurrent requests than it can reasonably handle.</p>
+ *
+ * <p>Tasks are submitted by the job's thread, which blocks in {@link #submit(Runnable, AbstractFile, AbstractFile)}
+ * until the task can be started: tasks are never queued, so the job's thread never gets ahead of the workers
+ * by more than a few files.</p>
+ *
+ * @author Maxence Bernard
+ */
+class TransferWorkerPool {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TransferWorkerPool.class);
+
+    /** Interval in milliseconds at which the job's state is checked while waiting for a worker to be available */
+    private final static long PERMIT_WAIT_INTERVAL = 200;
+
+    /** The job the files are transferred for */
+    private final FileJob job;
+
+    /** Number of worker threads */
+    private final int nbThreads;
+
+    /** Maximum number of files that can be transferred concurrently from or to a same volume */
+    private final int volumeLimit;
+
+    /** Executes tasks, has as many threads as there are permits in threadPermits */
+    private final ExecutorService executor;
+
+    /** Permits to run a task */
+    private final Semaphore threadPermits;
+
+    /** Volume URL -> permits to run a task on that volume. Accessed by the job's thread only. */
+    private final Map<String, Semaphore> volumePermits = new HashMap<String, Semaphore>();
+
+    /** Folder URL -> permits of the volume the folder is located on. Accessed by the job's thread only. */
+    private final Map<String, Semaphore> folderVolumePermits = new HashMap<String, Semaphore>();
+
+    /** Number of tasks that have been submitted and have not completed yet */
+    private int nbPendingTasks;
+
+    /**
+     * Creates a new pool for the given job.
+     *
+     * @param job the job files are transferred for
+     * @param nbThreads maximum number of files that can be transferred concurrently
+     * @param volumeLimit maximum number of files that can be transferred concurrently from or to a same volume
+     */
+    TransferWorkerPool(final FileJob job, int nbThreads, int volumeLimit) {
+        this.job = job;
+        this.nbThreads = nbThreads;
+        this.volumeLimit = Math.max(1, Math.min(volumeLimit, nbThreads));
+        this.threadPermits = new Semaphore(nbThreads);
+
+        executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, job.getClass().getName()+" worker "+threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs the given task in a worker thread, as soon as a worker is available and the volumes of the given source
+     * and destination files can sustain an additional transfer. This method must be called by the job's thread,
+     * which is blocked until the task has been started.
+     *
+     * @param task the task to run
+     * @param sourceFile the file the task reads from
+     * @param destFile the file the task writes to
+     * @return <code>true</code> if the task was started, <code>false</code> if the job was interrupted before
+     */
+    boolean submit(final Runnable task, AbstractFile sourceFile, AbstractFile destFile) {
+        final List<Semaphore> permits = new ArrayList<Semaphore>(3);
+
+        Semaphore sourcePermits = getVolumePermits(sourceFile);
+        Semaphore destPermits = getVolumePermits(destFile);
+
+        // Permits are always acquired in the same order, and only by the job's thread: no deadlock can occur
+        if(!acquire(threadPermits, permits)
+            || !acquire(sourcePermits, permits)
+            || (destPermits!=sourcePermits && !acquire(destPermits, permits))) {
+            release(permits);
+            return false;
+        }
+
+        synchronized(this) {
+            nbPendingTasks++;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    }
+                    catch(RuntimeException e) {
+                        LOGGER.warn("Caught exception while transferring file", e);
+                    }
+                    finally {
+                        release(permits);
+                        taskDone();
+                    }
+                }
+            });
+        }
+        catch(RejectedExecutionException e) {
+            // The pool has been shut down, the job was interrupted
+            release(permits);
+            taskDone();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Blocks until all the tasks that have been submitted have completed.
+     */
+    synchronized void awaitCompletion() {
+        while(nbPendingTasks>0) {
+            try {
+                wait();
+            }
+            catch(InterruptedException e) {
+                // Loop one more time
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads once the tasks that are running have completed.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private synchronized void taskDone() {
+        nbPendingTasks--;
+        notifyAll();
+    }
+
+    private boolean acquire(Semaphore semaphore, List<Semaphore> acquired) {
+        try {
+            while(!semaphore.tryAcquire(PERMIT_WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if(job.getState()==FileJob.INTERRUPTED)
+                    return false;
+            }
+        }
+        catch(InterruptedException e) {
+            return false;
+        }
+
+        acquired.add(semaphore);
+        return true;
+    }
+
+    private static void release(List<Semaphore> permits) {
+        for(Semaphore semaphore : permits)
+            semaphore.release();
+    }
+
+    /**
+     * Returns the permits of the volume the given regular file is located on. Volumes are resolved once per
+     * folder: a regular file is always located on the same volume as its parent folder.
+     */
+    private Semaphore getVolumePermits(AbstractFile file) {
+        AbstractFile parent = file.getParent();
+        String folderKey = parent==null?file.getURL().toString(false):parent.getURL().toString(false);
+
+        Semaphore permits = folderVolumePermits.get(folderKey);
+        if(permits==null) {
+            AbstractFile volume = file.getVolume();
+            String volumeKey = volume==null?folderKey:volume.getURL().toString(false);
+
+            permits = volumePermits.get(volumeKey);
+            if(permits==null) {
+                permits = new Semaphore(volumeLimit);
+                volumePermits.put(volumeKey, permits);
+            }
+            folderVolumePermits.put(folderKey, permits);
+        }
+
+        return permits;
+    }
+}
@@ -65,6 +65,9 @@ public class UnpackJob extends AbstractCopyJob {
     public UnpackJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFolder, int fileExistsAction) {
         super(progressDialog, mainFrame, files, destFolder, null, fileExistsAction);
 
+        // Unpacking may keep the volumes busy for a long time: wait for other transfers to complete
+        setPriority(NORMAL_PRIORITY);
+
         this.errorDialogTitle = Translator.get("unpack_dialog.error_title");
         this.baseArchiveDepth = 0;
     }
@@ -84,6 +87,9 @@ public class UnpackJob extends AbstractCopyJob {
     public UnpackJob(ProgressDialog progressDialog, MainFrame mainFrame, AbstractArchiveFile archiveFile, int baseArchiveDepth, AbstractFile destFolder, String newName, int fileExistsAction, List<ArchiveEntry> selectedEntries) {
         super(progressDialog, mainFrame, new FileSet(archiveFile.getParent(), archiveFile), destFolder, newName, fileExistsAction);
 
+        // Unpacking may keep the volumes busy for a long time: wait for other transfers to complete
+        setPriority(NORMAL_PRIORITY);
+
         this.errorDialogTitle = Translator.get("unpack_dialog.error_title");
         this.baseArchiveDepth = baseArchiveDepth;
         this.selectedEntries = selectedEntries;
@@ -137,20 +143,13 @@ public class UnpackJob extends AbstractCopyJob {
         // Destination folder
         AbstractFile destFolder = baseDestFolder;
 
-        // If the file is a directory, process its children recursively
+        // If the file is a directory, process its children
         if(file.isDirectory()) {
             do {    // Loop for retries
                 try {
-                    // List files inside archive file (can throw an IOException)
-                    AbstractFile[] archiveFiles = getCurrentFile().ls();
-
-                    // Recurse on zip's contents
-                    for(int j=0; j<archiveFiles.length && getState()!=INTERRUPTED; j++) {
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(archiveFiles[j]);
-                        // Recurse
-                        processFile(archiveFiles[j], destFolder);
-                    }
+                    // List files inside archive file (can throw an IOException), and process them
+                    processChildren(file, getCurrentFile().ls(), destFolder);
+
                     // Return true when complete
                     return true;
                 }
@@ -242,6 +241,10 @@ public class UnpackJob extends AbstractCopyJob {
                 if(entryFile.isSymlink())
                     return true;
 
+                // Do nothing if the entry was unpacked by the unfinished job this job resumes
+                if(wasCopiedBefore(entryFile, destFile))
+                    continue;
+
                 // Check if the file does not already exist in the destination
                 destFile = checkForCollision(entryFile, destFolder, destFile, false);
                 if (destFile == null) {
@@ -256,12 +259,13 @@ public class UnpackJob extends AbstractCopyJob {
                 // If the entry is a directory ...
                 if(entryFile.isDirectory()) {
                     // Create the directory in the destination, if it doesn't already exist
-                    if(!(destFile.exists() && destFile.isDirectory())) {
+                    if(!(destinationListing.exists(destFile) && destinationListing.isDirectory(destFile))) {
                         // Loop for retry
                         do {
                             try {
                                 // Use mkdirs() instead of mkdir() to create any parent folder that doesn't exist yet
                                 destFile.mkdirs();
+                                destinationListing.folderCreated(destFile);
                             }
                             catch(IOException e) {
                                 // Unable to create folder
@@ -281,9 +285,10 @@ public class UnpackJob extends AbstractCopyJob {
                 else  {
                     // Create the file's parent directory(s) if it doesn't already exist
                     AbstractFile destParentFile = destFile.getParent();
-                    if(!destParentFile.exists()) {
+                    if(!destinationListing.exists(destParentFile)) {
                         // Use mkdirs() instead of mkdir() to create any parent folder that doesn't exist yet
                         destParentFile.mkdirs();
+                        destinationListing.folderCreated(destParentFile);
                     }
 
                     // The entry is wrapped in a ProxyFile to override #getInputStream() and delegate it to
@@ -323,6 +328,21 @@ public class UnpackJob extends AbstractCopyJob {
     // Overridden methods //
     ////////////////////////
 
+    @Override
+    protected String getJournalType() {
+        return JobJournal.UNPACK_JOB;
+    }
+
+    @Override
+    protected void writeJournalParameters(JobJournal journal) {
+        super.writeJournalParameters(journal);
+        journal.addParameter(JobJournal.ARCHIVE_DEPTH_PARAMETER, Integer.toString(baseArchiveDepth));
+        if(selectedEntries!=null && getMainFrame()!=null) {
+            for(ArchiveEntry entry : selectedEntries)
+                journal.addParameter(JobJournal.ENTRY_PARAMETER, entry.getPath());
+        }
+    }
+
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
@@ -0,0 +1,354 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ChecksumInputStream;
+import com.mucommander.io.security.ChecksumProvider;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.dialog.file.VerifyChecksumDialog;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * This job checks files against the checksums listed in {@link ChecksumFile checksum files}, such as those written
+ * by {@link CalculateChecksumJob} and {@link SplitFileJob}, and reports the result of each file in a
+ * {@link VerifyChecksumDialog} once done.
+ *
+ * <p>The paths listed in a checksum file are relative to its folder. A file listed in an SFV file that no longer
+ * exists but was split by {@link SplitFileJob} (<code>file.001</code>, <code>file.002</code>...) is checked by
+ * reading its parts one after the other.</p>
+ *
+ * <p>Like {@link CalculateChecksumJob}, the files are read concurrently by transfer workers ; results are nonetheless
+ * reported in the order the files are listed.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class VerifyChecksumJob extends TransferFileJob {
+	private static final Logger LOGGER = LoggerFactory.getLogger(VerifyChecksumJob.class);
+
+    /** Results of the listed files, in the order of the checksum files and of their lines */
+    private final List<Result> results = new ArrayList<Result>();
+
+
+    static {
+        // Register the additional MessageDigest implementations provided by muCommander
+        ChecksumProvider.registerProvider();
+    }
+
+    /**
+     * Creates a new job that checks the files listed in the given checksum files.
+     */
+    public VerifyChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet checksumFiles) {
+        super(progressDialog, mainFrame, checksumFiles);
+
+        // The user is waiting for the results, which only read the files: do not queue behind transfers
+        setPriority(HIGH_PRIORITY);
+    }
+
+    /**
+     * Returns the result of each of the files listed in the checksum files, in the order they are listed.
+     * The results are complete only once the job has finished.
+     *
+     * @return the result of each of the files listed in the checksum files
+     */
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Returns the file the given path refers to, relative to the given folder.
+     */
+    private static AbstractFile resolve(AbstractFile folder, String path) throws IOException {
+        String separator = folder.getSeparator();
+        return folder.getChild(path.replace("/", separator).replace("\\", separator));
+    }
+
+    /**
+     * Returns the parts that the given file was split into by {@link SplitFileJob}, in order, <code>null</code> if
+     * there is none.
+     */
+    private static AbstractFile[] getParts(AbstractFile file) throws IOException {
+        AbstractFile folder = file.getParent();
+        if(folder==null)
+            return null;
+
+        List<AbstractFile> parts = new ArrayList<AbstractFile>();
+        AbstractFile part;
+        while((part=folder.getDirectChild(file.getName()+"."+String.format("%03d", parts.size()+1))).exists())
+            parts.add(part);
+
+        return parts.isEmpty()?null:parts.toArray(new AbstractFile[parts.size()]);
+    }
+
+    /**
+     * Calculates the checksum of the given files, read one after the other, with the given algorithm. Returns
+     * <code>null</code> if the files could not be read. Called by the thread processing the files.
+     */
+    private String calculateChecksum(AbstractFile files[], String algorithm) {
+        do {		// Loop for retry
+            InputStream in = null;
+            AbstractFile file = files[0];
+            try {
+                MessageDigest digest = MessageDigest.getInstance(algorithm);
+
+                byte buffer[] = BufferPool.getByteArray();
+                try {
+                    for(AbstractFile part : files) {
+                        file = part;
+                        in = new ChecksumInputStream(setCurrentInputStream(part.getInputStream()), digest);
+                        while(in.read(buffer, 0, buffer.length)!=-1);
+                        in.close();
+                    }
+                }
+                finally {
+                    BufferPool.releaseByteArray(buffer);
+                }
+
+                return ((ChecksumInputStream)in).getChecksumString();
+            }
+            catch(NoSuchAlgorithmException e) {
+                // Should never happen, the algorithm was found by ChecksumFile
+                LOGGER.info("Unknown algorithm "+algorithm, e);
+                return null;
+            }
+            catch(IOException e) {
+                // Close the InputStream, a new one will be created when retrying
+                if(in!=null) {
+                    try { in.close(); }
+                    catch(IOException e2){}
+                }
+
+                // The exception was most likely caused by the stream being closed as a result of the user
+                // interrupting the job or skipping the file
+                if(getState()==INTERRUPTED || wasCurrentFileSkipped())
+                    return null;
+
+                LOGGER.debug("Caught IOException", e);
+
+                int ret = showErrorDialog(Translator.get("error"), Translator.get("cannot_read_file", file.getAbsolutePath()));
+                // Retry loops
+                if(ret==RETRY_ACTION) {
+                    resetTransferByteCounters();
+                    continue;
+                }
+
+                // Cancel, skip or close dialog return null
+                return null;
+            }
+        } while(true);
+    }
+
+
+    ////////////////////////////////////
+    // TransferFileJob implementation //
+    ////////////////////////////////////
+
+    @Override
+    protected boolean processFile(AbstractFile checksumFile, Object recurseParams) {
+        // Only regular files can be checksum files
+        if(checksumFile.isDirectory())
+            return true;
+
+        ChecksumFile parsedFile;
+        do {		// Loop for retry
+            String errorMessage;
+            try {
+                parsedFile = ChecksumFile.parse(checksumFile);
+                if(parsedFile.getAlgorithm()!=null && !parsedFile.getEntries().isEmpty())
+                    break;
+
+                errorMessage = Translator.get("verify_checksum_job.unknown_format", checksumFile.getName());
+            }
+            catch(IOException e) {
+                LOGGER.debug("Caught IOException", e);
+                errorMessage = Translator.get("cannot_read_file", checksumFile.getName());
+            }
+
+            int ret = showErrorDialog(Translator.get("error"), errorMessage);
+            // Retry loops, the file is read again
+            if(ret==RETRY_ACTION)
+                continue;
+            // Cancel, skip or close dialog returns false
+            return false;
+        } while(true);
+
+        final String algorithm = parsedFile.getAlgorithm();
+
+        AbstractFile folder = checksumFile.getParent();
+        boolean success = true;
+        for(ChecksumFile.Entry entry : parsedFile.getEntries()) {
+            if(getState()==INTERRUPTED)
+                return false;
+
+            final Result result = new Result(checksumFile, entry.getPath(), entry.getChecksum());
+            results.add(result);
+
+            final AbstractFile files[];
+            try {
+                AbstractFile file = resolve(folder, entry.getPath());
+                result.file = file;
+
+                files = file.exists()?new AbstractFile[]{file}:getParts(file);
+            }
+            catch(IOException e) {
+                LOGGER.debug("Caught IOException", e);
+                result.status = Result.MISSING;
+                continue;
+            }
+
+            if(files==null) {
+                result.status = Result.MISSING;
+                continue;
+            }
+
+            success &= processFileConcurrently(files[0], files[0], new Callable<Boolean>() {
+                public Boolean call() {
+                    String checksum = calculateChecksum(files, algorithm);
+                    if(checksum==null)
+                        result.status = Result.UNREADABLE;
+                    else if(checksum.equalsIgnoreCase(result.expectedChecksum))
+                        result.status = Result.OK;
+                    else
+                        result.status = Result.MISMATCH;
+
+                    return result.status==Result.OK;
+                }
+            });
+        }
+
+        return success;
+    }
+
+    @Override
+    protected boolean hasFolderChanged(AbstractFile folder) {
+        // This job does not modify anything
+        return false;
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    /**
+     * Returns <code>true</code>: several files are checked concurrently.
+     */
+    @Override
+    protected boolean isConcurrentTransferSupported() {
+        return true;
+    }
+
+    @Override
+    protected void jobCompleted() {
+        super.jobCompleted();
+
+        if(getMainFrame()==null)
+            return;
+
+        // Report the results once the progress dialog is gone
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                new VerifyChecksumDialog(getMainFrame(), results).showDialog();
+            }
+        });
+    }
+
+
+    /**
+     * The result of the check of a file listed in a checksum file.
+     */
+    public static class Result {
+
+        /** The file has not been checked yet */
+        public final static int PENDING = 0;
+        /** The file's checksum matches the expected one */
+        public final static int OK = 1;
+        /** The file's checksum does not match the expected one */
+        public final static int MISMATCH = 2;
+        /** The file does not exist */
+        public final static int MISSING = 3;
+        /** The file could not be read */
+        public final static int UNREADABLE = 4;
+
+        private final AbstractFile checksumFile;
+        private final String path;
+        private final String expectedChecksum;
+        private AbstractFile file;
+        private volatile int status = PENDING;
+
+        private Result(AbstractFile checksumFile, String path, String expectedChecksum) {
+            this.checksumFile = checksumFile;
+            this.path = path;
+            this.expectedChecksum = expectedChecksum;
+        }
+
+        /**
+         * Returns the checksum file that lists the file.
+         *
+         * @return the checksum file that lists the file
+         */
+        public AbstractFile getChecksumFile() {
+            return checksumFile;
+        }
+
+        /**
+         * Returns the path of the file, as listed in the checksum file.
+         *
+         * @return the path of the file, as listed in the checksum file
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the file, <code>null</code> if its path could not be resolved.
+         *
+         * @return the file, null if its path could not be resolved
+         */
+        public AbstractFile getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the result of the check, see the constants defined in this class.
+         *
+         * @return the result of the check
+         */
+        public int getStatus() {
+            return status;
+        }
+    }
+}
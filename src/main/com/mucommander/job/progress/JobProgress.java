@@ -19,6 +19,7 @@
 package com.mucommander.job.progress;
 
 import com.mucommander.job.FileJob;
+import com.mucommander.job.JobScheduler;
 import com.mucommander.job.TransferFileJob;
 import com.mucommander.text.DurationFormat;
 import com.mucommander.text.Translator;
@@ -78,6 +79,11 @@ public class JobProgress {
 			// components (progress bar in particular)
 			// reflect job completion
 			fullUpdate = true;
+		} else if (jobState == FileJob.QUEUED) {
+			// Nothing to update until the job leaves the queue
+			jobStatusString = Translator.get("progress_dialog.queued",
+					Integer.toString(JobScheduler.getInstance().getQueuePosition(job) + 1));
+			return false;
 		} else {
 			jobStatusString = job.getStatusString();
 		}
@@ -146,19 +152,19 @@ public class JobProgress {
 		}
 
 		// Update total progress bar
-		// Total job percent is based on the *number* of files remaining, not
-		// their actual size.
-		// So this is very approximate.
+		// Total job percent is based on the size of the files remaining if
+		// the job has scanned them, on the *number* of top-level files
+		// remaining otherwise. In the latter case, this is very approximate.
 		float totalPercentFloat = job.getTotalPercentDone();
 		totalPercentInt = (int) (100 * totalPercentFloat);
 
 		totalProgressText = totalPercentInt + "%";
 
-		// Add a rough estimate of the total remaining time (ETA):
-		// total remaining time is based on the total job percent completed
-		// which itself is based on the *number*
-		// of files remaining, not their actual size. So this is very
-		// approximate.
+		// Add an estimate of the total remaining time (ETA):
+		// total remaining time is based on the total job percent completed.
+		// Unless the job has scanned its files, the total job percent is
+		// based on the *number* of files remaining, not their actual size,
+		// so this is then very approximate.
 		// Do not add ETA if job is already finished (100%)
 		if (totalPercentFloat < 1) {
 			totalProgressText += " - ";
@@ -175,6 +181,14 @@ public class JobProgress {
 						currentFileRemainingTime);
 				totalProgressText += DurationFormat.format(totalRemainingTime);
 			}
+
+			// Append the number of files remaining, if known
+			if (transferFileJob != null) {
+				int nbFilesRemaining = transferFileJob.getNbFilesRemaining();
+				if (nbFilesRemaining > 0) {
+					totalProgressText += " - " + Translator.get("progress_dialog.files_remaining", Integer.toString(nbFilesRemaining));
+				}
+			}
 		}
 		return true;
 	}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job.ui;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.job.FileJob;
+import com.mucommander.job.JobInteraction;
+import com.mucommander.ui.dialog.QuestionDialog;
+import com.mucommander.ui.dialog.file.FileCollisionDialog;
+import com.mucommander.ui.dialog.file.FileCollisionRenameDialog;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.notifier.AbstractNotifier;
+import com.mucommander.ui.notifier.NotificationType;
+
+/**
+ * The default {@link JobInteraction}: asks the user with dialogs, shown on top of the job's progress dialog if it
+ * has one, on top of its main frame otherwise.
+ *
+ * @author Maxence Bernard, Mariusz Jakubowski
+ */
+public class DialogJobInteraction implements JobInteraction {
+
+    /** Dialog showing the job's progress, may be null */
+    private final ProgressDialog progressDialog;
+
+    /** Main frame the job has been triggered by */
+    private final MainFrame mainFrame;
+
+    /**
+     * Creates a new <code>DialogJobInteraction</code>.
+     *
+     * @param progressDialog dialog showing the job's progress, may be <code>null</code>
+     * @param mainFrame main frame the job has been triggered by
+     */
+    public DialogJobInteraction(ProgressDialog progressDialog, MainFrame mainFrame) {
+        this.progressDialog = progressDialog;
+        this.mainFrame = mainFrame;
+    }
+
+    /**
+     * Returns the user's answer to the given dialog.
+     */
+    private static Object getUserInput(FileJob job, DialogResult dialog) {
+        return new UserInputHelper(job, dialog).getUserInput();
+    }
+
+
+    ///////////////////////////////////
+    // JobInteraction implementation //
+    ///////////////////////////////////
+
+    public int askError(FileJob job, String title, String message, String actionTexts[], int actionValues[]) {
+        // Send a system notification if a notifier is available and enabled
+        if(AbstractNotifier.isAvailable() && AbstractNotifier.getNotifier().isEnabled())
+            AbstractNotifier.getNotifier().displayBackgroundNotification(NotificationType.JOB_ERROR, title, message);
+
+        QuestionDialog dialog;
+        if(progressDialog==null)
+            dialog = new QuestionDialog(mainFrame,
+                                        title,
+                                        message,
+                                        mainFrame,
+                                        actionTexts,
+                                        actionValues,
+                                        0);
+        else
+            dialog = new QuestionDialog(progressDialog,
+                                        title,
+                                        message,
+                                        mainFrame,
+                                        actionTexts,
+                                        actionValues,
+                                        0);
+
+        return (Integer)getUserInput(job, dialog);
+    }
+
+    public int askFileCollision(FileJob job, int collisionType, AbstractFile sourceFile, AbstractFile destFile, boolean multipleFilesMode, boolean allowRename) {
+        FileCollisionDialog dialog;
+        if(progressDialog==null)
+            dialog = new FileCollisionDialog(mainFrame, mainFrame, collisionType, sourceFile, destFile, multipleFilesMode, allowRename);
+        else
+            dialog = new FileCollisionDialog(progressDialog, mainFrame, collisionType, sourceFile, destFile, multipleFilesMode, allowRename);
+
+        int choice = (Integer)getUserInput(job, dialog);
+        if(choice!=-1 && dialog.applyToAllSelected())
+            choice |= APPLY_TO_ALL;
+
+        return choice;
+    }
+
+    public String askNewName(FileJob job, AbstractFile destFile) {
+        return (String)getUserInput(job, new FileCollisionRenameDialog(mainFrame, destFile));
+    }
+}
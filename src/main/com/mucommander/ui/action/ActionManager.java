@@ -217,6 +217,7 @@ public class ActionManager {
     	registerAction(new ToggleExtensionColumnAction.Descriptor(),        new ToggleExtensionColumnAction.Factory());
     	registerAction(new ToggleGroupColumnAction.Descriptor(),            new ToggleGroupColumnAction.Factory());
     	registerAction(new ToggleHiddenFilesAction.Descriptor(),            new ToggleHiddenFilesAction.Factory());
+    	registerAction(new ToggleJobsPausedAction.Descriptor(),             new ToggleJobsPausedAction.Factory());
     	registerAction(new ToggleLockTabAction.Descriptor(),                new ToggleLockTabAction.Factory());
     	registerAction(new ToggleOwnerColumnAction.Descriptor(),            new ToggleOwnerColumnAction.Factory());
     	registerAction(new TogglePermissionsColumnAction.Descriptor(),      new TogglePermissionsColumnAction.Factory());
@@ -228,6 +229,7 @@ public class ActionManager {
     	registerAction(new UnmarkAllAction.Descriptor(),            		new UnmarkAllAction.Factory());
     	registerAction(new UnmarkGroupAction.Descriptor(),            		new UnmarkGroupAction.Factory());
     	registerAction(new UnpackAction.Descriptor(),             			new UnpackAction.Factory());
+    	registerAction(new VerifyChecksumAction.Descriptor(),               new VerifyChecksumAction.Factory());
     	registerAction(new ViewAction.Descriptor(),              			new ViewAction.Factory());
 
     	// register "open with" commands as actions, to allow for keyboard shortcuts for them
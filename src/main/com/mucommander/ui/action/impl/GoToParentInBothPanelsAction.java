@@ -24,6 +24,7 @@ import java.util.Map;
 import javax.swing.KeyStroke;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.core.LocationChanger.ChangeFolderTask;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategories;
 import com.mucommander.ui.action.ActionCategory;
@@ -82,19 +83,19 @@ public class GoToParentInBothPanelsAction extends ActiveTabAction {
      */
     @Override
     public void performAction() {
-        Thread       openThread;
+        ChangeFolderTask openTask;
         AbstractFile parent;
 
         // If the current panel has a parent file, navigate to it.
         if((parent = mainFrame.getActivePanel().getCurrentFolder().getParent()) != null) {
-            openThread = mainFrame.getActivePanel().tryChangeCurrentFolder(parent);
+            openTask = mainFrame.getActivePanel().tryChangeCurrentFolder(parent);
 
             // If the inactive panel has a parent file, wait for the current panel change to be complete and navigate
             // to it.
             if((parent = mainFrame.getInactivePanel().getCurrentFolder().getParent()) != null) {
-                if(openThread != null) {
-                    while(openThread.isAlive()) {
-                        try {openThread.join();}
+                if(openTask != null) {
+                    while(!openTask.isDone()) {
+                        try {openTask.waitForCompletion();}
                         catch(InterruptedException e) {}
                     }
                 }
@@ -24,6 +24,7 @@ import java.util.Map;
 import javax.swing.KeyStroke;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.core.LocationChanger.ChangeFolderTask;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategories;
 import com.mucommander.ui.action.ActionCategory;
@@ -104,7 +105,7 @@ public class OpenInBothPanelsAction extends SelectedFileAction {
      */
     @Override
     public void performAction() {
-        Thread       openThread;
+        ChangeFolderTask openTask;
         AbstractFile selectedFile;
         AbstractFile otherFile = null;
 
@@ -135,14 +136,14 @@ public class OpenInBothPanelsAction extends SelectedFileAction {
         catch(Exception e) {otherFile = null;}
 
         // Opens 'file' in the active panel.
-        openThread = mainFrame.getActivePanel().tryChangeCurrentFolder(selectedFile);
+        openTask = mainFrame.getActivePanel().tryChangeCurrentFolder(selectedFile);
 
         // Opens 'otherFile' (if any) in the inactive panel.
         if(otherFile != null) {
             // Waits for the previous folder change to be finished.
-            if(openThread != null) {
-                while(openThread.isAlive()) {
-                    try {openThread.join();}
+            if(openTask != null) {
+                while(!openTask.isDone()) {
+                    try {openTask.waitForCompletion();}
                     catch(InterruptedException e) {}
                 }
             }
@@ -23,7 +23,7 @@ import java.util.Map;
 
 import javax.swing.KeyStroke;
 
-import com.mucommander.core.LocationChanger.ChangeFolderThread;
+import com.mucommander.core.LocationChanger.ChangeFolderTask;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategories;
 import com.mucommander.ui.action.ActionCategory;
@@ -59,10 +59,10 @@ public class StopAction extends MuAction implements LocationListener {
     @Override
     public void performAction() {
         FolderPanel folderPanel = mainFrame.getActivePanel();
-        ChangeFolderThread changeFolderThread = folderPanel.getChangeFolderThread();
+        ChangeFolderTask changeFolderTask = folderPanel.getChangeFolderTask();
 
-        if(changeFolderThread!=null)
-            changeFolderThread.tryKill();
+        if(changeFolderTask!=null)
+            changeFolderTask.tryKill();
     }
 
 	@Override
@@ -0,0 +1,92 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.action.impl;
+
+import java.util.Map;
+
+import javax.swing.KeyStroke;
+
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.filter.AttributeFileFilter;
+import com.mucommander.commons.file.filter.AttributeFileFilter.FileAttribute;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.filter.FileOperationFilter;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.job.VerifyChecksumJob;
+import com.mucommander.ui.action.AbstractActionDescriptor;
+import com.mucommander.ui.action.ActionCategories;
+import com.mucommander.ui.action.ActionCategory;
+import com.mucommander.ui.action.ActionDescriptor;
+import com.mucommander.ui.action.ActionFactory;
+import com.mucommander.ui.action.ActionProperties;
+import com.mucommander.ui.action.MuAction;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * This action checks the files listed in the selected checksum files (<code>.sfv</code>, <code>.md5</code>,
+ * <code>SHA1SUMS</code>...) against their checksums, see {@link VerifyChecksumJob}.
+ *
+ * @author Maxence Bernard
+ */
+public class VerifyChecksumAction extends SelectedFilesAction {
+
+    public VerifyChecksumAction(MainFrame mainFrame, Map<String,Object> properties) {
+        super(mainFrame, properties);
+
+        setSelectedFileFilter(new FileOperationFilter(FileOperation.READ_FILE));
+    }
+
+    @Override
+    public void performAction(FileSet files) {
+        // Filter out files that are not regular files
+        FileFilter filter = new AttributeFileFilter(FileAttribute.FILE);
+        filter.filter(files);
+
+        if(files.size()==0)
+            return;
+
+        ProgressDialog progressDialog = new ProgressDialog(mainFrame, ActionProperties.getActionLabel(Descriptor.ACTION_ID));
+        progressDialog.start(new VerifyChecksumJob(progressDialog, mainFrame, files));
+    }
+
+	@Override
+	public ActionDescriptor getDescriptor() {
+		return new Descriptor();
+	}
+
+    public static class Factory implements ActionFactory {
+
+		public MuAction createAction(MainFrame mainFrame, Map<String,Object> properties) {
+			return new VerifyChecksumAction(mainFrame, properties);
+		}
+    }
+    
+    public static class Descriptor extends AbstractActionDescriptor {
+    	public static final String ACTION_ID = "VerifyChecksum";
+    	
+		public String getId() { return ACTION_ID; }
+
+		public ActionCategory getCategory() { return ActionCategories.FILES; }
+
+		public KeyStroke getDefaultAltKeyStroke() { return null; }
+
+		public KeyStroke getDefaultKeyStroke() { return null; }
+    }
+}
@@ -20,11 +20,12 @@ package com.mucommander.ui.autocomplete.completers;
 
 import com.mucommander.ui.autocomplete.AutocompleterTextComponent;
 
+import java.util.LinkedHashSet;
 import java.util.Vector;
 
 /**
  * LocationCompleter is a Completer based on locations, meaning root folders, 
- * browsable file paths, bookmarks and system variables.
+ * browsable file paths, bookmarks, system variables and the locations of the location index.
  * 
  * @author Arik Hadas, based on the code of Santhosh Kumar: http://www.jroller.com/santhosh/entry/file_path_autocompletion
  */
@@ -36,11 +37,13 @@ public class LocationCompleter extends Completer {
         registerService(ServiceFactory.getBrowsableFilesService());
         registerService(ServiceFactory.getBookmarksService());
         registerService(ServiceFactory.getSystemVariablesService());
+        registerService(ServiceFactory.getLocationIndexService());
     }
 
 	@Override
     protected Vector<String> getUpdatedSuggestions(AutocompleterTextComponent component) {
-    	return getPossibleCompletionsFromServices(component.getText());
+    	// Several services may suggest the same location (e.g. a bookmark's location and an indexed location)
+    	return new Vector<String>(new LinkedHashSet<String>(getPossibleCompletionsFromServices(component.getText())));
     }
  
     @Override
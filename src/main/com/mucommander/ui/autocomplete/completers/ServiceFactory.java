@@ -24,6 +24,7 @@ import com.mucommander.ui.autocomplete.completers.services.AllFilesService;
 import com.mucommander.ui.autocomplete.completers.services.BookmarksService;
 import com.mucommander.ui.autocomplete.completers.services.CompletionService;
 import com.mucommander.ui.autocomplete.completers.services.FilteredFilesService;
+import com.mucommander.ui.autocomplete.completers.services.LocationIndexService;
 import com.mucommander.ui.autocomplete.completers.services.SystemVariablesService;
 import com.mucommander.ui.autocomplete.completers.services.VolumesService;
 
@@ -54,4 +55,8 @@ public class ServiceFactory {
 	public static CompletionService getSystemVariablesService() {
 		return new SystemVariablesService();
 	}
+
+	public static CompletionService getLocationIndexService() {
+		return new LocationIndexService();
+	}
 }
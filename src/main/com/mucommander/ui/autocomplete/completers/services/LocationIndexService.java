@@ -0,0 +1,48 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.autocomplete.completers.services;
+
+import com.mucommander.core.LocationIndex;
+
+import java.util.Vector;
+
+/**
+ * This <code>CompletionService</code> handles completion of known locations, using the {@link LocationIndex}:
+ * locations that fuzzily match the typed text are suggested, the most frequently and recently accessed ones first.
+ * 
+ * @author Arik Hadas
+ */
+
+public class LocationIndexService implements CompletionService {
+	/** Maximum number of locations to suggest */
+	private static final int MAX_SUGGESTIONS = 10;
+
+	private Vector<String> lastSuggestedCompletions = new Vector<String>();
+
+	public Vector<String> getPossibleCompletions(String path) {
+		lastSuggestedCompletions = new Vector<String>();
+		if (path.length() > 0)
+			lastSuggestedCompletions.addAll(LocationIndex.Instance().search(path, MAX_SUGGESTIONS));
+		return lastSuggestedCompletions;
+	}
+
+	public String complete(String selectedCompletion) {
+		return lastSuggestedCompletions.contains(selectedCompletion) ? selectedCompletion : null;
+	}
+}
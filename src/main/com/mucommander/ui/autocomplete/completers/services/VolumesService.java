@@ -19,7 +19,7 @@
 package com.mucommander.ui.autocomplete.completers.services;
 
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.core.VolumeService;
 
 import java.util.Arrays;
 import java.util.Vector;
@@ -36,8 +36,8 @@ public class VolumesService implements CompletionService {
 	public VolumesService() {}
 
     /**
-     * Resolves and returns a sorted array of root (top level) folder names. Those folders are purposively not cached
-     * so that newly mounted folders will be returned.
+     * Resolves and returns a sorted array of root (top level) folder names. Those folders are read from the
+     * {@link VolumeService}, which keeps them up to date so that newly mounted folders will be returned.
      *
      * @return a sorted array of root folder names
      */
@@ -45,7 +45,7 @@ public class VolumesService implements CompletionService {
 		lastSuggestedCompletions.clear();
 		int index = Math.max(path.lastIndexOf('\\'), path.lastIndexOf('/'));
 		if (index == -1) {
-			AbstractFile[] fileRoots = LocalFile.getVolumes();
+			AbstractFile[] fileRoots = VolumeService.Instance().getAllVolumes();
 	    	int nbFolders = fileRoots.length;
 	    	String[] rootFolderNames = new String[nbFolders];
 	    	for (int i=0; i<nbFolders; i++)
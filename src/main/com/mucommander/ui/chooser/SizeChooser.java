@@ -108,6 +108,21 @@ public class SizeChooser extends JPanel {
         return SizeFormat.getUnitBytes(unitComboBox.getSelectedIndex())* (Integer) valueSpinner.getValue();
     }
 
+    /**
+     * Sets the current value, expressed in bytes. The value is displayed in the largest unit it is a multiple of.
+     *
+     * @param value the new value, expressed in bytes
+     */
+    public void setValue(long value) {
+        value = Math.max(0, value);
+        int unit = SizeFormat.BYTE_UNIT;
+        while(value>0 && unit<SizeFormat.GIGABYTE_UNIT && value%SizeFormat.getUnitBytes(unit+1)==0)
+            unit++;
+
+        unitComboBox.setSelectedIndex(unit);
+        valueSpinner.setValue((int)Math.min(MAX_SPINNER_VALUE, value/SizeFormat.getUnitBytes(unit)));
+    }
+
 
     /**
      * Adds the specified ChangedListener to the list of registered listeners.
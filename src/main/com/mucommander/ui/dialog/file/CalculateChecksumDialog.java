@@ -23,6 +23,7 @@ import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.io.security.MuProvider;
+import com.mucommander.io.security.ChecksumProvider;
 import com.mucommander.job.CalculateChecksumJob;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionProperties;
@@ -38,23 +39,27 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
- * This dialog prepares a {@link com.mucommander.job.CalculateChecksumJob} and lets the user choose a checksum
- * algorithm, and a destination for the checksum file.
+ * This dialog prepares a {@link com.mucommander.job.CalculateChecksumJob} and lets the user choose one or several
+ * checksum algorithms, and a destination for the checksum files. When several algorithms are chosen, the destination
+ * is the folder where the checksum files are created, each with the standard filename of its algorithm.
  *
  * @author Maxence Bernard
  */
-public class CalculateChecksumDialog extends JobDialog implements ActionListener, ItemListener {
+public class CalculateChecksumDialog extends JobDialog implements ActionListener, ItemListener, ListSelectionListener {
 
-    private JComboBox algorithmComboBox;
+    private JList algorithmList;
     private JRadioButton specificLocationRadioButton;
     private JTextField specificLocationTextField;
     private JButton okButton;
@@ -65,16 +70,20 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
     /** Default checksum algorithm (most commonly used) */
     private final static String DEFAULT_ALGORITHM = "MD5";
 
-    /** Last algorithm used, saved after validation of this dialog */
-    private static String lastUsedAlgorithm = DEFAULT_ALGORITHM;
+    /** Number of algorithms visible in the list without scrolling */
+    private final static int VISIBLE_ALGORITHMS = 6;
+
+    /** Last algorithms used, saved after validation of this dialog */
+    private static String lastUsedAlgorithms[] = {DEFAULT_ALGORITHM};
 
     /** Dialog size constraints */
     private final static Dimension MINIMUM_DIALOG_DIMENSION = new Dimension(320,0);
 
 
     static {
-        // Register additional MessageDigest implementations provided by the muCommander API
+        // Register additional MessageDigest implementations provided by the muCommander API and by muCommander
         MuProvider.registerProvider();
+        ChecksumProvider.registerProvider();
     }
 
 
@@ -106,19 +115,31 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         messageDigests = new MessageDigest[algorithmSortedSet.size()];
         algorithmSortedSet.toArray(messageDigests);
 
-        // Add the sorted list of algorithms to a combo box to let the user choose one
-        algorithmComboBox = new JComboBox();
-        for (MessageDigest messageDigest : messageDigests) 
-            algorithmComboBox.addItem(messageDigest.getAlgorithm());
-
-        // Select the last used algorithm (if any), or the default algorithm
-        algorithmComboBox.setSelectedItem(lastUsedAlgorithm);
-        algorithmComboBox.addItemListener(this);
+        // Add the sorted list of algorithms to a list to let the user choose one or several of them
+        String algorithms[] = new String[messageDigests.length];
+        for(int i=0; i<messageDigests.length; i++)
+            algorithms[i] = messageDigests[i].getAlgorithm();
+
+        algorithmList = new JList(algorithms);
+        algorithmList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        algorithmList.setVisibleRowCount(VISIBLE_ALGORITHMS);
+
+        // Select the last used algorithms (if any), or the default algorithm
+        java.util.List<String> algorithmNames = Arrays.asList(algorithms);
+        for(String algorithm : lastUsedAlgorithms) {
+            int index = algorithmNames.indexOf(algorithm);
+            if(index!=-1)
+                algorithmList.addSelectionInterval(index, index);
+        }
+        if(algorithmList.isSelectionEmpty())
+            algorithmList.setSelectedValue(DEFAULT_ALGORITHM, false);
+        algorithmList.ensureIndexIsVisible(Math.max(0, algorithmList.getSelectedIndex()));
+        algorithmList.addListSelectionListener(this);
 
         FlowLayout flowLayout = new FlowLayout(FlowLayout.LEADING, 0, 0);
         JPanel tempPanel = new JPanel(flowLayout);
         tempPanel.add(new JLabel(Translator.get("calculate_checksum_dialog.checksum_algorithm")+" : "));
-        tempPanel.add(algorithmComboBox);
+        tempPanel.add(new JScrollPane(algorithmList));
 
         mainPanel.add(tempPanel);
         mainPanel.addSpace(10);
@@ -137,7 +158,7 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         specificLocationRadioButton.addItemListener(this);
         
         // Create a path field with auto-completion capabilities
-        specificLocationTextField = new FilePathField(getChecksumFilename(lastUsedAlgorithm));
+        specificLocationTextField = new FilePathField(getDefaultLocation());
         specificLocationTextField.setEnabled(false);
         tempPanel.add(specificLocationTextField, BorderLayout.CENTER);
 
@@ -166,7 +187,7 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         getContentPane().add(mainPanel);
 
         // Give initial keyboard focus to the 'Delete' button
-        setInitialFocusComponent(algorithmComboBox);
+        setInitialFocusComponent(algorithmList);
 
         // Call dispose() when dialog is closed
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
@@ -177,12 +198,31 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
     }
 
     /**
-     * Returns the MessageDigest instance corresponding to the currently selected algorithm.
+     * Returns the MessageDigest instances corresponding to the currently selected algorithms.
+     *
+     * @return the MessageDigest instances corresponding to the currently selected algorithms.
+     */
+    private MessageDigest[] getSelectedMessageDigests() {
+        int indices[] = algorithmList.getSelectedIndices();
+        MessageDigest digests[] = new MessageDigest[indices.length];
+        for(int i=0; i<indices.length; i++)
+            digests[i] = messageDigests[indices[i]];
+
+        return digests;
+    }
+
+    /**
+     * Returns the location proposed for the checksum files: the standard filename of the selected algorithm if only
+     * one is selected, the current folder if several are.
      *
-     * @return the MessageDigest instance corresponding to the currently selected algorithm.
+     * @return the location proposed for the checksum files
      */
-    private MessageDigest getSelectedMessageDigest() {
-        return messageDigests[algorithmComboBox.getSelectedIndex()];
+    private String getDefaultLocation() {
+        MessageDigest digests[] = getSelectedMessageDigests();
+        if(digests.length==1)
+            return getChecksumFilename(digests[0].getAlgorithm());
+
+        return mainFrame.getActivePanel().getCurrentFolder().getAbsolutePath(true);
     }
 
     /**
@@ -225,11 +265,17 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
 
         if(e.getSource()==okButton) {
             try {
-                MessageDigest digest = getSelectedMessageDigest();
-                String algorithm = digest.getAlgorithm();
-                AbstractFile checksumFile;
+                MessageDigest digests[] = getSelectedMessageDigests();
+                if(digests.length==0)
+                    return;
+
+                String algorithms[] = new String[digests.length];
+                for(int i=0; i<digests.length; i++)
+                    algorithms[i] = digests[i].getAlgorithm();
+
+                AbstractFile checksumFiles[] = new AbstractFile[digests.length];
 
-                // Resolve the destination checksum file
+                // Resolve the destination checksum files
 
                 if(specificLocationRadioButton.isSelected()) {
                     // User-defined checksum file
@@ -242,22 +288,31 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
                         return;
                     }
 
-                    if(resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER)
-                        checksumFile = resolvedDest.getDestinationFile().getDirectChild(getChecksumFilename(algorithm));
-                    else
-                        checksumFile = resolvedDest.getDestinationFile();
+                    if(resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER) {
+                        for(int i=0; i<algorithms.length; i++)
+                            checksumFiles[i] = resolvedDest.getDestinationFile().getDirectChild(getChecksumFilename(algorithms[i]));
+                    }
+                    else if(algorithms.length==1) {
+                        checksumFiles[0] = resolvedDest.getDestinationFile();
+                    }
+                    else {
+                        // Several checksum files cannot be written to a same file
+                        showErrorDialog(Translator.get("invalid_path", enteredPath));
+                        return;
+                    }
                 }
                 else {
-                    // Temporary file
-                    checksumFile = FileFactory.getTemporaryFile(getChecksumFilename(algorithm), true);
+                    // Temporary files
+                    for(int i=0; i<algorithms.length; i++)
+                        checksumFiles[i] = FileFactory.getTemporaryFile(getChecksumFilename(algorithms[i]), true);
                 }
 
-                // Save the algorithm that was used for the next time this dialog is invoked
-                lastUsedAlgorithm = algorithm; 
+                // Save the algorithms that were used for the next time this dialog is invoked
+                lastUsedAlgorithms = algorithms;
 
                 // Start processing files
                 ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("properties_dialog.calculating"));
-                CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFile, digest);
+                CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFiles, digests);
                 progressDialog.start(job);
             }
             catch(IOException ex) {
@@ -281,8 +336,21 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
             specificLocationTextField.setEnabled(specificLocationRadioButton.isSelected());
             specificLocationTextField.requestFocus();
         }
-        else if(source==algorithmComboBox) {
-            specificLocationTextField.setText(getChecksumFilename(getSelectedMessageDigest().getAlgorithm()));
-        }
+    }
+
+
+    //////////////////////////////////////////
+    // ListSelectionListener implementation //
+    //////////////////////////////////////////
+
+    public void valueChanged(ListSelectionEvent e) {
+        if(e.getValueIsAdjusting())
+            return;
+
+        // At least one algorithm must be selected
+        boolean selected = !algorithmList.isSelectionEmpty();
+        okButton.setEnabled(selected);
+        if(selected)
+            specificLocationTextField.setText(getDefaultLocation());
     }
 }
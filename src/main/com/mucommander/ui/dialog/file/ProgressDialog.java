@@ -25,6 +25,7 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GridLayout;
 import java.awt.Polygon;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
@@ -53,6 +54,7 @@ import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
 import com.mucommander.job.FileJob;
 import com.mucommander.job.FileJobListener;
+import com.mucommander.job.JobTelemetry;
 import com.mucommander.job.TransferFileJob;
 import com.mucommander.job.progress.JobProgress;
 import com.mucommander.job.progress.JobProgressListener;
@@ -87,10 +89,18 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
     private JLabel currentSpeedLabel;
     private JCheckBox limitSpeedCheckBox;
     private SizeChooser speedChooser;
+    private JCheckBox limitSharedSpeedCheckBox;
+    private SizeChooser sharedSpeedChooser;
     private JLabel elapsedTimeLabel;
 
     private SpeedGraph speedGraph;
 
+    private CollapseExpandButton statisticsButton;
+    private JLabel filesPerSecondLabel;
+    private JLabel fileLatencyLabel;
+    private JLabel retriesLabel;
+    private JLabel phaseTimeLabels[];
+
     private CollapseExpandButton collapseExpandButton;
     private ButtonChoicePanel buttonsChoicePanel;
     private JButton pauseResumeButton;
@@ -199,6 +209,25 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             advancedPanel.add(tempPanel2);
             advancedPanel.addSpace(5);
 
+            // Limit shared by all the jobs transferring to the same host or volume, which may have been set already
+            long sharedLimit = transferFileJob.getSharedThroughputLimit();
+            JPanel tempPanel3 = new JPanel(new BorderLayout());
+            this.limitSharedSpeedCheckBox = new JCheckBox(Translator.get("progress_dialog.limit_shared_speed")+":", sharedLimit>0);
+            limitSharedSpeedCheckBox.setToolTipText(Translator.get("progress_dialog.limit_shared_speed_tooltip"));
+            limitSharedSpeedCheckBox.addItemListener(this);
+
+            tempPanel3.add(limitSharedSpeedCheckBox, BorderLayout.WEST);
+
+            sharedSpeedChooser = new SizeChooser(true);
+            if(sharedLimit>0)
+                sharedSpeedChooser.setValue(sharedLimit);
+            sharedSpeedChooser.setEnabled(sharedLimit>0);
+            sharedSpeedChooser.addChangeListener(this);
+
+            tempPanel3.add(sharedSpeedChooser, BorderLayout.EAST);
+            advancedPanel.add(tempPanel3);
+            advancedPanel.addSpace(5);
+
             this.collapseExpandButton = new CollapseExpandButton(Translator.get("progress_dialog.advanced"), advancedPanel, true);
             collapseExpandButton.setExpandedState(MuConfigurations.getPreferences().getVariable(MuPreference.PROGRESS_DIALOG_EXPANDED,
                                                                                    MuPreferences.DEFAULT_PROGRESS_DIALOG_EXPANDED));
@@ -210,6 +239,14 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             yPanel.add(advancedPanel);
         }
 
+        JPanel statisticsPanel = createStatisticsPanel();
+        this.statisticsButton = new CollapseExpandButton(Translator.get("progress_dialog.statistics"), statisticsPanel, false);
+        JPanel statisticsButtonPanel = new JPanel(new BorderLayout());
+        statisticsButtonPanel.add(statisticsButton, BorderLayout.EAST);
+        yPanel.add(statisticsButtonPanel);
+        yPanel.add(statisticsPanel);
+        yPanel.addSpace(5);
+
         closeWhenFinishedCheckBox = new JCheckBox(Translator.get("progress_dialog.close_when_finished"));
         closeWhenFinishedCheckBox.setSelected(MuConfigurations.getPreferences().getVariable(MuPreference.PROGRESS_DIALOG_CLOSE_WHEN_FINISHED,
                                                                                MuPreferences.DEFAULT_PROGRESS_DIALOG_CLOSE_WHEN_FINISHED));
@@ -283,6 +320,53 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
         transferFileJob.setThroughputLimit(limitSpeedCheckBox.isSelected()?speedChooser.getValue():-1);
     }
 
+    private void updateSharedThroughputLimit() {
+        transferFileJob.setSharedThroughputLimit(limitSharedSpeedCheckBox.isSelected()?sharedSpeedChooser.getValue():-1);
+    }
+
+    /**
+     * Creates the panel showing the job's {@link JobTelemetry telemetry}: the rate and latency at which files are
+     * processed, and the time spent in each phase.
+     */
+    private JPanel createStatisticsPanel() {
+        JPanel panel = new JPanel(new GridLayout(0, 2, 10, 0));
+
+        filesPerSecondLabel = addStatistic(panel, Translator.get("progress_dialog.files_per_second"));
+        fileLatencyLabel = addStatistic(panel, Translator.get("progress_dialog.file_latency"));
+        retriesLabel = addStatistic(panel, Translator.get("progress_dialog.retries"));
+
+        JobTelemetry.Phase phases[] = JobTelemetry.Phase.values();
+        phaseTimeLabels = new JLabel[phases.length];
+        for(int i=0; i<phases.length; i++)
+            phaseTimeLabels[i] = addStatistic(panel, Translator.get("progress_dialog.phase_"+phases[i].name().toLowerCase()));
+
+        return panel;
+    }
+
+    private static JLabel addStatistic(JPanel panel, String name) {
+        JLabel valueLabel = new JLabel();
+        panel.add(new JLabel(name+":"));
+        panel.add(valueLabel);
+        return valueLabel;
+    }
+
+    private void updateStatistics(JobTelemetry telemetry) {
+        filesPerSecondLabel.setText(String.format("%.1f", telemetry.getFilesPerSecond()));
+        fileLatencyLabel.setText(formatTime(Math.round(telemetry.getFileLatencyP50()))+" / "+formatTime(Math.round(telemetry.getFileLatencyP99())));
+        retriesLabel.setText(Integer.toString(telemetry.getRetries()));
+
+        JobTelemetry.Phase phases[] = JobTelemetry.Phase.values();
+        for(int i=0; i<phases.length; i++)
+            phaseTimeLabels[i].setText(formatTime(telemetry.getPhaseTime(phases[i])));
+    }
+
+    /**
+     * Formats the given time in milliseconds, which may be shorter than the second {@link DurationFormat} is accurate to.
+     */
+    private static String formatTime(long ms) {
+        return ms<1000?ms+" ms":DurationFormat.format(ms);
+    }
+
     private void updateCurrentSpeedLabel(String value) {
         currentSpeedLabel.setText(Translator.get("progress_dialog.current_speed")+": "+value);
     }
@@ -322,6 +406,8 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
                     skipButton.setEnabled(false);
                     limitSpeedCheckBox.setEnabled(false);
                     speedChooser.setEnabled(false);
+                    limitSharedSpeedCheckBox.setEnabled(false);
+                    sharedSpeedChooser.setEnabled(false);
                 }
             }
         }
@@ -339,6 +425,20 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             pauseResumeButton.setText(Translator.get("pause"));
             pauseResumeButton.setIcon(IconManager.getIcon(IconManager.PROGRESS_ICON_SET, PAUSE_ICON));
 
+            if(skipButton!=null)
+                skipButton.setEnabled(true);
+
+            // Update buttons mnemonics
+            buttonsChoicePanel.updateMnemonics();
+        }
+        else if(newState==FileJob.QUEUED) {
+            // The job is waiting for other jobs to complete, offer to start it right away
+            pauseResumeButton.setText(Translator.get("progress_dialog.start_now"));
+            pauseResumeButton.setIcon(IconManager.getIcon(IconManager.PROGRESS_ICON_SET, RESUME_ICON));
+
+            if(skipButton!=null)
+                skipButton.setEnabled(false);
+
             // Update buttons mnemonics
             buttonsChoicePanel.updateMnemonics();
         }
@@ -380,6 +480,9 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
 
         // Update elapsed time label
         elapsedTimeLabel.setText(Translator.get("progress_dialog.elapsed_time")+": "+DurationFormat.format(progress.getEffectiveJobTime()));
+
+        if(statisticsButton.getExpandedState())
+            updateStatistics(job.getTelemetry());
     	
     }
     
@@ -426,8 +529,11 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             transferFileJob.skipCurrentFile();
         }
         else if(source==pauseResumeButton) {
-            // Pause/resume job
-            job.setPaused(job.getState()!=FileJob.PAUSED);
+            // Start a queued job now, pause/resume a running job
+            if(job.getState()==FileJob.QUEUED)
+                job.setPriority(FileJob.HIGH_PRIORITY);
+            else
+                job.setPaused(job.getState()!=FileJob.PAUSED);
         }
 //        else if(source==hideButton) {
 //            mainFrame.setState(Frame.ICONIFIED);
@@ -446,6 +552,10 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
             speedChooser.setEnabled(isEnabled);
             updateThroughputLimit();
         }
+        else if(source==limitSharedSpeedCheckBox) {
+            sharedSpeedChooser.setEnabled(limitSharedSpeedCheckBox.isSelected());
+            updateSharedThroughputLimit();
+        }
     }
 
 
@@ -457,6 +567,9 @@ public class ProgressDialog extends FocusDialog implements ActionListener, ItemL
         if(e.getSource()==speedChooser) {
             updateThroughputLimit();
         }
+        else if(e.getSource()==sharedSpeedChooser) {
+            updateSharedThroughputLimit();
+        }
     }
 
 
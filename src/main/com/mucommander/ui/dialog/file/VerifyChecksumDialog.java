@@ -0,0 +1,153 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.dialog.file;
+
+import com.mucommander.job.VerifyChecksumJob;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.action.ActionProperties;
+import com.mucommander.ui.action.impl.VerifyChecksumAction;
+import com.mucommander.ui.dialog.DialogToolkit;
+import com.mucommander.ui.dialog.FocusDialog;
+import com.mucommander.ui.layout.InformationPane;
+import com.mucommander.ui.layout.YBoxPanel;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.table.FileTable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This dialog reports the results of a {@link VerifyChecksumJob}: the number of files that were found valid, and
+ * the list of files that were not. The files whose checksum does not match, or that could not be read, can be marked
+ * in the active panel.
+ *
+ * @author Maxence Bernard
+ */
+public class VerifyChecksumDialog extends FocusDialog implements ActionListener {
+
+    private MainFrame mainFrame;
+
+    private JButton markButton;
+    private JButton closeButton;
+
+    /** Results of the files that are not valid */
+    private List<VerifyChecksumJob.Result> failedResults = new ArrayList<VerifyChecksumJob.Result>();
+
+    /** Number of failed files visible in the list without scrolling */
+    private final static int VISIBLE_FAILED_FILES = 10;
+
+    /** Dialog size constraints */
+    private final static Dimension MINIMUM_DIALOG_DIMENSION = new Dimension(360,0);
+    private final static Dimension MAXIMUM_DIALOG_DIMENSION = new Dimension(640,480);
+
+
+    public VerifyChecksumDialog(MainFrame mainFrame, List<VerifyChecksumJob.Result> results) {
+        super(mainFrame, ActionProperties.getActionLabel(VerifyChecksumAction.Descriptor.ACTION_ID), mainFrame);
+
+        this.mainFrame = mainFrame;
+
+        int nbValid = 0;
+        DefaultListModel failedListModel = new DefaultListModel();
+        for(VerifyChecksumJob.Result result : results) {
+            switch(result.getStatus()) {
+                case VerifyChecksumJob.Result.OK:
+                    nbValid++;
+                    break;
+                case VerifyChecksumJob.Result.MISMATCH:
+                    addFailedResult(failedListModel, result, "verify_checksum_dialog.mismatch");
+                    break;
+                case VerifyChecksumJob.Result.MISSING:
+                    addFailedResult(failedListModel, result, "verify_checksum_dialog.missing");
+                    break;
+                case VerifyChecksumJob.Result.UNREADABLE:
+                    addFailedResult(failedListModel, result, "verify_checksum_dialog.unreadable");
+                    break;
+                // Files that were not checked because the job was interrupted are not reported
+            }
+        }
+
+        YBoxPanel mainPanel = new YBoxPanel();
+        boolean allValid = failedResults.isEmpty();
+        mainPanel.add(new InformationPane(
+                Translator.get("verify_checksum_dialog.summary", Integer.toString(nbValid), Integer.toString(failedResults.size())),
+                null,
+                Font.BOLD,
+                InformationPane.getPredefinedIcon(allValid?InformationPane.INFORMATION_ICON:InformationPane.WARNING_ICON)));
+        mainPanel.addSpace(10);
+
+        if(!allValid) {
+            JList failedList = new JList(failedListModel);
+            failedList.setVisibleRowCount(Math.min(VISIBLE_FAILED_FILES, failedResults.size()));
+            mainPanel.add(new JScrollPane(failedList));
+            mainPanel.addSpace(10);
+        }
+
+        markButton = new JButton(Translator.get("verify_checksum_dialog.mark_failed_files"));
+        markButton.setEnabled(!allValid);
+        closeButton = new JButton(Translator.get("close"));
+        mainPanel.add(DialogToolkit.createButtonPanel(new JButton[]{closeButton, markButton}, getRootPane(), this));
+
+        getContentPane().add(mainPanel);
+        setInitialFocusComponent(closeButton);
+
+        // Call dispose() when dialog is closed
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+        // Size dialog and show it to the screen
+        setMinimumSize(MINIMUM_DIALOG_DIMENSION);
+        setMaximumSize(MAXIMUM_DIALOG_DIMENSION);
+        setResizable(true);
+    }
+
+    private void addFailedResult(DefaultListModel failedListModel, VerifyChecksumJob.Result result, String statusKey) {
+        failedResults.add(result);
+        failedListModel.addElement(Translator.get(statusKey)+" : "+result.getPath());
+    }
+
+    /**
+     * Marks the files of the active panel whose checksum does not match or that could not be read.
+     */
+    private void markFailedFiles() {
+        FileTable fileTable = mainFrame.getActivePanel().getFileTable();
+        for(VerifyChecksumJob.Result result : failedResults) {
+            if(result.getFile()!=null && result.getStatus()!=VerifyChecksumJob.Result.MISSING)
+                fileTable.setFileMarked(result.getFile(), true, false);
+        }
+
+        fileTable.repaint();
+        // Notify registered listeners that currently marked files have changed on the file table
+        fileTable.fireMarkedFilesChangedEvent();
+    }
+
+
+    ///////////////////////////////////
+    // ActionListener implementation //
+    ///////////////////////////////////
+
+    public void actionPerformed(ActionEvent e) {
+        if(e.getSource()==markButton)
+            markFailedFiles();
+
+        dispose();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.dialog.startup;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.job.AbstractCopyJob;
+import com.mucommander.job.JobJournal;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.dialog.QuestionDialog;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * Dialog offering to resume a copy, move or unpack job that did not finish the last time muCommander was run,
+ * see {@link JobJournal}.
+ *
+ * @author Maxence Bernard
+ */
+public class ResumeJobDialog extends QuestionDialog {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResumeJobDialog.class);
+
+    private final static int RESUME_ACTION = 0;
+    private final static int DISCARD_ACTION = 1;
+    private final static int LATER_ACTION = 2;
+
+    /**
+     * Creates a new dialog offering to resume the job recorded in the given journal.
+     *
+     * @param mainFrame the main frame the job is to be resumed in
+     * @param journal journal of the unfinished job
+     */
+    public ResumeJobDialog(MainFrame mainFrame, JobJournal journal) {
+        super(mainFrame,
+              Translator.get("resume_job_dialog.title"),
+              Translator.get("resume_job_dialog.message", journal.getJobTitle(), journal.getDestinationFolder()),
+              mainFrame,
+              new String[]{Translator.get("resume"), Translator.get("resume_job_dialog.discard"), Translator.get("resume_job_dialog.later")},
+              new int[]{RESUME_ACTION, DISCARD_ACTION, LATER_ACTION},
+              0);
+    }
+
+    /**
+     * Offers to resume each of the jobs that did not finish the last time muCommander was run, and resumes or
+     * discards them as requested by the user. Jobs the user does not decide on are offered again the next time
+     * muCommander is started.
+     *
+     * @param mainFrame the main frame the jobs are to be resumed in
+     */
+    public static void resumeUnfinishedJobs(MainFrame mainFrame) {
+        for(JobJournal journal : JobJournal.getUnfinishedJournals()) {
+            switch(new ResumeJobDialog(mainFrame, journal).getActionValue()) {
+                case RESUME_ACTION:
+                    ProgressDialog progressDialog = new ProgressDialog(mainFrame, journal.getJobTitle());
+                    try {
+                        AbstractCopyJob job = journal.createJob(progressDialog, mainFrame);
+                        progressDialog.start(job);
+                    }
+                    catch(IOException e) {
+                        LOGGER.info("Could not resume job", e);
+                        InformationDialog.showErrorDialog(mainFrame, Translator.get("resume_job_dialog.error"));
+                    }
+                    break;
+
+                case DISCARD_ACTION:
+                    journal.discard();
+                    break;
+            }
+        }
+    }
+}
@@ -29,8 +29,10 @@ import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
+import com.mucommander.core.LocationIndex;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
 import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.table.FolderSnapshot;
 
 /**
  * @author Maxence Bernard
@@ -61,6 +63,7 @@ public class LocationManager {
         this.folderPanel = folderPanel;
         
         addLocationListener(GlobalLocationHistory.Instance());
+        addLocationListener(LocationIndex.Instance());
     }
 
     /**
@@ -73,15 +76,37 @@ public class LocationManager {
      * @throws UnsupportedFileOperationException 
      */
     public void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) {
+    	setCurrentFolder(folder, ls(folder), fileToSelect, changeLockedTab);
+    }
+
+    /**
+     * Lists the children of the given folder that are to be presented in the {@link FolderPanel}, filtering out
+     * unwanted files. An empty array is returned if the folder could not be listed.
+     *
+     * @param folder the folder to list
+     * @return the children of the given folder that pass the configured filters
+     */
+    public AbstractFile[] ls(AbstractFile folder) {
     	LOGGER.trace("calling ls()");
-    	AbstractFile[] children;
 		try {
-			children = folder.ls(configurableFolderFilter);
+			return folder.ls(configurableFolderFilter);
 		} catch (Exception e) {
 			LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
-			children = new AbstractFile[0];
+			return new AbstractFile[0];
 		}
+    }
 
+    /**
+     * Set the given {@link AbstractFile} as the folder presented in the {@link FolderPanel}, using children that
+     * were previously listed with {@link #ls(AbstractFile)}, and notify the {@link LocationListener}s that the
+     * location was changed to it.
+     *
+     * @param folder the {@link AbstractFile} that is going to be presented in the {@link FolderPanel}
+     * @param children the children of the given folder
+     * @param fileToSelect the file to be selected after the folder has been changed, can be null
+     * @param changeLockedTab flag that indicates whether to change the presented folder in the currently selected tab although it's locked
+     */
+    public void setCurrentFolder(AbstractFile folder, AbstractFile[] children, AbstractFile fileToSelect, boolean changeLockedTab) {
     	folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
 
     	this.currentFolder = folder;
@@ -94,6 +119,22 @@ public class LocationManager {
     		folderChangeMonitor = new FolderChangeMonitor(folderPanel);
     }
 
+    /**
+     * Set the folder of the given {@link FolderSnapshot} as the folder presented in the {@link FolderPanel}, restoring
+     * its contents from the snapshot without listing it, and notify the {@link LocationListener}s that the location
+     * was changed to it.
+     *
+     * @param snapshot the snapshot of the folder that is going to be presented in the {@link FolderPanel}
+     */
+    public void restoreCurrentFolder(FolderSnapshot snapshot) {
+    	folderPanel.restoreCurrentFolder(snapshot);
+
+    	this.currentFolder = snapshot.getFolder();
+
+    	// Notify listeners that the location has changed
+    	fireLocationChanged(currentFolder.getURL());
+    }
+
     /**
      * Return the folder presented in the {@link FolderPanel}
      * 
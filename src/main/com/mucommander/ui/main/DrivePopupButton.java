@@ -24,7 +24,6 @@ import java.awt.event.ActionEvent;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Map;
-import java.util.regex.PatternSyntaxException;
 
 import javax.swing.AbstractAction;
 import javax.swing.Icon;
@@ -32,10 +31,6 @@ import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
 import javax.swing.JSeparator;
 import javax.swing.SwingUtilities;
-import javax.swing.filechooser.FileSystemView;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.mucommander.bonjour.BonjourMenu;
 import com.mucommander.bonjour.BonjourService;
@@ -48,14 +43,12 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.FileURL;
-import com.mucommander.commons.file.filter.PathFilter;
-import com.mucommander.commons.file.filter.RegexpPathFilter;
-import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.commons.runtime.OsVersion;
 import com.mucommander.conf.MuConfigurations;
-import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
+import com.mucommander.core.VolumeListener;
+import com.mucommander.core.VolumeService;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.MuAction;
 import com.mucommander.ui.action.impl.OpenLocationAction;
@@ -81,50 +74,19 @@ import com.mucommander.ui.icon.IconManager;
  *
  * @author Maxence Bernard
  */
-public class DrivePopupButton extends PopupButton implements BookmarkListener, ConfigurationListener, LocationListener {
-	private static final Logger LOGGER = LoggerFactory.getLogger(DrivePopupButton.class);
-	
+public class DrivePopupButton extends PopupButton implements BookmarkListener, ConfigurationListener, LocationListener, VolumeListener {
+
     /** FolderPanel instance that contains this button */
     private FolderPanel folderPanel;
-	
-    /** Current volumes */
-    private static AbstractFile volumes[];
-
-    /** static FileSystemView instance, has a (non-null) value only under Windows */
-    private static FileSystemView fileSystemView;
-
-    /** Caches extended drive names, has a (non-null) value only under Windows */
-    private static Map<AbstractFile, String> extendedNameCache;
-    
-    /** Caches drive icons */
-    private static Map<AbstractFile, Icon> iconCache = new Hashtable<AbstractFile, Icon>();
-    
-
-    /** Filters out volumes from the list based on the exclude regexp defined in the configuration, null if the regexp
-     * is not defined. */
-    private static PathFilter volumeFilter;
 
+    /** Volumes listed by the popup menu that was last created, null if no popup menu was created yet */
+    private AbstractFile popupVolumes[];
 
-    static {
-        if(OsFamily.WINDOWS.isCurrent()) {
-            fileSystemView = FileSystemView.getFileSystemView();
-            extendedNameCache = new Hashtable<AbstractFile, String>();
-        }
-
-        try {
-            String excludeRegexp = MuConfigurations.getPreferences().getVariable(MuPreference.VOLUME_EXCLUDE_REGEXP);
-            if(excludeRegexp!=null) {
-                volumeFilter = new RegexpPathFilter(excludeRegexp, true);
-                volumeFilter.setInverted(true);
-            }
-        }
-        catch(PatternSyntaxException e) {
-            LOGGER.info("Invalid regexp for conf variable "+MuPreferences.VOLUME_EXCLUDE_REGEXP, e);
-        }
+    /** Menu items of the volumes listed by the popup menu that was last created */
+    private ArrayList<JMenuItem> popupVolumeItems;
 
-        // Initialize the volumes list
-        volumes = getDisplayableVolumes();
-    }
+    /** The popup menu that was last created */
+    private JPopupMenu popupMenu;
 
 
     /**
@@ -145,6 +107,10 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
         // Listen to configuration changes to update the button if the system file icons policy has changed
         MuConfigurations.addPreferencesListener(this);
 
+        // Listen to volume changes to update the button when volumes are mounted or unmounted, and the popup menu
+        // when the volumes' extended names and icons have been resolved
+        VolumeService.Instance().addVolumeListener(this);
+
         // Use new JButton decorations introduced in Mac OS X 10.5 (Leopard)
         if(OsFamily.MAC_OS_X.isCurrent() && OsVersion.MAC_OS_X_10_5.isCurrentOrHigher()) {
             setMargin(new Insets(6,8,6,8));
@@ -164,6 +130,7 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
      */
     private void updateButton() {
         AbstractFile currentFolder = folderPanel.getCurrentFolder();
+        AbstractFile volumes[] = getDisplayableVolumes();
         String currentPath = currentFolder.getAbsolutePath();
         FileURL currentURL = currentFolder.getURL();
 
@@ -197,6 +164,10 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
                 if(OsFamily.WINDOWS.isCurrent() && !FileURL.LOCALHOST.equals(currentURL.getHost())) {
                     newLabel = "SMB";
                 }
+                // No volume is known, use the folder's name
+                else if(volumes.length==0) {
+                    newLabel = currentFolder.getName();
+                }
                 else {
                     // getCanonicalPath() must be avoided under Windows for the following reasons:
                     // a) it is not necessary, Windows doesn't have symlinks
@@ -241,41 +212,16 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
     }
 
 
-    /**
-     * Returns the extended name of the given local file, e.g. "Local Disk (C:)" for C:\. The returned value is
-     * interesting only under Windows. This method is I/O bound and very slow so it should not be called from the main
-     * event thread.
-     *
-     * @param localFile the file for which to return the extended name
-     * @return the extended name of the given local file
-     */
-    private static String getExtendedDriveName(AbstractFile localFile) {
-        // Note: fileSystemView.getSystemDisplayName(java.io.File) is unfortunately very very slow
-        String name = fileSystemView.getSystemDisplayName((java.io.File)localFile.getUnderlyingFileObject());
-
-        if(name==null || name.equals(""))   // This happens for CD/DVD drives when they don't contain any disc
-            return localFile.getName();
-
-        return name;
-    }
-
-
     /**
      * Returns the list of volumes to be displayed in the popup menu.
      *
-     * <p>The raw list of volumes is fetched using {@link LocalFile#getVolumes()} and then
-     * filtered using the regexp defined in the {@link MuPreferences#VOLUME_EXCLUDE_REGEXP} configuration variable
-     * (if defined).</p>
+     * <p>The list is maintained by the {@link VolumeService}, this method does not block.</p>
      *
      * @return the list of volumes to be displayed in the popup menu
+     * @see VolumeService#getVolumes()
      */
     public static AbstractFile[] getDisplayableVolumes() {
-        AbstractFile[] volumes = LocalFile.getVolumes();
-
-        if(volumeFilter!=null)
-            return volumeFilter.filter(volumes);
-
-        return volumes;
+        return VolumeService.Instance().getVolumes();
     }
 
 
@@ -287,8 +233,9 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
     public JPopupMenu getPopupMenu() {
         JPopupMenu popupMenu = new JPopupMenu();
 
-        // Update the list of volumes in case new ones were mounted
-        volumes = getDisplayableVolumes();
+        // Use the last known list of volumes: the VolumeService keeps it and the volumes' extended names and icons
+        // up to date in the background, and notifies this button when they change
+        AbstractFile volumes[] = VolumeService.Instance().getVolumes();
 
         // Add volumes
         int nbVolumes = volumes.length;
@@ -299,7 +246,6 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
         MuAction action;
         String volumeName;
 
-        boolean useExtendedDriveNames = fileSystemView!=null;
         ArrayList<JMenuItem> itemsV = new ArrayList<JMenuItem>();
 
         for(int i=0; i<nbVolumes; i++) {
@@ -318,23 +264,17 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
             item = popupMenu.add(action);
             setMnemonic(item, mnemonicHelper);
 
-            // Set icon from cache
-            Icon icon = iconCache.get(volumes[i]);
-            if (icon!=null) {
-                item.setIcon(icon);
-            }
-
-            if(useExtendedDriveNames) {
-                // Use the last known value (if any) while we update it in a separate thread
-                String previousExtendedName = extendedNameCache.get(volumes[i]);
-                if(previousExtendedName!=null)
-                    item.setText(previousExtendedName);
+            // Under Windows, show the extended drive name (e.g. "Local Disk (C:)" instead of just "C:") but use
+            // the simple drive name for the mnemonic (i.e. 'C' instead of 'L').
+            // Use the last known name and icon (if any) while they are being refreshed
+            setVolumeNameAndIcon(item, volumes[i]);
 
-            }
             itemsV.add(item);   // JMenu offers no way to retrieve a particular JMenuItem, so we have to keep them
         }
 
-        new RefreshDriveNamesAndIcons(popupMenu, itemsV).start();
+        this.popupMenu = popupMenu;
+        this.popupVolumes = volumes;
+        this.popupVolumeItems = itemsV;
 
         popupMenu.add(new JSeparator());
 
@@ -384,66 +324,22 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
     }
     
     /**
-     *  Calls to getExtendedDriveName(String) are very slow, so they are performed in a separate thread so as
-     *  to not lock the main even thread. The popup menu gets first displayed with the short drive names, and
-     * then refreshed with the extended names as they are retrieved.        
+     * Sets the extended name and system icon of the given volume, as last resolved by the {@link VolumeService}, to
+     * the given menu item.
+     *
+     * @param item the menu item of the volume
+     * @param volume the volume
      */
-    private class RefreshDriveNamesAndIcons extends Thread {
-        
-        private JPopupMenu popupMenu;
-        private ArrayList<JMenuItem> items;
-
-        public RefreshDriveNamesAndIcons(JPopupMenu popupMenu, ArrayList<JMenuItem> items) {
-            super("RefreshDriveNamesAndIcons");
-            this.popupMenu = popupMenu;
-            this.items = items;
-        }
-        
-        @Override
-        public void run() {
-            final boolean useExtendedDriveNames = fileSystemView!=null;
-            for(int i=0; i<items.size(); i++) {
-                final JMenuItem item = items.get(i);
-
-                String extendedName = null;
-                if (useExtendedDriveNames) {
-                    // Under Windows, show the extended drive name (e.g. "Local Disk (C:)" instead of just "C:") but use
-                    // the simple drive name for the mnemonic (i.e. 'C' instead of 'L').
-                    extendedName = getExtendedDriveName(volumes[i]);
-
-                    // Keep the extended name for later (see above)
-                    extendedNameCache.put(volumes[i], extendedName);
-                }
-                final String extendedNameFinal = extendedName;
-
-                // Set system icon for volumes, only if system icons are available on the current platform
-                final Icon icon = FileIcons.hasProperSystemIcons()?FileIcons.getSystemFileIcon(volumes[i]):null;
-                if (icon!=null) {
-                    iconCache.put(volumes[i], icon);
-                }
+    private void setVolumeNameAndIcon(JMenuItem item, AbstractFile volume) {
+        VolumeService volumeService = VolumeService.Instance();
 
-                SwingUtilities.invokeLater(new Runnable() {
-                    public void run() {
-                        if (useExtendedDriveNames) {
-                            item.setText(extendedNameFinal);
-                        }
-                        if (icon!=null) {
-                            item.setIcon(icon);
-                        }
-                    }
-                });
-                
-            }
+        String extendedName = volumeService.getExtendedName(volume);
+        if(extendedName!=null)
+            item.setText(extendedName);
 
-            // Re-calculate the popup menu's dimensions
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    popupMenu.invalidate();
-                    popupMenu.pack();
-                }
-            });
-        }
-        
+        Icon icon = volumeService.getIcon(volume);
+        if(icon!=null)
+            item.setIcon(icon);
     }
 
 
@@ -564,4 +460,30 @@ public class DrivePopupButton extends PopupButton implements BookmarkListener, C
 	public void locationCancelled(LocationEvent locationEvent) { }
 
 	public void locationFailed(LocationEvent locationEvent) {}
+
+	/********************************
+	 * VolumeListener Implementation
+	 ********************************/
+
+	public void volumesChanged() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				// Update the button's label in case the volume of the current folder has changed
+				updateButton();
+
+				// Refresh the volume names and icons of the popup menu, if it is showing
+				if(popupMenu==null || !popupMenu.isVisible())
+					return;
+
+				for(int i=0; i<popupVolumeItems.size(); i++)
+					setVolumeNameAndIcon(popupVolumeItems.get(i), popupVolumes[i]);
+
+				// Re-calculate the popup menu's dimensions
+				popupMenu.invalidate();
+				popupMenu.pack();
+			}
+		});
+	}
+
+	public void volumeSpaceChanged() {}
 }
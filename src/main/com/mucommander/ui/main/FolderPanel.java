@@ -47,7 +47,7 @@ import com.mucommander.commons.file.FileURL;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.LocalLocationHistory;
 import com.mucommander.core.LocationChanger;
-import com.mucommander.core.LocationChanger.ChangeFolderThread;
+import com.mucommander.core.LocationChanger.ChangeFolderTask;
 import com.mucommander.ui.action.ActionKeymap;
 import com.mucommander.ui.action.ActionManager;
 import com.mucommander.ui.action.impl.FocusNextAction;
@@ -63,6 +63,7 @@ import com.mucommander.ui.main.quicklist.RootFoldersQL;
 import com.mucommander.ui.main.quicklist.TabsQL;
 import com.mucommander.ui.main.table.FileTable;
 import com.mucommander.ui.main.table.FileTableConfiguration;
+import com.mucommander.ui.main.table.FolderSnapshot;
 import com.mucommander.ui.main.tabs.ConfFileTableTab;
 import com.mucommander.ui.main.tabs.FileTableTab;
 import com.mucommander.ui.main.tabs.FileTableTabs;
@@ -348,40 +349,48 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
     	locationChanger.tryChangeCurrentFolderInternal(folderURL, callback);
     }
 
-    public ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder) {
+    public void tryChangeCurrentFolderInternal(FileURL folderURL, FolderSnapshot snapshot, Callback callback) {
+    	locationChanger.tryChangeCurrentFolderInternal(folderURL, snapshot, callback);
+    }
+
+    public ChangeFolderTask tryChangeCurrentFolder(AbstractFile folder) {
     	return locationChanger.tryChangeCurrentFolder(folder, false);
     }
 
-    public ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL, AbstractFile selectThisFileAfter, boolean findWorkableFolder) {
+    public ChangeFolderTask tryChangeCurrentFolder(FileURL folderURL, AbstractFile selectThisFileAfter, boolean findWorkableFolder) {
     	return locationChanger.tryChangeCurrentFolder(FileFactory.getFile(folderURL), selectThisFileAfter, findWorkableFolder, false);
     }
 
-    public ChangeFolderThread tryChangeCurrentFolder(AbstractFile folder, AbstractFile selectThisFileAfter, boolean findWorkableFolder) {
+    public ChangeFolderTask tryChangeCurrentFolder(AbstractFile folder, AbstractFile selectThisFileAfter, boolean findWorkableFolder) {
     	return locationChanger.tryChangeCurrentFolder(folder, selectThisFileAfter, findWorkableFolder, false);
     }
 
-    public ChangeFolderThread tryChangeCurrentFolder(String folderPath) {
+    public ChangeFolderTask tryChangeCurrentFolder(String folderPath) {
     	return locationChanger.tryChangeCurrentFolder(folderPath);
     }
 
-    public ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL) {
+    public ChangeFolderTask tryChangeCurrentFolder(FileURL folderURL) {
     	return locationChanger.tryChangeCurrentFolder(folderURL);
     }
 
-    public ChangeFolderThread tryChangeCurrentFolder(FileURL folderURL, CredentialsMapping credentialsMapping) {
+    public ChangeFolderTask tryChangeCurrentFolder(FileURL folderURL, CredentialsMapping credentialsMapping) {
     	return locationChanger.tryChangeCurrentFolder(folderURL, credentialsMapping, false);
     }
 
-    public ChangeFolderThread tryRefreshCurrentFolder() {
+    public ChangeFolderTask tryRestoreCurrentFolder(FileURL folderURL) {
+    	return locationChanger.tryRestoreCurrentFolder(folderURL);
+    }
+
+    public ChangeFolderTask tryRefreshCurrentFolder() {
     	return locationChanger.tryRefreshCurrentFolder();
     }
 
-    public ChangeFolderThread tryRefreshCurrentFolder(AbstractFile selectThisFileAfter) {
+    public ChangeFolderTask tryRefreshCurrentFolder(AbstractFile selectThisFileAfter) {
         return locationChanger.tryRefreshCurrentFolder(selectThisFileAfter);
     }
 
-    public ChangeFolderThread getChangeFolderThread() {
-        return locationChanger.getChangeFolderThread();
+    public ChangeFolderTask getChangeFolderTask() {
+        return locationChanger.getChangeFolderTask();
     }
 
     public long getLastFolderChangeTime() {
@@ -417,6 +426,16 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
     			fileTable.setCurrentFolder(folder, children, fileToSelect);
     }
 
+    /**
+     * This method updates the UI with the folder of the given snapshot, restoring the folder's contents, selected
+     * file and scroll position as they were when the folder was left.
+     *
+     * @param snapshot - the snapshot of the folder to be set
+     */
+    public void restoreCurrentFolder(FolderSnapshot snapshot) {
+    	fileTable.restoreFolderSnapshot(snapshot);
+    }
+
     /**
      * Shows the pop up which is located the given index in fileTablePopups.
      * 
@@ -33,6 +33,7 @@ import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.impl.local.UNCFile;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.core.VolumeService;
 import com.mucommander.ui.autocomplete.AutocompleterTextComponent;
 import com.mucommander.ui.autocomplete.CompleterFactory;
 import com.mucommander.ui.autocomplete.TextFieldCompletion;
@@ -255,7 +256,7 @@ public class LocationTextField extends ProgressTextField implements LocationList
         }
 
         // Look for a volume whose name is the entered string (case insensitive)
-        AbstractFile volumes[] = LocalFile.getVolumes();
+        AbstractFile volumes[] = VolumeService.Instance().getAllVolumes();
         for(int i=0; tryToInterpretEnteredString && i<volumes.length; i++) {
             if(volumes[i].getName().equalsIgnoreCase(location)) {
                 // Change the current folder to the volume folder
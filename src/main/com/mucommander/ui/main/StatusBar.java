@@ -25,8 +25,9 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -36,20 +37,16 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.mucommander.cache.FastLRUCache;
-import com.mucommander.cache.LRUCache;
 import com.mucommander.commons.conf.ConfigurationEvent;
 import com.mucommander.commons.conf.ConfigurationListener;
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.file.impl.local.LocalFile;
-import com.mucommander.commons.runtime.JavaVersion;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
+import com.mucommander.core.VolumeListener;
+import com.mucommander.core.VolumeService;
 import com.mucommander.desktop.DesktopManager;
 import com.mucommander.text.SizeFormat;
 import com.mucommander.text.Translator;
@@ -82,14 +79,12 @@ import com.mucommander.ui.theme.ThemeManager;
  * selected files and volume info, and display the waiting message when the folder is changing. Quick search info
  * is set by FileTable.QuickSearch.
  *
- * <p>When StatusBar is visible, a Thread runs in the background to periodically update free/total space volume info.
- * This thread stops when the StatusBar is hidden.
+ * <p>Free/total space volume info is read from the {@link VolumeService}, which refreshes it periodically in the
+ * background for as long as the StatusBar of the window in the foreground keeps displaying it.
  *
  * @author Maxence Bernard
  */
-public class StatusBar extends JPanel implements Runnable, MouseListener, ActivePanelListener, TableSelectionListener, LocationListener, ComponentListener, ThemeListener {
-	private static final Logger LOGGER = LoggerFactory.getLogger(StatusBar.class);
-	
+public class StatusBar extends JPanel implements VolumeListener, MouseListener, ActivePanelListener, TableSelectionListener, LocationListener, ComponentListener, ThemeListener {
     private MainFrame mainFrame;
 
     /** Label that displays info about current selected file(s) */
@@ -101,22 +96,6 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
     /** Label that displays info about current volume (free/total space) */
     private VolumeSpaceLabel volumeSpaceLabel;
 
-    /** Thread which auto updates volume info */
-    private Thread autoUpdateThread;
-
-    /** Number of volume info strings that can be temporarily cached */
-    private final static int VOLUME_INFO_CACHE_CAPACITY = 50;
-
-    /** Number of milliseconds before cached volume info strings expire */
-    private final static int VOLUME_INFO_TIME_TO_LIVE = 60000;
-
-    /** Number of milliseconds between each volume info update by auto-update thread */
-    private final static int AUTO_UPDATE_PERIOD = 6000;
-
-    /** Caches volume info strings (free/total space) for a while, since this information is expensive to retrieve
-     * (I/O bound). This map uses folders' volume path as its key. */
-    private static LRUCache<String, Long[]> volumeInfoCache = new FastLRUCache<String, Long[]>(VOLUME_INFO_CACHE_CAPACITY);
-	
     /** Icon that is displayed when folder is changing */
     public final static String WAITING_ICON = "waiting.png";
 
@@ -192,7 +171,6 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
         add(volumeSpaceLabel);
 
         // Show/hide this status bar based on user preferences
-        // Note: setVisible has to be called even with true for the auto-update thread to be initialized
         setVisible(MuConfigurations.getPreferences().getVariable(MuPreference.STATUS_BAR_VISIBLE, MuPreferences.DEFAULT_STATUS_BAR_VISIBLE));
         
         // Catch location events to update status bar info when folder is changed
@@ -209,6 +187,17 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
 
         // Catch active panel change events to update status bar info when current table has changed
         mainFrame.addActivePanelListener(this);
+
+        // Catch volume events to update volume info when it has been refreshed
+        VolumeService.Instance().addVolumeListener(this);
+
+        // Catch window activation events to update volume info, which is not updated while the window is inactive
+        mainFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowActivated(WindowEvent e) {
+                updateVolumeInfo();
+            }
+        });
 		
         // Catch mouse events to pop up a menu on right-click
         selectedFilesLabel.addMouseListener(this);
@@ -294,66 +283,18 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
 	
     /**
      * Updates info about current volume (free space, total space), displayed on the right-side of this status bar.
+     * Volume info is retrieved by the {@link VolumeService} in the background: if it is not known yet, this
+     * status bar will be updated when it is.
      */
-    private synchronized void updateVolumeInfo() {
+    private void updateVolumeInfo() {
         // No need to waste precious cycles if status bar is not visible
         if(!isVisible())
             return;
 
-        final AbstractFile currentFolder = mainFrame.getActivePanel().getCurrentFolder();
-        // Resolve the current folder's volume and use its path as a key for the volume info cache
-        final String volumePath = currentFolder.exists() ?
-        		currentFolder.getVolume().getAbsolutePath(true) : "";
-
-        Long cachedVolumeInfo[] = volumeInfoCache.get(volumePath);
-        if(cachedVolumeInfo!=null) {
-            LOGGER.debug("Cache hit!");
-            volumeSpaceLabel.setVolumeSpace(cachedVolumeInfo[0], cachedVolumeInfo[1]);
-        }
-        else {
-            // Retrieves free and total volume space.
-            // Perform volume info retrieval in a separate thread as this method may be called
-            // by the event thread and it can take a while, we want to return as soon as possible
-            new Thread("StatusBar.updateVolumeInfo") {
-                @Override
-                public void run() {
-                    // Free space on current volume, -1 if this information is not available 
-                    long volumeFree;
-                    // Total space on current volume, -1 if this information is not available 
-                    long volumeTotal;
-
-                    // Folder is a local file and Java version is 1.5: call getVolumeInfo() instead of
-                    // separate calls to getFreeSpace() and getTotalSpace() as it is twice as fast.
-                    if(currentFolder instanceof LocalFile && JavaVersion.JAVA_1_5.isCurrentOrLower()) {
-                        try {
-                            long volumeInfo[] = ((LocalFile)currentFolder).getVolumeInfo();
-                            volumeTotal = volumeInfo[0];
-                            volumeFree = volumeInfo[1];
-                        }
-                        catch(IOException e) {
-                            volumeTotal = -1;
-                            volumeFree = -1;
-                        }
-                    }
-                    // Java 1.6 and up or any other file type
-                    else {
-                        try { volumeFree = currentFolder.getFreeSpace(); }
-                        catch(IOException e) { volumeFree = -1; }
-
-                        try { volumeTotal = currentFolder.getTotalSpace(); }
-                        catch(IOException e) { volumeTotal = -1; }
-                    }
-
-// For testing the free space indicator 
-//volumeFree = (long)(volumeTotal * Math.random());
-                    
-                    volumeSpaceLabel.setVolumeSpace(volumeTotal, volumeFree);
-
-                    LOGGER.debug("Adding to cache");
-                    volumeInfoCache.add(volumePath, new Long[]{volumeTotal, volumeFree}, VOLUME_INFO_TIME_TO_LIVE);
-                }
-            }.start();
-        }
+        AbstractFile currentFolder = mainFrame.getActivePanel().getCurrentFolder();
+        long volumeInfo[] = VolumeService.Instance().getVolumeSpace(currentFolder);
+        if(volumeInfo!=null)
+            volumeSpaceLabel.setVolumeSpace(volumeInfo[0], volumeInfo[1]);
     }
 
 
@@ -396,63 +337,37 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
 	
 
     /**
-     * Starts a volume info auto-update thread, only if there isn't already one running.
-     */    
-    private synchronized void startAutoUpdate() {
-        if(autoUpdateThread==null) {
-            // Start volume info auto-update thread
-            autoUpdateThread = new Thread(this, "StatusBar autoUpdateThread");
-            // Set the thread as a daemon thread
-            autoUpdateThread.setDaemon(true);
-            autoUpdateThread.start();
-        }
-    }
-
-    
-    /**
-     * Overrides JComponent.setVisible(boolean) to start/stop volume info auto-update thread.
+     * Overrides JComponent.setVisible(boolean) to update status bar info when made visible.
      */
     @Override
     public void setVisible(boolean visible) {
-        if(visible) {
-            // Start auto-update thread
-            startAutoUpdate();
-            super.setVisible(true);
-            // Update status bar info
+        super.setVisible(visible);
+
+        // Update status bar info
+        if(visible)
             updateStatusInfo();
-        }
-        else {
-            // Stop auto-update thread
-            this.autoUpdateThread = null;
-            super.setVisible(false);
-        }
     }
-    
-    
-    //////////////////////
-    // Runnable methods //
-    //////////////////////
 
-    /**
-     * Periodically updates volume info (free / total space).
-     */
-    public void run() {
-        do {
-            // Sleep for a while
-            try { Thread.sleep(AUTO_UPDATE_PERIOD); }
-            catch (InterruptedException e) {}
-            
-            // Update volume info if:
-            // - status bar is visible
-            // - MainFrame isn't changing folders
-            // - MainFrame is active and in the foreground
-            // Volume info update will potentially hit the LRU cache and not actually update volume info
-            if(isVisible() && !mainFrame.getNoEventsMode() && mainFrame.isForegroundActive())
-                updateVolumeInfo();
-        }
-        while(autoUpdateThread!=null && mainFrame.isVisible());   // Stop when MainFrame is disposed
+
+    ///////////////////////////////////
+    // VolumeListener implementation //
+    ///////////////////////////////////
+
+    public void volumesChanged() {
     }
-    
+
+    public void volumeSpaceChanged() {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                // Update volume info if:
+                // - MainFrame isn't changing folders
+                // - MainFrame is active and in the foreground
+                if(!mainFrame.getNoEventsMode() && mainFrame.isForegroundActive())
+                    updateVolumeInfo();
+            }
+        });
+    }
+
 
     ////////////////////////////////////////
     // ActivePanelListener implementation //
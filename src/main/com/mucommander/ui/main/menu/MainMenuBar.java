@@ -40,11 +40,11 @@ import com.mucommander.bonjour.BonjourService;
 import com.mucommander.bookmark.Bookmark;
 import com.mucommander.bookmark.BookmarkManager;
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
+import com.mucommander.core.VolumeService;
 import com.mucommander.desktop.DesktopManager;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionManager;
@@ -133,6 +133,7 @@ import com.mucommander.ui.action.impl.ToggleTreeAction;
 import com.mucommander.ui.action.impl.UnmarkAllAction;
 import com.mucommander.ui.action.impl.UnmarkGroupAction;
 import com.mucommander.ui.action.impl.UnpackAction;
+import com.mucommander.ui.action.impl.VerifyChecksumAction;
 import com.mucommander.ui.dialog.InformationDialog;
 import com.mucommander.ui.dialog.pref.theme.ThemeEditorDialog;
 import com.mucommander.ui.helper.MenuToolkit;
@@ -245,6 +246,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
         fileMenu.add(new JSeparator());
         MenuToolkit.addMenuItem(fileMenu, ActionManager.getActionInstance(ShowFilePropertiesAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
         MenuToolkit.addMenuItem(fileMenu, ActionManager.getActionInstance(CalculateChecksumAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
+        MenuToolkit.addMenuItem(fileMenu, ActionManager.getActionInstance(VerifyChecksumAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
         MenuToolkit.addMenuItem(fileMenu, ActionManager.getActionInstance(ChangePermissionsAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
         MenuToolkit.addMenuItem(fileMenu, ActionManager.getActionInstance(ChangeDateAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
 
@@ -510,7 +512,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
             for(int i=goMenu.getItemCount(); i> volumeOffset; i--)
                 goMenu.remove(volumeOffset);
 
-            AbstractFile volumes[] = LocalFile.getVolumes();
+            AbstractFile volumes[] = VolumeService.Instance().getAllVolumes();
             int nbFolders = volumes.length;
 
             for(int i=0; i<nbFolders; i++)
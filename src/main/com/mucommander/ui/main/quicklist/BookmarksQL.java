@@ -18,6 +18,9 @@
 
 package com.mucommander.ui.main.quicklist;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import javax.swing.Icon;
 
 import com.mucommander.bookmark.Bookmark;
@@ -25,6 +28,7 @@ import com.mucommander.bookmark.BookmarkListener;
 import com.mucommander.bookmark.BookmarkManager;
 import com.mucommander.commons.collections.AlteredVector;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.core.LocationIndex;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionProperties;
 import com.mucommander.ui.action.impl.ShowBookmarksQLAction;
@@ -32,7 +36,7 @@ import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.quicklist.QuickListWithIcons;
 
 /**
- * This quick list shows existing bookmarks.
+ * This quick list shows existing bookmarks, the most frequently and recently accessed ones first.
  * 
  * @author Arik Hadas
  */
@@ -56,7 +60,17 @@ public class BookmarksQL extends QuickListWithIcons<Bookmark> implements Bookmar
 
 	@Override
     protected Bookmark[] getData() {
-		return cachedBookmarks;
+		final LocationIndex locationIndex = LocationIndex.Instance();
+
+		// Bookmarks that are equally ranked remain in their original order, the sort being stable
+		Bookmark[] bookmarks = cachedBookmarks.clone();
+		Arrays.sort(bookmarks, new Comparator<Bookmark>() {
+			public int compare(Bookmark b1, Bookmark b2) {
+				return Double.compare(locationIndex.getRank(b2.getLocation()), locationIndex.getRank(b1.getLocation()));
+			}
+		});
+
+		return bookmarks;
 	}
 	
 	@Override
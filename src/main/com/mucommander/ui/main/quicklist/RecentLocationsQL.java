@@ -25,7 +25,7 @@ import javax.swing.Icon;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileURL;
-import com.mucommander.core.GlobalLocationHistory;
+import com.mucommander.core.LocationIndex;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionProperties;
 import com.mucommander.ui.action.impl.ShowRecentLocationsQLAction;
@@ -33,7 +33,7 @@ import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.quicklist.QuickListWithIcons;
 
 /**
- * This quick list shows recently accessed locations.
+ * This quick list shows recently accessed locations, the most frequently and recently accessed ones first.
  * 
  * @author Arik Hadas
  */
@@ -56,7 +56,7 @@ public class RecentLocationsQL extends QuickListWithIcons<FileURL> {
 
 	@Override
     public FileURL[] getData() {
-		List<FileURL> list = GlobalLocationHistory.Instance().getHistory();
+		List<FileURL> list = LocationIndex.Instance().getVisitedLocations();
 		
 		// Remove currently presented location from the list
 		list.remove(folderPanel.getCurrentFolder().getURL());
@@ -21,7 +21,7 @@ package com.mucommander.ui.main.quicklist;
 import javax.swing.Icon;
 
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.core.VolumeService;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionProperties;
 import com.mucommander.ui.action.impl.ShowRootFoldersQLAction;
@@ -46,12 +46,17 @@ public class RootFoldersQL extends QuickListWithIcons<AbstractFile> {
 	
 	@Override
 	protected Icon itemToIcon(AbstractFile item) {
+		// Use the icon resolved by the volume service, if any
+		Icon icon = VolumeService.Instance().getIcon(item);
+		if (icon != null)
+			return icon;
+
 		return FileIcons.hasProperSystemIcons()?FileIcons.getSystemFileIcon(item):null;
 	}
 
 	@Override
 	protected AbstractFile[] getData() {
-		return LocalFile.getVolumes();
+		return VolumeService.Instance().getAllVolumes();
 	}
 
 	@Override
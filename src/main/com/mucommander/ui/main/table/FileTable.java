@@ -57,6 +57,7 @@ import com.mucommander.commons.collections.Enumerator;
 import com.mucommander.commons.conf.ConfigurationEvent;
 import com.mucommander.commons.conf.ConfigurationListener;
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.commons.runtime.OsVersion;
@@ -181,6 +182,9 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     /** Wrapper of presentation adjustments for the file-table */
     private FileTableWrapperForDisplay scrollpaneWrapper;
 
+    /** Snapshots of the folders recently displayed by this table */
+    private FolderSnapshotCache snapshotCache = new FolderSnapshotCache();
+
     public FileTable(MainFrame mainFrame, FolderPanel folderPanel, FileTableConfiguration conf) {
         super(new FileTableModel(), new FileTableColumnModel(conf));
 
@@ -502,8 +506,53 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         // Changes the current folder in the swing thread to make sure that repaints cannot
         // happen in the middle of the operation - this is used to prevent flickering, badly
         // refreshed frames and such unpleasant graphical artifacts.
-        Runnable folderChangeThread = new FolderChangeThread(folder, children, markedFiles, fileToSelect);
+        runFolderChange(new FolderChangeThread(folder, children, markedFiles, fileToSelect));
+    }
+
+    /**
+     * Returns the most recent snapshot of the given folder taken by this table when it was left, <code>null</code>
+     * if there is none.
+     *
+     * @param folderURL URL of the folder to look for
+     * @return the most recent snapshot of the given folder, <code>null</code> if there is none
+     */
+    public FolderSnapshot getFolderSnapshot(FileURL folderURL) {
+        return snapshotCache.get(folderURL);
+    }
+
+    /**
+     * Takes a snapshot of the current folder, capturing its sorted contents, selected file and scroll position.
+     * Taking a snapshot is a constant-time operation, the returned snapshot can be kept around and restored later
+     * using {@link #restoreFolderSnapshot(FolderSnapshot)}. This method must be called from the event dispatch thread.
+     *
+     * @return a snapshot of the current folder, <code>null</code> if there is no current folder
+     */
+    public FolderSnapshot createFolderSnapshot() {
+        int scrollPosition = scrollpaneWrapper==null?0:scrollpaneWrapper.getViewport().getViewPosition().y;
+        return tableModel.createSnapshot(getSelectedFile(), scrollPosition);
+    }
+
+    /**
+     * Changes the current folder to the one of the given snapshot, restoring its sorted contents, selected file and
+     * scroll position without any I/O. Marked files are cleared.
+     *
+     * <p>Like {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile)}, this method returns only when
+     * the table has been updated and MUST be synchronized externally to ensure it is never called concurrently with
+     * other folder changes.</p>
+     *
+     * @param snapshot the snapshot to restore
+     */
+    public void restoreFolderSnapshot(FolderSnapshot snapshot) {
+        // Stop quick search in case it was being used before folder change
+        quickSearch.stop();
 
+        runFolderChange(new FolderChangeThread(snapshot));
+    }
+
+    /**
+     * Runs the given folder change in the swing thread and waits for it to complete.
+     */
+    private void runFolderChange(Runnable folderChangeThread) {
         // Wait for the task to complete, so that we return only when the folder has actually been changed and the
         // table updated to reflect the new folder.
         // Note: we use a wait/notify scheme rather than calling SwingUtilities#invokeAndWait to avoid deadlocks
@@ -1493,6 +1542,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             // Since listeners are stored by MuConfiguration in a hash map, order is pretty much random.
             // So CustomDateFormat#updateDateFormat() has to be called before to ensure that is uses the new date format.
             CustomDateFormat.updateDateFormat();
+            FileTableModel.cellFormatChanged();
             tableModel.fillCellCache();
             resizeAndRepaint();
         }
@@ -1824,6 +1874,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         private AbstractFile[] children;
         private FileSet        markedFiles;
         private AbstractFile   selectedFile;
+        private FolderSnapshot snapshot;
 
         private FolderChangeThread(AbstractFile folder, AbstractFile[] children, FileSet markedFiles, AbstractFile selectedFile) {
             this.folder       = folder;
@@ -1832,10 +1883,34 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             this.selectedFile = selectedFile;
         }
 
+        private FolderChangeThread(FolderSnapshot snapshot) {
+            this.folder       = snapshot.getFolder();
+            this.selectedFile = snapshot.getSelectedFile();
+            this.snapshot     = snapshot;
+        }
+
+        /**
+         * Keeps a snapshot of the current folder before it is left, so that it can be displayed again instantly.
+         */
+        private void snapshotCurrentFolder() {
+            AbstractFile currentFolder = tableModel.getCurrentFolder();
+            if(currentFolder==null || currentFolder.equalsCanonical(folder))
+                return;
+
+            FolderSnapshot currentSnapshot = createFolderSnapshot();
+            if(currentSnapshot!=null)
+                snapshotCache.add(currentSnapshot);
+        }
+
         public void run() {
             try {
+                snapshotCurrentFolder();
+
                 // Set the new current folder.
-                tableModel.setCurrentFolder(folder, children);
+                if(snapshot==null)
+                    tableModel.setCurrentFolder(folder, children);
+                else
+                    tableModel.restoreSnapshot(snapshot);
 
                 // Update the visibility state of conditional columns
                 FileTableColumnModel columnModel = getFileTableColumnModel();
@@ -1853,8 +1928,9 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 }
 
                 // Sort the new folder using the current sort criteria, ascending/descending order and
-                // 'show folders first' values.
-                tableModel.sortRows();
+                // 'show folders first' values. Snapshots are already sorted, unless the criteria have changed since.
+                if(snapshot==null || !snapshot.isSortedBy(sortInfo))
+                    tableModel.sortRows();
 
                 // Computes the index of the new row selection.
                 int rowToSelect;
@@ -1890,6 +1966,16 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 }
 
                 resizeAndRepaint();
+
+                // Restore the scroll position the folder was left at
+                if(snapshot!=null && scrollpaneWrapper!=null) {
+                    final int scrollPosition = snapshot.getScrollPosition();
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            scrollpaneWrapper.getViewport().setViewPosition(new Point(0, scrollPosition));
+                        }
+                    });
+                }
             }
 
             catch(Throwable e) {
@@ -59,6 +59,9 @@ public class FileTableModel extends AbstractTableModel {
     /** Cell values cache */
     private Object cellValuesCache[][];
 
+    /** True if the index and cell values arrays are shared with a {@link FolderSnapshot} and must be copied before being modified */
+    private boolean arraysShared;
+
     /** Marked rows array */
     private boolean rowMarked[];
 	
@@ -77,6 +80,9 @@ public class FileTableModel extends AbstractTableModel {
     /** SizeFormat format used to create the size column's string */
     private static int sizeFormat;
 
+    /** Incremented each time the format of the cell values changes, allows to detect outdated snapshots */
+    private static int cellFormatVersion;
+
     /** String used as size information for directories */
     public final static String DIRECTORY_SIZE_STRING = "<DIR>";
 
@@ -100,6 +106,20 @@ public class FileTableModel extends AbstractTableModel {
             sizeFormat = SizeFormat.DIGITS_FULL | SizeFormat.UNIT_NONE;
 
         sizeFormat |= SizeFormat.INCLUDE_SPACE;
+
+        cellFormatChanged();
+    }
+
+    /**
+     * Notifies this class that the format of the cell values has changed, i.e. that the cell values of
+     * {@link FolderSnapshot snapshots} taken before now need to be formatted again when restored.
+     */
+    static synchronized void cellFormatChanged() {
+        cellFormatVersion++;
+    }
+
+    private static synchronized int getCellFormatVersion() {
+        return cellFormatVersion;
     }
 
 
@@ -183,6 +203,7 @@ public class FileTableModel extends AbstractTableModel {
         this.currentFolder = (folder instanceof CachedFile)?folder:new CachedFile(folder, true);
 
         this.parent = currentFolder.getParent();    // Note: the returned parent is a CachedFile instance
+        this.currentFolderDateSnapshot = currentFolder.getDate();
         if(parent!=null) {
             // Pre-fetch the attributes that are used by the table renderer and some actions.
             prefetchCachedFileAttributes(parent);
@@ -210,10 +231,82 @@ public class FileTableModel extends AbstractTableModel {
 
         // Init and fill cell cache to speed up table even more
         this.cellValuesCache = new Object[nbRows][Column.values().length-1];
+        this.arraysShared = false;
 
         fillCellCache();
     }
 
+    /**
+     * Creates a {@link FolderSnapshot} of the current folder, that can later be restored using
+     * {@link #restoreSnapshot(FolderSnapshot)}. Returns <code>null</code> if there is no current folder.
+     *
+     * <p>The snapshot shares its arrays with this model, which copies them before modifying them, so taking a
+     * snapshot is a constant-time operation.</p>
+     *
+     * @param selectedFile the currently selected file, may be <code>null</code>
+     * @param scrollPosition the current vertical scroll position of the table
+     * @return a snapshot of the current folder, <code>null</code> if there is no current folder
+     */
+    synchronized FolderSnapshot createSnapshot(AbstractFile selectedFile, int scrollPosition) {
+        if(currentFolder==null)
+            return null;
+
+        arraysShared = true;
+        return new FolderSnapshot(currentFolder, parent, currentFolderDateSnapshot, cachedFiles, fileArrayIndex,
+                cellValuesCache, getCellFormatVersion(), sortInfo, selectedFile, scrollPosition);
+    }
+
+    /**
+     * Restores the current folder and its children from the given snapshot. Contrary to
+     * {@link #setCurrentFolder(AbstractFile, AbstractFile[])}, this method is not I/O-bound: files are neither listed
+     * nor have their attributes fetched, and cell values are formatted again only if their format changed since the
+     * snapshot was taken. The rows must be sorted again if {@link FolderSnapshot#isSortedBy(SortInfo)} returns
+     * <code>false</code>.
+     *
+     * <p>The snapshot's arrays are shared rather than copied, making this a constant-time operation unless the cell
+     * values need to be formatted again. They are copied only if and when this model needs to modify them.</p>
+     *
+     * @param snapshot the snapshot to restore
+     */
+    synchronized void restoreSnapshot(FolderSnapshot snapshot) {
+        this.currentFolder = snapshot.getCachedFolder();
+        this.parent = snapshot.getParent();
+        this.currentFolderDateSnapshot = snapshot.getFolderDate();
+
+        // The snapshot may be restored again later on: the arrays that this model modifies in place are copied
+        // the first time they need to be modified
+        this.cachedFiles = snapshot.getCachedFiles();
+        this.fileArrayIndex = snapshot.getFileArrayIndex();
+        this.cellValuesCache = snapshot.getCellValuesCache();
+        this.arraysShared = true;
+
+        // Reset marked files
+        this.rowMarked = new boolean[getRowCount()];
+        this.markedTotalSize = 0;
+        this.nbRowsMarked = 0;
+
+        if(snapshot.getCellFormatVersion()!=getCellFormatVersion())
+            fillCellCache();
+    }
+
+    /**
+     * Copies the index and cell values arrays if they are shared with a {@link FolderSnapshot}, so that they can be
+     * modified without affecting the snapshot. This method must be called before modifying those arrays.
+     */
+    private void copySharedArrays() {
+        if(!arraysShared)
+            return;
+
+        fileArrayIndex = fileArrayIndex.clone();
+        int nbRows = cellValuesCache.length;
+        Object cellValuesCopy[][] = new Object[nbRows][];
+        for(int i=0; i<nbRows; i++)
+            cellValuesCopy[i] = cellValuesCache[i].clone();
+        cellValuesCache = cellValuesCopy;
+
+        arraysShared = false;
+    }
+
     /**
      * Pre-fetch the attributes that are used by the table renderer and some actions from the given CachedFile.
      * By doing so, the attributes will be available when the associated getters are called and thus the methods won't
@@ -241,12 +334,13 @@ public class FileTableModel extends AbstractTableModel {
         int len = cellValuesCache.length;
         if(len==0)
             return;
+
+        copySharedArrays();
 		
         // Special '..' file
         if(parent!=null) {
             cellValuesCache[0][Column.NAME.ordinal()-1] = "..";
             cellValuesCache[0][Column.SIZE.ordinal()-1] = DIRECTORY_SIZE_STRING;
-            currentFolderDateSnapshot = currentFolder.getDate();
             cellValuesCache[0][Column.DATE.ordinal()-1] =	CustomDateFormat.format(new Date(currentFolderDateSnapshot));
             // Don't display parent's permissions as they can have a different format from the folder contents
             // (e.g. for archives) and this looks weird
@@ -600,6 +694,7 @@ public class FileTableModel extends AbstractTableModel {
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
      */
     synchronized void sortRows()  {
+        copySharedArrays();
         sort(getFileComparator(sortInfo), 0, fileArrayIndex.length-1);
     }
 
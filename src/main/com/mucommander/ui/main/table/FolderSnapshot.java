@@ -0,0 +1,167 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.table;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.CachedFile;
+
+/**
+ * A snapshot of the state of a {@link FileTable} for a given folder: the folder's children with their pre-fetched
+ * attributes, their sorted order, the formatted cell values, as well as the selected file and scroll position.
+ *
+ * <p>Snapshots are taken by {@link FileTable} when leaving a folder, and allow the folder to be displayed again
+ * instantly, without listing it, fetching the files' attributes, sorting and formatting them again. Since the
+ * snapshot may be outdated by the time it is restored, the folder should be revalidated in the background
+ * after it has been restored, by comparing the folder's current date with {@link #getFolderDate()}.</p>
+ *
+ * <p>Instances are immutable once created: the arrays they hold are shared with the table model they were taken
+ * from or restored to, which copies them before modifying them.</p>
+ *
+ * @author Maxence Bernard
+ * @see FolderSnapshotCache
+ */
+public class FolderSnapshot {
+
+    /** The folder, as a CachedFile instance */
+    private final AbstractFile folder;
+    /** The folder's parent, as a CachedFile instance, may be null */
+    private final AbstractFile parent;
+    /** Date of the folder when its contents were listed */
+    private final long folderDate;
+    /** The folder's children, as CachedFile instances */
+    private final AbstractFile cachedFiles[];
+    /** Sorted order of the children */
+    private final int fileArrayIndex[];
+    /** Formatted cell values */
+    private final Object cellValuesCache[][];
+    /** Version of the cell formats at the time the cell values were formatted */
+    private final int cellFormatVersion;
+
+    /** Sort criterion the children were sorted by */
+    private final Column sortCriterion;
+    /** Sort order the children were sorted in */
+    private final boolean ascendingOrder;
+    /** Whether folders were displayed first */
+    private final boolean foldersFirst;
+
+    /** The file that was selected when the snapshot was taken, may be null */
+    private final AbstractFile selectedFile;
+    /** Vertical scroll position of the table when the snapshot was taken */
+    private final int scrollPosition;
+
+    FolderSnapshot(AbstractFile folder, AbstractFile parent, long folderDate, AbstractFile cachedFiles[], int fileArrayIndex[],
+                   Object cellValuesCache[][], int cellFormatVersion, SortInfo sortInfo, AbstractFile selectedFile, int scrollPosition) {
+        this.folder = folder;
+        this.parent = parent;
+        this.folderDate = folderDate;
+        this.cachedFiles = cachedFiles;
+        this.fileArrayIndex = fileArrayIndex;
+        this.cellValuesCache = cellValuesCache;
+        this.cellFormatVersion = cellFormatVersion;
+        this.sortCriterion = sortInfo.getCriterion();
+        this.ascendingOrder = sortInfo.getAscendingOrder();
+        this.foldersFirst = sortInfo.getFoldersFirst();
+        this.selectedFile = selectedFile;
+        this.scrollPosition = scrollPosition;
+    }
+
+    /**
+     * Returns the folder this snapshot was taken of. The returned file is not a {@link CachedFile}, its attributes
+     * are fetched from the underlying filesystem.
+     *
+     * @return the folder this snapshot was taken of
+     */
+    public AbstractFile getFolder() {
+        return (folder instanceof CachedFile)?((CachedFile)folder).getProxiedFile():folder;
+    }
+
+    /**
+     * Returns the date of the folder when its contents were listed. If the folder's date has changed since then,
+     * the snapshot is outdated and the folder should be refreshed.
+     *
+     * @return the date of the folder when its contents were listed
+     */
+    public long getFolderDate() {
+        return folderDate;
+    }
+
+    /**
+     * Returns the file that was selected when the snapshot was taken, <code>null</code> if there was none.
+     *
+     * @return the file that was selected when the snapshot was taken
+     */
+    public AbstractFile getSelectedFile() {
+        return selectedFile;
+    }
+
+    /**
+     * Returns the vertical scroll position of the table when the snapshot was taken.
+     *
+     * @return the vertical scroll position of the table when the snapshot was taken
+     */
+    public int getScrollPosition() {
+        return scrollPosition;
+    }
+
+    /**
+     * Returns the number of files the snapshot contains, excluding the parent folder.
+     *
+     * @return the number of files the snapshot contains
+     */
+    public int getFileCount() {
+        return cachedFiles.length;
+    }
+
+    /**
+     * Returns <code>true</code> if the children were sorted using the criteria described by the given
+     * <code>SortInfo</code>.
+     *
+     * @param sortInfo the sort criteria to compare with
+     * @return <code>true</code> if the children were sorted using the given criteria
+     */
+    boolean isSortedBy(SortInfo sortInfo) {
+        return sortCriterion==sortInfo.getCriterion()
+            && ascendingOrder==sortInfo.getAscendingOrder()
+            && foldersFirst==sortInfo.getFoldersFirst();
+    }
+
+    AbstractFile getCachedFolder() {
+        return folder;
+    }
+
+    AbstractFile getParent() {
+        return parent;
+    }
+
+    AbstractFile[] getCachedFiles() {
+        return cachedFiles;
+    }
+
+    int[] getFileArrayIndex() {
+        return fileArrayIndex;
+    }
+
+    Object[][] getCellValuesCache() {
+        return cellValuesCache;
+    }
+
+    int getCellFormatVersion() {
+        return cellFormatVersion;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.table;
+
+import java.lang.ref.SoftReference;
+
+import com.mucommander.cache.FastLRUCache;
+import com.mucommander.cache.LRUCache;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * A small LRU cache of the {@link FolderSnapshot snapshots} of the folders that were recently displayed by a
+ * {@link FileTable}. Snapshots are looked up by folder URL, credentials excluded.
+ *
+ * <p>The cache holds at most {@link #DEFAULT_CAPACITY} snapshots, but a snapshot holds the files and cell values of a
+ * whole folder, which may contain a great many files. Snapshots are thus softly referenced: those of large folders
+ * are reclaimed by the garbage collector when memory runs low, and the folders are then listed again.</p>
+ *
+ * @author Maxence Bernard
+ */
+public class FolderSnapshotCache {
+
+    /** Maximum number of snapshots a cache holds */
+    public final static int DEFAULT_CAPACITY = 8;
+
+    /** Folder URL -> soft reference to the snapshot */
+    private LRUCache<String, SoftReference<FolderSnapshot>> snapshots;
+
+    public FolderSnapshotCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FolderSnapshotCache(int capacity) {
+        snapshots = new FastLRUCache<String, SoftReference<FolderSnapshot>>(capacity);
+    }
+
+    /**
+     * Adds the given snapshot to the cache, replacing any previous snapshot of the same folder.
+     *
+     * @param snapshot the snapshot to add
+     */
+    public void add(FolderSnapshot snapshot) {
+        snapshots.add(getKey(snapshot.getFolder().getURL()), new SoftReference<FolderSnapshot>(snapshot));
+    }
+
+    /**
+     * Returns the most recent snapshot of the given folder, <code>null</code> if there is none or if it has been
+     * reclaimed by the garbage collector.
+     *
+     * @param folderURL URL of the folder to look for
+     * @return the most recent snapshot of the given folder, <code>null</code> if there is none
+     */
+    public FolderSnapshot get(FileURL folderURL) {
+        SoftReference<FolderSnapshot> snapshot = snapshots.get(getKey(folderURL));
+        return snapshot==null?null:snapshot.get();
+    }
+
+    /**
+     * Removes all snapshots from the cache.
+     */
+    public void clear() {
+        snapshots.clearAll();
+    }
+
+    private static String getKey(FileURL folderURL) {
+        return folderURL.toString(false);
+    }
+}
@@ -2,6 +2,7 @@ package com.mucommander.ui.main.tabs;
 
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.core.LocalLocationHistory;
+import com.mucommander.ui.main.table.FolderSnapshot;
 
 public class ConfFileTableTab extends FileTableTab {
 
@@ -53,4 +54,14 @@ public class ConfFileTableTab extends FileTableTab {
 	public LocalLocationHistory getLocationHistory() {
 		return null;
 	}
+
+	@Override
+	public void setSnapshot(FolderSnapshot snapshot) {
+		// configuration tabs are never displayed, they hold no snapshot
+	}
+
+	@Override
+	public FolderSnapshot getSnapshot() {
+		return null;
+	}
 }
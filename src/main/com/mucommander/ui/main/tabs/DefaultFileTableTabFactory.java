@@ -21,6 +21,7 @@ package com.mucommander.ui.main.tabs;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.core.LocalLocationHistory;
 import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.table.FolderSnapshot;
 import com.mucommander.ui.tabs.TabFactory;
 
 /**
@@ -57,6 +58,9 @@ public class DefaultFileTableTabFactory implements TabFactory<FileTableTab, File
 		/** History of accessed location within the tab */
 		private LocalLocationHistory locationHistory;
 
+		/** Snapshot of the presented folder, kept while the tab is not selected */
+		private FolderSnapshot snapshot;
+
 		/**
 		 * Private constructor
 		 * 
@@ -105,6 +109,16 @@ public class DefaultFileTableTabFactory implements TabFactory<FileTableTab, File
 		public LocalLocationHistory getLocationHistory() {
 			return locationHistory;
 		}
+
+		@Override
+		public void setSnapshot(FolderSnapshot snapshot) {
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public FolderSnapshot getSnapshot() {
+			return snapshot;
+		}
 		
 		@Override
 		public boolean equals(Object obj) {
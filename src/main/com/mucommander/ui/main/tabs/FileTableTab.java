@@ -23,6 +23,7 @@ import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.util.StringUtils;
 import com.mucommander.core.LocalLocationHistory;
+import com.mucommander.ui.main.table.FolderSnapshot;
 import com.mucommander.ui.tabs.Tab;
 
 /**
@@ -114,4 +115,19 @@ public abstract class FileTableTab implements Tab {
 	 * @return tracker of the last accessed locations within the tab
 	 */
 	public abstract LocalLocationHistory getLocationHistory();
+
+	/**
+	 * Keeps the given snapshot of the folder presented in the tab, so that the folder can be displayed again
+	 * instantly when the tab is selected
+	 * 
+	 * @param snapshot snapshot of the folder presented in the tab, null to release the snapshot
+	 */
+	public abstract void setSnapshot(FolderSnapshot snapshot);
+
+	/**
+	 * Returns the snapshot of the folder presented in the tab that was taken when the tab was last deselected
+	 * 
+	 * @return snapshot of the folder presented in the tab, null if the tab holds no snapshot
+	 */
+	public abstract FolderSnapshot getSnapshot();
 }
@@ -18,12 +18,19 @@
 
 package com.mucommander.ui.main.tabs;
 
+import java.util.Iterator;
+import java.util.LinkedList;
+
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.ui.event.LocationEvent;
 import com.mucommander.ui.event.LocationListener;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.table.FolderSnapshot;
 import com.mucommander.ui.tabs.HideableTabbedPane;
 import com.mucommander.ui.tabs.TabFactory;
 import com.mucommander.ui.tabs.TabUpdater;
@@ -45,6 +52,12 @@ public class FileTableTabs extends HideableTabbedPane<FileTableTab> implements L
 	/** Factory of instances of FileTableTab */
 	private TabFactory<FileTableTab, FileTableTab> clonedTabsFactory;
 
+	/** The tab whose location is displayed in the folder panel */
+	private FileTableTab displayedTab;
+
+	/** Tabs holding a snapshot of their folder, from the least to the most recently deselected */
+	private LinkedList<FileTableTab> snapshotTabs = new LinkedList<FileTableTab>();
+
 	public FileTableTabs(MainFrame mainFrame, FolderPanel folderPanel, ConfFileTableTab[] initialTabs) {
 		super(new FileTableTabsWithoutHeadersViewerFactory(folderPanel), new FileTableTabsWithHeadersViewerFactory(mainFrame, folderPanel));
 
@@ -68,15 +81,100 @@ public class FileTableTabs extends HideableTabbedPane<FileTableTab> implements L
 		show(index);
 	}
 
+	/**
+	 * Displays the location of the tab at the given index in the folder panel. The folder displayed by the
+	 * previous tab is kept as a snapshot in that tab, so that it can be displayed again instantly when the tab is
+	 * selected back. Tabs that have not been selected for the longest time release their snapshot when the total
+	 * number of files held by snapshots exceeds {@link MuPreferences#TAB_SNAPSHOTS_MAX_FILES}.
+	 * This method must be called from the event dispatch thread.
+	 */
 	@Override
 	protected void show(final int tabIndex) {
-		folderPanel.tryChangeCurrentFolderInternal(getTab(tabIndex).getLocation(), new Callback() {
+		FileTableTab tab = getTab(tabIndex);
+
+		// The tab's location is already displayed or being displayed
+		if (tab == displayedTab)
+			return;
+
+		if (displayedTab != null && containsTab(displayedTab))
+			keepSnapshot(displayedTab);
+		displayedTab = tab;
+
+		FolderSnapshot snapshot = releaseSnapshot(tab);
+		folderPanel.tryChangeCurrentFolderInternal(tab.getLocation(), snapshot, new Callback() {
 			public void call() {
 				fireActiveTabChanged();
 			}
 		});
 	};
 
+	/**
+	 * Keeps a snapshot of the folder currently displayed in the folder panel in the given tab, if the folder is
+	 * the tab's location, and hibernates the tabs that have not been selected for the longest time if the snapshots
+	 * exceed their memory budget.
+	 */
+	private void keepSnapshot(FileTableTab tab) {
+		FolderSnapshot snapshot = folderPanel.getFileTable().createFolderSnapshot();
+		if (snapshot == null || !snapshot.getFolder().getURL().equals(tab.getLocation()))
+			return;
+
+		tab.setSnapshot(snapshot);
+		snapshotTabs.remove(tab);
+		snapshotTabs.addLast(tab);
+
+		hibernateTabs(MuConfigurations.getPreferences().getVariable(MuPreference.TAB_SNAPSHOTS_MAX_FILES, MuPreferences.DEFAULT_TAB_SNAPSHOTS_MAX_FILES));
+	}
+
+	/**
+	 * Removes the snapshot held by the given tab and returns it, <code>null</code> if the tab holds no snapshot or if
+	 * the snapshot is not the one of the tab's location.
+	 */
+	private FolderSnapshot releaseSnapshot(FileTableTab tab) {
+		FolderSnapshot snapshot = tab.getSnapshot();
+		tab.setSnapshot(null);
+		snapshotTabs.remove(tab);
+
+		return snapshot != null && snapshot.getFolder().getURL().equals(tab.getLocation()) ? snapshot : null;
+	}
+
+	/**
+	 * Releases the snapshots of the least recently deselected tabs until the total number of files held by the
+	 * snapshots of the remaining tabs does not exceed the given maximum. The snapshots of closed tabs are released
+	 * first.
+	 */
+	private void hibernateTabs(int maxFiles) {
+		int nbFiles = 0;
+		Iterator<FileTableTab> iterator = snapshotTabs.iterator();
+		while (iterator.hasNext()) {
+			FileTableTab tab = iterator.next();
+			FolderSnapshot snapshot = tab.getSnapshot();
+			if (snapshot == null || !containsTab(tab)) {
+				tab.setSnapshot(null);
+				iterator.remove();
+			}
+			else
+				nbFiles += snapshot.getFileCount();
+		}
+
+		while (nbFiles > maxFiles && !snapshotTabs.isEmpty()) {
+			FileTableTab tab = snapshotTabs.removeFirst();
+			nbFiles -= tab.getSnapshot().getFileCount();
+			tab.setSnapshot(null);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the given tab instance is one of the tabs. Tabs are compared by reference since
+	 * different tabs may present the same location.
+	 */
+	private boolean containsTab(FileTableTab tab) {
+		for (FileTableTab t : getTabs())
+			if (t == tab)
+				return true;
+
+		return false;
+	}
+
 	/**
 	 * Return the currently selected tab
 	 * 
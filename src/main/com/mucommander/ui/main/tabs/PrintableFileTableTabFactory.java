@@ -20,6 +20,7 @@ package com.mucommander.ui.main.tabs;
 
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.core.LocalLocationHistory;
+import com.mucommander.ui.main.table.FolderSnapshot;
 import com.mucommander.ui.tabs.TabFactory;
 
 /**
@@ -80,6 +81,16 @@ public class PrintableFileTableTabFactory implements TabFactory<FileTableTab, Fi
 		public LocalLocationHistory getLocationHistory() {
 			return tab.getLocationHistory();
 		}
+
+		@Override
+		public void setSnapshot(FolderSnapshot snapshot) {
+			tab.setSnapshot(snapshot);
+		}
+
+		@Override
+		public FolderSnapshot getSnapshot() {
+			return tab.getSnapshot();
+		}
 		
 		@Override
 		public boolean equals(Object obj) {
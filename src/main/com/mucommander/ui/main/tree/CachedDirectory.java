@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.impl.ProxyFile;
+import com.mucommander.core.LocationIndex;
 import com.mucommander.ui.icon.CustomFileIconProvider;
 import com.mucommander.ui.icon.FileIcons;
 import com.mucommander.ui.icon.IconManager;
@@ -114,6 +115,10 @@ public class CachedDirectory extends ProxyFile {
         }
 
         Arrays.sort(children, cache.getSort());
+
+        // Make the cached folders available for jumping to them
+        LocationIndex.Instance().addLocations(children);
+
         Icon icons[] = new Icon[children.length];
         for (int i = 0; i < children.length; i++) {
             icons[i] = FileIcons.getFileIcon(children[i]);
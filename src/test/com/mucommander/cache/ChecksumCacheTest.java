@@ -0,0 +1,232 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.DummyFile;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * A test case for {@link ChecksumCache}: invalidation of the checksums of files that have changed, eviction of the
+ * least recently used checksums, and saving and loading the cache.
+ *
+ * @author Maxence Bernard
+ */
+public class ChecksumCacheTest {
+
+    private final static String ALGORITHM = "CRC32";
+
+    /** A date older than {@link ChecksumCache#RECENT_FILE_DELAY} */
+    private final static long DATE = System.currentTimeMillis()-3600000;
+
+    private File cacheFile;
+
+    /**
+     * A file whose size and date can be changed.
+     */
+    private static class TestFile extends DummyFile {
+        private long size = 1024;
+        private long date = DATE;
+
+        private TestFile(String path) throws MalformedURLException {
+            super(FileURL.getFileURL("file://"+path));
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public long getDate() {
+            return date;
+        }
+
+        @Override
+        public String getCanonicalPath() {
+            return getAbsolutePath();
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        cacheFile = File.createTempFile("ChecksumCacheTest", ".txt");
+        cacheFile.delete();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        cacheFile.delete();
+    }
+
+    /**
+     * Adds the checksum of the given file to the cache, with the file's current size and date.
+     */
+    private static void put(ChecksumCache cache, TestFile file, String checksum) {
+        cache.put(file, ALGORITHM, file.size, file.date, checksum);
+    }
+
+    /**
+     * Asserts that a checksum is found for the same file and algorithm only, regardless of the algorithm's case.
+     */
+    @Test
+    public void testPutGet() throws IOException {
+        ChecksumCache cache = new ChecksumCache(10, null);
+        TestFile file = new TestFile("/a");
+
+        assert cache.get(file, ALGORITHM)==null;
+        put(cache, file, "12345678");
+
+        assert "12345678".equals(cache.get(file, ALGORITHM));
+        assert "12345678".equals(cache.get(file, ALGORITHM.toLowerCase()));
+        assert cache.get(file, "MD5")==null;
+        assert cache.get(new TestFile("/b"), ALGORITHM)==null;
+
+        assert cache.getHitCount()==2;
+        assert cache.getMissCount()==3;
+    }
+
+    /**
+     * Asserts that the checksum of a file whose size has changed is invalidated.
+     */
+    @Test
+    public void testSizeChanged() throws IOException {
+        ChecksumCache cache = new ChecksumCache(10, null);
+        TestFile file = new TestFile("/a");
+        put(cache, file, "12345678");
+
+        file.size++;
+        assert cache.get(file, ALGORITHM)==null;
+        assert cache.getInvalidationCount()==1;
+        assert cache.size()==0;
+
+        // Restoring the size does not restore the invalidated checksum
+        file.size--;
+        assert cache.get(file, ALGORITHM)==null;
+    }
+
+    /**
+     * Asserts that the checksum of a file whose date has changed is invalidated.
+     */
+    @Test
+    public void testDateChanged() throws IOException {
+        ChecksumCache cache = new ChecksumCache(10, null);
+        TestFile file = new TestFile("/a");
+        put(cache, file, "12345678");
+
+        file.date += 1000;
+        assert cache.get(file, ALGORITHM)==null;
+        assert cache.getInvalidationCount()==1;
+        assert cache.size()==0;
+    }
+
+    /**
+     * Asserts that checksums are not cached when the file has changed since it was read, or was modified too recently.
+     */
+    @Test
+    public void testNotCached() throws IOException {
+        ChecksumCache cache = new ChecksumCache(10, null);
+        TestFile file = new TestFile("/a");
+
+        cache.put(file, ALGORITHM, file.size+1, file.date, "12345678");
+        cache.put(file, ALGORITHM, file.size, file.date-1000, "12345678");
+        assert cache.size()==0;
+
+        file.date = System.currentTimeMillis();
+        put(cache, file, "12345678");
+        assert cache.size()==0;
+
+        assert new ChecksumCache(0, null).get(file, ALGORITHM)==null;
+    }
+
+    /**
+     * Asserts that the least recently used checksum is evicted once the cache is full.
+     */
+    @Test
+    public void testEviction() throws IOException {
+        ChecksumCache cache = new ChecksumCache(3, null);
+        TestFile files[] = new TestFile[4];
+        for(int i=0; i<files.length; i++)
+            files[i] = new TestFile("/file"+i);
+
+        for(int i=0; i<3; i++)
+            put(cache, files[i], "checksum"+i);
+
+        // The first file becomes the most recently used one, the second one is evicted
+        assert cache.get(files[0], ALGORITHM)!=null;
+        put(cache, files[3], "checksum3");
+
+        assert cache.size()==3;
+        assert cache.get(files[1], ALGORITHM)==null;
+        assert "checksum0".equals(cache.get(files[0], ALGORITHM));
+        assert "checksum2".equals(cache.get(files[2], ALGORITHM));
+        assert "checksum3".equals(cache.get(files[3], ALGORITHM));
+    }
+
+    /**
+     * Saves a cache and loads it back, and asserts that the checksums and their order of use are preserved.
+     */
+    @Test
+    public void testSaveLoad() throws IOException {
+        ChecksumCache cache = new ChecksumCache(3, cacheFile);
+        TestFile files[] = new TestFile[4];
+        for(int i=0; i<files.length; i++)
+            files[i] = new TestFile("/file"+i);
+
+        for(int i=0; i<3; i++)
+            put(cache, files[i], "checksum"+i);
+        cache.get(files[0], ALGORITHM);
+        cache.save();
+        assert cacheFile.exists();
+
+        ChecksumCache loadedCache = new ChecksumCache(3, cacheFile);
+        loadedCache.load();
+        assert loadedCache.size()==3;
+
+        // The least recently used checksum is still the second one
+        put(loadedCache, files[3], "checksum3");
+        assert loadedCache.get(files[1], ALGORITHM)==null;
+        assert "checksum0".equals(loadedCache.get(files[0], ALGORITHM));
+        assert "checksum2".equals(loadedCache.get(files[2], ALGORITHM));
+
+        // Checksums loaded are invalidated like the others
+        files[2].size++;
+        assert loadedCache.get(files[2], ALGORITHM)==null;
+    }
+
+    /**
+     * Asserts that a cache that has not changed since it was loaded is not saved.
+     */
+    @Test
+    public void testUnmodifiedNotSaved() throws IOException {
+        ChecksumCache cache = new ChecksumCache(3, cacheFile);
+        cache.load();
+        cache.get(new TestFile("/a"), ALGORITHM);
+        cache.save();
+
+        assert !cacheFile.exists();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link FolderChangeSlot}: folder changes requested by the user supersede one another, while refreshes
+ * never cancel a folder change that is underway.
+ *
+ * @author Maxence Bernard
+ */
+public class FolderChangeSlotTest {
+
+    private FolderChangeSlot<TestTask> slot;
+
+    /**
+     * A folder change that records whether it was superseded.
+     */
+    private static class TestTask implements FolderChangeSlot.Task {
+        private boolean superseded;
+
+        public boolean supersede() {
+            superseded = true;
+            return true;
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        slot = new FolderChangeSlot<TestTask>();
+    }
+
+    /**
+     * Asserts that a refresh does not cancel a folder change requested by the user that is still underway, and is
+     * itself dropped.
+     */
+    @Test
+    public void testRefreshDoesNotCancelUserChange() {
+        TestTask userChange = new TestTask();
+        slot.replace(userChange);
+
+        TestTask refresh = new TestTask();
+        assert !slot.offer(refresh);
+
+        assert !userChange.superseded;
+        assert slot.get()==userChange;
+
+        // The user's folder change completes normally
+        assert slot.release(userChange);
+        assert slot.get()==null;
+    }
+
+    /**
+     * Asserts that a refresh is accepted when no folder change is underway, and that a single refresh is underway at
+     * a time.
+     */
+    @Test
+    public void testRefreshWhenIdle() {
+        TestTask refresh = new TestTask();
+        assert slot.offer(refresh);
+        assert slot.get()==refresh;
+
+        assert !slot.offer(new TestTask());
+        assert slot.get()==refresh;
+
+        assert slot.release(refresh);
+        assert slot.offer(new TestTask());
+    }
+
+    /**
+     * Asserts that a folder change requested by the user supersedes the one underway, whether it is a refresh or
+     * another folder change requested by the user.
+     */
+    @Test
+    public void testUserChangeSupersedes() {
+        TestTask refresh = new TestTask();
+        slot.offer(refresh);
+
+        TestTask userChange1 = new TestTask();
+        assert slot.replace(userChange1)==refresh;
+        assert refresh.superseded;
+
+        TestTask userChange2 = new TestTask();
+        assert slot.replace(userChange2)==userChange1;
+        assert userChange1.superseded;
+        assert !userChange2.superseded;
+
+        // Superseded folder changes do not release the slot when they complete
+        assert !slot.release(refresh);
+        assert !slot.release(userChange1);
+        assert slot.get()==userChange2;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link LocationIndex}: fuzzy matching, ranking of search results and journaling of visits.
+ *
+ * @author Maxence Bernard
+ */
+public class LocationIndexTest {
+
+    private File journalFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        journalFile = File.createTempFile("location_index", ".txt");
+        journalFile.delete();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        journalFile.delete();
+    }
+
+    /**
+     * Returns the number of visits of the given location, as restored in the given index.
+     */
+    private static int getVisits(LocationIndex index, String path) {
+        for (LocationIndex.Location location : index.getVisitStatistics())
+            if (location.getPath().equals(path))
+                return location.getVisits();
+
+        return 0;
+    }
+
+    /**
+     * Asserts that {@link LocationIndex#match(String, String)} matches the query's characters in order, but not
+     * necessarily contiguously.
+     */
+    @Test
+    public void testMatch() {
+        assert LocationIndex.match("doc", "/home/user/documents") > 0;
+        assert LocationIndex.match("hud", "/home/user/documents") > 0;
+        assert LocationIndex.match("", "/home") == 0;
+
+        // Characters in a different order
+        assert LocationIndex.match("cod", "/home/user/documents") == -1;
+        // Characters that are not in the text
+        assert LocationIndex.match("xyz", "/home/user/documents") == -1;
+        // Query longer than the text
+        assert LocationIndex.match("/home/", "/home") == -1;
+    }
+
+    /**
+     * Asserts that contiguous characters and characters starting a path component score higher than scattered ones.
+     */
+    @Test
+    public void testMatchScore() {
+        // Contiguous characters at the beginning of a path component
+        assert LocationIndex.match("doc", "/doc") > LocationIndex.match("doc", "/dxoxc");
+        // Beginning of a path component
+        assert LocationIndex.match("doc", "/doc") > LocationIndex.match("doc", "/xdoc");
+        // Contiguous characters
+        assert LocationIndex.match("doc", "/xdoc") > LocationIndex.match("doc", "/xdxoxc");
+    }
+
+    /**
+     * Asserts that search results only contain matching locations, and that equally matching locations are ranked by
+     * frecency.
+     */
+    @Test
+    public void testSearchRanking() {
+        LocationIndex index = new LocationIndex(null);
+        long now = System.currentTimeMillis();
+
+        index.visit("/b/project", now);
+        for (int i=0; i<3; i++)
+            index.visit("/a/projects", now);
+        index.visit("/c/music", now);
+
+        List<String> results = index.search("proj", 10);
+        assert results.size() == 2;
+        assert "/a/projects".equals(results.get(0));
+        assert "/b/project".equals(results.get(1));
+
+        // A location that was visited long ago ranks lower than one visited once recently
+        index.visit("/d/projects", now - 10*LocationIndex.FRECENCY_HALF_LIFE);
+        index.visit("/d/projects", now - 10*LocationIndex.FRECENCY_HALF_LIFE);
+        results = index.search("proj", 10);
+        assert "/d/projects".equals(results.get(2));
+
+        // The query is not case-sensitive, and trailing separators are ignored
+        index.visit("/e/Photos/", now);
+        results = index.search("PHO", 10);
+        assert results.size() == 1;
+        assert "/e/Photos".equals(results.get(0));
+    }
+
+    /**
+     * Asserts that the best match ranks first when locations have the same frecency, and that the number of results
+     * is capped.
+     */
+    @Test
+    public void testSearchMaxResults() {
+        LocationIndex index = new LocationIndex(null);
+        long now = System.currentTimeMillis();
+
+        index.visit("/x/dxoxcs", now);
+        index.visit("/x/docs", now);
+        index.visit("/x/axdxoxcx", now);
+
+        List<String> results = index.search("doc", 2);
+        assert results.size() == 2;
+        assert "/x/docs".equals(results.get(0));
+        assert "/x/dxoxcs".equals(results.get(1));
+
+        assert index.search("zzz", 2).isEmpty();
+    }
+
+    /**
+     * Asserts that visits are appended to the journal as they happen, restored by a new index, and dropped once the
+     * journal is compacted.
+     */
+    @Test
+    public void testJournal() throws IOException {
+        long now = System.currentTimeMillis();
+
+        LocationIndex index = new LocationIndex(journalFile);
+        index.visit("/a", now);
+        index.visit("/a", now);
+        index.visit("/b", now);
+        assert journalFile.exists();
+
+        // A new index, as on the next run after a crash
+        LocationIndex restoredIndex = new LocationIndex(journalFile);
+        restoredIndex.loadJournal();
+        assert getVisits(restoredIndex, "/a") == 2;
+        assert getVisits(restoredIndex, "/b") == 1;
+        assert restoredIndex.getRank("/a") > restoredIndex.getRank("/b");
+
+        // Once the visits are saved to the snapshot, the journal is emptied
+        index.compactJournal();
+        assert !journalFile.exists();
+        restoredIndex = new LocationIndex(journalFile);
+        restoredIndex.loadJournal();
+        assert restoredIndex.getVisitStatistics().isEmpty();
+
+        // Visits are journaled again after the journal is compacted
+        index.visit("/c", now);
+        restoredIndex = new LocationIndex(journalFile);
+        restoredIndex.loadJournal();
+        assert getVisits(restoredIndex, "/c") == 1;
+        assert getVisits(restoredIndex, "/a") == 0;
+        index.compactJournal();
+    }
+
+    /**
+     * Asserts that the most recent statistics of a location are restored from the journal, and that lines that
+     * cannot be parsed are ignored.
+     */
+    @Test
+    public void testJournalRecovery() throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(journalFile), "UTF-8");
+        try {
+            writer.write("muCommander location index 1\n");
+            writer.write("2000\t3\t2.5\t/a\n");
+            writer.write("1000\t1\t1.0\t/a\n");
+            writer.write("not a line of the journal\n");
+            writer.write("3000\t1\t1.0\t/b\twith a tab\n");
+            // Last line, not completely written
+            writer.write("4000\t2");
+        }
+        finally {
+            writer.close();
+        }
+
+        LocationIndex index = new LocationIndex(journalFile);
+        index.loadJournal();
+        assert getVisits(index, "/a") == 3;
+        assert getVisits(index, "/b\twith a tab") == 1;
+        assert index.getVisitStatistics().size() == 2;
+    }
+}
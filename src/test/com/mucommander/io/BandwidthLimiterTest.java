@@ -0,0 +1,241 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.io;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link BandwidthLimiter}. Transfers are simulated against a deterministic clock: each transfer
+ * reserves a chunk, waits the time it is told to, and reserves the next chunk, the transfer itself taking no time.
+ *
+ * @author Maxence Bernard
+ */
+public class BandwidthLimiterTest {
+
+    private final static long SECOND = 1000000000L;
+
+    /** Duration of the simulations, long enough for the bursts of the first chunks not to matter */
+    private final static long DURATION = 30*SECOND;
+
+    private final static int CHUNK_SIZE = 16*1024;
+
+    private final static long LIMIT = 1024*1024;
+
+    /** Tolerated difference between the expected and actual throughputs, in proportion of the expected one */
+    private final static double TOLERANCE = 0.02;
+
+    private FakeClock clock;
+
+    private BandwidthLimiter limiter;
+
+    @BeforeMethod
+    public void setUp() {
+        clock = new FakeClock();
+        limiter = new BandwidthLimiter(clock);
+        limiter.setThroughputLimit(LIMIT);
+    }
+
+    /**
+     * Asserts that shares of equal weight get the same part of the limit, and that they do not exceed it together.
+     */
+    @Test
+    public void testEqualWeights() {
+        Transfer transfers[] = {
+            new Transfer(limiter.addShare(1)),
+            new Transfer(limiter.addShare(1)),
+            new Transfer(limiter.addShare(1))
+        };
+
+        simulate(transfers, DURATION);
+
+        for(Transfer transfer : transfers)
+            assertThroughput(LIMIT/3, transfer, DURATION);
+    }
+
+    /**
+     * Asserts that shares get parts of the limit that are proportional to their weight.
+     */
+    @Test
+    public void testWeights() {
+        Transfer low = new Transfer(limiter.addShare(1));
+        Transfer normal = new Transfer(limiter.addShare(2));
+        Transfer high = new Transfer(limiter.addShare(3));
+
+        simulate(new Transfer[]{low, normal, high}, DURATION);
+
+        assertThroughput(LIMIT/6, low, DURATION);
+        assertThroughput(LIMIT*2/6, normal, DURATION);
+        assertThroughput(LIMIT*3/6, high, DURATION);
+    }
+
+    /**
+     * Asserts that a share limited below its part gets its limit, and that the difference goes to the other shares.
+     */
+    @Test
+    public void testShareLimit() {
+        BandwidthLimiter.Share limitedShare = limiter.addShare(1);
+        limitedShare.setThroughputLimit(LIMIT/10);
+        Transfer limited = new Transfer(limitedShare);
+        Transfer other1 = new Transfer(limiter.addShare(1));
+        Transfer other2 = new Transfer(limiter.addShare(1));
+
+        simulate(new Transfer[]{limited, other1, other2}, DURATION);
+
+        assertThroughput(LIMIT/10, limited, DURATION);
+        assertThroughput(LIMIT*9/20, other1, DURATION);
+        assertThroughput(LIMIT*9/20, other2, DURATION);
+    }
+
+    /**
+     * Asserts that shares are limited by their own limit only when the limiter has no limit.
+     */
+    @Test
+    public void testNoLimit() {
+        limiter.setThroughputLimit(-1);
+        BandwidthLimiter.Share limitedShare = limiter.addShare(1);
+        limitedShare.setThroughputLimit(LIMIT);
+        Transfer limited = new Transfer(limitedShare);
+        BandwidthLimiter.Share unlimitedShare = limiter.addShare(1);
+
+        simulate(new Transfer[]{limited}, DURATION);
+
+        assertThroughput(LIMIT, limited, DURATION);
+        assert unlimitedShare.reserve(CHUNK_SIZE)==0;
+    }
+
+    /**
+     * Asserts that the part of a share that stops transferring, or that is removed, goes to the other shares.
+     */
+    @Test
+    public void testIdleShare() {
+        Transfer stopping = new Transfer(limiter.addShare(1));
+        Transfer removed = new Transfer(limiter.addShare(1));
+        Transfer remaining = new Transfer(limiter.addShare(2));
+
+        simulate(new Transfer[]{stopping, removed, remaining}, DURATION);
+        assertThroughput(LIMIT/4, stopping, DURATION);
+        assertThroughput(LIMIT/2, remaining, DURATION);
+
+        // The stopping share keeps its part until it is no longer active
+        removed.share.remove();
+        simulate(new Transfer[]{remaining}, BandwidthLimiter.ACTIVE_PERIOD);
+
+        remaining.nbBytes = 0;
+        simulate(new Transfer[]{remaining}, DURATION);
+        assertThroughput(LIMIT, remaining, DURATION);
+    }
+
+    /**
+     * Asserts that changes of the limit and of the weights are taken into account while transferring.
+     */
+    @Test
+    public void testLiveChanges() {
+        Transfer transfer1 = new Transfer(limiter.addShare(1));
+        Transfer transfer2 = new Transfer(limiter.addShare(1));
+        Transfer transfers[] = {transfer1, transfer2};
+
+        simulate(transfers, DURATION);
+        assertThroughput(LIMIT/2, transfer1, DURATION);
+
+        limiter.setThroughputLimit(LIMIT*2);
+        transfer2.share.setWeight(3);
+        transfer1.nbBytes = transfer2.nbBytes = 0;
+        simulate(transfers, DURATION);
+
+        assertThroughput(LIMIT*2/4, transfer1, DURATION);
+        assertThroughput(LIMIT*2*3/4, transfer2, DURATION);
+    }
+
+    /**
+     * Asserts that a share that was idle may transfer a burst at once, and no more.
+     */
+    @Test
+    public void testBurst() {
+        BandwidthLimiter.Share share = limiter.addShare(1);
+
+        clock.time = 10*SECOND;
+        long burstBytes = LIMIT*BandwidthLimiter.BURST_PERIOD/SECOND;
+        long nbBytes = 0;
+        while(share.reserve(CHUNK_SIZE)==0)
+            nbBytes += CHUNK_SIZE;
+
+        assert nbBytes>=burstBytes && nbBytes<=burstBytes+CHUNK_SIZE;
+    }
+
+    /**
+     * Runs the given transfers for the given time, from the clock's current time.
+     */
+    private void simulate(Transfer transfers[], long duration) {
+        long end = clock.time+duration;
+        for(Transfer transfer : transfers)
+            transfer.nextTime = clock.time;
+
+        while(true) {
+            // Transfer the next chunk due, the first transfers first when several chunks are due at the same time
+            Transfer next = null;
+            for(Transfer transfer : transfers) {
+                if(next==null || transfer.nextTime<next.nextTime)
+                    next = transfer;
+            }
+
+            if(next.nextTime>=end)
+                break;
+
+            clock.time = next.nextTime;
+            long delay = next.share.reserve(CHUNK_SIZE);
+            if(clock.time+delay<end)
+                next.nbBytes += CHUNK_SIZE;
+            next.nextTime = clock.time+delay;
+        }
+
+        clock.time = end;
+    }
+
+    private static void assertThroughput(long expected, Transfer transfer, long duration) {
+        double throughput = transfer.nbBytes*(double)SECOND/duration;
+        assert Math.abs(throughput-expected)<=expected*TOLERANCE : "expected "+expected+" B/s, got "+throughput;
+    }
+
+
+    /**
+     * A clock whose time is set by the test.
+     */
+    private static class FakeClock implements BandwidthLimiter.Clock {
+        private long time;
+
+        public long nanoTime() {
+            return time;
+        }
+    }
+
+    /**
+     * A simulated transfer, counting the bytes it was allowed to transfer.
+     */
+    private static class Transfer {
+        private final BandwidthLimiter.Share share;
+        private long nextTime;
+        private long nbBytes;
+
+        private Transfer(BandwidthLimiter.Share share) {
+            this.share = share;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link CRC32Combiner}: checksums combined from the checksums of parts of random data are compared
+ * with the checksum of the whole data, calculated by {@link CRC32}.
+ *
+ * @author Maxence Bernard
+ */
+public class CRC32CombinerTest {
+
+    private final Random random = new Random(0);
+
+    private static long crc(byte data[], int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+
+    private byte[] getRandomData(int length) {
+        byte data[] = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Splits random data of various lengths in two at various positions, including at both ends, and asserts that
+     * combining the checksums of both parts yields the checksum of the whole data.
+     */
+    @Test
+    public void testTwoParts() {
+        int lengths[] = {0, 1, 2, 3, 4, 7, 8, 100, 1024, 65537};
+        for(int length : lengths) {
+            byte data[] = getRandomData(length);
+            long expected = crc(data, 0, length);
+
+            int splits[] = {0, 1, length/3, length/2, length-1, length};
+            for(int split : splits) {
+                if(split<0 || split>length)
+                    continue;
+
+                long combined = CRC32Combiner.combine(crc(data, 0, split), crc(data, split, length-split), length-split);
+                assert combined==expected: "length="+length+" split="+split;
+            }
+        }
+    }
+
+    /**
+     * Combines the checksums of many parts of random lengths, some of them empty, in order, and asserts that the
+     * result is the checksum of the whole data.
+     */
+    @Test
+    public void testManyParts() {
+        byte data[] = getRandomData(1024*1024);
+
+        long combined = crc(data, 0, 0);
+        int position = 0;
+        while(position<data.length) {
+            int length = random.nextInt(4)==0?0:Math.min(data.length-position, random.nextInt(64*1024));
+            combined = CRC32Combiner.combine(combined, crc(data, position, length), length);
+            position += length;
+        }
+
+        assert combined==crc(data, 0, data.length);
+    }
+
+    /**
+     * Asserts that the checksum of an empty first part does not change the checksum of the second part, and that an
+     * empty second part does not change the checksum of the first one.
+     */
+    @Test
+    public void testEmptyParts() {
+        byte data[] = getRandomData(1000);
+        long crc = crc(data, 0, data.length);
+        long emptyCrc = crc(data, 0, 0);
+
+        assert emptyCrc==0;
+        assert CRC32Combiner.combine(emptyCrc, crc, data.length)==crc;
+        assert CRC32Combiner.combine(crc, emptyCrc, 0)==crc;
+        assert CRC32Combiner.combine(emptyCrc, emptyCrc, 0)==0;
+    }
+
+    /**
+     * Asserts that checksums are formatted as 8 lower case hexadecimal digits.
+     */
+    @Test
+    public void testToHexString() {
+        assert "00000000".equals(CRC32Combiner.toHexString(0));
+        assert "0000abcd".equals(CRC32Combiner.toHexString(0xabcd));
+        assert "ffffffff".equals(CRC32Combiner.toHexString(0xffffffffL));
+        assert "ffffffff".equals(CRC32Combiner.toHexString(-1));
+    }
+}
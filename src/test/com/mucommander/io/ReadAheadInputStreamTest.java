@@ -0,0 +1,274 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link ReadAheadInputStream}: the bytes of the underlying stream are consumed in order, its errors
+ * and end are reported to the consumer, and closing the stream stops the reader thread.
+ *
+ * @author Maxence Bernard
+ */
+public class ReadAheadInputStreamTest {
+
+    /** Size of the underlying streams, spanning several buffers */
+    private final static int SIZE = 1024*1024+123;
+
+    /** Maximum number of milliseconds to wait for the reader thread */
+    private final static long TIMEOUT = 5000;
+
+    /**
+     * An underlying stream that returns a known sequence of bytes, a few bytes at a time, and counts the reads.
+     */
+    private static class SourceInputStream extends InputStream {
+        /** Number of bytes to return, -1 for an endless stream */
+        private final long size;
+
+        /** Exception to throw once <code>size</code> bytes have been read, null to reach the end of the stream */
+        private final IOException exception;
+
+        /** If true, reads block until the stream is closed */
+        private final boolean blocking;
+
+        /** Counted down when the stream is closed */
+        private final CountDownLatch closedLatch = new CountDownLatch(1);
+
+        /** Counted down when a read that blocked returns */
+        private final CountDownLatch unblockedLatch = new CountDownLatch(1);
+
+        private long position;
+        private volatile int nbReads;
+
+        private SourceInputStream(long size, IOException exception, boolean blocking) {
+            this.size = size;
+            this.exception = exception;
+            this.blocking = blocking;
+        }
+
+        private static int getByte(long position) {
+            return (int)(position%251);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte b[] = new byte[1];
+            return read(b, 0, 1)==-1?-1:b[0]&0xFF;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            nbReads++;
+
+            if(blocking) {
+                try {
+                    closedLatch.await();
+                }
+                catch(InterruptedException e) {
+                    // Return as if the stream was closed
+                }
+                unblockedLatch.countDown();
+                throw new IOException("Stream closed");
+            }
+
+            if(size>=0 && position>=size) {
+                if(exception!=null)
+                    throw exception;
+                return -1;
+            }
+
+            // Return a varying number of bytes
+            int nbBytes = Math.min(len, 1+(int)(position%1000));
+            if(size>=0)
+                nbBytes = (int)Math.min(nbBytes, size-position);
+
+            for(int i=0; i<nbBytes; i++)
+                b[off+i] = (byte)getByte(position++);
+
+            return nbBytes;
+        }
+
+        @Override
+        public void close() {
+            closedLatch.countDown();
+        }
+    }
+
+    /**
+     * Reads the given number of bytes from the given stream, alternating single bytes and arrays, and asserts that
+     * they are those of a {@link SourceInputStream}.
+     */
+    private static void assertBytes(InputStream in, int nbBytes) throws IOException {
+        byte buffer[] = new byte[7919];
+        int position = 0;
+        while(position<nbBytes) {
+            if(position%3==0) {
+                int b = in.read();
+                assert b==SourceInputStream.getByte(position);
+                position++;
+            }
+            else {
+                int nbRead = in.read(buffer, 0, Math.min(buffer.length, nbBytes-position));
+                assert nbRead>0;
+                for(int i=0; i<nbRead; i++)
+                    assert (buffer[i]&0xFF)==SourceInputStream.getByte(position+i);
+                position += nbRead;
+            }
+        }
+    }
+
+    /**
+     * Asserts that the bytes of the underlying stream are read in order, with a single buffer as well as with
+     * several.
+     */
+    @Test
+    public void testByteOrder() throws IOException {
+        for(int nbBuffers : new int[]{1, 2, ReadAheadInputStream.DEFAULT_NB_BUFFERS}) {
+            ReadAheadInputStream in = new ReadAheadInputStream(new SourceInputStream(SIZE, null, false), nbBuffers);
+            try {
+                assertBytes(in, SIZE);
+                assert in.read()==-1;
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Asserts that the end of the underlying stream is reported once all its bytes have been consumed, and keeps
+     * being reported.
+     */
+    @Test
+    public void testEOF() throws IOException {
+        ReadAheadInputStream in = new ReadAheadInputStream(new SourceInputStream(SIZE, null, false));
+        try {
+            assertBytes(in, SIZE);
+
+            assert in.read()==-1;
+            assert in.read(new byte[10], 0, 10)==-1;
+            assert in.read()==-1;
+            assert in.available()==0;
+            // Reading no bytes is not reported as the end of the stream
+            assert in.read(new byte[10], 0, 0)==0;
+        }
+        finally {
+            in.close();
+        }
+
+        // An empty stream
+        in = new ReadAheadInputStream(new SourceInputStream(0, null, false));
+        try {
+            assert in.read()==-1;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Asserts that an error thrown by the underlying stream is rethrown by the consumer's <code>read()</code> once the
+     * bytes read before the error have been consumed, and not before.
+     */
+    @Test
+    public void testSourceError() throws IOException {
+        IOException exception = new IOException("Source error");
+        ReadAheadInputStream in = new ReadAheadInputStream(new SourceInputStream(SIZE, exception, false), 2);
+        try {
+            assertBytes(in, SIZE);
+
+            try {
+                in.read();
+                assert false;
+            }
+            catch(IOException e) {
+                assert e==exception;
+            }
+
+            // The error keeps being reported
+            try {
+                in.read(new byte[10], 0, 10);
+                assert false;
+            }
+            catch(IOException e) {
+                assert e==exception;
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Asserts that closing the stream stops the reader thread when it is waiting for the consumer, and that the
+     * stream can no longer be read.
+     */
+    @Test
+    public void testCloseStopsReader() throws Exception {
+        SourceInputStream source = new SourceInputStream(-1, null, false);
+        ReadAheadInputStream in = new ReadAheadInputStream(source, 2);
+
+        assertBytes(in, 100000);
+        in.close();
+        assert source.closedLatch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        // A read that was underway when the stream was closed may complete, but no other read follows
+        Thread.sleep(100);
+        int nbReads = source.nbReads;
+        Thread.sleep(200);
+        assert source.nbReads==nbReads;
+
+        try {
+            in.read();
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        // Closing the stream again has no effect
+        in.close();
+    }
+
+    /**
+     * Asserts that closing the stream unblocks the reader thread when it is blocked reading the underlying stream.
+     */
+    @Test
+    public void testCloseUnblocksReader() throws Exception {
+        SourceInputStream source = new SourceInputStream(-1, null, true);
+        ReadAheadInputStream in = new ReadAheadInputStream(source);
+
+        // Wait for the reader to be blocked in the underlying stream
+        long deadline = System.currentTimeMillis()+TIMEOUT;
+        while(source.nbReads==0 && System.currentTimeMillis()<deadline)
+            Thread.sleep(10);
+        assert source.nbReads==1;
+
+        in.close();
+        assert source.unblockedLatch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(100);
+        assert source.nbReads==1;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io.security;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests that apply to any {@link MessageDigest} implementation: the digest of some data must not depend on how the
+ * data is split into updates, and a digest must start over once calculated. Subclasses test the digests of published
+ * test vectors.
+ *
+ * @author Maxence Bernard
+ */
+public abstract class AbstractMessageDigestTest {
+
+    /**
+     * Returns a new instance of the tested digest.
+     *
+     * @return a new instance of the tested digest
+     */
+    protected abstract MessageDigest getMessageDigest();
+
+    /**
+     * Returns the digest of the given string's ASCII bytes as a lower case hexadecimal string.
+     *
+     * @param s the string to digest
+     * @return the digest as a hexadecimal string
+     */
+    protected String digest(String s) throws Exception {
+        return toHexString(getMessageDigest().digest(s.getBytes("US-ASCII")));
+    }
+
+    /**
+     * Returns the digest of the given data as a lower case hexadecimal string.
+     *
+     * @param data the data to digest
+     * @return the digest as a hexadecimal string
+     */
+    protected String digest(byte data[]) {
+        return toHexString(getMessageDigest().digest(data));
+    }
+
+    private static String toHexString(byte digest[]) {
+        StringBuilder sb = new StringBuilder();
+        for(byte b : digest)
+            sb.append(String.format("%02x", b&0xff));
+        return sb.toString();
+    }
+
+    /**
+     * Digests random data of various lengths in one update, then in chunks of various sizes, then byte by byte, and
+     * asserts that the digests are the same.
+     */
+    @Test
+    public void testChunkedUpdates() {
+        Random random = new Random(0);
+        int lengths[] = {0, 1, 3, 4, 7, 8, 15, 16, 31, 32, 33, 63, 64, 100, 1000, 65537};
+        int chunkSizes[] = {1, 2, 3, 5, 8, 13, 31, 32, 33, 64, 1000};
+
+        for(int length : lengths) {
+            byte data[] = new byte[length];
+            random.nextBytes(data);
+            byte expected[] = getMessageDigest().digest(data);
+
+            for(int chunkSize : chunkSizes) {
+                MessageDigest digest = getMessageDigest();
+                for(int offset=0; offset<length; offset+=chunkSize)
+                    digest.update(data, offset, Math.min(chunkSize, length-offset));
+
+                assert Arrays.equals(expected, digest.digest()): "length="+length+" chunkSize="+chunkSize;
+            }
+
+            MessageDigest digest = getMessageDigest();
+            for(byte b : data)
+                digest.update(b);
+
+            assert Arrays.equals(expected, digest.digest()): "length="+length+" byte by byte";
+        }
+    }
+
+    /**
+     * Asserts that a digest starts over after it is calculated or reset.
+     */
+    @Test
+    public void testReset() throws Exception {
+        byte data[] = "The quick brown fox jumps over the lazy dog".getBytes("US-ASCII");
+        MessageDigest digest = getMessageDigest();
+        byte expected[] = digest.digest(data);
+
+        assert Arrays.equals(expected, digest.digest(data));
+
+        digest.update(data);
+        digest.reset();
+        assert Arrays.equals(expected, digest.digest(data));
+    }
+
+    /**
+     * Asserts that the digest has the advertised length.
+     */
+    @Test
+    public void testDigestLength() {
+        MessageDigest digest = getMessageDigest();
+        assert digest.digest().length==digest.getDigestLength();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io.security;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link CRC32CMessageDigest}.
+ *
+ * @author Maxence Bernard
+ */
+public class CRC32CMessageDigestTest extends AbstractMessageDigestTest {
+
+    @Override
+    protected MessageDigest getMessageDigest() {
+        return new CRC32CMessageDigest();
+    }
+
+    /**
+     * Tests the digests of the standard check value and of the empty string.
+     */
+    @Test
+    public void testCheckValue() throws Exception {
+        assert "00000000".equals(digest(""));
+        assert "e3069283".equals(digest("123456789"));
+    }
+
+    /**
+     * Tests the digests of the test vectors of RFC 3720, section B.4.
+     */
+    @Test
+    public void testRFC3720Vectors() {
+        byte data[] = new byte[32];
+        assert "8a9136aa".equals(digest(data));
+
+        Arrays.fill(data, (byte)0xff);
+        assert "62a8ab43".equals(digest(data));
+
+        for(int i=0; i<data.length; i++)
+            data[i] = (byte)i;
+        assert "46dd794e".equals(digest(data));
+
+        for(int i=0; i<data.length; i++)
+            data[i] = (byte)(31-i);
+        assert "113fdb5c".equals(digest(data));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.io.security;
+
+import java.security.MessageDigest;
+
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link XXHash64MessageDigest}, with a seed of <code>0</code>.
+ *
+ * @author Maxence Bernard
+ */
+public class XXHash64MessageDigestTest extends AbstractMessageDigestTest {
+
+    @Override
+    protected MessageDigest getMessageDigest() {
+        return new XXHash64MessageDigest();
+    }
+
+    /**
+     * Tests the digests of the reference implementation's test vectors, shorter than a 32-byte stripe.
+     */
+    @Test
+    public void testShortVectors() throws Exception {
+        assert "ef46db3751d8e999".equals(digest(""));
+        assert "44bc2cf5ad770999".equals(digest("abc"));
+    }
+
+    /**
+     * Tests the digest of a test vector longer than a 32-byte stripe.
+     */
+    @Test
+    public void testLongVector() throws Exception {
+        assert "fbcea83c8a378bf1".equals(digest("Nobody inspects the spammish repetition"));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.io.security.MuProvider;
+
+/**
+ * A test case for {@link ChecksumFile}.
+ *
+ * @author Maxence Bernard
+ */
+public class ChecksumFileTest {
+
+    private final static String MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+    private final static String SHA1 = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+    private final static String SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    @BeforeClass
+    public void registerProvider() {
+        // CRC32 is provided by the muCommander API
+        MuProvider.registerProvider();
+    }
+
+    private static ChecksumFile parse(String name, String extension, String contents) throws IOException {
+        return ChecksumFile.parse(name, extension, new ByteArrayInputStream(contents.getBytes("utf-8")));
+    }
+
+    /**
+     * Returns <code>true</code> if the given algorithm name designates the expected algorithm, regardless of case and
+     * dashes.
+     */
+    private static boolean isAlgorithm(String algorithm, String expected) {
+        return algorithm!=null && algorithm.replace("-", "").equalsIgnoreCase(expected);
+    }
+
+    private static void assertEntry(ChecksumFile.Entry entry, String path, String checksum) {
+        assert path.equals(entry.getPath()): entry.getPath();
+        assert checksum.equals(entry.getChecksum()): entry.getChecksum();
+    }
+
+    /**
+     * Tests the 'SUMS' format, in text and binary mode, and the algorithm given by the file's name.
+     */
+    @Test
+    public void testSumsFormat() throws IOException {
+        ChecksumFile file = parse("MD5SUMS", null,
+                "# comment\n"
+               +MD5+"  file.txt\n"
+               +MD5.toUpperCase()+" *folder/binary file.bin\n"
+               +"\n"
+               +"not a checksum  file\n"
+               +MD5+"  \n");
+
+        assert isAlgorithm(file.getAlgorithm(), "MD5");
+
+        List<ChecksumFile.Entry> entries = file.getEntries();
+        assert entries.size()==2;
+        assertEntry(entries.get(0), "file.txt", MD5);
+        assertEntry(entries.get(1), "folder/binary file.bin", MD5);
+    }
+
+    /**
+     * Tests that the algorithm is given by the file's extension.
+     */
+    @Test
+    public void testExtension() throws IOException {
+        ChecksumFile file = parse("files.sha1", "sha1", SHA1+"  file\n");
+
+        assert isAlgorithm(file.getAlgorithm(), "SHA1");
+        assert file.getEntries().size()==1;
+    }
+
+    /**
+     * Tests that the algorithm is guessed from the length of the checksums when the file's name does not tell it.
+     */
+    @Test
+    public void testChecksumLength() throws IOException {
+        assert isAlgorithm(parse("checksums.txt", "txt", MD5+"  file\n").getAlgorithm(), "MD5");
+        assert isAlgorithm(parse("checksums.txt", "txt", SHA1+"  file\n").getAlgorithm(), "SHA1");
+        assert isAlgorithm(parse("checksums.txt", "txt", SHA256+"  file\n").getAlgorithm(), "SHA256");
+        assert parse("checksums.txt", "txt", "0123456789  file\n").getAlgorithm()==null;
+    }
+
+    /**
+     * Tests the BSD format, whose tags give the algorithm.
+     */
+    @Test
+    public void testBSDFormat() throws IOException {
+        ChecksumFile file = parse("checksums", null,
+                "SHA256 (file.txt) = "+SHA256+"\n"
+               +"SHA256 (name (1).txt) = "+SHA256.toUpperCase()+"\n"
+               +"SHA256 (missing checksum) = \n");
+
+        assert isAlgorithm(file.getAlgorithm(), "SHA256");
+
+        List<ChecksumFile.Entry> entries = file.getEntries();
+        assert entries.size()==2;
+        assertEntry(entries.get(0), "file.txt", SHA256);
+        assertEntry(entries.get(1), "name (1).txt", SHA256);
+    }
+
+    /**
+     * Tests the escaping of backslashes and newlines in paths, as written by GNU coreutils in both the 'SUMS' and BSD
+     * formats.
+     */
+    @Test
+    public void testEscaping() throws IOException {
+        ChecksumFile file = parse("MD5SUMS", null,
+                "\\"+MD5+"  back\\\\slash\n"
+               +"\\"+MD5+"  new\\nline\n"
+               +"\\MD5 (tagged\\\\name) = "+MD5+"\n"
+               +"\\"+MD5+"  invalid\\escape\n"
+               +MD5+"  not\\\\escaped\n");
+
+        List<ChecksumFile.Entry> entries = file.getEntries();
+        assert entries.size()==4;
+        assertEntry(entries.get(0), "back\\slash", MD5);
+        assertEntry(entries.get(1), "new\nline", MD5);
+        assertEntry(entries.get(2), "tagged\\name", MD5);
+        // Lines that do not start with a backslash are not escaped
+        assertEntry(entries.get(3), "not\\\\escaped", MD5);
+    }
+
+    /**
+     * Tests the SFV format, whose paths may contain spaces.
+     */
+    @Test
+    public void testSFVFormat() throws IOException {
+        ChecksumFile file = parse("files.sfv", "sfv",
+                "; Generated by muCommander\n"
+               +"file.bin 0A1B2C3D\n"
+               +"folder/file with spaces.bin  cafebabe\n"
+               +"no_checksum\n");
+
+        assert isAlgorithm(file.getAlgorithm(), "CRC32");
+
+        List<ChecksumFile.Entry> entries = file.getEntries();
+        assert entries.size()==2;
+        assertEntry(entries.get(0), "file.bin", "0a1b2c3d");
+        assertEntry(entries.get(1), "folder/file with spaces.bin", "cafebabe");
+    }
+
+    /**
+     * Tests that a file without any checksum has no algorithm and no entries.
+     */
+    @Test
+    public void testUnknownFormat() throws IOException {
+        ChecksumFile file = parse("readme.txt", "txt", "This is not\na checksum file\n");
+
+        assert file.getAlgorithm()==null;
+        assert file.getEntries().isEmpty();
+    }
+}
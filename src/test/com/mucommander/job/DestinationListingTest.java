@@ -0,0 +1,404 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DummyFile;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * Tests {@link DestinationListing} against a file system that injects a latency in each round trip, as remote file
+ * systems do, and counts the round trips.
+ *
+ * @author Maxence Bernard
+ */
+public class DestinationListingTest {
+
+    /** Latency of a round trip to the file system, in milliseconds */
+    private final static long LATENCY = 2;
+
+    /** Number of files in the destination folder */
+    private final static int NB_FILES = 100;
+
+    private final static String DEST_FOLDER = "sftp://host/dest";
+
+    private LatencyFileSystem fs;
+
+    /**
+     * An in-memory file system with a latency.
+     */
+    private static class LatencyFileSystem {
+        /** Path -> true for folders */
+        private final Map<String, Boolean> files = new HashMap<String, Boolean>();
+        private int nbRoundTrips;
+
+        /** True if files are looked up regardless of the case of their path */
+        private boolean ignoreCase;
+
+        /** Path of a folder whose listing waits for {@link #listingReleased}, null if none */
+        private String slowFolder;
+
+        /** Counted down when the listing of {@link #slowFolder} starts */
+        private final CountDownLatch listingStarted = new CountDownLatch(1);
+
+        /** Counted down to let the listing of {@link #slowFolder} complete */
+        private final CountDownLatch listingReleased = new CountDownLatch(1);
+
+        private Boolean get(String path) {
+            if(!ignoreCase)
+                return files.get(path);
+
+            for(Map.Entry<String, Boolean> entry : files.entrySet()) {
+                if(entry.getKey().toLowerCase(Locale.ENGLISH).equals(path.toLowerCase(Locale.ENGLISH)))
+                    return entry.getValue();
+            }
+            return null;
+        }
+
+        private void roundTrip() {
+            nbRoundTrips++;
+            try {
+                Thread.sleep(LATENCY);
+            }
+            catch(InterruptedException e) {
+                // Shorter round trip
+            }
+        }
+
+        private void add(String path, boolean directory) {
+            files.put(path, directory);
+        }
+
+        private TestFile getFile(String path) throws MalformedURLException {
+            return new TestFile(this, FileURL.getFileURL(path), false);
+        }
+    }
+
+    /**
+     * A file of a {@link LatencyFileSystem}. Querying a file costs a round trip, unless the file was returned by
+     * {@link #ls()}: listings carry the type of the files.
+     */
+    private static class TestFile extends DummyFile {
+        private final LatencyFileSystem fs;
+        private final boolean listed;
+
+        private TestFile(LatencyFileSystem fs, FileURL url, boolean listed) {
+            super(url);
+            this.fs = fs;
+            this.listed = listed;
+        }
+
+        private String getPath() {
+            String path = getURL().toString(false);
+            return path.endsWith("/")?path.substring(0, path.length()-1):path;
+        }
+
+        @Override
+        public boolean exists() {
+            if(!listed)
+                fs.roundTrip();
+            return fs.get(getPath())!=null;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            if(!listed)
+                fs.roundTrip();
+            Boolean directory = fs.get(getPath());
+            return directory!=null && directory;
+        }
+
+        @Override
+        public AbstractFile getParent() {
+            FileURL parentURL = getURL().getParent();
+            return parentURL==null?null:new TestFile(fs, parentURL, false);
+        }
+
+        @Override
+        public AbstractFile[] ls() throws IOException {
+            if(getPath().equals(fs.slowFolder)) {
+                fs.listingStarted.countDown();
+                try {
+                    fs.listingReleased.await();
+                }
+                catch(InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+            }
+
+            fs.roundTrip();
+            if(!Boolean.TRUE.equals(fs.get(getPath())))
+                throw new IOException("Not a folder: "+getPath());
+
+            String prefix = getPath()+"/";
+            Map<String, TestFile> children = new HashMap<String, TestFile>();
+            for(String path : fs.files.keySet()) {
+                if(path.startsWith(prefix) && path.indexOf('/', prefix.length())==-1)
+                    children.put(path, new TestFile(fs, FileURL.getFileURL(path), true));
+            }
+            return children.values().toArray(new AbstractFile[children.size()]);
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        fs = new LatencyFileSystem();
+        fs.add("sftp://host", true);
+        fs.add(DEST_FOLDER, true);
+        // One file out of four is a folder
+        for(int i=0; i<NB_FILES; i++)
+            fs.add(DEST_FOLDER+"/file_"+i, i%4==0);
+    }
+
+    /**
+     * Checks twice as many destination files as the destination folder contains, file by file and with a listing,
+     * and asserts that both find the same collisions while the listing takes a single round trip.
+     */
+    @Test
+    public void testRoundTrips() throws IOException {
+        int nbChecks = 2*NB_FILES;
+        int collisions[] = new int[nbChecks];
+
+        for(int i=0; i<nbChecks; i++)
+            collisions[i] = FileCollisionChecker.checkForCollision(null, fs.getFile(DEST_FOLDER+"/file_"+i));
+
+        // One round trip for each file, plus one for each existing file
+        assert fs.nbRoundTrips==nbChecks+NB_FILES;
+
+        fs.nbRoundTrips = 0;
+        DestinationListing listing = new DestinationListing();
+        for(int i=0; i<nbChecks; i++)
+            assert FileCollisionChecker.checkForCollision(null, fs.getFile(DEST_FOLDER+"/file_"+i), listing)==collisions[i];
+
+        assert fs.nbRoundTrips==1;
+        assert listing.getNbListings()==1;
+    }
+
+    /**
+     * Asserts that the files added by the job and the folders it creates are known without further round trips.
+     */
+    @Test
+    public void testUpdates() throws IOException {
+        DestinationListing listing = new DestinationListing();
+
+        AbstractFile newFile = fs.getFile(DEST_FOLDER+"/new_file");
+        assert !listing.exists(newFile);
+        listing.fileAdded(newFile, false);
+        assert listing.exists(newFile);
+        assert !listing.isDirectory(newFile);
+
+        AbstractFile newFolder = fs.getFile(DEST_FOLDER+"/new_folder");
+        listing.folderCreated(newFolder);
+        assert listing.isDirectory(newFolder);
+        assert !listing.exists(fs.getFile(DEST_FOLDER+"/new_folder/child"));
+
+        assert fs.nbRoundTrips==1;
+    }
+
+    /**
+     * Asserts that the parents of a folder created with <code>mkdirs()</code> are known to exist.
+     */
+    @Test
+    public void testParentsCreated() throws IOException {
+        DestinationListing listing = new DestinationListing();
+        assert !listing.exists(fs.getFile(DEST_FOLDER+"/a"));
+
+        listing.folderCreated(fs.getFile(DEST_FOLDER+"/a/b/c"));
+
+        assert listing.isDirectory(fs.getFile(DEST_FOLDER+"/a"));
+        assert fs.nbRoundTrips==1;
+    }
+
+    /**
+     * Asserts that a name that differs only in case from a listed name is looked up by querying the file, so that
+     * names are matched regardless of case on the file systems that ignore it, and only on those.
+     */
+    @Test
+    public void testCase() throws IOException {
+        AbstractFile file = fs.getFile(DEST_FOLDER+"/FILE_1");
+        AbstractFile folder = fs.getFile(DEST_FOLDER+"/FILE_0");
+
+        DestinationListing listing = new DestinationListing();
+        assert !listing.exists(file);
+        assert !listing.isDirectory(folder);
+        // One listing, and one query for each name that differs only in case from a listed name
+        assert fs.nbRoundTrips==3;
+
+        fs.ignoreCase = true;
+        listing = new DestinationListing();
+        assert listing.exists(file);
+        assert listing.isDirectory(folder);
+        // Names that do not differ only in case are not queried
+        assert !listing.exists(fs.getFile(DEST_FOLDER+"/other_file"));
+        assert fs.nbRoundTrips==6;
+    }
+
+    /**
+     * Asserts that local files are queried individually, without listing their folder.
+     */
+    @Test
+    public void testLocalFiles() throws IOException {
+        fs.add("file:///dest", true);
+        fs.add("file:///dest/file", false);
+
+        DestinationListing listing = new DestinationListing();
+        AbstractFile file = fs.getFile("file:///dest/file");
+        assert listing.exists(file);
+        assert !listing.isDirectory(file);
+
+        listing.folderCreated(fs.getFile("file:///dest/folder"));
+        assert !listing.exists(fs.getFile("file:///dest/folder"));
+
+        assert listing.getNbListings()==0;
+        assert fs.nbRoundTrips==3;
+    }
+
+    /**
+     * Asserts that the listings of folders the job has written to are kept, while the least recently used listings
+     * of other folders are discarded.
+     */
+    @Test
+    public void testDiscardedListings() throws IOException {
+        DestinationListing listing = new DestinationListing();
+
+        AbstractFile newFile = fs.getFile(DEST_FOLDER+"/new_file");
+        assert !listing.exists(newFile);
+        listing.fileAdded(newFile, false);
+
+        int nbFolders = 2*DestinationListing.MAX_FOLDERS;
+        for(int i=0; i<nbFolders; i++) {
+            fs.add("sftp://host/folder_"+i, true);
+            assert !listing.exists(fs.getFile("sftp://host/folder_"+i+"/file"));
+        }
+        assert listing.getNbListings()==nbFolders+1;
+
+        // The file about to be written is still known, without listing the folder again
+        assert listing.exists(newFile);
+        assert listing.getNbListings()==nbFolders+1;
+
+        // The most recently used listings are kept, the least recently used ones are listed again
+        listing.exists(fs.getFile("sftp://host/folder_"+(nbFolders-1)+"/file"));
+        assert listing.getNbListings()==nbFolders+1;
+        listing.exists(fs.getFile("sftp://host/folder_0/file"));
+        assert listing.getNbListings()==nbFolders+2;
+    }
+
+    /**
+     * Asserts that a slow listing does not hold up the lookups in other folders, that the lookups in the folder being
+     * listed wait for the listing rather than listing it again, and that the files added while it is being listed
+     * are part of it.
+     */
+    @Test
+    public void testSlowListing() throws Exception {
+        final String slowFolder = "sftp://host/slow";
+        fs.add(slowFolder, true);
+        fs.add(slowFolder+"/file", false);
+        fs.slowFolder = slowFolder;
+
+        final DestinationListing listing = new DestinationListing();
+        final boolean results[] = new boolean[3];
+
+        Thread slowLookup = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results[0] = listing.exists(fs.getFile(slowFolder+"/file"));
+                }
+                catch(MalformedURLException e) {
+                    // Fails the test
+                }
+            }
+        };
+        slowLookup.start();
+        fs.listingStarted.await();
+
+        // Another worker looks up a file in the same folder
+        Thread waitingLookup = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results[1] = listing.isDirectory(fs.getFile(slowFolder+"/file"));
+                }
+                catch(MalformedURLException e) {
+                    // Fails the test
+                }
+            }
+        };
+        waitingLookup.start();
+
+        // Lookups in other folders and added files are not held up by the listing
+        Thread otherLookup = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results[2] = listing.exists(fs.getFile(DEST_FOLDER+"/file_1"));
+                    listing.fileAdded(fs.getFile(slowFolder+"/new_file"), false);
+                }
+                catch(MalformedURLException e) {
+                    // Fails the test
+                }
+            }
+        };
+        otherLookup.start();
+        try {
+            otherLookup.join(5000);
+            assert !otherLookup.isAlive();
+            assert results[2];
+            assert slowLookup.isAlive();
+        }
+        finally {
+            fs.listingReleased.countDown();
+        }
+
+        slowLookup.join(5000);
+        waitingLookup.join(5000);
+        assert !slowLookup.isAlive() && !waitingLookup.isAlive();
+
+        assert results[0];
+        assert !results[1];
+        assert listing.exists(fs.getFile(slowFolder+"/new_file"));
+        // The slow folder was listed once
+        assert listing.getNbListings()==2;
+    }
+
+    /**
+     * Asserts that the files of a folder that cannot be listed are queried individually.
+     */
+    @Test
+    public void testFolderNotListed() throws IOException {
+        DestinationListing listing = new DestinationListing();
+        AbstractFile file = fs.getFile("sftp://host/missing/file");
+
+        assert !listing.exists(file);
+        assert listing.getNbListings()==0;
+
+        fs.add("sftp://host/missing/file", false);
+        assert listing.exists(file);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.io.ByteCounter;
+
+/**
+ * A test case for {@link FileChannelTransfer}: asserts that local files are copied whole, whether they are regular or
+ * sparse, that transfers resume from a given position, and that a paused transfer can be aborted.
+ *
+ * @author Maxence Bernard
+ */
+public class FileChannelTransferTest {
+
+    /** Size of the test files, larger than a chunk and than the minimum size of sparse files */
+    private final static int FILE_SIZE = FileChannelTransfer.CHUNK_SIZE+3*1024*1024+123;
+
+    private File source;
+    private File dest;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        source = File.createTempFile("FileChannelTransferTest", ".source");
+        dest = File.createTempFile("FileChannelTransferTest", ".dest");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        source.delete();
+        dest.delete();
+    }
+
+    /**
+     * Writes the given data to the source file.
+     */
+    private void writeSource(byte data[]) throws IOException {
+        FileOutputStream out = new FileOutputStream(source);
+        try {
+            out.write(data);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Transfers the source file to the destination file from the given position, preserving the destination's
+     * contents up to it, and returns the number of bytes that were reported to the byte counter.
+     */
+    private long transfer(long position) throws IOException {
+        ByteCounter byteCounter = new ByteCounter();
+        FileChannelTransfer transfer = new FileChannelTransfer(new FileInputStream(source), new RandomAccessFile(dest, "rw"), byteCounter);
+        try {
+            assert transfer.transfer(position)==FILE_SIZE-position;
+        }
+        finally {
+            transfer.close();
+        }
+
+        assert transfer.getPosition()==FILE_SIZE;
+        return byteCounter.getByteCount();
+    }
+
+    /**
+     * Asserts that the destination file has the given contents.
+     */
+    private void assertDestEquals(byte data[]) throws IOException {
+        assert dest.length()==data.length: dest.length();
+
+        byte destData[] = new byte[data.length];
+        RandomAccessFile in = new RandomAccessFile(dest, "r");
+        try {
+            in.readFully(destData);
+        }
+        finally {
+            in.close();
+        }
+
+        assert Arrays.equals(data, destData);
+    }
+
+    private static byte[] getRandomData(long seed) {
+        byte data[] = new byte[FILE_SIZE];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Copies a file that contains no blocks of zeros, transferred without going through the heap.
+     */
+    @Test
+    public void testRegularFile() throws IOException {
+        byte data[] = getRandomData(0);
+        writeSource(data);
+
+        assert transfer(0)==FILE_SIZE;
+        assertDestEquals(data);
+    }
+
+    /**
+     * Copies a file whose middle and end are blocks of zeros, which are left as holes in the destination file when
+     * sparse copies are enabled: the destination must read the same, up to the trailing zeros.
+     */
+    @Test
+    public void testSparseFile() throws IOException {
+        byte data[] = getRandomData(1);
+        Arrays.fill(data, 64*1024, FILE_SIZE/2, (byte)0);
+        Arrays.fill(data, FILE_SIZE-256*1024, FILE_SIZE, (byte)0);
+        writeSource(data);
+
+        assert transfer(0)==FILE_SIZE;
+        assertDestEquals(data);
+    }
+
+    /**
+     * Copies a file over a larger destination file, whose previous contents must not remain.
+     */
+    @Test
+    public void testLargerDestination() throws IOException {
+        byte data[] = getRandomData(2);
+        writeSource(data);
+
+        RandomAccessFile out = new RandomAccessFile(dest, "rw");
+        try {
+            out.setLength(2*FILE_SIZE);
+        }
+        finally {
+            out.close();
+        }
+
+        transfer(0);
+        assertDestEquals(data);
+    }
+
+    /**
+     * Resumes the transfer of a file whose first bytes have been copied already.
+     */
+    @Test
+    public void testResume() throws IOException {
+        byte data[] = getRandomData(3);
+        writeSource(data);
+
+        int position = FILE_SIZE/3;
+        FileOutputStream out = new FileOutputStream(dest);
+        try {
+            out.write(data, 0, position);
+        }
+        finally {
+            out.close();
+        }
+
+        assert transfer(position)==FILE_SIZE-position;
+        assertDestEquals(data);
+    }
+
+    /**
+     * Asserts that a paused transfer does not copy anything, and that closing it aborts it.
+     */
+    @Test
+    public void testAbortPausedTransfer() throws Exception {
+        writeSource(getRandomData(4));
+
+        ByteCounter byteCounter = new ByteCounter();
+        final FileChannelTransfer transfer = new FileChannelTransfer(new FileInputStream(source), new RandomAccessFile(dest, "rw"), byteCounter);
+        transfer.setThroughputLimit(0);
+
+        final IOException exception[] = new IOException[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    transfer.transfer(0);
+                }
+                catch(IOException e) {
+                    exception[0] = e;
+                }
+            }
+        };
+        thread.start();
+
+        Thread.sleep(200);
+        assert thread.isAlive();
+        assert byteCounter.getByteCount()==0;
+
+        transfer.close();
+        thread.join(10000);
+
+        assert !thread.isAlive();
+        assert exception[0]!=null;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.DummyFile;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * A test case for {@link JobJournal}: records are written to a journal, which is then read back the way it is when
+ * muCommander starts after a crash, and the files of the job are looked up in it.
+ *
+ * @author Maxence Bernard
+ */
+public class JobJournalTest {
+
+    private final static long SIZE = 1024*1024;
+
+    private final static long DATE = 1330000000000L;
+
+    /** Folder the journals are created in */
+    private File folder;
+
+    private TestFile source;
+    private TestFile dest;
+
+    /**
+     * A file whose existence, type, size and date can be changed.
+     */
+    private static class TestFile extends DummyFile {
+        private boolean exists = true;
+        private boolean directory;
+        private long size;
+        private long date = DATE;
+
+        private TestFile(String url, long size) throws MalformedURLException {
+            super(FileURL.getFileURL(url));
+            this.size = size;
+        }
+
+        @Override
+        public boolean exists() {
+            return exists;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public long getSize() {
+            return exists?size:-1;
+        }
+
+        @Override
+        public long getDate() {
+            return date;
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = File.createTempFile("JobJournalTest", "");
+        folder.delete();
+
+        source = new TestFile("sftp://host/source/file", SIZE);
+        dest = new TestFile("file:///dest/file", 0);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        File files[] = folder.listFiles();
+        if(files!=null) {
+            for(File file : files)
+                file.delete();
+        }
+        folder.delete();
+    }
+
+    /**
+     * Reads the journal created in the test folder, as it stands.
+     */
+    private JobJournal readJournal() throws IOException {
+        File files[] = folder.listFiles();
+        assert files!=null && files.length==1;
+
+        return JobJournal.read(files[0]);
+    }
+
+    /**
+     * Appends the given text to the journal created in the test folder, as if it had been partially written.
+     */
+    private void appendToJournal(String s) throws IOException {
+        FileOutputStream out = new FileOutputStream(folder.listFiles()[0], true);
+        try {
+            out.write(s.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Asserts that a file that was transferred entirely is not transferred again, as long as the destination file
+     * has the size of the source file.
+     */
+    @Test
+    public void testCopied() throws IOException {
+        JobJournal journal = JobJournal.create(folder, JobJournal.COPY_JOB);
+        journal.fileStarted(source, dest);
+        journal.fileCopied(source);
+
+        JobJournal readJournal = readJournal();
+        dest.size = SIZE;
+        assert readJournal.wasCopied(source, dest);
+        assert !readJournal.wasStarted(source, dest);
+        assert !readJournal.canResume(source, dest);
+
+        dest.size = SIZE-1;
+        assert !readJournal.wasCopied(source, dest);
+        dest.exists = false;
+        assert !readJournal.wasCopied(source, dest);
+
+        journal.delete();
+        assert folder.listFiles().length==0;
+    }
+
+    /**
+     * Asserts that a file whose transfer was interrupted is resumed.
+     */
+    @Test
+    public void testResume() throws IOException {
+        JobJournal journal = JobJournal.create(folder, JobJournal.COPY_JOB);
+        journal.fileStarted(source, dest);
+
+        JobJournal readJournal = readJournal();
+        dest.size = SIZE/2;
+        assert !readJournal.wasCopied(source, dest);
+        assert readJournal.wasStarted(source, dest);
+        assert readJournal.canResume(source, dest);
+
+        // A destination file that was not created yet is transferred from the start
+        dest.exists = false;
+        assert readJournal.wasStarted(source, dest);
+        assert !readJournal.canResume(source, dest);
+
+        journal.delete();
+    }
+
+    /**
+     * Asserts that a destination file that has the size of the source file although its transfer was not completed,
+     * as a preallocated file does, is overwritten: it is not resumed, and is not handled like an existing file.
+     */
+    @Test
+    public void testPreallocatedDestination() throws IOException {
+        JobJournal journal = JobJournal.create(folder, JobJournal.COPY_JOB);
+        journal.fileStarted(source, dest);
+
+        JobJournal readJournal = readJournal();
+        dest.size = SIZE;
+        assert !readJournal.wasCopied(source, dest);
+        assert readJournal.wasStarted(source, dest);
+        assert !readJournal.canResume(source, dest);
+
+        journal.delete();
+    }
+
+    /**
+     * Asserts that a transfer is not resumed if the source file has changed since the transfer started, and that the
+     * partial destination file is overwritten.
+     */
+    @Test
+    public void testSourceChanged() throws IOException {
+        JobJournal journal = JobJournal.create(folder, JobJournal.COPY_JOB);
+        journal.fileStarted(source, dest);
+
+        JobJournal readJournal = readJournal();
+        dest.size = SIZE/2;
+
+        source.size = SIZE+1;
+        assert readJournal.wasStarted(source, dest);
+        assert !readJournal.canResume(source, dest);
+
+        source.size = SIZE;
+        source.date = DATE+1000;
+        assert readJournal.wasStarted(source, dest);
+        assert !readJournal.canResume(source, dest);
+
+        journal.delete();
+    }
+
+    /**
+     * Asserts that a destination other than the one the file was being transferred to, or a folder, is not taken for
+     * a partial copy.
+     */
+    @Test
+    public void testOtherDestination() throws IOException {
+        JobJournal journal = JobJournal.create(folder, JobJournal.COPY_JOB);
+        journal.fileStarted(source, dest);
+
+        JobJournal readJournal = readJournal();
+        TestFile otherDest = new TestFile("file:///dest/file_1", SIZE/2);
+        assert !readJournal.wasStarted(otherDest, dest);
+        assert !readJournal.wasStarted(source, otherDest);
+        assert !readJournal.canResume(source, otherDest);
+
+        dest.size = SIZE/2;
+        dest.directory = true;
+        assert !readJournal.wasStarted(source, dest);
+        assert !readJournal.canResume(source, dest);
+
+        journal.delete();
+    }
+
+    /**
+     * Asserts that a record that was partially written when muCommander crashed is ignored, and that the records
+     * before it are read.
+     */
+    @Test
+    public void testTruncatedJournal() throws IOException {
+        JobJournal journal = JobJournal.create(folder, JobJournal.MOVE_JOB);
+        journal.addParameter(JobJournal.DESTINATION_FOLDER_PARAMETER, "file:///dest");
+        journal.fileStarted(source, dest);
+        appendToJournal("copied\t"+source.getURL().toString(false));
+
+        JobJournal readJournal = readJournal();
+        dest.size = SIZE;
+        assert !readJournal.wasCopied(source, dest);
+        assert readJournal.wasStarted(source, dest);
+        assert "file:///dest".equals(readJournal.getDestinationFolder());
+
+        // The partial record is read once completed, and invalid records are skipped
+        appendToJournal("\nstarted\tfile:///other\tnot a size\t0\tfile:///dest/other\n");
+        readJournal = readJournal();
+        assert readJournal.wasCopied(source, dest);
+        assert !readJournal.wasStarted(new TestFile("file:///other", SIZE), new TestFile("file:///dest/other", 0));
+
+        journal.delete();
+    }
+
+    /**
+     * Asserts that parameters containing the characters that separate fields and records are read back unchanged.
+     */
+    @Test
+    public void testEscaping() throws IOException {
+        String value = "file:///dest/a\tb\nc\\d\re\\t";
+
+        JobJournal journal = JobJournal.create(folder, JobJournal.COPY_JOB);
+        journal.addParameter(JobJournal.DESTINATION_FOLDER_PARAMETER, value);
+
+        assert value.equals(readJournal().getDestinationFolder());
+
+        journal.delete();
+    }
+
+    /**
+     * Asserts that a journal cannot be opened by two jobs at once.
+     */
+    @Test
+    public void testLocked() throws IOException {
+        JobJournal journal = JobJournal.create(folder, JobJournal.COPY_JOB);
+
+        JobJournal readJournal = readJournal();
+        try {
+            readJournal.open();
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        journal.delete();
+        assert folder.listFiles().length==0;
+    }
+}
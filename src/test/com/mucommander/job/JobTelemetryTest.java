@@ -0,0 +1,120 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * A test case for the phase times and the sampling of the time per file of {@link JobTelemetry}. Neither depends on
+ * the job the telemetry belongs to, which is <code>null</code> here.
+ *
+ * @author Maxence Bernard
+ */
+public class JobTelemetryTest {
+
+    private final static long MILLIS = 1000000;
+
+    private JobTelemetry telemetry;
+
+    @BeforeMethod
+    public void setUp() {
+        telemetry = new JobTelemetry(null);
+    }
+
+    /**
+     * Asserts that percentiles are <code>0</code> before any file has been processed.
+     */
+    @Test
+    public void testNoFile() {
+        assert telemetry.getFilesProcessed()==0;
+        assert telemetry.getFileLatencyP50()==0;
+        assert telemetry.getFileLatencyP99()==0;
+    }
+
+    /**
+     * Asserts that the percentiles of times 1 to 100 ms, processed in reverse order, are the nearest ranks.
+     */
+    @Test
+    public void testPercentiles() {
+        for(int i=100; i>0; i--)
+            telemetry.fileProcessed(i*MILLIS);
+
+        assert telemetry.getFilesProcessed()==100;
+        assert telemetry.getFileLatencyPercentile(0)==1;
+        assert telemetry.getFileLatencyPercentile(1)==1;
+        assert telemetry.getFileLatencyP50()==50;
+        assert telemetry.getFileLatencyP99()==99;
+        assert telemetry.getFileLatencyPercentile(100)==100;
+    }
+
+    /**
+     * Asserts that the percentiles of a single file are the time of that file.
+     */
+    @Test
+    public void testSingleFile() {
+        telemetry.fileProcessed(3*MILLIS/2);
+
+        assert telemetry.getFileLatencyP50()==1.5;
+        assert telemetry.getFileLatencyP99()==1.5;
+    }
+
+    /**
+     * Processes many more files than the reservoir holds, half of them taking 1 ms and the other half 3 ms, and
+     * asserts that all files are counted while the samples remain representative of both halves.
+     */
+    @Test
+    public void testReservoir() {
+        int nbFiles = 20*JobTelemetry.MAX_SAMPLES;
+        for(int i=0; i<nbFiles; i++)
+            telemetry.fileProcessed(i<nbFiles/2?MILLIS:3*MILLIS);
+
+        assert telemetry.getFilesProcessed()==nbFiles;
+        // Each file has the same probability of being sampled, whether it was processed before the reservoir was full
+        assert telemetry.getFileLatencyPercentile(10)==1;
+        assert telemetry.getFileLatencyPercentile(90)==3;
+    }
+
+    /**
+     * Asserts that the time of each phase is added up separately, and that negative times are ignored.
+     */
+    @Test
+    public void testPhaseTimes() {
+        telemetry.addPhaseTime(JobTelemetry.Phase.READING, 2*MILLIS);
+        telemetry.addPhaseTime(JobTelemetry.Phase.READING, 3*MILLIS);
+        telemetry.addPhaseTime(JobTelemetry.Phase.WRITING, 7*MILLIS);
+        telemetry.addPhaseTime(JobTelemetry.Phase.WRITING, -MILLIS);
+
+        assert telemetry.getReadingTime()==5;
+        assert telemetry.getWritingTime()==7;
+        assert telemetry.getListingTime()==0;
+        assert telemetry.getPhaseTime(JobTelemetry.Phase.DIALOG)==0;
+    }
+
+    /**
+     * Asserts that retries are counted.
+     */
+    @Test
+    public void testRetries() {
+        telemetry.retried();
+        telemetry.retried();
+
+        assert telemetry.getRetries()==2;
+    }
+}